@@ -32,18 +32,28 @@ public class ArgumentParser {
                 .version("${prog} 0.0.2");    
         //TODO remove hard-coded version. e.g. by this approach:http://stackoverflow.com/questions/2469922/generate-a-version-java-file-in-maven
         
-        argsParser.addArgument("-i", "--input-file").required(true)
+        argsParser.addArgument("-i", "--input-file").required(false)
                 .help("input file with genomic regions in TAB separated file format");
         
-        argsParser.addArgument("-g", "--genes").required(true).help("Genes in BED like format");
+        argsParser.addArgument("-g", "--genes").required(false).help("Genes in BED like format");
  
-        argsParser.addArgument("-O", "--phenotype-ontology").required(true)
+        argsParser.addArgument("-O", "--phenotype-ontology").required(false)
                .help("the phenotype ontology in OBO file format");
-        argsParser.addArgument("-a", "--annotation-file").required(true)
+        argsParser.addArgument("-a", "--annotation-file").required(false)
                 .help("phenotype annotation file that maps genes to phenotpye terms");
 
-        argsParser.addArgument("-o", "--output-prefix").required(true)
+        argsParser.addArgument("-o", "--output-prefix").required(false)
                 .help("prefix of file paths of all output files.");
+        
+        // binary snapshot of ontology and annotations for fast startup
+        argsParser.addArgument("-s", "--snapshot").required(false).metavar("FILE")
+                .help("read phenotype ontology and annotations from a snapshot "
+                        + "file built with --build-snapshot. If -O or -a are "
+                        + "given as well, the snapshot is checked against them.");
+        argsParser.addArgument("--build-snapshot").required(false).metavar("FILE")
+                .help("write a snapshot of the phenotype ontology (-O) and "
+                        + "annotations (-a) to FILE. Without input file (-i) "
+                        + "only the snapshot is written.");
         // add optional parameters
         argsParser.addArgument("-d", "--domains").required(false)
                 .help("Topologically associating domains (TADs) in BED file format. "
@@ -52,6 +62,74 @@ public class ArgumentParser {
                 .setDefault(0).help("Permute the phenotype annotations of genes "
                         + "associated to human phenotypes N time and run "
                         + "whole analysis as control. ");
+        argsParser.addArgument("--permut-pvalues").action(Arguments.storeTrue())
+                .help("Instead of writing all output lines of each permutation, "
+                        + "count how often the permuted scores reach the "
+                        + "observed ones and write one summary line with "
+                        + "empirical p-values per observed result.");
+        argsParser.addArgument("--gzip-output").action(Arguments.storeTrue())
+                .help("Compress the output files of permutations with gzip.");
+        argsParser.addArgument("--columnar-output").action(Arguments.storeTrue())
+                .help("Write the scored genes also to binary columnar files "
+                        + "with the suffix .pmc and write the output of "
+                        + "permutations only to such files.");
+        argsParser.addArgument("--percentiles").action(Arguments.storeTrue())
+                .help("Write the percentiles of the scores of each overlapped "
+                        + "gene among all genes of the same case to the file "
+                        + "with the suffix .percentiles.txt. The case is the "
+                        + "input name up to the first '_', e.g. DGAP001 "
+                        + "for DGAP001_A and DGAP001_B.");
+        // stages of the DGAP pipeline on breakpoints
+        argsParser.addArgument("--breakpoints").required(false).metavar("FILE")
+                .help("Breakpoints of the cases in BED file format with the "
+                        + "breakpoint name in the fourth column, e.g. DGAP001_A.");
+        argsParser.addArgument("--flank").type(Integer.class).metavar("N")
+                .setDefault(3000000).help("Number of base pairs on both sides "
+                        + "of each breakpoint that are checked for HI genes "
+                        + "and disrupted contacts.");
+        argsParser.addArgument("--subject-phenotypes").required(false).metavar("FILE")
+                .help("TAB separated table of cases and phenotypes with the "
+                        + "columns ID and HPO. Instead of an input file (-i) "
+                        + "the windows around the breakpoints (--breakpoints) "
+                        + "are analysed with the phenotypes of their case, "
+                        + "which is the breakpoint name up to the first '_'.");
+        argsParser.addArgument("--window").type(Integer.class).metavar("N")
+                .setDefault(6000000).help("Size of the windows centered at the "
+                        + "breakpoints that are analysed with --subject-phenotypes.");
+        argsParser.addArgument("--hic-domains").required(false).metavar("FILE")
+                .help("Hi-C domains in BED file format. Writes the domains "
+                        + "containing the breakpoints (--breakpoints) to the "
+                        + "file HiC_list_DGAP.txt and the HI genes within the "
+                        + "flanks of the breakpoints to the file "
+                        + "HI_list_DGAP.txt in the directory of the output "
+                        + "prefix. Requires --hi-predictions and --ensembl-genes.");
+        argsParser.addArgument("--hi-predictions").required(false).metavar("FILE")
+                .help("Haploinsufficiency predictions in BED file format with "
+                        + "name|score|percentage in the fourth column.");
+        argsParser.addArgument("--ensembl-genes").required(false).metavar("FILE")
+                .help("Ensembl gene annotation with the HGNC symbol in the "
+                        + "sixth column, which is added to the HI genes.");
+        argsParser.addArgument("--enhancer-promoter-contacts").required(false).metavar("FILE")
+                .help("Correlated DHS enhancer-promoter contacts. Writes the "
+                        + "contacts with a correlation above 0.7 that are "
+                        + "disrupted by the breakpoints (--breakpoints) "
+                        + "to the file with the suffix .DHS_promoter_broken.txt "
+                        + "and a summary per breakpoint. Without input file "
+                        + "(-i) only the disrupted contacts are written.");
+        argsParser.addArgument("--index-dir").required(false).metavar("DIR")
+                .help("Directory in which the indices of sorted gene and "
+                        + "domain files are stored and reused in later runs. "
+                        + "By default the indices are only kept in memory.");
+        argsParser.addArgument("--seed").type(Long.class).metavar("SEED")
+                .help("Seed of the random generator for permutations. Results "
+                        + "are reproducible for a given seed and any number "
+                        + "of threads. By default a random seed is used and "
+                        + "reported.");
+        argsParser.addArgument("-t", "--threads").type(Integer.class).metavar("N")
+                .setDefault(1).help("Number of threads used to read large input "
+                        + "files and to annotate and "
+                        + "score the input regions. The output is the same "
+                        + "for any number of threads.");
         argsParser.addArgument("-v", "--version").action(Arguments.version());
         // build objects to parse the commandline to
 
@@ -68,9 +146,111 @@ public class ArgumentParser {
         }
         
         argMap = ns.getAttrs();
+        
+        // check required combinations of arguments
+        try{
+            checkArguments(argMap, argsParser);
+        }catch (ArgumentParserException e) {
+            argsParser.handleError(e);
+            System.exit(1);
+        }
 
         return argMap;
 
     }
     
+    /**
+     * Checks that the phenotype data is given either as ontology and annotation
+     * file or as snapshot and that all input files for the analysis are given.
+     * 
+     * @param argMap parsed arguments
+     * @param argsParser the parser to report errors
+     * @throws ArgumentParserException if a required argument is missing
+     */
+    private static void checkArguments(Map<String, Object> argMap, 
+            net.sourceforge.argparse4j.inf.ArgumentParser argsParser) throws ArgumentParserException{
+        
+        if (argMap.get("hic_domains") != null){
+            
+            for (String [] arg : new String[][]{
+                    {"breakpoints", "--breakpoints"},
+                    {"hi_predictions", "--hi-predictions"},
+                    {"ensembl_genes", "--ensembl-genes"},
+                    {"output_prefix", "-o/--output-prefix"}}){
+                if (argMap.get(arg[0]) == null){
+                    throw new ArgumentParserException("argument --hic-domains "
+                            + "requires " + arg[1], argsParser);
+                }
+            }
+        }
+        
+        if (argMap.get("enhancer_promoter_contacts") != null){
+            
+            for (String [] arg : new String[][]{
+                    {"breakpoints", "--breakpoints"},
+                    {"output_prefix", "-o/--output-prefix"}}){
+                if (argMap.get(arg[0]) == null){
+                    throw new ArgumentParserException("argument --enhancer-promoter-contacts "
+                            + "requires " + arg[1], argsParser);
+                }
+            }
+        }
+        
+        boolean hasInput = argMap.get("input_file") != null || argMap.get("subject_phenotypes") != null;
+        
+        // only the breakpoint stages are run
+        if ((argMap.get("hic_domains") != null || argMap.get("enhancer_promoter_contacts") != null)
+                && !hasInput && argMap.get("build_snapshot") == null){
+            return;
+        }
+        
+        boolean hasOntology = argMap.get("phenotype_ontology") != null;
+        boolean hasAnnotation = argMap.get("annotation_file") != null;
+        
+        if (argMap.get("build_snapshot") != null){
+            
+            if (!hasOntology || !hasAnnotation){
+                throw new ArgumentParserException("argument --build-snapshot "
+                        + "requires -O/--phenotype-ontology and -a/--annotation-file", argsParser);
+            }
+            // only the snapshot is build
+            if (!hasInput){
+                return;
+            }
+        }else if (argMap.get("snapshot") == null && (!hasOntology || !hasAnnotation)){
+            throw new ArgumentParserException("arguments -O/--phenotype-ontology "
+                    + "and -a/--annotation-file or -s/--snapshot are required", argsParser);
+        }
+        
+        if ((Integer) argMap.get("threads") < 1){
+            throw new ArgumentParserException("argument -t/--threads must be at least 1", argsParser);
+        }
+        
+        if (argMap.get("subject_phenotypes") != null){
+            
+            if (argMap.get("input_file") != null){
+                throw new ArgumentParserException("argument --subject-phenotypes "
+                        + "not allowed with argument -i/--input-file", argsParser);
+            }
+            if (argMap.get("breakpoints") == null){
+                throw new ArgumentParserException("argument --subject-phenotypes "
+                        + "requires --breakpoints", argsParser);
+            }
+            if ((Integer) argMap.get("window") < 1){
+                throw new ArgumentParserException("argument --window must be at least 1", argsParser);
+            }
+        }else if (argMap.get("input_file") == null){
+            throw new ArgumentParserException("argument -i/--input-file "
+                    + "or --subject-phenotypes is required", argsParser);
+        }
+        
+        for (String [] arg : new String[][]{
+                {"genes", "-g/--genes"},
+                {"output_prefix", "-o/--output-prefix"}}){
+            if (argMap.get(arg[0]) == null){
+                throw new ArgumentParserException("argument " + arg[1] + " is required", argsParser);
+            }
+        }
+    }
+    
 }
@@ -23,15 +23,51 @@ public class PhenomatchCMD {
             // parse commandline arguments
             Map<String, Object> argMap = ArgumentParser.parseCommnadLineArguments(args);
             
+            // check Hi-C domains and HI genes around breakpoints
+            if (argMap.get("hic_domains") != null){
+                
+                Phenomatch.checkFeatures(argMap);
+            }
+            
+            // find enhancer-promoter contacts disrupted by breakpoints
+            if (argMap.get("enhancer_promoter_contacts") != null){
+                
+                Phenomatch.checkEnhancerPromoterContacts(argMap);
+            }
+            
+            // only run the breakpoint stages if there is no input to analyse
+            if ((argMap.get("hic_domains") != null || argMap.get("enhancer_promoter_contacts") != null)
+                    && argMap.get("input_file") == null && argMap.get("subject_phenotypes") == null
+                    && argMap.get("build_snapshot") == null){
+                return;
+            }
+            
+            // write snapshot of the phenotype ontology and annotations
+            if (argMap.get("build_snapshot") != null){
+                
+                Phenomatch.buildSnapshot(argMap);
+                
+                // only build the snapshot if there is no input to analyse
+                if (argMap.get("input_file") == null && argMap.get("subject_phenotypes") == null){
+                    return;
+                }
+                // use the new snapshot for the analysis
+                argMap.put("snapshot", argMap.get("build_snapshot"));
+            }
+            
             // run Phenomatch tool with arguments:
             Phenomatch phenomatch = new Phenomatch(argMap);
             
-            phenomatch.runAnalysis();
-            
-            phenomatch.writeGeneOutput();
+            try{
+                phenomatch.runAnalysis();
+
+                phenomatch.writeGeneOutput();
 
-            // run permutaion analysisi to get significance
-            phenomatch.runPermutations();
+                // run permutaion analysisi to get significance
+                phenomatch.runPermutations();
+            }finally{
+                phenomatch.shutdown();
+            }
             
             
         }
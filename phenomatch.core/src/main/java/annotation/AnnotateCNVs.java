@@ -27,9 +27,12 @@
 package annotation;
 
 import genomicregions.CNV;
+import genomicregions.DomainPartitionIndex;
 import genomicregions.Gene;
 import genomicregions.GenomicElement;
 import genomicregions.GenomicSet;
+import genomicregions.IntervalIndex;
+import genomicregions.IntervalTree;
 import phenotypeontology.PhenotypeData;
 
 /**
@@ -64,13 +67,23 @@ public class AnnotateCNVs {
         
         // iterate over all CNVs:
         for (CNV cnv : cnvs.values()){
-            
-            GenomicSet<Gene> overlap = genes.anyOverlap(cnv);
-            cnv.setGenesInOverlap( overlap );
-            
+            annotateOverlappedGenes(cnv, genes);
         }
     }
     
+    /**
+     * Annotates a single CNV with all genes that have any overlap with the CNV.
+     * 
+     * @param cnv CNV that should be annotated
+     * @param genes Set of genes
+     */
+    public static void annotateOverlappedGenes(CNV cnv, GenomicSet<Gene> genes){
+        
+        GenomicSet<Gene> overlap = new GenomicSet<Gene>();
+        genes.getIntervalTree().forEachOverlap(cnv, collector(overlap));
+        cnv.setGenesInOverlap( overlap );
+    }
+    
     /**
      * Annotates all input CNVs with genes that are within TADs that are overlapped with the CNV.
      * For each {@link CNV} object the variable {@link CNV.genesInOverlapTADs} is filled 
@@ -81,25 +94,85 @@ public class AnnotateCNVs {
      */
     public static void annotateGenesInOverlapTADs(GenomicSet<CNV> cnvs, GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
 
+        // compute the genes of each TAD only once for all CNVs
+        DomainPartitionIndex index = new DomainPartitionIndex(domains, genes);
+        
         // iterate over all CNVs:
         for (CNV cnv : cnvs.values()){
-            
-            // get subset of TADs overlapping with the CNV
-            GenomicSet<GenomicElement> overlapTADs = domains.anyOverlap(cnv);
-            
-            // initialize set of genes
-            GenomicSet<Gene> overlapGenes = new GenomicSet<Gene>();
-            
-            // iterate over all overlpping TADs and update the set of genes
-            for (GenomicElement tad: overlapTADs.values()){
-                overlapGenes.putAll( genes.anyOverlap(tad) );                
-            }
-
-            // set the genes in overlapping TAD annotation
-            cnv.setGenesInOverlapTADs( overlapGenes );
-            
+            annotateGenesInOverlapTADs(cnv, index);
         }
 
-    }      
+    }
+    
+    /**
+     * Annotates a single CNV with genes that are within TADs that are 
+     * overlapped with the CNV, where the genes of each TAD are taken from 
+     * a precomputed {@link DomainPartitionIndex}.
+     * 
+     * @param cnv CNV that should be annotated
+     * @param index index of TADs and their genes
+     */
+    public static void annotateGenesInOverlapTADs(CNV cnv, DomainPartitionIndex index){
+        cnv.setGenesInOverlapTADs( index.getGenesInOverlapDomains(cnv) );
+    }
+    
+    /**
+     * Annotates a single CNV with genes that are within TADs that are overlapped with the CNV.
+     * 
+     * @param cnv CNV that should be annotated
+     * @param domains set of TADs
+     * @param genes set of genes
+     */
+    public static void annotateGenesInOverlapTADs(CNV cnv, GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+        
+        // initialize set of genes
+        GenomicSet<Gene> overlapGenes = new GenomicSet<Gene>();
+        
+        final IntervalTree<Gene> geneTree = genes.getIntervalTree();
+        final IntervalIndex.Visitor<Gene> geneCollector = collector(overlapGenes);
+
+        // iterate over all TADs overlapping with the CNV and update the set of genes
+        domains.getIntervalTree().forEachOverlap(cnv, new IntervalIndex.Visitor<GenomicElement>(){
+            @Override
+            public void visit(GenomicElement tad) {
+                geneTree.forEachOverlap(tad, geneCollector);
+            }
+        });
+
+        // set the genes in overlapping TAD annotation
+        cnv.setGenesInOverlapTADs( overlapGenes );
+    }
+    
+    /**
+     * Annotates all input CNVs with overlapped genes and, if domains are given,
+     * with genes in overlapped TADs in a single sweep over the sorted CNVs, 
+     * domains and genes of each chromosome. 
+     * The result is the same as of {@link #annotateOverlappedGenes(GenomicSet, GenomicSet)} 
+     * and {@link #annotateGenesInOverlapTADs(GenomicSet, GenomicSet, GenomicSet)}, 
+     * but no separate query is run for each CNV and each overlapped TAD. 
+     * This is faster for large sets of CNVs.
+     * 
+     * @param cnvs CNVs that should be annotated
+     * @param domains set of TADs or {@code null} to annotate only overlapped genes
+     * @param genes set of genes
+     */
+    public static void annotateBatch(GenomicSet<CNV> cnvs, GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+        OverlapSweep.annotate(cnvs, domains, genes);
+    }
+    
+    /**
+     * Returns a visitor that adds all visited elements to a set.
+     * 
+     * @param set the set of elements that is filled
+     * @return a visitor for {@link IntervalIndex} queries
+     */
+    private static <T extends GenomicElement> IntervalIndex.Visitor<T> collector(final GenomicSet<T> set){
+        return new IntervalIndex.Visitor<T>(){
+            @Override
+            public void visit(T elem) {
+                set.put(elem.getName(), elem);
+            }
+        };
+    }
  
 }
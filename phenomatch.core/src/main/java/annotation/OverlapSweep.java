@@ -0,0 +1,243 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package annotation;
+
+import genomicregions.CNV;
+import genomicregions.Gene;
+import genomicregions.GenomicElement;
+import genomicregions.GenomicSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Annotates CNVs with overlapped genes and genes in overlapped TADs by a
+ * single merge sweep per chromosome over the CNVs, domains and genes sorted by
+ * start coordinate.
+ * <br><br>
+ * The sweep visits all intervals in the order of their start. For each kind
+ * of interval it keeps a list of active intervals, i.e. intervals that started
+ * before and did not end yet. When an interval starts, the active lists of the
+ * other kinds are scanned once: intervals that ended are removed and the
+ * remaining ones overlap the starting interval, except for empty intervals
+ * starting at the same position. Each interval is removed only once, so for
+ * n CNVs, m domains, g genes and k overlaps all scans together cost amortized
+ * O(n + m + g + k) plus the scans of such empty intervals. Sorting the CNVs
+ * of each chromosome adds O(n log n), the domains and genes are taken sorted
+ * from their interval indices. Each domain is joined with the genes only
+ * once, and the genes in overlapped TADs of a CNV are the union of the genes
+ * of its domains. The overlap semantics are the same as in
+ * {@link genomicregions.IntervalIndex}.
+ */
+class OverlapSweep {
+
+    /**
+     * A growable list of primitive indices.
+     */
+    private static class IntList {
+
+        private int [] values = new int[4];
+        private int size = 0;
+
+        void add(int v){
+            if (size == values.length){
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = v;
+        }
+
+        int get(int i){
+            return values[i];
+        }
+
+        int size(){
+            return size;
+        }
+
+        /**
+         * Removes all indices of intervals that end at or before {@code pos}.
+         */
+        <T extends GenomicElement> void removeEnded(List<T> elements, int pos){
+            int kept = 0;
+            for (int i = 0; i < size; i++){
+                if (effectiveEnd(elements.get(values[i])) > pos){
+                    values[kept++] = values[i];
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * End of an interval as query. A query of length zero is the single
+     * position start.
+     */
+    private static int effectiveEnd(GenomicElement e){
+        return e.getEnd() == e.getStart() ? e.getStart() + 1 : e.getEnd();
+    }
+
+    /**
+     * Tests if a query overlaps an element.
+     */
+    private static boolean overlaps(GenomicElement query, GenomicElement elem){
+        return elem.getStart() < effectiveEnd(query) && query.getStart() < elem.getEnd();
+    }
+
+    /**
+     * Start of the element at index {@code i} or the maximal integer if there
+     * is no such element.
+     */
+    private static int startAt(List<? extends GenomicElement> elements, int i){
+        return i < elements.size() ? elements.get(i).getStart() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Annotates all CNVs with overlapped genes and, if domains are given, with
+     * genes in overlapped TADs.
+     *
+     * @param cnvs CNVs that should be annotated
+     * @param domains set of TADs or {@code null}
+     * @param genes set of genes
+     */
+    static void annotate(GenomicSet<CNV> cnvs, GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+
+        // group CNVs by chromosome and sort them by start
+        HashMap<String, ArrayList<CNV>> chr2cnvs = new HashMap<>();
+        for (CNV cnv : cnvs.values()){
+            ArrayList<CNV> list = chr2cnvs.get(cnv.getChr());
+            if (list == null){
+                list = new ArrayList<>();
+                chr2cnvs.put(cnv.getChr(), list);
+            }
+            list.add(cnv);
+        }
+
+        for (String chr : chr2cnvs.keySet()){
+
+            ArrayList<CNV> chrCNVs = chr2cnvs.get(chr);
+            Collections.sort(chrCNVs, GenomicElement.START_COORDINATE_ORDER);
+
+            // the interval trees provide the elements sorted by start
+            List<Gene> chrGenes = genes.getIntervalTree().getElements(chr);
+            List<GenomicElement> chrDomains = domains != null
+                    ? domains.getIntervalTree().getElements(chr)
+                    : Collections.<GenomicElement>emptyList();
+
+            sweep(chrCNVs, chrDomains, chrGenes, domains != null);
+        }
+    }
+
+    /**
+     * Runs the sweep on a single chromosome.
+     */
+    private static void sweep(List<CNV> cnvs, List<GenomicElement> domains,
+            List<Gene> genes, boolean withTADs){
+
+        ArrayList<GenomicSet<Gene>> cnvGenes = new ArrayList<>(cnvs.size());
+        ArrayList<IntList> cnvDomains = new ArrayList<>(cnvs.size());
+        for (int k = 0; k < cnvs.size(); k++){
+            cnvGenes.add(new GenomicSet<Gene>());
+            cnvDomains.add(new IntList());
+        }
+        ArrayList<IntList> domainGenes = new ArrayList<>(domains.size());
+        for (int j = 0; j < domains.size(); j++){
+            domainGenes.add(new IntList());
+        }
+
+        IntList activeCNVs = new IntList();
+        IntList activeDomains = new IntList();
+        IntList activeGenes = new IntList();
+
+        int ic = 0;
+        int id = 0;
+        int ig = 0;
+
+        while (ic < cnvs.size() || id < domains.size() || ig < genes.size()){
+
+            int sc = startAt(cnvs, ic);
+            int sd = startAt(domains, id);
+            int sg = startAt(genes, ig);
+
+            if (ic < cnvs.size() && sc <= sd && sc <= sg){
+
+                // a CNV starts
+                CNV cnv = cnvs.get(ic);
+                activeGenes.removeEnded(genes, sc);
+                for (int i = 0; i < activeGenes.size(); i++){
+                    Gene g = genes.get(activeGenes.get(i));
+                    if (overlaps(cnv, g)){
+                        cnvGenes.get(ic).put(g.getName(), g);
+                    }
+                }
+                activeDomains.removeEnded(domains, sc);
+                for (int i = 0; i < activeDomains.size(); i++){
+                    if (overlaps(cnv, domains.get(activeDomains.get(i)))){
+                        cnvDomains.get(ic).add(activeDomains.get(i));
+                    }
+                }
+                activeCNVs.add(ic++);
+
+            }else if (id < domains.size() && sd <= sg){
+
+                // a domain starts
+                GenomicElement tad = domains.get(id);
+                activeCNVs.removeEnded(cnvs, sd);
+                for (int i = 0; i < activeCNVs.size(); i++){
+                    if (overlaps(cnvs.get(activeCNVs.get(i)), tad)){
+                        cnvDomains.get(activeCNVs.get(i)).add(id);
+                    }
+                }
+                activeGenes.removeEnded(genes, sd);
+                for (int i = 0; i < activeGenes.size(); i++){
+                    if (overlaps(tad, genes.get(activeGenes.get(i)))){
+                        domainGenes.get(id).add(activeGenes.get(i));
+                    }
+                }
+                activeDomains.add(id++);
+
+            }else{
+
+                // a gene starts
+                Gene g = genes.get(ig);
+                activeCNVs.removeEnded(cnvs, sg);
+                for (int i = 0; i < activeCNVs.size(); i++){
+                    if (overlaps(cnvs.get(activeCNVs.get(i)), g)){
+                        cnvGenes.get(activeCNVs.get(i)).put(g.getName(), g);
+                    }
+                }
+                activeDomains.removeEnded(domains, sg);
+                for (int i = 0; i < activeDomains.size(); i++){
+                    if (overlaps(domains.get(activeDomains.get(i)), g)){
+                        domainGenes.get(activeDomains.get(i)).add(ig);
+                    }
+                }
+                activeGenes.add(ig++);
+            }
+        }
+
+        for (int k = 0; k < cnvs.size(); k++){
+
+            cnvs.get(k).setGenesInOverlap(cnvGenes.get(k));
+
+            if (withTADs){
+                // union of the genes of all overlapped domains
+                GenomicSet<Gene> tadGenes = new GenomicSet<Gene>();
+                IntList tads = cnvDomains.get(k);
+                for (int i = 0; i < tads.size(); i++){
+                    IntList inTAD = domainGenes.get(tads.get(i));
+                    for (int j = 0; j < inTAD.size(); j++){
+                        Gene g = genes.get(inTAD.get(j));
+                        tadGenes.put(g.getName(), g);
+                    }
+                }
+                cnvs.get(k).setGenesInOverlapTADs(tadGenes);
+            }
+        }
+    }
+}
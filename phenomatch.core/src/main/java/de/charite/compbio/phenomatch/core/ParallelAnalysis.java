@@ -0,0 +1,232 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.charite.compbio.phenomatch.core;
+
+import annotation.AnnotateCNVs;
+import genomicregions.CNV;
+import genomicregions.DomainPartitionIndex;
+import genomicregions.Gene;
+import genomicregions.GenomicElement;
+import genomicregions.GenomicSet;
+import io.GeneScoreRows;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import phenotypeontology.PhenotypeData;
+
+/**
+ * Runs the annotation and scoring of CNVs on a {@link ForkJoinPool}.
+ * CNVs are split recursively into halves until single CNVs remain. The genes
+ * of CNVs with very large windows are again split into chunks, so that a few
+ * large windows do not keep a single worker busy while all others are idle.
+ * Partial results are concatenated in input order, therefore the output is
+ * identical to the serial mode for any number of threads.
+ */
+public class ParallelAnalysis {
+
+    /** Minimal number of genes in a window to score them in parallel chunks. */
+    public static final int GENE_CHUNK_SIZE = 64;
+
+    /** The pool that executes all tasks. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new {@link ParallelAnalysis} with a given number of threads.
+     *
+     * @param threads number of worker threads
+     */
+    public ParallelAnalysis(int threads){
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Annotates all CNVs with overlapped genes and, if domains are given, with
+     * genes in overlapped TADs.
+     *
+     * @param cnvs CNVs that should be annotated
+     * @param genes set of genes
+     * @param domains set of TADs or {@code null}
+     */
+    public void annotate(GenomicSet<CNV> cnvs, GenomicSet<Gene> genes,
+            GenomicSet<GenomicElement> domains){
+
+        CNV [] cnvArray = cnvs.values().toArray(new CNV[cnvs.size()]);
+        
+        // the genes of each TAD are computed once and shared by all tasks
+        DomainPartitionIndex domainIndex = domains != null 
+                ? new DomainPartitionIndex(domains, genes) : null;
+        pool.invoke(new AnnotationTask(cnvArray, 0, cnvArray.length, genes, domainIndex));
+    }
+
+    /**
+     * Scores the overlapped genes or the genes in overlapped TADs of all CNVs.
+     * The rows are in the same order as 
+     * {@link CNV#addGeneScoreRows(GeneScoreRows, PhenotypeData, List, List)}
+     * called for each CNV in iteration order.
+     *
+     * @param cnvs CNVs to be scored
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param inTADs if true the genes in overlapped TADs are scored, otherwise
+     * the overlapped genes
+     * @return the scored genes
+     */
+    public GeneScoreRows getGeneScoreRows(GenomicSet<CNV> cnvs,
+            PhenotypeData phenotypeData, boolean inTADs){
+
+        CNV [] cnvArray = cnvs.values().toArray(new CNV[cnvs.size()]);
+        return pool.invoke(new ScoreTask(cnvArray, 0, cnvArray.length, phenotypeData, inTADs));
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Annotates a range of CNVs with overlapped genes.
+     */
+    private static class AnnotationTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+
+        private final CNV [] cnvs;
+        private final int from;
+        private final int to;
+        private final GenomicSet<Gene> genes;
+        private final DomainPartitionIndex domains;
+
+        AnnotationTask(CNV [] cnvs, int from, int to, GenomicSet<Gene> genes,
+                DomainPartitionIndex domains){
+            this.cnvs = cnvs;
+            this.from = from;
+            this.to = to;
+            this.genes = genes;
+            this.domains = domains;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from > 1){
+                int mid = (from + to) >>> 1;
+                invokeAll(new AnnotationTask(cnvs, from, mid, genes, domains),
+                        new AnnotationTask(cnvs, mid, to, genes, domains));
+            }else if (to - from == 1){
+
+                AnnotateCNVs.annotateOverlappedGenes(cnvs[from], genes);
+                if (domains != null){
+                    AnnotateCNVs.annotateGenesInOverlapTADs(cnvs[from], domains);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores the genes of a range of CNVs.
+     */
+    private static class ScoreTask extends RecursiveTask<GeneScoreRows>{
+
+        private static final long serialVersionUID = 1L;
+
+        private final CNV [] cnvs;
+        private final int from;
+        private final int to;
+        private final PhenotypeData phenotypeData;
+        private final boolean inTADs;
+
+        ScoreTask(CNV [] cnvs, int from, int to, PhenotypeData phenotypeData, boolean inTADs){
+            this.cnvs = cnvs;
+            this.from = from;
+            this.to = to;
+            this.phenotypeData = phenotypeData;
+            this.inTADs = inTADs;
+        }
+
+        @Override
+        protected GeneScoreRows compute() {
+
+            if (to - from > 1){
+
+                int mid = (from + to) >>> 1;
+                ScoreTask right = new ScoreTask(cnvs, mid, to, phenotypeData, inTADs);
+                right.fork();
+                GeneScoreRows rows = new ScoreTask(cnvs, from, mid, phenotypeData, inTADs).compute();
+                rows.addAll(right.join());
+                return rows;
+
+            }else if (to - from == 1){
+
+                CNV cnv = cnvs[from];
+                GenomicSet<Gene> genes = inTADs ? cnv.getGenesInOverlapTADs() : cnv.getGenesInOverlap();
+                Gene [] geneArray = genes.values().toArray(new Gene[genes.size()]);
+
+                if (geneArray.length < GENE_CHUNK_SIZE){
+                    GeneScoreRows rows = new GeneScoreRows();
+                    cnv.addGeneScoreRows(rows, phenotypeData, Arrays.asList(geneArray), null);
+                    return rows;
+                }
+
+                // build the profile once before the genes are scored in parallel
+                cnv.getPhenotypeProfile(phenotypeData);
+                GeneScoreRows rows = new GeneChunkTask(cnv, geneArray, 0, geneArray.length, phenotypeData).compute();
+
+                // if CNV does not overlap any gene or overlapped genes have score 0
+                if (rows.size() == 0){
+                    rows.addNoGene(cnv);
+                }
+                return rows;
+
+            }else{
+                return new GeneScoreRows();
+            }
+        }
+    }
+
+    /**
+     * Scores a range of genes in the window of a single CNV.
+     */
+    private static class GeneChunkTask extends RecursiveTask<GeneScoreRows>{
+
+        private static final long serialVersionUID = 1L;
+
+        private final CNV cnv;
+        private final Gene [] genes;
+        private final int from;
+        private final int to;
+        private final PhenotypeData phenotypeData;
+
+        GeneChunkTask(CNV cnv, Gene [] genes, int from, int to, PhenotypeData phenotypeData){
+            this.cnv = cnv;
+            this.genes = genes;
+            this.from = from;
+            this.to = to;
+            this.phenotypeData = phenotypeData;
+        }
+
+        @Override
+        protected GeneScoreRows compute() {
+
+            if (to - from > GENE_CHUNK_SIZE){
+
+                int mid = (from + to) >>> 1;
+                GeneChunkTask right = new GeneChunkTask(cnv, genes, mid, to, phenotypeData);
+                right.fork();
+                GeneScoreRows rows = new GeneChunkTask(cnv, genes, from, mid, phenotypeData).compute();
+                rows.addAll(right.join());
+                return rows;
+            }
+
+            GeneScoreRows rows = new GeneScoreRows();
+            cnv.addScoredGeneRows(rows, phenotypeData, Arrays.asList(genes).subList(from, to), null);
+            return rows;
+        }
+    }
+}
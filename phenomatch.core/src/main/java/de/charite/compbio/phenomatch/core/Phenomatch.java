@@ -8,22 +8,34 @@ package de.charite.compbio.phenomatch.core;
 
 import annotation.AnnotateCNVs;
 import static annotation.AnnotateGenes.addGeneSymbol;
+import dgap.BreakpointWindow;
+import dgap.CasePercentiles;
+import dgap.CasePhenotypes;
+import dgap.EnhancerPromoterChecker;
+import dgap.FeaturesCheck;
 import genomicregions.CNV;
 import genomicregions.Gene;
 import genomicregions.GenomicElement;
 import genomicregions.GenomicSet;
-import io.GeneSymbolParser;
+import io.AnnotationFileParser;
+import io.AsyncLineWriter;
+import io.GeneScoreColumnWriter;
+import io.GeneScoreRows;
 import io.TabFileParser;
-import io.TabFileWriter;
+import io.TabRowWriter;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Random;
 import org.apache.commons.lang3.StringUtils;
-import permutation.PermutedGenePhenotypes;
+import permutation.PermutationEngine;
+import permutation.PermutationListener;
+import permutation.PermutationResult;
+import permutation.PermutationStatistics;
 import phenotypeontology.PhenotypeData;
+import phenotypeontology.PhenotypeDataSnapshot;
 
 
 /**
@@ -54,6 +66,14 @@ public class Phenomatch {
     /** file paths to input and output files **/
     private final String cnvPath;
     
+    /** Cases and phenotypes joined with the breakpoints instead of the input file. */
+    private final String subjectPhenotypesPath;
+    
+    private final String breakpointsPath;
+    
+    /** Size of the windows around breakpoints. */
+    private final Integer windowSize;
+    
     private final String genesPath;
     
     private final String domainPath;
@@ -61,11 +81,37 @@ public class Phenomatch {
     private final String ontologyPath;
     
     private final String annotationPath;
+    
+    private final String snapshotPath;
+    
+    /** Directory of the indices of gene and domain files or null. */
+    private final String indexDir;
 
     private final Integer genePermutations;    
 
     private final String outputPath;
     
+    /** Parallel execution of annotation and scoring or null in serial mode. */
+    private final ParallelAnalysis parallel;
+    
+    /** Number of worker threads. */
+    private final int threads;
+    
+    /** Seed of the random generators for permutations. */
+    private final long seed;
+    
+    /** Compress permutation output with gzip. */
+    private final boolean gzipOutput;
+    
+    /** Write empirical p-values instead of all permutation output lines. */
+    private final boolean permutPValues;
+    
+    /** Write scored genes to binary columnar files. */
+    private final boolean columnarOutput;
+    
+    /** Write percentiles of the scores of the overlapped genes per case. */
+    private final boolean percentiles;
+    
     
     /**
      * Constructor for an instance of the {@link Phenomatch} program with input 
@@ -82,22 +128,67 @@ public class Phenomatch {
         this.ontologyPath = (String) argMap.get("phenotype_ontology");
         this.annotationPath = (String) argMap.get("annotation_file");
         this.outputPath = (String) argMap.get("output_prefix");
+        this.subjectPhenotypesPath = (String) argMap.get("subject_phenotypes");
+        this.breakpointsPath = (String) argMap.get("breakpoints");
+        this.windowSize = (Integer) argMap.get("window");
         
         // parse optional arguments:
         this.domainPath = (String) argMap.get("domains");
         this.genePermutations = (Integer) argMap.get("permut_genes");
+        this.snapshotPath = (String) argMap.get("snapshot");
+        this.indexDir = (String) argMap.get("index_dir");
+        
+        Integer threadsArg = (Integer) argMap.get("threads");
+        this.threads = threadsArg != null ? threadsArg : 1;
+        this.parallel = this.threads > 1 ? new ParallelAnalysis(this.threads) : null;
+        
+        // use a random seed for permutations, if none is given
+        Long seedArg = (Long) argMap.get("seed");
+        this.seed = seedArg != null ? seedArg : new Random().nextLong();
+        this.gzipOutput = Boolean.TRUE.equals(argMap.get("gzip_output"));
+        this.permutPValues = Boolean.TRUE.equals(argMap.get("permut_pvalues"));
+        this.columnarOutput = Boolean.TRUE.equals(argMap.get("columnar_output"));
+        this.percentiles = Boolean.TRUE.equals(argMap.get("percentiles"));
+        
+        HashMap<String, String> entrezToSymbol;
         
-        // read the phenotype ontology
-        this.phenotypeData = new PhenotypeData(this.ontologyPath, this.annotationPath);
-        System.out.println("[INFO] Ontology and annotation table were parsed.");
+        if (this.snapshotPath != null){
+            
+            // read the phenotype ontology and annotations from the snapshot
+            PhenotypeDataSnapshot snapshot = PhenotypeDataSnapshot.open(this.snapshotPath);
+            snapshot.checkSources(this.ontologyPath, this.annotationPath);
+            this.phenotypeData = snapshot.getPhenotypeData();
+            entrezToSymbol = snapshot.getEntrezToSymbol();
+            System.out.println("[INFO] Ontology and annotation table were read from snapshot.");
+            
+        }else{
+            
+            // read the phenotype ontology
+            // read annotations and gene symbols in a single pass
+            AnnotationFileParser annotations = new AnnotationFileParser(this.annotationPath, this.threads);
+            this.phenotypeData = new PhenotypeData(this.ontologyPath, annotations);
+            entrezToSymbol = annotations.getEntrezToSymbol();
+            System.out.println("[INFO] Ontology and annotation table were parsed.");
+        }
 
         ////////////////////////////////////////////////////////////////////////
         //  CNVs
         ////////////////////////////////////////////////////////////////////////
 
-        // read CNV data from input file:
-        TabFileParser cnvParser = new TabFileParser(cnvPath);        
-        cnvs = cnvParser.parseCNVwithHpoTerms(this.phenotypeData);
+        if (this.subjectPhenotypesPath != null){
+            
+            // join breakpoints with the phenotypes of their cases in memory
+            CasePhenotypes casePhenotypes = CasePhenotypes.read(this.subjectPhenotypesPath);
+            cnvs = new TabFileParser(this.breakpointsPath).parseBreakpointWindowsWithHpoTerms(
+                    this.windowSize, casePhenotypes.getBreakpointPhenotypes(this.phenotypeData));
+            System.out.println("[INFO] Breakpoint windows were combined with phenotypes of " 
+                    + casePhenotypes.size() + " cases.");
+        }else{
+            
+            // read CNV data from input file:
+            TabFileParser cnvParser = new TabFileParser(cnvPath);        
+            cnvs = cnvParser.parseCNVwithHpoTerms(this.phenotypeData);
+        }
         
         ////////////////////////////////////////////////////////////////////////
         //  Domains and Boundaries
@@ -107,198 +198,388 @@ public class Phenomatch {
         
         if(this.domainPath != null){
             
-            TabFileParser domainParser = new TabFileParser(this.domainPath);
-            // parse topological domains 
+            // parse only topological domains that overlap any CNV
+            TabFileParser domainParser = new TabFileParser(this.domainPath, this.threads, cnvs.values(), this.indexDir);
             domains = domainParser.parse();
         }
         
         ////////////////////////////////////////////////////////////////////////
         //  Genes
         ////////////////////////////////////////////////////////////////////////
-        genes = new TabFileParser(genesPath).parseGeneWithTerms(phenotypeData);        
+        
+        // parse only genes that overlap any CNV or any TAD overlapped by a CNV
+        ArrayList<GenomicElement> geneRegions = new ArrayList<GenomicElement>(cnvs.values());
+        if (this.domainPath != null){
+            geneRegions.addAll(domains.values());
+        }
+        genes = new TabFileParser(genesPath, this.threads, geneRegions, this.indexDir).parseGeneWithTerms(phenotypeData);        
         
         // add GeneSymbol to genes
-        HashMap<String, String> entrezToSymbol = new GeneSymbolParser(annotationPath).parseEntrezToSymbol();
         addGeneSymbol(genes, entrezToSymbol);
         
     }
     
+    /**
+     * Parses the phenotype ontology and annotation file and writes them to a 
+     * binary snapshot file, that can be used instead of the input files in 
+     * later runs.
+     * 
+     * @param argMap a {@link Map} holding the input files and the snapshot path
+     * @throws IOException if files cannot be read or write
+     */
+    public static void buildSnapshot(Map<String, Object> argMap) throws IOException{
+        
+        String snapshotFile = (String) argMap.get("build_snapshot");
+        PhenotypeDataSnapshot.write(
+                (String) argMap.get("phenotype_ontology"),
+                (String) argMap.get("annotation_file"), 
+                snapshotFile);
+        System.out.println("[INFO] Wrote snapshot of ontology and annotation table to '" + snapshotFile + "'.");
+    }
+    
+    /**
+     * Finds the Hi-C domains that contain the breakpoints of the input cases
+     * and the HI genes around the breakpoints and writes them to output files
+     * in the directory of the output prefix.
+     * 
+     * @param argMap a {@link Map} holding the input files and parameters
+     * @throws IOException if files cannot be read or written
+     */
+    public static void checkFeatures(Map<String, Object> argMap) throws IOException{
+        
+        ArrayList<BreakpointWindow> breakpoints = BreakpointWindow.read(
+                (String) argMap.get("breakpoints"), (Integer) argMap.get("flank"));
+        FeaturesCheck check = new FeaturesCheck(breakpoints);
+        check.readDomains((String) argMap.get("hic_domains"));
+        check.readHIGenes((String) argMap.get("hi_predictions"));
+        check.readEnsemblGenes((String) argMap.get("ensembl_genes"));
+        
+        String outDir = new File((String) argMap.get("output_prefix")).getAbsoluteFile().getParent();
+        check.write(outDir);
+        System.out.println("[INFO] Wrote Hi-C domains and HI genes of breakpoints to output files '" 
+                + new File(outDir, FeaturesCheck.HIC_FILE) + "' and '" 
+                + new File(outDir, FeaturesCheck.HI_FILE) + "'.");
+    }
+    
+    /**
+     * Finds the enhancer-promoter contacts that are disrupted by the 
+     * breakpoints of the input cases and writes them to output files.
+     * 
+     * @param argMap a {@link Map} holding the input files and parameters
+     * @throws IOException if files cannot be read or written
+     */
+    public static void checkEnhancerPromoterContacts(Map<String, Object> argMap) throws IOException{
+        
+        ArrayList<BreakpointWindow> breakpoints = BreakpointWindow.read(
+                (String) argMap.get("breakpoints"), (Integer) argMap.get("flank"));
+        EnhancerPromoterChecker checker = new EnhancerPromoterChecker(breakpoints);
+        checker.readContacts((String) argMap.get("enhancer_promoter_contacts"));
+        
+        String outPath = (String) argMap.get("output_prefix") + ".DHS_promoter_broken.txt";
+        checker.write(outPath);
+        System.out.println("[INFO] Wrote disrupted enhancer-promoter contacts to output file '" + outPath + "'.");
+    }
+    
     /**
      * Runs the entire analysis.
      */
     public void runAnalysis(){
         
-        // annotate CNVs with genes that are completely overlapped by the CNV
-        AnnotateCNVs.annotateOverlappedGenes(cnvs, genes);
+        if (this.parallel != null){
+            this.parallel.annotate(cnvs, genes, this.domainPath != null ? domains : null);
+            return;
+        }
         
-        if (this.domainPath != null){
-            // annotate CNVs with genes that are within TAD that have any overlap with the CNV
-            AnnotateCNVs.annotateGenesInOverlapTADs(cnvs, domains, genes);
+        // annotate CNVs with genes that are overlapped by the CNV and with 
+        // genes that are within TADs that have any overlap with the CNV
+        AnnotateCNVs.annotateBatch(cnvs, this.domainPath != null ? domains : null, genes);
+    }
+    
+    /**
+     * Shuts down the worker threads of the parallel analysis. Call this after 
+     * the output and the permutations are written.
+     */
+    public void shutdown(){
+        
+        if (this.parallel != null){
+            this.parallel.shutdown();
         }
     }
     
     /**
-     * Run permutation analysis to get significance of actual data
+     * Run permutation analysis to get significance of actual data.
+     * This is the last step of the analysis, so the phenotype profiles cached
+     * for scoring are dropped afterwards.
      */
     public void runPermutations() throws IOException{
-
-        
-        // save original CNVs and gene to phenotype mapping
-        GenomicSet<CNV> orgCNVs = this.cnvs;
                 
-        if(this.genePermutations > 0){
-            
-            // get back the original cnvs
-            this.cnvs = orgCNVs;
+        try{
+            if(this.genePermutations > 0){
 
-            // permutate gene phenotypes:
-            analysePermutedGenePhenotypes(this.genePermutations);
+                // permutate gene phenotypes:
+                if (this.permutPValues){
+                    countPermutedGenePhenotypes(this.genePermutations);
+                }else if (this.columnarOutput){
+                    writeColumnarPermutedGenePhenotypes(this.genePermutations);
+                }else{
+                    analysePermutedGenePhenotypes(this.genePermutations);
+                }
 
+            }
+        }finally{
+            this.phenotypeData.clearPhenotypeProfiles();
         }
     }
     
+    /**
+     * Runs permutations of gene phenotypes and writes empirical p-values of the
+     * observed scores. Only counters are kept in memory during the 
+     * permutations, no output line of a single permutation is written.
+     * 
+     * @param permutations number of permutations
+     */
+    private void countPermutedGenePhenotypes(Integer permutations) throws IOException{
+        
+        String prefix = this.outputPath + ".permutGenePT_" + this.genePermutations;
+        
+        System.out.println("[INFO] Run " + permutations + " permutations of gene "
+                + "phenotypes with seed " + this.seed + ".");
+        
+        PermutationEngine engine = new PermutationEngine(this.phenotypeData, 
+                this.cnvs.values(), this.domainPath != null, this.seed);
+        
+        PermutationStatistics statsOl = new PermutationStatistics(
+                this.phenotypeData, this.cnvs.values(), false);
+        
+        if (this.domainPath != null){
+            PermutationStatistics statsOlTAD = new PermutationStatistics(
+                    this.phenotypeData, this.cnvs.values(), true);
+            engine.runStatistics(permutations, this.threads, statsOl, statsOlTAD);
+            statsOlTAD.write(prefix + ".genes_in_overlapped_TADs.pvalues.txt", 
+                    prefix + ".genes_in_overlapped_TADs.cnv_pvalues.txt");
+        }else{
+            engine.runStatistics(permutations, this.threads, statsOl);
+        }
+        statsOl.write(prefix + ".overlapped_genes.pvalues.txt", 
+                prefix + ".overlapped_genes.cnv_pvalues.txt");
+        
+        System.out.println("[INFO] Wrote empirical p-values from permutated gene "
+                + "to phenotype annotation to output files with prefix "
+                + "'" + prefix + "'.");
+    }
+    
     /**
      * Runs permutations of gene phenotypes and report background rates of 
      * effect mechanism classes.
+     * The overlaps of CNVs and genes from {@link #runAnalysis()} are reused, 
+     * only the gene phenotypes are permuted.
+     * 
      * @param permutations number of permutations
      */
     private void analysePermutedGenePhenotypes(Integer permutations) throws IOException{
         
-        // initialize output lines for overlapped genes with phenoMatchscore:
-        ArrayList<String> outLinesOl = new ArrayList<String>();
-        ArrayList<String> outLinesOlTAD = new ArrayList<String>();
+        String suffix = this.gzipOutput ? ".gz" : "";
+        String outPathOl = this.outputPath + ".permutGenePT_" + this.genePermutations 
+                + ".overlapped_genes.txt" + suffix;
+        String outPathOlTAD = this.outputPath + ".permutGenePT_" + this.genePermutations 
+                + ".genes_in_overlapped_TADs.txt" + suffix;
+        
+        System.out.println("[INFO] Run " + permutations + " permutations of gene "
+                + "phenotypes with seed " + this.seed + ".");
 
-        // run N times the actual permutations and analyse the datachr2chr2
-        for (int i=0; i<permutations; i++){
+        // output lines of each permutation are streamed to the output files 
+        // by separate writer threads
+        int capacity = 4 * Math.max(this.threads, 1);
+        try (final AsyncLineWriter writerOl = new AsyncLineWriter(outPathOl, this.gzipOutput, capacity);
+                final AsyncLineWriter writerOlTAD = this.domainPath != null 
+                        ? new AsyncLineWriter(outPathOlTAD, this.gzipOutput, capacity) : null){
             
-            // permutate the phenotypes of the genes randomly
-            PhenotypeData permPhenotypeData = PermutedGenePhenotypes.permuteGenePhenotypes(this.phenotypeData);
-            this.phenotypeData = permPhenotypeData;
+            // run N times the actual permutations and analyse the data
+            PermutationEngine engine = new PermutationEngine(this.phenotypeData, 
+                    this.cnvs.values(), this.domainPath != null, this.seed);
 
-            try {
-                this.genes = new TabFileParser(this.genesPath).parseGeneWithTerms(this.phenotypeData);
-            } catch (IOException ex) {
-                Logger.getLogger(Phenomatch.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            
-            // rerun the whole analysis
-            // TODO run just the needed steps of the analysis
-            this.runAnalysis();
-            
-            // iterate over all CNVs and append gene output lines
-            for (CNV cnv : cnvs.values() ){
-            
-                outLinesOl.addAll(cnv.getOverlappedGenesOutputLine(phenotypeData, cnv.getGenesInOverlap()));
-                
-                if(this.domainPath != null){
-                    outLinesOlTAD.addAll(cnv.getOverlappedGenesOutputLine(phenotypeData, cnv.getGenesInOverlapTADs()));
+            engine.run(permutations, this.threads, new PermutationListener(){
+                @Override
+                public void permutationDone(PermutationResult result) throws IOException {
+                    writerOl.writeLines(result.getOverlapLines());
+                    if (writerOlTAD != null){
+                        writerOlTAD.writeLines(result.getTadLines());
+                    }
                 }
-            }
+            });
         }
 
-        // write gene output lines to output file:
-        TabFileWriter geneOutWriterOl = new TabFileWriter(outputPath + 
-                ".permutGenePT_" + this.genePermutations + ".overlapped_genes.txt");
-        geneOutWriterOl.writeLines(outLinesOl);
         System.out.println("[INFO] Wrote all overlapped genes from "
                 + "permutated gene to phenotype annotation to output file "
-                + "'"+this.outputPath+".permutGenePT_" + this.genePermutations + ".overlapped_genes.txt'.");
+                + "'" + outPathOl + "'.");
 
         if (this.domainPath != null){
-            // write gene output lines to output file:
-            TabFileWriter geneOutWriterOlTAD = new TabFileWriter(outputPath + 
-                    ".permutGenePT_" + this.genePermutations + ".genes_in_overlapped_TADs.txt");
-            geneOutWriterOlTAD.writeLines(outLinesOlTAD);
             System.out.println("[INFO] Topodombar: Wrote all genes in overlapped TADs from "
                     + "permutated gene to phenotype annotation to output file "
-                    + "'"+this.outputPath+".permutGenePT_" + this.genePermutations + ".genes_in_overlapped_TADs.txt'.");
+                    + "'" + outPathOlTAD + "'.");
         }
     }
     
     
+    /**
+     * Runs permutations of gene phenotypes and writes the scored genes of all
+     * permutations to binary columnar files instead of TAB separated files.
+     * 
+     * @param permutations number of permutations
+     */
+    private void writeColumnarPermutedGenePhenotypes(Integer permutations) throws IOException{
+        
+        String outPathOl = this.outputPath + ".permutGenePT_" + this.genePermutations 
+                + ".overlapped_genes.pmc";
+        String outPathOlTAD = this.outputPath + ".permutGenePT_" + this.genePermutations 
+                + ".genes_in_overlapped_TADs.pmc";
+        
+        System.out.println("[INFO] Run " + permutations + " permutations of gene "
+                + "phenotypes with seed " + this.seed + ".");
+
+        try (final GeneScoreColumnWriter writerOl = new GeneScoreColumnWriter(outPathOl);
+                final GeneScoreColumnWriter writerOlTAD = this.domainPath != null 
+                        ? new GeneScoreColumnWriter(outPathOlTAD) : null){
+            
+            PermutationEngine engine = new PermutationEngine(this.phenotypeData, 
+                    this.cnvs.values(), this.domainPath != null, this.seed);
+            engine.setColumnarOutput(true);
+
+            engine.run(permutations, this.threads, new PermutationListener(){
+                @Override
+                public void permutationDone(PermutationResult result) throws IOException {
+                    writerOl.append(result.getPermutation(), result.getOverlapRows());
+                    if (writerOlTAD != null){
+                        writerOlTAD.append(result.getPermutation(), result.getTadRows());
+                    }
+                }
+            });
+        }
+
+        System.out.println("[INFO] Wrote all overlapped genes from "
+                + "permutated gene to phenotype annotation to output file "
+                + "'" + outPathOl + "'.");
+
+        if (this.domainPath != null){
+            System.out.println("[INFO] Topodombar: Wrote all genes in overlapped TADs from "
+                    + "permutated gene to phenotype annotation to output file "
+                    + "'" + outPathOlTAD + "'.");
+        }
+    }
+    
     /**
      * writes the cnvs and each ovelrapped gene per line with pheno match score 
-     * to output file.
+     * to output file. The genes are scored once into {@link GeneScoreRows},
+     * from which the TAB separated output, the binary columnar output and the
+     * percentiles are written.
      * 
      * @throws IOException 
      */
     public void writeGeneOutput() throws IOException{
         
+        GeneScoreRows rows = scoreGenes(this.cnvs, this.phenotypeData, false);
         
-        TabFileWriter<CNV> outWriterOl = new TabFileWriter<CNV>(this.outputPath + ".overlapped_genes.txt");
-
-        ArrayList<String> outLines = getOverlappedGenesOutput(this.cnvs, this.phenotypeData);
-        outWriterOl.writeLines(outLines);
+        writeGeneOutput(rows, this.outputPath + ".overlapped_genes.txt");
         System.out.println("[INFO] Wrote all overlapped genes to output file '"+this.outputPath+".overlapped_genes.txt'.");
+        if (this.columnarOutput){
+            writeColumnarGeneOutput(rows, this.outputPath + ".overlapped_genes.pmc");
+        }
+        if (this.percentiles){
+            CasePercentiles percentiles = new CasePercentiles();
+            percentiles.addAll(rows);
+            percentiles.write(this.outputPath + ".percentiles.txt");
+            System.out.println("[INFO] Wrote percentiles of scores per case to output file '"+this.outputPath+".percentiles.txt'.");
+        }
 
         if (this.domainPath != null){
-            TabFileWriter<CNV> outWriterOlTAD = new TabFileWriter<CNV>(this.outputPath + ".genes_in_overlapped_TADs.txt");
-
-            ArrayList<String> outLinesTADs = getGenesInOverlappedTADs(this.cnvs, this.phenotypeData);
-            outWriterOlTAD.writeLines(outLinesTADs);
+            
+            GeneScoreRows tadRows = scoreGenes(this.cnvs, this.phenotypeData, true);
+            
+            writeGeneOutput(tadRows, this.outputPath + ".genes_in_overlapped_TADs.txt");
             System.out.println("[INFO] Wrote all genes in overlapped TADs to output file '"+this.outputPath+".genes_in_overlapped_TADs.txt'.");
+            if (this.columnarOutput){
+                writeColumnarGeneOutput(tadRows, this.outputPath + ".genes_in_overlapped_TADs.pmc");
+            }
         }
     }    
-
+    
     /**
-     * Get lines for each overlapped gene per line for output file.
-     * @param cnvs CNVs to be written to the output file
-     * @param phenotypeData 
-     * @return ArrayList of strings which are tab-separted output liens per gene
+     * Scores the overlapped genes or the genes in overlapped TADs of all CNVs,
+     * with the worker threads if more than one thread is used.
+     * 
+     * @param cnvs CNVs to be scored
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param inTADs if true the genes in overlapped TADs are used, otherwise 
+     * the overlapped genes
+     * @return the scored genes
      */
-    public ArrayList<String> getOverlappedGenesOutput(GenomicSet<CNV> cnvs, PhenotypeData phenotypeData) {
+    private GeneScoreRows scoreGenes(GenomicSet<CNV> cnvs, PhenotypeData phenotypeData, 
+            boolean inTADs){
         
-        // to get all output lines from the GenomicSet object:
-        ArrayList<String> outLines = new ArrayList<>();
-
-        // sort CNVs by there effect mechanism class
-        ArrayList<CNV> sortedCNVs = new ArrayList<>(cnvs.values());
+        if (this.parallel != null){
+            return this.parallel.getGeneScoreRows(cnvs, phenotypeData, inTADs);
+        }
+        return getGeneScoreRows(cnvs, phenotypeData, inTADs);
+    }
+    
+    /**
+     * Scores the overlapped genes or the genes in overlapped TADs of all CNVs.
+     * The rows are the same as the lines of the TAB separated output.
+     * 
+     * @param cnvs CNVs to be scored
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param inTADs if true the genes in overlapped TADs are used, otherwise 
+     * the overlapped genes
+     * @return the scored genes
+     */
+    public static GeneScoreRows getGeneScoreRows(GenomicSet<CNV> cnvs, PhenotypeData phenotypeData, 
+            boolean inTADs){
         
-        for (CNV c : sortedCNVs){
-            outLines.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+        GeneScoreRows rows = new GeneScoreRows();
+        for (CNV c : cnvs.values()){
+            GenomicSet<Gene> cnvGenes = inTADs ? c.getGenesInOverlapTADs() : c.getGenesInOverlap();
+            c.addGeneScoreRows(rows, phenotypeData, new ArrayList<>(cnvGenes.values()), null);
         }
-        // put togeter all annotation string separated by TAB
-        String headerLine = GenomicElement.getOutputHeaderLine()
-            + "\t" 
-            + StringUtils.join(new String[]{"phenotypes", "gene_symbol", 
-                "phenoMatchScore", 
-                "maxPhenoMatchScore", 
-                "maxPatientMatchTerm", 
-                "maxGeneMatchTerm", 
-                "maxCommonTerm", 
-                "allPatientMatchTerm",
-                "allGeneMatchTerm",
-                "allCommonTerm",
-                "allMatchScore"                
-                }, '\t');            
-
-        // add header to beginning of output lines
-        outLines.add(0, headerLine);
+        return rows;
+    }
+    
+    /**
+     * Writes scored genes with a header line to a TAB separated output file.
+     * 
+     * @param rows the scored genes
+     * @param path path to the output file
+     * @throws IOException if the output cannot be written
+     */
+    public static void writeGeneOutput(GeneScoreRows rows, String path) throws IOException{
         
-        // write all lines to the output file.
-        return(outLines);
+        try (TabRowWriter out = new TabRowWriter(path)){
+            out.writeLine(getGeneOutputHeaderLine());
+            rows.write(out);
+        }
     }
-
+    
     /**
-     * Retunrs CNVs with each overlapped gene as line for output file.
-     * @param cnvs CNVs to be written to the output file
-     * @param phenotypeData 
-     * @return ArrayList of Strings which are tab-separated output liens  
+     * Writes scored genes to a binary columnar file.
+     * 
+     * @param rows the scored genes
+     * @param path path to the output file
+     * @throws IOException if the output cannot be written
      */
-    public ArrayList<String> getGenesInOverlappedTADs(GenomicSet<CNV> cnvs, PhenotypeData phenotypeData) {
+    public static void writeColumnarGeneOutput(GeneScoreRows rows, String path) throws IOException{
         
-        // to get all output lines from the GenomicSet object:
-        ArrayList<String> outLines = new ArrayList<String>();
-
-        // sort CNVs by there effect mechanism class
-        ArrayList<CNV> sortedCNVs = new ArrayList<CNV>(cnvs.values());
-
-        for (CNV c : sortedCNVs){
-            outLines.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlapTADs()));
+        try (GeneScoreColumnWriter out = new GeneScoreColumnWriter(path)){
+            out.append(-1, rows);
         }
+        System.out.println("[INFO] Wrote scored genes to binary columnar file '" + path + "'.");
+    }
 
+    /**
+     * Header line of the gene output files.
+     */
+    private static String getGeneOutputHeaderLine(){
+        
         // put togeter all annotation string separated by TAB
-        String headerLine = GenomicElement.getOutputHeaderLine()
+        return GenomicElement.getOutputHeaderLine()
             + "\t" 
             + StringUtils.join(new String[]{"phenotypes", "gene_symbol", 
                 "phenoMatchScore", 
@@ -309,14 +590,8 @@ public class Phenomatch {
                 "allPatientMatchTerm",
                 "allGeneMatchTerm",
                 "allCommonTerm",
-                "allMatchScore"
-                    }, '\t');            
-
-        // add header to beginning of output lines
-        outLines.add(0, headerLine);
-        
-        // return all lines.
-        return(outLines);
+                "allMatchScore"                
+                }, '\t');            
     }
 
 }
@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import genomicregions.GenomicElement;
+import io.TabRecordReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * A breakpoint of a case together with a window of a fixed number of base
+ * pairs on both sides. The coordinates of the {@link GenomicElement} are the
+ * coordinates of the window, cut at position zero, so that breakpoint windows
+ * can be put into an {@link genomicregions.IntervalIndex}. The breakpoint and
+ * the uncut window are available separately, e.g. for output lines.
+ */
+public class BreakpointWindow extends GenomicElement {
+
+    private final int breakpointStart;
+    private final int breakpointEnd;
+
+    /** Start of the window, which can be negative. */
+    private final int windowStart;
+
+    /**
+     * Constructs the window of a breakpoint.
+     *
+     * @param chr chromosome of the breakpoint
+     * @param start start of the breakpoint
+     * @param end end of the breakpoint
+     * @param name name of the breakpoint, e.g. DGAP001_A
+     * @param flank number of base pairs added on both sides of the breakpoint
+     * @throws IllegalArgumentException in case of negative coordinates or if
+     * the end coordinate is smaller than the start coordinate
+     */
+    public BreakpointWindow(String chr, int start, int end, String name, int flank) throws IllegalArgumentException {
+        super(chr, Math.max(0, start - flank), end + flank, name);
+        if (start < 0 || start > end){
+            throw new IllegalArgumentException("Invalid breakpoint coordinates. start="
+                    + start + " end=" + end);
+        }
+        this.breakpointStart = start;
+        this.breakpointEnd = end;
+        this.windowStart = start - flank;
+    }
+
+    /**
+     * Reads breakpoints from a TAB separated file with the columns chromosome,
+     * start, end and name. If several lines have the same name, the last one
+     * is used, at the position of the first one.
+     *
+     * @param path path to the breakpoint file
+     * @param flank number of base pairs added on both sides of each breakpoint
+     * @return the breakpoint windows in the order of the file
+     * @throws IOException if the file cannot be read or a line is invalid
+     */
+    public static ArrayList<BreakpointWindow> read(String path, int flank) throws IOException{
+
+        LinkedHashMap<String, BreakpointWindow> breakpoints = new LinkedHashMap<>();
+        try (TabRecordReader record = new TabRecordReader(Paths.get(path))){
+            while (record.next()){
+                if (record.getColumnCount() < 4){
+                    throw new IOException(String.format(
+                            "[ERROR] while reading file '%s'. Wrong number of "
+                                    + "columns in input line: '%s'", path, record.getLine()));
+                }
+                try{
+                    BreakpointWindow bw = new BreakpointWindow(record.getChr(0),
+                            record.getInt(1), record.getInt(2), record.getString(3), flank);
+                    breakpoints.put(bw.getName(), bw);
+                }catch (IllegalArgumentException e){
+                    throw new IOException(String.format("[ERROR] while reading file '%s'. "
+                            + "Invalid breakpoint in input line: '%s'", path, record.getLine()), e);
+                }
+            }
+        }
+        return new ArrayList<>(breakpoints.values());
+    }
+
+    /**
+     * Start of the breakpoint.
+     * @return the breakpoint start
+     */
+    public int getBreakpointStart() {
+        return breakpointStart;
+    }
+
+    /**
+     * End of the breakpoint.
+     * @return the breakpoint end
+     */
+    public int getBreakpointEnd() {
+        return breakpointEnd;
+    }
+
+    /**
+     * Start of the window, i.e. breakpoint start minus flank. Unlike
+     * {@link #getStart()} this can be negative.
+     * @return the window start
+     */
+    public int getWindowStart() {
+        return windowStart;
+    }
+
+    /**
+     * End of the window, i.e. breakpoint end plus flank.
+     * @return the window end
+     */
+    public int getWindowEnd() {
+        return getEnd();
+    }
+
+    /**
+     * The name, chromosome, breakpoint and window columns of output lines.
+     *
+     * @return TAB separated columns
+     */
+    public String toBreakpointColumns(){
+        return getName() + "\t" + getChr() + "\t" + breakpointStart + "\t" + breakpointEnd
+                + "\t" + windowStart + "\t" + getWindowEnd();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import genomicregions.Gene;
+import genomicregions.GenomicElement;
+import io.GeneScoreRows;
+import io.TabFileWriter;
+import io.Utils;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Percentiles of the phenoMatch scores of genes within each case, as computed
+ * by the script {@code R/get_percentiles_DGAP_all.r} from the overlapped genes
+ * output file.
+ * <br><br>
+ * Rows are grouped by case ID, which is the CNV name up to the first
+ * underscore, so that the windows of the breakpoints {@code DGAP001_A} and
+ * {@code DGAP001_B} form the case {@code DGAP001}. The phenoMatch scores and
+ * maximal scores of each case are sorted once, and the percentile of a row,
+ * i.e. the fraction of rows of the same case with a score less or equal to
+ * the score of the row, is found by binary search. Scores are rounded to
+ * three decimals like in the output file read by the script.
+ * <br><br>
+ * Each output line has the columns: case ID, gene symbol, chromosome,
+ * phenoMatch score, maximal score, number of rows of the case, percentile,
+ * minimum and maximum of the phenoMatch scores, and percentile, minimum and
+ * maximum of the maximal scores. Numbers are formatted like by {@code cat} in
+ * R with 7 significant digits.
+ */
+public class CasePercentiles {
+
+    private final ArrayList<String> caseIDs = new ArrayList<>();
+    private final ArrayList<String> geneSymbols = new ArrayList<>();
+    private final ArrayList<String> chromosomes = new ArrayList<>();
+    private double [] scores = new double[1024];
+    private double [] maxScores = new double[1024];
+
+    /**
+     * Returns the case ID of a CNV name by removing the breakpoint suffix,
+     * e.g. "_A" or "_B", starting at the first underscore.
+     *
+     * @param name the CNV name
+     * @return the case ID
+     */
+    public static String getCaseID(String name){
+        return CasePhenotypes.getCaseID(name);
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param name name of the CNV
+     * @param chr chromosome of the CNV
+     * @param geneSymbol symbol of the gene or "." for a CNV without scored gene
+     * @param score the phenoMatch score
+     * @param maxScore the maximal score of the term matching
+     */
+    public void add(String name, String chr, String geneSymbol, double score, double maxScore){
+
+        int row = caseIDs.size();
+        if (row == scores.length){
+            scores = Arrays.copyOf(scores, 2 * row);
+            maxScores = Arrays.copyOf(maxScores, 2 * row);
+        }
+        caseIDs.add(getCaseID(name));
+        chromosomes.add(chr);
+        geneSymbols.add(geneSymbol);
+        // use the values of the output file
+        scores[row] = Double.parseDouble(Utils.roundToString(score));
+        maxScores[row] = Double.parseDouble(Utils.roundToString(maxScore));
+    }
+
+    /**
+     * Adds the rows of scored genes in the order of the overlapped genes
+     * output file.
+     *
+     * @param rows the scored genes
+     */
+    public void addAll(GeneScoreRows rows){
+
+        for (int r = 0; r < rows.size(); r++){
+            Gene g = rows.getGene(r);
+            String symbol = ".";
+            if (g != null){
+                symbol = g.getSymbol() != null ? g.getSymbol() : "";
+            }
+            add(rows.getCNV(r).getName(), rows.getCNV(r).getChr(), symbol,
+                    rows.getScore(r), rows.getMaxScore(r));
+        }
+    }
+
+    /**
+     * Number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size(){
+        return caseIDs.size();
+    }
+
+    /**
+     * Number of values in a sorted range that are less or equal to a value.
+     */
+    private static int countLessOrEqual(double [] sorted, int from, int to, double x){
+        int lo = from;
+        int hi = to;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= x){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo - from;
+    }
+
+    /**
+     * Computes the output lines in the order of the rows.
+     *
+     * @return TAB separated output lines
+     */
+    public ArrayList<String> getOutputLines(){
+
+        int n = size();
+
+        // index of the case of each row in the order of first appearance
+        HashMap<String, Integer> caseIndex = new HashMap<>();
+        int [] caseOf = new int[n];
+        for (int r = 0; r < n; r++){
+            Integer c = caseIndex.get(caseIDs.get(r));
+            if (c == null){
+                c = caseIndex.size();
+                caseIndex.put(caseIDs.get(r), c);
+            }
+            caseOf[r] = c;
+        }
+
+        // place the scores of each case in a contiguous range
+        int [] caseStart = new int[caseIndex.size() + 1];
+        for (int r = 0; r < n; r++){
+            caseStart[caseOf[r] + 1]++;
+        }
+        for (int c = 0; c < caseIndex.size(); c++){
+            caseStart[c + 1] += caseStart[c];
+        }
+        int [] fill = Arrays.copyOf(caseStart, caseIndex.size());
+        double [] sortedScores = new double[n];
+        double [] sortedMaxScores = new double[n];
+        for (int r = 0; r < n; r++){
+            int k = fill[caseOf[r]]++;
+            sortedScores[k] = scores[r];
+            sortedMaxScores[k] = maxScores[r];
+        }
+        for (int c = 0; c < caseIndex.size(); c++){
+            Arrays.sort(sortedScores, caseStart[c], caseStart[c + 1]);
+            Arrays.sort(sortedMaxScores, caseStart[c], caseStart[c + 1]);
+        }
+
+        ArrayList<String> lines = new ArrayList<>(n);
+        for (int r = 0; r < n; r++){
+            int from = caseStart[caseOf[r]];
+            int to = caseStart[caseOf[r] + 1];
+            double count = to - from;
+            lines.add(StringUtils.join(new String[]{
+                caseIDs.get(r),
+                geneSymbols.get(r),
+                chromosomes.get(r),
+                formatNumber(scores[r]),
+                formatNumber(maxScores[r]),
+                Integer.toString(to - from),
+                formatNumber(countLessOrEqual(sortedScores, from, to, scores[r]) / count),
+                formatNumber(sortedScores[from]),
+                formatNumber(sortedScores[to - 1]),
+                formatNumber(countLessOrEqual(sortedMaxScores, from, to, maxScores[r]) / count),
+                formatNumber(sortedMaxScores[from]),
+                formatNumber(sortedMaxScores[to - 1])
+            }, '\t'));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the output lines to a file.
+     *
+     * @param path path to the output file
+     * @throws IOException if the output cannot be written
+     */
+    public void write(String path) throws IOException{
+        new TabFileWriter<GenomicElement>(path).writeLines(getOutputLines());
+    }
+
+    /**
+     * Formats a number with 7 significant digits without trailing zeros, in
+     * fixed notation unless the scientific notation is shorter, like
+     * {@code cat} in R.
+     *
+     * @param d the number
+     * @return the formatted number
+     */
+    static String formatNumber(double d){
+
+        if (d == 0.0){
+            return "0";
+        }
+        if (Double.isNaN(d) || Double.isInfinite(d)){
+            return Double.isNaN(d) ? "NaN" : (d > 0 ? "Inf" : "-Inf");
+        }
+
+        BigDecimal bd = new BigDecimal(d).round(new MathContext(7, RoundingMode.HALF_EVEN))
+                .stripTrailingZeros();
+        // all integer digits are shown in fixed notation
+        String fixed = bd.scale() < 0
+                ? new BigDecimal(d).setScale(0, RoundingMode.HALF_EVEN).toPlainString()
+                : bd.toPlainString();
+
+        String digits = bd.unscaledValue().abs().toString();
+        int exponent = digits.length() - 1 - bd.scale();
+        StringBuilder sci = new StringBuilder();
+        if (bd.signum() < 0){
+            sci.append('-');
+        }
+        sci.append(digits.charAt(0));
+        if (digits.length() > 1){
+            sci.append('.').append(digits, 1, digits.length());
+        }
+        sci.append(exponent < 0 ? "e-" : "e+");
+        if (Math.abs(exponent) < 10){
+            sci.append('0');
+        }
+        sci.append(Math.abs(exponent));
+
+        return fixed.length() <= sci.length() ? fixed : sci.toString();
+    }
+}
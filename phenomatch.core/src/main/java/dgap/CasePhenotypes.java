@@ -0,0 +1,160 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import io.TabFileParser;
+import io.TabRecordReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import ontologizer.go.Term;
+import phenotypeontology.PhenotypeData;
+
+/**
+ * Phenotype terms of cases from a TAB separated table with the columns
+ * {@code ID} and {@code HPO} and one line per case and term, as used by the
+ * script {@code R/combine_breakpoints_and_phenotypes.R}.
+ * <br><br>
+ * The table is read once into a hash map from case ID to term IDs, so that
+ * the breakpoints of a case can be joined with its phenotypes by a single
+ * lookup.
+ */
+public class CasePhenotypes {
+
+    /** Term IDs of each case, separated by semicolon ';'. */
+    private final LinkedHashMap<String, StringBuilder> termIDs = new LinkedHashMap<>();
+
+    /**
+     * Reads a table of cases and phenotype terms. The first line contains the
+     * column names and must contain the columns {@code ID} and {@code HPO}.
+     * Cases with several terms have several lines.
+     *
+     * @param path path to the table
+     * @return the phenotypes of the cases
+     * @throws IOException if the file cannot be read or a column is missing
+     */
+    public static CasePhenotypes read(String path) throws IOException{
+
+        CasePhenotypes phenotypes = new CasePhenotypes();
+        try (TabRecordReader record = new TabRecordReader(Paths.get(path))){
+
+            int idColumn = -1;
+            int termColumn = -1;
+            if (record.next()){
+                for (int i = 0; i < record.getColumnCount(); i++){
+                    if (record.getString(i).equals("ID")){
+                        idColumn = i;
+                    }else if (record.getString(i).equals("HPO")){
+                        termColumn = i;
+                    }
+                }
+            }
+            if (idColumn < 0 || termColumn < 0){
+                throw new IOException(String.format("[ERROR] while reading file '%s'. "
+                        + "The first line must contain the columns 'ID' and 'HPO'.", path));
+            }
+
+            int minColumns = Math.max(idColumn, termColumn) + 1;
+            while (record.next()){
+                if (record.getColumnCount() < minColumns){
+                    throw new IOException(String.format(
+                            "[ERROR] while reading file '%s'. Wrong number of "
+                                    + "columns in input line: '%s'", path, record.getLine()));
+                }
+                phenotypes.add(record.getString(idColumn), record.getString(termColumn));
+            }
+        }
+        return phenotypes;
+    }
+
+    /**
+     * Adds a phenotype term to a case.
+     *
+     * @param caseID the case ID, e.g. DGAP001
+     * @param termID the term ID, e.g. HP:0000526
+     */
+    public void add(String caseID, String termID){
+        StringBuilder ids = termIDs.get(caseID);
+        if (ids == null){
+            termIDs.put(caseID, new StringBuilder(termID));
+        }else{
+            ids.append(';').append(termID);
+        }
+    }
+
+    /**
+     * Term IDs of a case separated by semicolon ';' in the order of the
+     * table, like in the phenotype column of input files.
+     *
+     * @param caseID the case ID
+     * @return the term IDs or {@code null} if the case has no phenotypes
+     */
+    public String getTermIDs(String caseID){
+        StringBuilder ids = termIDs.get(caseID);
+        return ids != null ? ids.toString() : null;
+    }
+
+    /**
+     * Phenotype terms of all cases. The terms of each case are looked up once.
+     *
+     * @param phenotypeData the phenotype ontology
+     * @return map from case ID to the set of phenotype terms
+     * @throws IOException if a term cannot be looked up
+     */
+    public Map<String, HashSet<Term>> getTerms(PhenotypeData phenotypeData) throws IOException{
+
+        HashMap<String, HashSet<Term>> terms = new HashMap<>();
+        for (Map.Entry<String, StringBuilder> e : termIDs.entrySet()){
+            terms.put(e.getKey(), TabFileParser.parseTerms(e.getValue().toString(), phenotypeData));
+        }
+        return terms;
+    }
+
+    /**
+     * Lookup of the phenotype terms of breakpoints by the phenotypes of their
+     * case, for {@link TabFileParser#parseBreakpointWindowsWithHpoTerms}. The
+     * terms of each case are looked up once.
+     *
+     * @param phenotypeData the phenotype ontology
+     * @return the lookup from breakpoint name to phenotype terms
+     * @throws IOException if a term cannot be looked up
+     */
+    public TabFileParser.PhenotypeLookup getBreakpointPhenotypes(PhenotypeData phenotypeData) throws IOException{
+
+        final Map<String, HashSet<Term>> terms = getTerms(phenotypeData);
+        return new TabFileParser.PhenotypeLookup(){
+            @Override
+            public HashSet<Term> getPhenotypes(String name) {
+                return terms.get(getCaseID(name));
+            }
+        };
+    }
+
+    /**
+     * Returns the case ID of a breakpoint name by removing the breakpoint
+     * suffix, e.g. "_A" or "_B", starting at the first underscore.
+     *
+     * @param name the breakpoint name, e.g. DGAP001_A
+     * @return the case ID, e.g. DGAP001
+     */
+    public static String getCaseID(String name){
+        int i = name.indexOf('_');
+        return i >= 0 ? name.substring(0, i) : name;
+    }
+
+    /**
+     * Number of cases.
+     *
+     * @return the number of cases with phenotypes
+     */
+    public int size(){
+        return termIDs.size();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import genomicregions.GenomicElement;
+import genomicregions.IntervalIndex;
+import io.TabFileWriter;
+import io.TabRecordReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Finds enhancer-promoter contacts that are disrupted by breakpoints, like
+ * the script {@code perl/enh_promoter_disruption_checker_DGAP.pl}.
+ * <br><br>
+ * The contact file has the columns chromosome, start, end and gene of the
+ * promoter followed by chromosome, start and end of the DNase I hypersensitive
+ * site (DHS) and the correlation of both. A contact spans from the start of
+ * the first to the end of the second element. It is disrupted by a breakpoint
+ * if it is intra-chromosomal, has a correlation above
+ * {@link #MIN_CORRELATION}, lies completely within the window of the
+ * breakpoint and contains the breakpoint.
+ * <br><br>
+ * The contact file is read only once. Each contact is looked up in an
+ * {@link IntervalIndex} of the breakpoint windows.
+ */
+public class EnhancerPromoterChecker {
+
+    /** Contacts with a correlation of at most this value are ignored. */
+    public static final double MIN_CORRELATION = 0.7;
+
+    /** Breakpoints in output order. */
+    private final List<BreakpointWindow> breakpoints;
+
+    private final IntervalIndex<BreakpointWindow> index;
+
+    /** Input lines of the disrupted contacts of each breakpoint. */
+    private final IdentityHashMap<BreakpointWindow, ArrayList<String>> disrupted = new IdentityHashMap<>();
+
+    /**
+     * Constructs a checker for a set of breakpoints.
+     *
+     * @param breakpoints the breakpoints with their windows
+     */
+    public EnhancerPromoterChecker(List<BreakpointWindow> breakpoints){
+        this.breakpoints = breakpoints;
+        this.index = new IntervalIndex<>(breakpoints);
+        for (BreakpointWindow bw : breakpoints){
+            disrupted.put(bw, new ArrayList<String>());
+        }
+    }
+
+    /**
+     * Reads a contact file and records the contacts that are disrupted by any
+     * breakpoint.
+     *
+     * @param path path to the contact file
+     * @throws IOException if the file cannot be read or a line is invalid
+     */
+    public void readContacts(final String path) throws IOException{
+
+        try (final TabRecordReader record = new TabRecordReader(Paths.get(path))){
+            while (record.next()){
+
+                if (record.getColumnCount() < 8){
+                    throw new IOException(String.format(
+                            "[ERROR] while reading file '%s'. Wrong number of "
+                                    + "columns in input line: '%s'", path, record.getLine()));
+                }
+                String chr = record.getChr(0);
+                if (!chr.equals(record.getChr(4))){
+                    continue;
+                }
+
+                final int start;
+                final int end;
+                try{
+                    if (record.getInt(2) <= record.getInt(5)){
+                        start = record.getInt(1);
+                        end = record.getInt(6);
+                    }else{
+                        start = record.getInt(5);
+                        end = record.getInt(2);
+                    }
+                }catch (NumberFormatException e){
+                    throw new IOException(String.format("[ERROR] while reading file '%s'. "
+                            + "Invalid coordinates in input line: '%s'", path, record.getLine()), e);
+                }
+
+                // the windows that contain the contact overlap the contact
+                // extended by one position on both sides
+                final ArrayList<BreakpointWindow> hits = new ArrayList<>();
+                index.forEachOverlap(chr, Math.max(0, start - 1), Math.max(0, end + 1),
+                        new IntervalIndex.Visitor<BreakpointWindow>(){
+                    @Override
+                    public void visit(BreakpointWindow bw) {
+                        if (start >= bw.getWindowStart() && end <= bw.getWindowEnd()
+                                && bw.getBreakpointStart() >= start && bw.getBreakpointEnd() <= end){
+                            hits.add(bw);
+                        }
+                    }
+                });
+                if (hits.isEmpty()){
+                    continue;
+                }
+
+                double correlation;
+                try{
+                    correlation = Double.parseDouble(record.getString(7));
+                }catch (NumberFormatException e){
+                    throw new IOException(String.format("[ERROR] while reading file '%s'. "
+                            + "Invalid correlation in input line: '%s'", path, record.getLine()), e);
+                }
+                if (correlation > MIN_CORRELATION){
+                    String line = record.getLine();
+                    for (BreakpointWindow bw : hits){
+                        disrupted.get(bw).add(line);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of disrupted contacts of a breakpoint.
+     *
+     * @param bw the breakpoint
+     * @return the number of disrupted contacts
+     */
+    public int getDisruptedCount(BreakpointWindow bw){
+        return disrupted.get(bw).size();
+    }
+
+    /**
+     * Output lines of the disrupted contacts. Each line consists of the
+     * breakpoint name, chromosome, breakpoint start and end, and window start
+     * and end, followed by the input line of the contact. Lines are grouped by
+     * breakpoint in the order of the breakpoints and contacts are in the order
+     * of the contact file.
+     *
+     * @return TAB separated output lines
+     */
+    public ArrayList<String> getOutputLines(){
+        ArrayList<String> lines = new ArrayList<>();
+        for (BreakpointWindow bw : breakpoints){
+            String columns = bw.toBreakpointColumns();
+            for (String contact : disrupted.get(bw)){
+                lines.add(columns + "\t" + contact);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Summary lines with the breakpoint columns of the output lines and the
+     * number of disrupted contacts of each breakpoint.
+     *
+     * @return TAB separated summary lines
+     */
+    public ArrayList<String> getSummaryLines(){
+        ArrayList<String> lines = new ArrayList<>();
+        for (BreakpointWindow bw : breakpoints){
+            lines.add(bw.toBreakpointColumns() + "\t" + getDisruptedCount(bw));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the disrupted contacts to a file and the summary to the same
+     * path with the suffix "_summary.out".
+     *
+     * @param path path to the output file
+     * @throws IOException if the output cannot be written
+     */
+    public void write(String path) throws IOException{
+        new TabFileWriter<GenomicElement>(path).writeLines(getOutputLines());
+        new TabFileWriter<GenomicElement>(path + "_summary.out").writeLines(getSummaryLines());
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import genomicregions.GenomicElement;
+import genomicregions.IntervalIndex;
+import io.TabFileWriter;
+import io.TabRecordReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Checks which Hi-C domains contain breakpoints and which haploinsufficient
+ * (HI) genes lie in the windows of breakpoints, like the script
+ * {@code perl/dgap_features_check.pl}.
+ * <br><br>
+ * The breakpoint windows are indexed once in an {@link IntervalIndex}. The
+ * domain file and the file of HI predictions are read once and each record
+ * is looked up in the index. Intervals overlap if they share any position,
+ * including their end positions. The HI genes in breakpoint windows are
+ * annotated with the line of the Ensembl gene annotation with the same HGNC
+ * symbol, which is found by hash lookup while the annotation file is read.
+ * <br><br>
+ * The domain output ({@link #HIC_FILE}) has one line per breakpoint and
+ * domain containing the breakpoint with the columns name, chromosome,
+ * breakpoint start and end, 1, and domain chromosome, start and end. The HI
+ * output ({@link #HI_FILE}) has one line per breakpoint and HI gene in its
+ * window with the columns name, chromosome, breakpoint start and end, window
+ * start and end, the last domain containing the breakpoint as in the domain
+ * output (or four zeros), chromosome, start and end of the gene, its name,
+ * score and percentage, and the Ensembl annotation line of the gene.
+ */
+public class FeaturesCheck {
+
+    /** Name of the domain output file. */
+    public static final String HIC_FILE = "HiC_list_DGAP.txt";
+
+    /** Name of the HI gene output file. */
+    public static final String HI_FILE = "HI_list_DGAP.txt";
+
+    private final IntervalIndex<BreakpointWindow> index;
+
+    /** Position of each breakpoint in {@code breakpoints}. */
+    private final IdentityHashMap<BreakpointWindow, Integer> order = new IdentityHashMap<>();
+
+    /** Last domain (chromosome, start, end) containing each breakpoint. */
+    private final IdentityHashMap<BreakpointWindow, String []> domains = new IdentityHashMap<>();
+
+    private final ArrayList<String> hicLines = new ArrayList<>();
+
+    /** HI genes in breakpoint windows as breakpoint and HI columns. */
+    private final ArrayList<BreakpointWindow> hiBreakpoints = new ArrayList<>();
+    private final ArrayList<String []> hiColumns = new ArrayList<>();
+
+    /** Ensembl annotation line of each symbol of an HI gene in any window. */
+    private final HashMap<String, String> ensemblLines = new HashMap<>();
+
+    /** Orders breakpoints like in the output. */
+    private final Comparator<BreakpointWindow> outputOrder = new Comparator<BreakpointWindow>(){
+        @Override
+        public int compare(BreakpointWindow o1, BreakpointWindow o2) {
+            return order.get(o1).compareTo(order.get(o2));
+        }
+    };
+
+    /**
+     * Constructs a check for a set of breakpoints.
+     *
+     * @param breakpoints the breakpoints with their windows in output order
+     */
+    public FeaturesCheck(List<BreakpointWindow> breakpoints){
+        this.index = new IntervalIndex<>(breakpoints);
+        for (int i = 0; i < breakpoints.size(); i++){
+            order.put(breakpoints.get(i), i);
+        }
+    }
+
+    private static void checkColumns(TabRecordReader record, String path, int minColumns) throws IOException{
+        if (record.getColumnCount() < minColumns){
+            throw new IOException(String.format(
+                    "[ERROR] while reading file '%s'. Wrong number of "
+                            + "columns in input line: '%s'", path, record.getLine()));
+        }
+    }
+
+    /**
+     * Finds the breakpoint windows that share a position with an interval, in
+     * output order.
+     */
+    private ArrayList<BreakpointWindow> getWindows(TabRecordReader record, String path) throws IOException{
+
+        int start;
+        int end;
+        try{
+            start = record.getInt(1);
+            end = record.getInt(2);
+        }catch (NumberFormatException e){
+            throw new IOException(String.format("[ERROR] while reading file '%s'. "
+                    + "Invalid coordinates in input line: '%s'", path, record.getLine()), e);
+        }
+
+        // windows with a common position overlap the interval extended by one
+        // position on both sides
+        final ArrayList<BreakpointWindow> windows = new ArrayList<>();
+        index.forEachOverlap(record.getChr(0), Math.max(0, start - 1), Math.max(0, end + 1),
+                new IntervalIndex.Visitor<BreakpointWindow>(){
+            @Override
+            public void visit(BreakpointWindow bw) {
+                windows.add(bw);
+            }
+        });
+        Collections.sort(windows, outputOrder);
+        return windows;
+    }
+
+    /**
+     * Reads Hi-C domains and records the domains that contain breakpoints.
+     *
+     * @param path path to the domain file in BED format
+     * @throws IOException if the file cannot be read or a line is invalid
+     */
+    public void readDomains(String path) throws IOException{
+
+        try (TabRecordReader record = new TabRecordReader(Paths.get(path))){
+            while (record.next()){
+                checkColumns(record, path, 3);
+                int start = record.getInt(1);
+                int end = record.getInt(2);
+                for (BreakpointWindow bw : getWindows(record, path)){
+                    if (start <= bw.getBreakpointEnd() && end >= bw.getBreakpointStart()){
+                        String [] domain = {record.getString(0), record.getString(1), record.getString(2)};
+                        domains.put(bw, domain);
+                        hicLines.add(bw.getName() + "\t" + bw.getChr() + "\t"
+                                + bw.getBreakpointStart() + "\t" + bw.getBreakpointEnd()
+                                + "\t1\t" + domain[0] + "\t" + domain[1] + "\t" + domain[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads HI predictions and records the genes in breakpoint windows. The
+     * fourth column contains the gene name, score and percentage separated
+     * by '|'.
+     *
+     * @param path path to the HI prediction file in BED format
+     * @throws IOException if the file cannot be read or a line is invalid
+     */
+    public void readHIGenes(String path) throws IOException{
+
+        try (TabRecordReader record = new TabRecordReader(Paths.get(path))){
+            while (record.next()){
+                checkColumns(record, path, 4);
+                ArrayList<BreakpointWindow> windows = getWindows(record, path);
+                if (windows.isEmpty()){
+                    continue;
+                }
+                String [] hi = Arrays.copyOf(record.getString(3).split("\\|", -1), 3);
+                String [] columns = {record.getString(0), record.getString(1), record.getString(2),
+                    hi[0], hi[1] != null ? hi[1] : "", hi[2] != null ? hi[2] : ""};
+                for (BreakpointWindow bw : windows){
+                    hiBreakpoints.add(bw);
+                    hiColumns.add(columns);
+                }
+                ensemblLines.put(hi[0], "");
+            }
+        }
+    }
+
+    /**
+     * Reads the Ensembl gene annotation and keeps the lines of the HI genes in
+     * breakpoint windows. The sixth column contains the HGNC symbol. If
+     * several lines have the same symbol, the last one is kept. This must be
+     * called after {@link #readHIGenes(java.lang.String)}.
+     *
+     * @param path path to the Ensembl gene annotation
+     * @throws IOException if the file cannot be read
+     */
+    public void readEnsemblGenes(String path) throws IOException{
+
+        try (TabRecordReader record = new TabRecordReader(Paths.get(path))){
+            while (record.next()){
+                if (record.getColumnCount() < 6){
+                    continue;
+                }
+                String symbol = record.getString(5);
+                if (ensemblLines.containsKey(symbol)){
+                    ensemblLines.put(symbol, record.getLine());
+                }
+            }
+        }
+    }
+
+    /**
+     * Output lines of the domains that contain breakpoints, in the order of
+     * the domain file.
+     *
+     * @return TAB separated output lines
+     */
+    public ArrayList<String> getHiCLines(){
+        return new ArrayList<>(hicLines);
+    }
+
+    /**
+     * Output lines of the HI genes in breakpoint windows, in the order of the
+     * HI prediction file.
+     *
+     * @return TAB separated output lines
+     */
+    public ArrayList<String> getHILines(){
+
+        ArrayList<String> lines = new ArrayList<>(hiBreakpoints.size());
+        for (int i = 0; i < hiBreakpoints.size(); i++){
+            BreakpointWindow bw = hiBreakpoints.get(i);
+            String [] hi = hiColumns.get(i);
+            String [] domain = domains.get(bw);
+            String hic = domain != null
+                    ? "1\t" + domain[0] + "\t" + domain[1] + "\t" + domain[2]
+                    : "0\t0\t0\t0";
+            lines.add(bw.toBreakpointColumns() + "\t" + hic + "\t"
+                    + hi[0] + "\t" + hi[1] + "\t" + hi[2] + "\t"
+                    + hi[3] + "\t" + hi[4] + "\t" + hi[5] + "\t"
+                    + ensemblLines.get(hi[3]));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the output files {@link #HIC_FILE} and {@link #HI_FILE}.
+     *
+     * @param dir output directory
+     * @throws IOException if the output cannot be written
+     */
+    public void write(String dir) throws IOException{
+        new TabFileWriter<GenomicElement>(new File(dir, HIC_FILE)).writeLines(getHiCLines());
+        new TabFileWriter<GenomicElement>(new File(dir, HI_FILE)).writeLines(getHILines());
+    }
+}
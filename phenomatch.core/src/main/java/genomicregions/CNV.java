@@ -27,14 +27,20 @@
 package genomicregions;
    
 import annotation.AnnotateCNVs;
+import io.GeneScoreRows;
+import io.TabRowWriter;
 import io.Utils;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import ontologizer.go.Term;
 import org.apache.commons.lang3.StringUtils; // provides a join(iterable, char) function
 import phenotypeontology.PhenotypeData;
+import phenotypeontology.PhenotypeProfile;
 import phenotypeontology.TermPair;
 
 /**
@@ -233,127 +239,470 @@ public class CNV extends GenomicElement {
      */
     public ArrayList<String> getOverlappedGenesOutputLine(PhenotypeData phenotypeData, GenomicSet<Gene> genes){
         
+        ArrayList<String> outLines = getGeneOutputLines(phenotypeData, genes.values());
+        
+        // if CNV does not overlap any gene or overlapped genes have score 0
+        if (outLines.isEmpty()){
+            outLines.add(getNoGeneOutputLine());
+        }
+        
+        return outLines;
+        
+    }
+    
+    /**
+     * Constructs an output line for each input gene with a phenoMatch score
+     * larger than zero. Genes with score zero are skipped.
+     * This method does not modify the CNV and can be called concurrently for
+     * disjoint subsets of genes after {@link #getPhenotypeProfile(PhenotypeData)}
+     * was called once.
+     * 
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes genes to consider
+     * @return TAB-separated output lines in the order of the input genes
+     */
+    public ArrayList<String> getGeneOutputLines(PhenotypeData phenotypeData, Collection<Gene> genes){
+        return getGeneOutputLines(phenotypeData, genes, null);
+    }
+    
+    /**
+     * This function constructs  a ArrayList of {@link String} that represents 
+     * output lines for each gene overlapped by this CNV, where the phenotypes
+     * of the genes are taken from a separate mapping instead of the 
+     * {@link Gene} objects. This is used to score permuted gene phenotypes
+     * without modifying the shared genes.
+     * 
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes set of genes to consider
+     * @param gene2Terms mapping of gene IDs to phenotype terms. Genes without 
+     * entry have no phenotypes.
+     * @return a TAB-separated output line to write BED like files.
+     */
+    public ArrayList<String> getOverlappedGenesOutputLine(PhenotypeData phenotypeData, 
+            GenomicSet<Gene> genes, HashMap<String, HashSet<Term>> gene2Terms){
+        
+        ArrayList<String> outLines = getGeneOutputLines(phenotypeData, genes.values(), gene2Terms);
+        
+        // if CNV does not overlap any gene or overlapped genes have score 0
+        if (outLines.isEmpty()){
+            outLines.add(getNoGeneOutputLine());
+        }
+        
+        return outLines;
+    }
+    
+    /**
+     * Constructs an output line for each input gene with a phenoMatch score
+     * larger than zero, where the gene phenotypes are taken from a mapping of 
+     * gene IDs to terms. 
+     * 
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes genes to consider
+     * @param gene2Terms mapping of gene IDs to phenotype terms or {@code null}
+     * to use the phenotypes of the {@link Gene} objects
+     * @return TAB-separated output lines in the order of the input genes
+     */
+    public ArrayList<String> getGeneOutputLines(PhenotypeData phenotypeData, 
+            Collection<Gene> genes, HashMap<String, HashSet<Term>> gene2Terms){
+        
         ArrayList<String> outLines = new ArrayList<>();
         
-        //convert phenotpye terms to Strings
-        HashSet<String> phenotypesIDs = new HashSet<>();
-        for (Term t : this.phenotypes){
-            phenotypesIDs.add(t.getIDAsString()); 
+        // if CNV does not overlap any gene, there is nothing to score
+        if (genes.isEmpty()){
+            return outLines;
         }
         
-        // For columns with multiple elements, separate them by semiclon ';'
-        String phenotypeCol = StringUtils.join(phenotypesIDs, ';');
+        String phenotypeCol = getPhenotypeColumn();
+        PhenotypeProfile profile = getPhenotypeProfile(phenotypeData);
+                        
+        for (Gene g : genes){
+            
+            HashSet<Term> geneTerms = g.getPhenotypeTerms();
+            if (gene2Terms != null){
+                geneTerms = gene2Terms.get(g.getName());
+                if (geneTerms == null){
+                    continue;
+                }
+            }
 
-        // initialize maximal score per CNV
-        Double maxScore = 0.0;
+            String outLineGene = getGeneOutputLine(phenotypeData, profile, phenotypeCol, g, geneTerms);
+            if (outLineGene != null){
+                outLines.add(outLineGene);
+            }
+        }
         
-        // if CNV does overlap any gene add output line for each gene with score > 0
-        if (!genes.isEmpty() ){
-                        
+        return outLines;
+    }
+    
+    /**
+     * Constructs an output line for each input gene with a phenoMatch score
+     * larger than zero, where the phenotypes of the i-th gene are given by 
+     * the i-th element of a parallel list. This is used to score fixed lists 
+     * of genes with many permuted annotations.
+     * 
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes genes to consider
+     * @param geneTerms phenotypes of each gene in the same order as 
+     * {@code genes}. Genes with {@code null} are skipped.
+     * @return TAB-separated output lines in the order of the input genes
+     */
+    public ArrayList<String> getGeneOutputLinesWithTerms(PhenotypeData phenotypeData, 
+            List<Gene> genes, List<HashSet<Term>> geneTerms){
+        
+        ArrayList<String> outLines = new ArrayList<>();
+        
+        if (genes.isEmpty()){
+            return outLines;
+        }
+        
+        String phenotypeCol = getPhenotypeColumn();
+        PhenotypeProfile profile = getPhenotypeProfile(phenotypeData);
+        
+        for (int i = 0; i < genes.size(); i++){
+            
+            if (geneTerms.get(i) == null){
+                continue;
+            }
+            String outLineGene = getGeneOutputLine(phenotypeData, profile, 
+                    phenotypeCol, genes.get(i), geneTerms.get(i));
+            if (outLineGene != null){
+                outLines.add(outLineGene);
+            }
+        }
+        
+        return outLines;
+    }
+    
+    /**
+     * Constructs the output line of a single gene with the given phenotypes.
+     * 
+     * @return a TAB-separated output line or {@code null} if the gene has 
+     * score zero
+     */
+    private String getGeneOutputLine(PhenotypeData phenotypeData, PhenotypeProfile profile,
+            String phenotypeCol, Gene g, HashSet<Term> geneTerms){
+        
+        String [] cnvAnnotations = getGeneOutputColumns(phenotypeData, profile, phenotypeCol, g, geneTerms);
+        if (cnvAnnotations == null){
+            return null;
+        }
+        
+        // put togeter all annotation string separated by TAB
+        return super.toOutputLine()
+            + "\t" 
+            + StringUtils.join(cnvAnnotations, '\t');
+    }
+    
+    /**
+     * Writes an output row for each input gene with a phenoMatch score larger
+     * than zero, or a single row without gene if there is no such gene. 
+     * The rows are the same as the lines of 
+     * {@link #getOverlappedGenesOutputLine(PhenotypeData, GenomicSet)}, but 
+     * each column is written directly to the output.
+     * 
+     * @param out the output file
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes set of genes to consider
+     * @throws IOException if the output cannot be written
+     */
+    public void writeOverlappedGenesOutputRows(TabRowWriter out, PhenotypeData phenotypeData, 
+            GenomicSet<Gene> genes) throws IOException{
+        
+        String phenotypeCol = getPhenotypeColumn();
+        boolean written = false;
+        
+        if (!genes.isEmpty()){
+            PhenotypeProfile profile = getPhenotypeProfile(phenotypeData);
             for (Gene g : genes.values()){
+                String [] cnvAnnotations = getGeneOutputColumns(phenotypeData, 
+                        profile, phenotypeCol, g, g.getPhenotypeTerms());
+                if (cnvAnnotations != null){
+                    writeOutputRow(out, cnvAnnotations);
+                    written = true;
+                }
+            }
+        }
+        
+        // if CNV does not overlap any gene or overlapped genes have score 0
+        if (!written){
+            writeOutputRow(out, getNoGeneOutputColumns(phenotypeCol));
+        }
+    }
+    
+    /**
+     * Adds a row for each input gene with a phenoMatch score larger than zero,
+     * or a single row without gene if there is no such gene, to rows of the
+     * binary columnar output. The rows correspond to the lines of 
+     * {@link #getOverlappedGenesOutputLine(PhenotypeData, GenomicSet)} or, 
+     * with permuted phenotypes, of 
+     * {@link #getGeneOutputLinesWithTerms(PhenotypeData, List, List)}.
+     * 
+     * @param rows the output rows
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes genes to consider
+     * @param geneTerms phenotypes of each gene in the same order as 
+     * {@code genes} or {@code null} to use the phenotypes of the 
+     * {@link Gene} objects. Genes with {@code null} are skipped.
+     */
+    public void addGeneScoreRows(GeneScoreRows rows, PhenotypeData phenotypeData, 
+            List<Gene> genes, List<HashSet<Term>> geneTerms){
+        
+        // if CNV does not overlap any gene or overlapped genes have score 0
+        if (!addScoredGeneRows(rows, phenotypeData, genes, geneTerms)){
+            rows.addNoGene(this);
+        }
+    }
+    
+    /**
+     * Adds a row for each input gene with a phenoMatch score larger than zero
+     * to rows of the binary columnar output, but no row if there is no such
+     * gene. This method does not modify the CNV and can be called 
+     * concurrently for disjoint subsets of genes after 
+     * {@link #getPhenotypeProfile(PhenotypeData)} was called once.
+     * 
+     * @param rows the output rows
+     * @param phenotypeData a {@link PhenotypeData} object to calculate phenoMatch scores
+     * @param genes genes to consider
+     * @param geneTerms phenotypes of each gene in the same order as 
+     * {@code genes} or {@code null} to use the phenotypes of the 
+     * {@link Gene} objects. Genes with {@code null} are skipped.
+     * @return true if at least one row was added
+     */
+    public boolean addScoredGeneRows(GeneScoreRows rows, PhenotypeData phenotypeData, 
+            List<Gene> genes, List<HashSet<Term>> geneTerms){
+        
+        boolean added = false;
+        
+        if (!genes.isEmpty()){
+            PhenotypeProfile profile = getPhenotypeProfile(phenotypeData);
+            for (int i = 0; i < genes.size(); i++){
+                HashSet<Term> terms = geneTerms != null 
+                        ? geneTerms.get(i) : genes.get(i).getPhenotypeTerms();
+                if (terms == null){
+                    continue;
+                }
+                ArrayList<TermPair> termMatching = getTermMatching(phenotypeData, profile, terms);
+                if (termMatching != null){
+                    rows.add(this, genes.get(i), termMatching);
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+    
+    /**
+     * Writes a row of {@link GeneScoreRows} of this CNV as TAB separated 
+     * output row, i.e. the same columns as 
+     * {@link #writeOverlappedGenesOutputRows(TabRowWriter, PhenotypeData, GenomicSet)}
+     * would write for the gene.
+     * 
+     * @param out the output file
+     * @param g the scored gene or {@code null} for the row without gene
+     * @param termMatching the term matching of the gene
+     * @throws IOException if the output cannot be written
+     */
+    public void writeGeneScoreRow(TabRowWriter out, Gene g, List<TermPair> termMatching) throws IOException{
+        
+        String phenotypeCol = getPhenotypeColumn();
+        writeOutputRow(out, g != null 
+                ? getGeneOutputColumns(phenotypeCol, g, termMatching) 
+                : getNoGeneOutputColumns(phenotypeCol));
+    }
+    
+    /**
+     * Constructs the output line of a row of {@link GeneScoreRows} of this 
+     * CNV, i.e. the same line as 
+     * {@link #getOverlappedGenesOutputLine(PhenotypeData, GenomicSet)} 
+     * returns for the gene.
+     * 
+     * @param g the scored gene or {@code null} for the row without gene
+     * @param termMatching the term matching of the gene
+     * @return a TAB-separated output line
+     */
+    public String getGeneScoreLine(Gene g, List<TermPair> termMatching){
+        
+        if (g == null){
+            return getNoGeneOutputLine();
+        }
+        return super.toOutputLine()
+            + "\t" 
+            + StringUtils.join(getGeneOutputColumns(getPhenotypeColumn(), g, termMatching), '\t');
+    }
+    
+    /**
+     * Writes the location and name of this CNV followed by annotation columns
+     * as a single row.
+     */
+    private void writeOutputRow(TabRowWriter out, String [] cnvAnnotations) throws IOException{
+        
+        out.field(getChr()).field(getStart()).field(getEnd()).field(getName());
+        for (String col : cnvAnnotations){
+            out.field(col);
+        }
+        out.endRow();
+    }
+    
+    /**
+     * Computes the annotation columns of the output line of a single gene.
+     * 
+     * @return the columns after the CNV location and name or {@code null} if
+     * the gene has score zero
+     */
+    private String [] getGeneOutputColumns(PhenotypeData phenotypeData, PhenotypeProfile profile,
+            String phenotypeCol, Gene g, HashSet<Term> geneTerms){
+        
+        ArrayList<TermPair> termMatching = getTermMatching(phenotypeData, profile, geneTerms);
+        if (termMatching == null){
+            return null;
+        }
+        return getGeneOutputColumns(phenotypeCol, g, termMatching);
+    }
+    
+    /**
+     * Computes the annotation columns of the output line of a single gene 
+     * from its term matching.
+     * 
+     * @return the columns after the CNV location and name
+     */
+    private static String [] getGeneOutputColumns(String phenotypeCol, Gene g, 
+            List<TermPair> termMatching){
+        
 
+        String geneSymbol = g.getSymbol();
 
-                String geneSymbol = g.getSymbol();
-                //double geneScore = phenotypeData.phenoMatchScore(this.phenotypes, g);
-                
-                ArrayList<TermPair> termMatching = phenotypeData.phenoMatchScoreWithMatching(this.phenotypes, g);
-
-                double maxGeneScore = 0.0;
-                double sumGeneScore = 0.0;
-                String maxPatientMatchTerms = "";
-                String maxGeneMatchTerms = "";
-                String maxLca = "";
-                
-                if(termMatching.size() > 0){
-                    
-                    TermPair maxPair = Collections.max(termMatching, TermPair.TERM_PAIR_SCORE_ORDER);
-                    maxGeneScore = maxPair.getS();
-                    for (TermPair tp: termMatching){
-                        sumGeneScore += tp.getS();
-                    }
-                    maxPatientMatchTerms = maxPair.getPp().getIDAsString();
-                    maxGeneMatchTerms = maxPair.getGp().getIDAsString();
-                    maxLca = maxPair.getLca().getIDAsString();
-                }
+        TermPair maxPair = Collections.max(termMatching, TermPair.TERM_PAIR_SCORE_ORDER);
+        double maxGeneScore = maxPair.getS();
+        double sumGeneScore = 0.0;
+        for (TermPair tp: termMatching){
+            sumGeneScore += tp.getS();
+        }
+        String maxPatientMatchTerms = maxPair.getPp().getIDAsString();
+        String maxGeneMatchTerms = maxPair.getGp().getIDAsString();
+        String maxLca = maxPair.getLca().getIDAsString();
 
-                String sumScoreStr = Utils.roundToString(sumGeneScore);
-                String maxScoreStr = Utils.roundToString(maxGeneScore);
+        String sumScoreStr = Utils.roundToString(sumGeneScore);
+        String maxScoreStr = Utils.roundToString(maxGeneScore);
 
-                // only if there is a score larger than zero output the gene
-                if (maxGeneScore > 0){
-                    
-                    String allPatientMatchTerms = "";
-                    String allGeneMatchTerms = "";
-                    String allLca = "";
-                    String allMatchScores = "";
+        String allPatientMatchTerms = "";
+        String allGeneMatchTerms = "";
+        String allLca = "";
+        String allMatchScores = "";
 
-                    String sep = "";
-                    
-                    for (TermPair tp: termMatching){
-                        
-                        if (allPatientMatchTerms.length() > 0){
-                            sep=";";                            
-                        }
-                        allPatientMatchTerms += sep + tp.getPp().getIDAsString();
-                        allGeneMatchTerms += sep + tp.getGp().getIDAsString();
-                        allLca += sep + tp.getLca().getIDAsString();
-                        allMatchScores += sep + Utils.roundToString(tp.getS());
-                        
-                    }
-
-                    String [] cnvAnnotations = new String[]{
-                            phenotypeCol, 
-                            geneSymbol,
-                            sumScoreStr,
-                            maxScoreStr,
-                            maxPatientMatchTerms,
-                            maxGeneMatchTerms,
-                            maxLca,
-                            allPatientMatchTerms,
-                            allGeneMatchTerms,
-                            allLca,
-                            allMatchScores
-                        };
-
-                    // put togeter all annotation string separated by TAB
-                    String outLineGene = super.toOutputLine()
-                        + "\t" 
-                        + StringUtils.join(cnvAnnotations, '\t');            
-
-                    // append to output lines
-                    outLines.add(outLineGene);
-                    
-                    // upate maxScore
-                    if (maxGeneScore > maxScore){
-                        maxScore = maxGeneScore;
-                    }
-                }               
+        String sep = "";
+
+        for (TermPair tp: termMatching){
+
+            if (allPatientMatchTerms.length() > 0){
+                sep=";";                            
             }
+            allPatientMatchTerms += sep + tp.getPp().getIDAsString();
+            allGeneMatchTerms += sep + tp.getGp().getIDAsString();
+            allLca += sep + tp.getLca().getIDAsString();
+            allMatchScores += sep + Utils.roundToString(tp.getS());
+
         }
+
+        return new String[]{
+                phenotypeCol, 
+                geneSymbol,
+                sumScoreStr,
+                maxScoreStr,
+                maxPatientMatchTerms,
+                maxGeneMatchTerms,
+                maxLca,
+                allPatientMatchTerms,
+                allGeneMatchTerms,
+                allLca,
+                allMatchScores
+            };
+    }
+    
+    /**
+     * Computes the best matching gene term of each patient term.
+     * 
+     * @return the term matching or {@code null} if the gene has score zero
+     */
+    private ArrayList<TermPair> getTermMatching(PhenotypeData phenotypeData, 
+            PhenotypeProfile profile, HashSet<Term> geneTerms){
         
-        // if CNV does not overlap any gene or overlapped genes have score 0
-        if( maxScore == 0.0){
-            String outLineCNV = super.toOutputLine()
-                    + "\t" 
-                    + StringUtils.join(new String[]{
-                        phenotypeCol, 
-                        ".",
-                        Utils.roundToString(0.0),
-                        Utils.roundToString(0.0),
-                        ".",
-                        ".",
-                        ".",
-                        ".",
-                        ".",
-                        ".",
-                        Utils.roundToString(0.0)
-                    }, '\t');
-            // append to output lines
-            outLines.add(outLineCNV);
+        // skip the term matching for genes without any similarity
+        if (profile.maxScore(geneTerms) == 0.0){
+            return null;
         }
         
-        return outLines;
+        ArrayList<TermPair> termMatching = phenotypeData.phenoMatchScoreWithMatching(this.phenotypes, geneTerms);
         
+        // only if there is a score larger than zero output the gene
+        if (termMatching.isEmpty() 
+                || Collections.max(termMatching, TermPair.TERM_PAIR_SCORE_ORDER).getS() <= 0){
+            return null;
+        }
+        return termMatching;
+    }
+    
+    /**
+     * Constructs the output line for a CNV that does not overlap any gene or
+     * where all overlapped genes have score 0.
+     * 
+     * @return a TAB-separated output line
+     */
+    public String getNoGeneOutputLine(){
+        
+        return super.toOutputLine()
+                + "\t" 
+                + StringUtils.join(getNoGeneOutputColumns(getPhenotypeColumn()), '\t');
+    }
+    
+    /**
+     * Annotation columns of the output line without gene.
+     */
+    private static String [] getNoGeneOutputColumns(String phenotypeCol){
+        
+        return new String[]{
+                    phenotypeCol, 
+                    ".",
+                    Utils.roundToString(0.0),
+                    Utils.roundToString(0.0),
+                    ".",
+                    ".",
+                    ".",
+                    ".",
+                    ".",
+                    ".",
+                    Utils.roundToString(0.0)
+                };
+    }
+    
+    /**
+     * Joins the IDs of the phenotype terms of this CNV separated by semicolon.
+     * 
+     * @return the phenotype column of output lines
+     */
+    private String getPhenotypeColumn(){
+        
+        //convert phenotpye terms to Strings
+        HashSet<String> phenotypesIDs = new HashSet<>();
+        for (Term t : this.phenotypes){
+            phenotypesIDs.add(t.getIDAsString()); 
+        }
+        
+        // For columns with multiple elements, separate them by semiclon ';'
+        return StringUtils.join(phenotypesIDs, ';');
+    }
+
+    /**
+     * Returns the {@link PhenotypeProfile} of the phenotypes of this CNV. 
+     * The profile is taken from the cache of the {@link PhenotypeData}, so it
+     * is computed once and shared by all CNVs with the same phenotypes and by
+     * all gene sets that are scored against them, e.g. the overlapped genes 
+     * and the genes in overlapped TADs.
+     * 
+     * @param phenotypeData a {@link PhenotypeData} object to calculate the profile
+     * @return the profile of the CNV phenotypes
+     */
+    public PhenotypeProfile getPhenotypeProfile(PhenotypeData phenotypeData){
+        return phenotypeData.getSharedPhenotypeProfile(this.phenotypes);
     }
 
     /**
@@ -0,0 +1,241 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Maps genomic positions to topological domains (TADs) and each domain to the
+ * genes it overlaps.
+ * The domains of each chromosome are sorted by start and the genes of each
+ * domain are computed once and stored as an immutable array of indices into
+ * the sorted genes of the chromosome. The genes in TADs overlapped by a CNV
+ * are then found by two binary searches and the concatenation of the gene
+ * arrays of the domains in between, and the per-domain results are shared by
+ * all CNVs.
+ * <br><br>
+ * Domains are assumed to be non-overlapping. Overlapping domains are still
+ * handled correctly by an additional check of each domain in the range, which
+ * only costs time if domains overlap. The overlap semantics are the same as
+ * in {@link IntervalIndex}. The index is immutable and can be used
+ * concurrently.
+ */
+public class DomainPartitionIndex {
+
+    /**
+     * Domains and their genes on a single chromosome.
+     */
+    private static class Chromosome {
+
+        private final List<GenomicElement> domains;
+        private final int [] starts;
+        private final int [] ends;
+
+        /** Maximal end of all domains up to each index. */
+        private final int [] maxEnds;
+
+        /** Sorted genes of the chromosome. */
+        private final List<Gene> genes;
+
+        /** Indices into {@code genes} of each domain. */
+        private final int [][] domainGenes;
+
+        Chromosome(List<GenomicElement> domains, List<Gene> genes, int [][] domainGenes){
+            this.domains = domains;
+            this.genes = genes;
+            this.domainGenes = domainGenes;
+            int n = domains.size();
+            this.starts = new int[n];
+            this.ends = new int[n];
+            this.maxEnds = new int[n];
+            for (int i = 0; i < n; i++){
+                starts[i] = domains.get(i).getStart();
+                ends[i] = domains.get(i).getEnd();
+                maxEnds[i] = i > 0 ? Math.max(maxEnds[i - 1], ends[i]) : ends[i];
+            }
+        }
+    }
+
+    /** Index of each chromosome. */
+    private final HashMap<String, Chromosome> chr2index = new HashMap<>();
+
+    /**
+     * Builds the index and computes the genes of each domain.
+     *
+     * @param domains set of TADs
+     * @param genes set of genes
+     */
+    public DomainPartitionIndex(GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+
+        IntervalTree<GenomicElement> domainTree = domains.getIntervalTree();
+        IntervalTree<Gene> geneTree = genes.getIntervalTree();
+
+        HashMap<String, Boolean> chrs = new HashMap<>();
+        for (GenomicElement d : domains.values()){
+            chrs.put(d.getChr(), Boolean.TRUE);
+        }
+
+        for (String chr : chrs.keySet()){
+
+            List<GenomicElement> chrDomains = domainTree.getElements(chr);
+            List<Gene> chrGenes = geneTree.getElements(chr);
+
+            // position of each gene in the sorted list of the chromosome
+            final IdentityHashMap<Gene, Integer> geneRank = new IdentityHashMap<>();
+            for (int i = 0; i < chrGenes.size(); i++){
+                geneRank.put(chrGenes.get(i), i);
+            }
+
+            int [][] domainGenes = new int[chrDomains.size()][];
+            final ArrayList<Integer> hits = new ArrayList<>();
+            for (int d = 0; d < chrDomains.size(); d++){
+                hits.clear();
+                geneTree.forEachOverlap(chrDomains.get(d), new IntervalIndex.Visitor<Gene>(){
+                    @Override
+                    public void visit(Gene g) {
+                        hits.add(geneRank.get(g));
+                    }
+                });
+                domainGenes[d] = new int[hits.size()];
+                for (int i = 0; i < hits.size(); i++){
+                    domainGenes[d][i] = hits.get(i);
+                }
+            }
+
+            chr2index.put(chr, new Chromosome(chrDomains, chrGenes, domainGenes));
+        }
+    }
+
+    /**
+     * First index {@code i} with {@code a[i] > key}.
+     */
+    private static int upperBound(int [] a, int key){
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= key){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * First index {@code i} with {@code a[i] >= key}.
+     */
+    private static int lowerBound(int [] a, int key){
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the domain that contains a position.
+     *
+     * @param chr the chromosome
+     * @param pos the position
+     * @return the id of the domain, i.e. its index in {@link #getDomains(String)},
+     * or -1 if no domain contains {@code pos}
+     */
+    public int findDomain(String chr, int pos){
+
+        Chromosome c = chr2index.get(chr);
+        if (c == null){
+            return -1;
+        }
+        // last domain that starts at or before pos
+        for (int i = upperBound(c.starts, pos) - 1; i >= 0 && c.maxEnds[i] > pos; i--){
+            if (pos < c.ends[i]){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the domains of a chromosome sorted by start.
+     *
+     * @param chr the chromosome
+     * @return unmodifiable list of the domains on {@code chr}
+     */
+    public List<GenomicElement> getDomains(String chr){
+        Chromosome c = chr2index.get(chr);
+        if (c == null){
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(c.domains);
+    }
+
+    /**
+     * Returns the genes that overlap a single domain.
+     *
+     * @param chr the chromosome
+     * @param domain the id of the domain
+     * @return the genes of the domain sorted by start
+     */
+    public List<Gene> getDomainGenes(String chr, int domain){
+        Chromosome c = chr2index.get(chr);
+        if (c == null){
+            return Collections.emptyList();
+        }
+        ArrayList<Gene> out = new ArrayList<>(c.domainGenes[domain].length);
+        for (int g : c.domainGenes[domain]){
+            out.add(c.genes.get(g));
+        }
+        return out;
+    }
+
+    /**
+     * Returns all genes in domains that overlap a genomic element.
+     *
+     * @param e the query element, e.g. a CNV
+     * @return set of genes in all domains that overlap {@code e}
+     */
+    public GenomicSet<Gene> getGenesInOverlapDomains(GenomicElement e){
+
+        GenomicSet<Gene> result = new GenomicSet<Gene>();
+
+        Chromosome c = chr2index.get(e.getChr());
+        if (c == null){
+            return result;
+        }
+
+        int start = e.getStart();
+        // an empty query is a single position
+        int end = e.getEnd() == start ? start + 1 : e.getEnd();
+
+        // domains [from, to) start before the query end and the maximal end
+        // up to each of them is after the query start
+        int from = upperBound(c.maxEnds, start);
+        int to = lowerBound(c.starts, end);
+
+        for (int d = from; d < to; d++){
+            if (start < c.ends[d]){
+                for (int g : c.domainGenes[d]){
+                    Gene gene = c.genes.get(g);
+                    result.put(gene.getName(), gene);
+                }
+            }
+        }
+        return result;
+    }
+}
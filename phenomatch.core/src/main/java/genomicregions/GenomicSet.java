@@ -17,12 +17,14 @@
 
 package genomicregions;
 
-import com.google.common.collect.ImmutableList;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
-import de.charite.compbio.jannovar.impl.intervals.IntervalArray;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 
@@ -33,8 +35,10 @@ import org.apache.commons.lang3.StringUtils;
  * The key is the name or ID of the element.
  * The value is a {@link GenomicElement} or any of its subclasses like {@link CNV}.
  * This class provides several functionalities to compute overlaps with other 
- * genomic features. Internally it holds an {@link IntervalTree} form the {@link jannovar} package
- * for fast overlap computation.
+ * genomic features. Internally it holds an {@link IntervalTree} that is 
+ * updated with each modification of the set for fast overlap computation.
+ * The key, value and entry views are read-only, so that all modifications 
+ * go through the methods of this class that keep the tree up to date.
  * 
  * @author Jonas Ibn-Salem <ibnsalem@molgen.mpg.de>
  * @param <T> {@link GenomicElement} or any of its subclasses
@@ -42,46 +46,178 @@ import org.apache.commons.lang3.StringUtils;
 public class GenomicSet<T extends GenomicElement> extends HashMap<String, T>{
     
     /**
-     * maps each chromosome to an intervalTree consisting of 
-     * the GenomicElements of that chromosome
+     * Index of all elements for overlap search and sorted passes. It is 
+     * created on the first request and from then on updated with each 
+     * modification of this set. The tree is published only after it is 
+     * completely build, so concurrent readers see either null or the 
+     * complete tree.
      */
-    private HashMap<String, IntervalArray<T>> chr2IntervalArray;
+    private transient volatile IntervalTree<T> intervalTree;
     
     
     /**
-     * Build an IntervalArray form the list of {@link GenomicElement}s for faster overlap search.
-     * This method is called from the search methods if the interval array is not already build.
+     * Build an {@link IntervalTree} form the list of {@link GenomicElement}s for faster overlap search.
+     * This method is called from the search methods if the tree is not already build.
+     * It is synchronized so that concurrent searches build the tree only once.
+     * 
+     * @return the interval tree of all elements
      */
-    private void buildIntervalArray (){
+    private synchronized IntervalTree<T> buildIntervalTree(){
         
-        /**
-         * hold an {@IntervalArray} for each chromosome
-         */
-        this.chr2IntervalArray = new HashMap();
-                
-        // create hash map for sorting all elements by thier chromsoms
-        HashMap<String, ArrayList<T>> chr2ArrayList = new HashMap<>();
-
-        // distribute elements to chrom specific lists
-        for (T e : this.values() ) {
-            String chr = e.getChr();
-            
-            // test if chr2IntervalArray has already a chr as key
-            if (!chr2ArrayList.containsKey(chr)) {
-                chr2ArrayList.put(chr, new ArrayList<T>());
+        // another thread might have build the tree already
+        if (this.intervalTree == null){
+            IntervalTree<T> tree = new IntervalTree<>();
+            for (Map.Entry<String, T> entry : super.entrySet()){
+                if (entry.getValue() != null){
+                    tree.insert(entry.getKey(), entry.getValue());
+                }
             }
-            
-            chr2ArrayList.get(chr).add(e);
+            this.intervalTree = tree;
         }
-
-        // construct an IntervalArray for each chromosome
-        for (String chr : chr2ArrayList.keySet()) {
-            
-            IntervalArray<T> iTree = new IntervalArray<>(chr2ArrayList.get(chr),
-					new GenomicElementEndExtractor<T>());
-            this.chr2IntervalArray.put(chr, iTree);
+        return this.intervalTree;
+    }
+    
+    /**
+     * Returns the {@link IntervalTree} of all elements in this set. The tree
+     * is build on the first call and afterwards kept up to date by 
+     * {@link #put(String, GenomicElement)}, {@link #putAll(Map)}, 
+     * {@link #remove(Object)} and {@link #clear()}. The key, value and entry
+     * views of this set are read-only, so the tree cannot become stale 
+     * through them.
+     * 
+     * @return the interval tree of all elements
+     */
+    public IntervalTree<T> getIntervalTree(){
+        
+        IntervalTree<T> tree = this.intervalTree;
+        if (tree == null){
+            tree = buildIntervalTree();
         }
-                
+        return tree;
+    }
+    
+    /**
+     * Adds an element and updates the interval tree.
+     * 
+     * @param key the name of the element
+     * @param value the element
+     * @return the previous element with the same key or null
+     */
+    @Override
+    public T put(String key, T value){
+        
+        T old = super.put(key, value);
+        
+        IntervalTree<T> tree = this.intervalTree;
+        if (tree != null){
+            if (old != null){
+                tree.remove(key, old);
+            }
+            if (value != null){
+                tree.insert(key, value);
+            }
+        }
+        return old;
+    }
+    
+    /**
+     * Adds all elements of a map and updates the interval tree.
+     * 
+     * @param m map of names to elements
+     */
+    @Override
+    public void putAll(Map<? extends String, ? extends T> m){
+        for (Map.Entry<? extends String, ? extends T> entry : m.entrySet()){
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * Removes an element and updates the interval tree.
+     * 
+     * @param key the name of the element
+     * @return the removed element or null
+     */
+    @Override
+    public T remove(Object key){
+        
+        T old = super.remove(key);
+        
+        IntervalTree<T> tree = this.intervalTree;
+        if (tree != null && old != null){
+            tree.remove((String) key, old);
+        }
+        return old;
+    }
+    
+    /**
+     * Removes all elements and clears the interval tree.
+     */
+    @Override
+    public void clear(){
+        
+        super.clear();
+        
+        IntervalTree<T> tree = this.intervalTree;
+        if (tree != null){
+            tree.clear();
+        }
+    }
+    
+    /**
+     * Returns a shallow copy of this set. The copy does not share the 
+     * interval tree with this set, but builds its own on the first request.
+     * 
+     * @return a copy of this set with the same elements
+     */
+    @Override
+    public GenomicSet<T> clone(){
+        
+        @SuppressWarnings("unchecked")
+        GenomicSet<T> copy = (GenomicSet<T>) super.clone();
+        copy.intervalTree = null;
+        return copy;
+    }
+    
+    /**
+     * Returns a read-only view of the keys. Elements have to be removed with
+     * {@link #remove(Object)}, which also updates the interval tree.
+     * 
+     * @return unmodifiable set of the keys
+     */
+    @Override
+    public Set<String> keySet(){
+        return Collections.unmodifiableSet(super.keySet());
+    }
+    
+    /**
+     * Returns a read-only view of the elements. Elements have to be removed 
+     * with {@link #remove(Object)}, which also updates the interval tree.
+     * 
+     * @return unmodifiable collection of the elements
+     */
+    @Override
+    public Collection<T> values(){
+        return Collections.unmodifiableCollection(super.values());
+    }
+    
+    /**
+     * Returns a read-only view of the entries. The entries do not support
+     * {@link Map.Entry#setValue(Object)}.
+     * 
+     * @return unmodifiable set of the entries
+     */
+    @Override
+    public Set<Map.Entry<String, T>> entrySet(){
+        
+        // an unmodifiable map wraps each entry in a read-only entry
+        final Set<Map.Entry<String, T>> entries = super.entrySet();
+        return Collections.unmodifiableMap(new AbstractMap<String, T>(){
+            @Override
+            public Set<Map.Entry<String, T>> entrySet() {
+                return entries;
+            }
+        }).entrySet();
     }
     
     /**
@@ -93,29 +229,17 @@ public class GenomicSet<T extends GenomicElement> extends HashMap<String, T>{
      */
     public GenomicSet<T> anyOverlap(GenomicElement e){
 
-        GenomicSet<T> result = new GenomicSet();
+        final GenomicSet<T> result = new GenomicSet<T>();
         
-        // if interval tree is not build already, build it
-        if (this.chr2IntervalArray == null){
-            buildIntervalArray();
-        }
-        // Check if chromosm of input element is contained in theis set
-        if (! this.chr2IntervalArray.containsKey(e.getChr())){
-            
-            // return empty list
-            return result;
-        
-        }else{            
-            // search for overlapping intervals. 
-            ImmutableList<T> resultList = this.chr2IntervalArray.get(e.getChr()).findOverlappingWithInterval(e.getStart(), e.getEnd()).getEntries();
-            
-            // convert the elements form List to GenomicSet
-            for (T elem : resultList){
+        // search for overlapping intervals and add them to the result set
+        getIntervalTree().forEachOverlap(e, new IntervalIndex.Visitor<T>(){
+            @Override
+            public void visit(T elem) {
                 result.put(elem.getName(), elem);
             }
-            return result;
-            
-        }
+        });
+        
+        return result;
     }
 
     /**
@@ -0,0 +1,286 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An immutable index of {@link GenomicElement}s for fast overlap queries.
+ * The elements of each chromosome are sorted by start and their coordinates
+ * are stored in primitive {@code int} arrays. The arrays are laid out as an
+ * implicit augmented binary search tree: the element at index {@code i} is a
+ * node on the level given by the number of trailing one bits of {@code i}, and
+ * an additional array holds the maximal end coordinate within the subtree of
+ * each node. This allows queries in O(log n + k) without any tree objects.
+ * <br><br>
+ * Queries do not allocate any objects. Overlapping elements are reported to a
+ * {@link Visitor} in the order of their start coordinates, or only counted.
+ * Intervals are half-open like {@link GenomicElement#hasOverlap(GenomicElement)}.
+ * A query of length zero is treated as the single position {@code start}.
+ * An index can be queried concurrently by several threads.
+ *
+ * @param <T> {@link GenomicElement} or any of its subclasses
+ */
+public class IntervalIndex<T extends GenomicElement> {
+
+    /**
+     * Receives the elements that overlap a query.
+     *
+     * @param <T> the type of the elements
+     */
+    public interface Visitor<T> {
+
+        /**
+         * Called for each element that overlaps the query.
+         *
+         * @param element an overlapping element
+         */
+        void visit(T element);
+    }
+
+    /** Subtrees up to this level are scanned linearly. */
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    /**
+     * Elements of a single chromosome in struct-of-arrays form.
+     */
+    private static class Chromosome<T> {
+
+        private final ArrayList<T> elements;
+        private final int [] starts;
+        private final int [] ends;
+
+        /** Maximal end in the subtree of each node. */
+        private final int [] maxEnds;
+
+        /** Level of the root node. */
+        private final int rootLevel;
+
+        Chromosome(ArrayList<T> elements, int [] starts, int [] ends, int [] maxEnds, int rootLevel){
+            this.elements = elements;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = maxEnds;
+            this.rootLevel = rootLevel;
+        }
+    }
+
+    /** Index of each chromosome. */
+    private final HashMap<String, Chromosome<T>> chr2index = new HashMap<>();
+
+    /** Total number of elements. */
+    private final int size;
+
+    /**
+     * Builds the index for a collection of elements.
+     *
+     * @param elements the elements to index
+     */
+    public IntervalIndex(Collection<T> elements){
+
+        // distribute elements to chromosome specific lists
+        HashMap<String, ArrayList<T>> chr2list = new HashMap<>();
+        for (T e : elements){
+            ArrayList<T> list = chr2list.get(e.getChr());
+            if (list == null){
+                list = new ArrayList<>();
+                chr2list.put(e.getChr(), list);
+            }
+            list.add(e);
+        }
+
+        for (String chr : chr2list.keySet()){
+            chr2index.put(chr, buildChromosome(chr2list.get(chr)));
+        }
+        this.size = elements.size();
+    }
+
+    /**
+     * Sorts the elements of one chromosome and computes the maximal end of
+     * each subtree bottom-up.
+     */
+    private static <T extends GenomicElement> Chromosome<T> buildChromosome(ArrayList<T> elements){
+
+        Collections.sort(elements, GenomicElement.START_COORDINATE_ORDER);
+
+        int n = elements.size();
+        int [] starts = new int[n];
+        int [] ends = new int[n];
+        int [] maxEnds = new int[n];
+        for (int i = 0; i < n; i++){
+            starts[i] = elements.get(i).getStart();
+            ends[i] = elements.get(i).getEnd();
+        }
+
+        // leaves: all even indices
+        int lastIndex = 0;
+        int lastMax = 0;
+        for (int i = 0; i < n; i += 2){
+            lastIndex = i;
+            lastMax = maxEnds[i] = ends[i];
+        }
+
+        // inner nodes level by level; nodes beyond n are represented by the
+        // maximal end of the last element in their subtree
+        int level = 1;
+        for (; (1 << level) <= n; level++){
+            int x = 1 << (level - 1);
+            int step = x << 2;
+            for (int i = (x << 1) - 1; i < n; i += step){
+                int left = maxEnds[i - x];
+                int right = i + x < n ? maxEnds[i + x] : lastMax;
+                maxEnds[i] = Math.max(ends[i], Math.max(left, right));
+            }
+            lastIndex = ((lastIndex >> level) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < n && maxEnds[lastIndex] > lastMax){
+                lastMax = maxEnds[lastIndex];
+            }
+        }
+
+        return new Chromosome<>(elements, starts, ends, maxEnds, level - 1);
+    }
+
+    /**
+     * Visits all elements in the subtree of node {@code x} on level
+     * {@code level} that overlap the query and stops after {@code limit}
+     * elements.
+     *
+     * @return number of reported elements
+     */
+    private static <T> int query(Chromosome<T> c, int level, int x, int start, int end,
+            Visitor<? super T> visitor, int count, int limit){
+
+        int n = c.starts.length;
+
+        if (level <= LINEAR_SCAN_LEVEL){
+            // small subtree: scan all its elements in sorted order
+            int i0 = x >> level << level;
+            int i1 = Math.min(n, i0 + (1 << (level + 1)) - 1);
+            for (int i = i0; i < i1 && c.starts[i] < end && count < limit; i++){
+                if (start < c.ends[i]){
+                    count = report(c, i, visitor, count);
+                }
+            }
+            return count;
+        }
+
+        // left subtree, if it may contain an overlapping element
+        int half = 1 << (level - 1);
+        int y = x - half;
+        if (y >= n || c.maxEnds[y] > start){
+            count = query(c, level - 1, y, start, end, visitor, count, limit);
+        }
+
+        // this node and the right subtree, if they start before the query end
+        if (x < n && c.starts[x] < end && count < limit){
+            if (start < c.ends[x]){
+                count = report(c, x, visitor, count);
+            }
+            if (count < limit){
+                count = query(c, level - 1, x + half, start, end, visitor, count, limit);
+            }
+        }
+        return count;
+    }
+
+    private static <T> int report(Chromosome<T> c, int i, Visitor<? super T> visitor, int count){
+        if (visitor != null){
+            visitor.visit(c.elements.get(i));
+        }
+        return count + 1;
+    }
+
+    /**
+     * Runs a query on a chromosome.
+     */
+    private int query(String chr, int start, int end, Visitor<? super T> visitor, int limit){
+
+        Chromosome<T> c = chr2index.get(chr);
+        if (c == null || c.starts.length == 0){
+            return 0;
+        }
+        // an empty query is a single position
+        if (end == start){
+            end = start + 1;
+        }
+        int root = (1 << c.rootLevel) - 1;
+        return query(c, c.rootLevel, root, start, end, visitor, 0, limit);
+    }
+
+    /**
+     * Reports all elements that overlap the interval [{@code start}, {@code end})
+     * on chromosome {@code chr} to the visitor, in the order of their start
+     * coordinates.
+     *
+     * @param chr chromosome of the query
+     * @param start start of the query
+     * @param end end of the query
+     * @param visitor receives the overlapping elements
+     * @return the number of overlapping elements
+     */
+    public int forEachOverlap(String chr, int start, int end, Visitor<? super T> visitor){
+        return query(chr, start, end, visitor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reports all elements that overlap a genomic element to the visitor.
+     *
+     * @param e query element
+     * @param visitor receives the overlapping elements
+     * @return the number of overlapping elements
+     */
+    public int forEachOverlap(GenomicElement e, Visitor<? super T> visitor){
+        return forEachOverlap(e.getChr(), e.getStart(), e.getEnd(), visitor);
+    }
+
+    /**
+     * Counts the elements that overlap a genomic element.
+     *
+     * @param e query element
+     * @return the number of overlapping elements
+     */
+    public int countOverlaps(GenomicElement e){
+        return query(e.getChr(), e.getStart(), e.getEnd(), null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tests if any element overlaps a genomic element. The search stops at the
+     * first overlapping element.
+     *
+     * @param e query element
+     * @return true if at least one element overlaps {@code e}
+     */
+    public boolean hasOverlap(GenomicElement e){
+        return query(e.getChr(), e.getStart(), e.getEnd(), null, 1) > 0;
+    }
+
+    /**
+     * Returns the elements of a chromosome sorted by start coordinate.
+     *
+     * @param chr the chromosome
+     * @return unmodifiable list of the elements on {@code chr}
+     */
+    public List<T> getElements(String chr){
+        Chromosome<T> c = chr2index.get(chr);
+        if (c == null){
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(c.elements);
+    }
+
+    /**
+     * Number of indexed elements.
+     * @return the number of elements
+     */
+    public int size(){
+        return size;
+    }
+}
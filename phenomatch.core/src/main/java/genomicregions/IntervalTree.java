@@ -0,0 +1,360 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A mutable index of {@link GenomicElement}s for overlap queries that supports
+ * insertion and removal of single elements in O(log n).
+ * The elements of each chromosome are stored in a balanced (AVL) binary
+ * search tree ordered by start, end and key. Each node is augmented with the
+ * maximal end coordinate in its subtree, so overlap queries run in
+ * O(log n + k) at any time without rebuilding the tree.
+ * <br><br>
+ * The key of an element is the key under which it is stored in a
+ * {@link GenomicSet}. It makes the order of elements with equal coordinates
+ * unique, so that a single element can be found and removed.
+ * The overlap semantics are the same as in {@link IntervalIndex}. Queries do
+ * not allocate objects and report elements in the order of their start
+ * coordinates. The tree can be queried concurrently, but not modified
+ * concurrently with other modifications or queries.
+ *
+ * @param <T> {@link GenomicElement} or any of its subclasses
+ */
+public class IntervalTree<T extends GenomicElement> {
+
+    /**
+     * A node of the tree.
+     */
+    private static class Node<T> {
+
+        private final String key;
+        private final T element;
+        private final int start;
+        private final int end;
+
+        /** Maximal end in the subtree of this node. */
+        private int maxEnd;
+
+        private int height = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        Node(String key, T element, int start, int end){
+            this.key = key;
+            this.element = element;
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+        }
+    }
+
+    /** Root node of each chromosome. */
+    private final HashMap<String, Node<T>> chr2root = new HashMap<>();
+
+    /** Total number of elements. */
+    private int size = 0;
+
+    /**
+     * Compares the position of a node with start, end and key of an element.
+     */
+    private static int compare(int start, int end, String key, Node<?> n){
+        if (start != n.start){
+            return start < n.start ? -1 : 1;
+        }
+        if (end != n.end){
+            return end < n.end ? -1 : 1;
+        }
+        return key.compareTo(n.key);
+    }
+
+    private static int height(Node<?> n){
+        return n == null ? 0 : n.height;
+    }
+
+    /**
+     * Recomputes height and maximal end of a node from its children.
+     */
+    private static void update(Node<?> n){
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        int max = n.end;
+        if (n.left != null && n.left.maxEnd > max){
+            max = n.left.maxEnd;
+        }
+        if (n.right != null && n.right.maxEnd > max){
+            max = n.right.maxEnd;
+        }
+        n.maxEnd = max;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> n){
+        Node<T> l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> n){
+        Node<T> r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    /**
+     * Updates a node after a change in one of its subtrees and restores the
+     * AVL balance.
+     *
+     * @return the new root of the subtree
+     */
+    private static <T> Node<T> balance(Node<T> n){
+        update(n);
+        int diff = height(n.left) - height(n.right);
+        if (diff > 1){
+            if (height(n.left.left) < height(n.left.right)){
+                n.left = rotateLeft(n.left);
+            }
+            return rotateRight(n);
+        }
+        if (diff < -1){
+            if (height(n.right.right) < height(n.right.left)){
+                n.right = rotateRight(n.right);
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    private static <T> Node<T> insert(Node<T> n, Node<T> x){
+        if (n == null){
+            return x;
+        }
+        if (compare(x.start, x.end, x.key, n) < 0){
+            n.left = insert(n.left, x);
+        }else{
+            n.right = insert(n.right, x);
+        }
+        return balance(n);
+    }
+
+    /**
+     * Removes the node with the smallest position from a subtree.
+     *
+     * @return the new root of the subtree
+     */
+    private static <T> Node<T> removeMin(Node<T> n){
+        if (n.left == null){
+            return n.right;
+        }
+        n.left = removeMin(n.left);
+        return balance(n);
+    }
+
+    private static <T> Node<T> min(Node<T> n){
+        while (n.left != null){
+            n = n.left;
+        }
+        return n;
+    }
+
+    /**
+     * Removes the node with the given position from a subtree.
+     *
+     * @param removed receives the removed node at index 0
+     * @return the new root of the subtree
+     */
+    private static <T> Node<T> remove(Node<T> n, int start, int end, String key, Object [] removed){
+        if (n == null){
+            return null;
+        }
+        int cmp = compare(start, end, key, n);
+        if (cmp < 0){
+            n.left = remove(n.left, start, end, key, removed);
+        }else if (cmp > 0){
+            n.right = remove(n.right, start, end, key, removed);
+        }else{
+            removed[0] = n;
+            if (n.left == null){
+                return n.right;
+            }
+            if (n.right == null){
+                return n.left;
+            }
+            // replace the node by its successor
+            Node<T> s = min(n.right);
+            s.right = removeMin(n.right);
+            s.left = n.left;
+            return balance(s);
+        }
+        return balance(n);
+    }
+
+    /**
+     * Inserts an element.
+     *
+     * @param key the key of the element in its {@link GenomicSet}
+     * @param element the element to insert
+     */
+    public void insert(String key, T element){
+        Node<T> root = chr2root.get(element.getChr());
+        chr2root.put(element.getChr(), insert(root, new Node<>(key, element,
+                element.getStart(), element.getEnd())));
+        size++;
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @param key the key of the element in its {@link GenomicSet}
+     * @param element the element to remove
+     * @return true if the element was contained in the tree
+     */
+    public boolean remove(String key, T element){
+        Node<T> root = chr2root.get(element.getChr());
+        if (root == null){
+            return false;
+        }
+        Object [] removed = new Object[1];
+        root = remove(root, element.getStart(), element.getEnd(), key, removed);
+        if (root == null){
+            chr2root.remove(element.getChr());
+        }else{
+            chr2root.put(element.getChr(), root);
+        }
+        if (removed[0] != null){
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear(){
+        chr2root.clear();
+        size = 0;
+    }
+
+    /**
+     * Visits all elements in a subtree that overlap the query in order of
+     * their start and stops after {@code limit} elements.
+     *
+     * @return number of reported elements
+     */
+    private static <T> int query(Node<T> n, int start, int end,
+            IntervalIndex.Visitor<? super T> visitor, int count, int limit){
+
+        // no element in this subtree ends after the query start
+        if (n == null || n.maxEnd <= start || count >= limit){
+            return count;
+        }
+        count = query(n.left, start, end, visitor, count, limit);
+
+        // the node and its right subtree start at or after the node start
+        if (n.start < end && count < limit){
+            if (start < n.end){
+                if (visitor != null){
+                    visitor.visit(n.element);
+                }
+                count++;
+            }
+            count = query(n.right, start, end, visitor, count, limit);
+        }
+        return count;
+    }
+
+    private int query(String chr, int start, int end, IntervalIndex.Visitor<? super T> visitor, int limit){
+        // an empty query is a single position
+        if (end == start){
+            end = start + 1;
+        }
+        return query(chr2root.get(chr), start, end, visitor, 0, limit);
+    }
+
+    /**
+     * Reports all elements that overlap a genomic element to the visitor, in
+     * the order of their start coordinates.
+     *
+     * @param e query element
+     * @param visitor receives the overlapping elements
+     * @return the number of overlapping elements
+     */
+    public int forEachOverlap(GenomicElement e, IntervalIndex.Visitor<? super T> visitor){
+        return query(e.getChr(), e.getStart(), e.getEnd(), visitor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts the elements that overlap a genomic element.
+     *
+     * @param e query element
+     * @return the number of overlapping elements
+     */
+    public int countOverlaps(GenomicElement e){
+        return query(e.getChr(), e.getStart(), e.getEnd(), null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tests if any element overlaps a genomic element.
+     *
+     * @param e query element
+     * @return true if at least one element overlaps {@code e}
+     */
+    public boolean hasOverlap(GenomicElement e){
+        return query(e.getChr(), e.getStart(), e.getEnd(), null, 1) > 0;
+    }
+
+    private static <T> void addInOrder(Node<T> n, ArrayList<T> elements){
+        if (n != null){
+            addInOrder(n.left, elements);
+            elements.add(n.element);
+            addInOrder(n.right, elements);
+        }
+    }
+
+    /**
+     * Returns the elements of a chromosome sorted by start, end and key.
+     *
+     * @param chr the chromosome
+     * @return a new list of the elements on {@code chr}
+     */
+    public List<T> getElements(String chr){
+        Node<T> root = chr2root.get(chr);
+        if (root == null){
+            return Collections.emptyList();
+        }
+        ArrayList<T> elements = new ArrayList<>();
+        addInOrder(root, elements);
+        return elements;
+    }
+
+    /**
+     * Height of the tree of a chromosome.
+     *
+     * @param chr the chromosome
+     * @return the height or 0 if there is no element on {@code chr}
+     */
+    int getHeight(String chr){
+        return height(chr2root.get(chr));
+    }
+
+    /**
+     * Number of elements.
+     * @return the number of elements
+     */
+    public int size(){
+        return size;
+    }
+}
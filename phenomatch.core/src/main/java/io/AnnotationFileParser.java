@@ -0,0 +1,211 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ontologizer.go.Ontology;
+import ontologizer.go.Term;
+
+/**
+ * Reads the annotation files provided by the HPO or Uberpheno project in a
+ * single pass.
+ * The format is detected once from the header line. The records are then
+ * parsed by a {@link ChunkedTabLoader} into the mapping of genes to
+ * phenotype terms and the mapping of Entrez gene IDs to gene symbols, so the
+ * file is read only once for the {@link phenotypeontology.PhenotypeData} and
+ * the gene symbols.
+ * <br><br>
+ * Supported formats are the Uberpheno file
+ * "HSgenes_crossSpeciesPhenoAnnotation.txt", the HPO file
+ * "ALL_SOURCES_TYPICAL_FEATURES_genes_to_phenotype.txt" and the updated HPO
+ * "genes_to_phenotype.txt" format since 2019.
+ */
+public class AnnotationFileParser {
+
+    /**
+     * Formats of annotation files.
+     */
+    public enum Format {
+        /** Uberpheno annotations separated by semicolon ';' */
+        UBERPHENO,
+        /** HPO annotations with term name in column 3 and ID in column 4 */
+        HPO,
+        /** HPO annotations since 2019 with term ID in column 3 */
+        HPOA
+    }
+
+    private static final Pattern SEMICOLON = Pattern.compile(";");
+    private static final Pattern UPHENO_TERM_ID = Pattern.compile("\\(([HZM]P:\\d{7})\\)$");
+
+    /** {@link Path} to the file that is read by this parser */
+    private final Path path;
+
+    /** Number of threads that read the file. */
+    private final int threads;
+
+    private HashMap<String, HashSet<Term>> gene2Terms;
+    private HashMap<String, String> entrezToSymbol;
+
+    /**
+     * Per chunk mappings of the annotation file.
+     */
+    private static class Chunk {
+        private final HashMap<String, HashSet<Term>> gene2Terms = new HashMap<String, HashSet<Term>>();
+        private final HashMap<String, String> entrezToSymbol = new HashMap<String, String>();
+    }
+
+    /**
+     * Construct a parser for an annotation file.
+     *
+     * @param annotationFile path to the annotation file
+     * @param threads number of threads that read the file
+     */
+    public AnnotationFileParser(String annotationFile, int threads){
+        this.path = Paths.get(annotationFile);
+        this.threads = threads;
+    }
+
+    /**
+     * Detects the format of an annotation file from its first line.
+     *
+     * @param firstLine the header line of the file
+     * @return the format
+     * @throws IOException if the format is not supported
+     */
+    public static Format detectFormat(String firstLine) throws IOException{
+
+        if (firstLine == null){
+            throw new IOException("[ERROR] Can't handle annotation-file format!");
+        }
+        if (firstLine.startsWith("#Entrez Gene ID of human gene ; Gene symbol ; Annotated Uberpheno")) {
+            return Format.UBERPHENO;
+        } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-Name<tab>HPO-Ter")) {
+            return Format.HPO;
+        } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-ID<tab>HPO-Term-Name<tab>Frequency-Raw<tab>Frequency-HPO")) {
+            return Format.HPOA;
+        }
+        throw new IOException("[ERROR] Can't handle annotation-file format!");
+    }
+
+    /**
+     * Reads the annotation file. Terms are looked up in the ontology,
+     * annotations to unknown terms are reported and skipped. Without an
+     * ontology only the gene symbols are read.
+     *
+     * @param ontology the phenotype ontology or {@code null}
+     * @throws IOException if the file cannot be read or has an unknown format
+     */
+    public void parse(final Ontology ontology) throws IOException{
+
+        final Format format;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(CompressedInput.open(path), StandardCharsets.UTF_8))){
+            format = detectFormat(in.readLine());
+        }
+
+        // comment lines starting with "#" are skipped by the reader
+        List<Chunk> chunks = ChunkedTabLoader.load(path, threads, new ChunkedTabLoader.ChunkParser<Chunk>(){
+
+            @Override
+            public Chunk newResult() {
+                return new Chunk();
+            }
+
+            @Override
+            public void parse(TabRecordReader record, Chunk chunk) {
+
+                String entrezId;
+                String symbol;
+                String annotatedTermId = null;
+
+                if (format == Format.UBERPHENO){
+                    String line = record.getLine();
+                    String [] split = SEMICOLON.split(line);
+                    entrezId = split[0];
+                    symbol = split[1];
+                    if (ontology != null){
+                        Matcher matcher = UPHENO_TERM_ID.matcher(split[2]);
+                        if (!matcher.find()) {
+                            System.out.println("pattern not matched in: " + line);
+                        }
+                        annotatedTermId = matcher.group(1);
+                    }
+                }else{
+                    entrezId = record.getString(0);
+                    symbol = record.getString(1);
+                    if (ontology != null){
+                        annotatedTermId = record.getString(format == Format.HPO ? 3 : 2);
+                    }
+                }
+
+                // add IDs to mapping
+                chunk.entrezToSymbol.put(entrezId, symbol);
+
+                if (ontology == null){
+                    return;
+                }
+
+                Term t = ontology.getTermIncludingAlternatives(annotatedTermId);
+                if (t == null) {
+                    System.err.println("Could not find term for ID:" + annotatedTermId + " parsed from line: " + record.getLine());
+                    return;
+                }
+
+                HashSet<Term> annotationsOfGene = chunk.gene2Terms.get(entrezId);
+                if (annotationsOfGene == null) {
+                    annotationsOfGene = new HashSet<Term>();
+                    chunk.gene2Terms.put(entrezId, annotationsOfGene);
+                }
+                annotationsOfGene.add(t);
+            }
+        });
+
+        // merge the mappings of all chunks in the order of the file
+        gene2Terms = new HashMap<String, HashSet<Term>>();
+        entrezToSymbol = new HashMap<String, String>();
+        for (Chunk chunk : chunks){
+            for (String entrezId : chunk.gene2Terms.keySet()){
+                HashSet<Term> annotationsOfGene = gene2Terms.get(entrezId);
+                if (annotationsOfGene == null){
+                    gene2Terms.put(entrezId, chunk.gene2Terms.get(entrezId));
+                }else{
+                    annotationsOfGene.addAll(chunk.gene2Terms.get(entrezId));
+                }
+            }
+            entrezToSymbol.putAll(chunk.entrezToSymbol);
+        }
+    }
+
+    /**
+     * Mapping from Entrez gene IDs to the set of annotated phenotype terms.
+     * This is empty if the file was parsed without an ontology.
+     *
+     * @return the mapping or {@code null} if the file was not parsed
+     */
+    public HashMap<String, HashSet<Term>> getGene2Terms() {
+        return gene2Terms;
+    }
+
+    /**
+     * Mapping from Entrez gene IDs to gene symbols.
+     * Only available after {@link #parse(Ontology)}.
+     *
+     * @return the mapping or {@code null} if the file was not parsed
+     */
+    public HashMap<String, String> getEntrezToSymbol() {
+        return entrezToSymbol;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes lines to a file on a dedicated writer thread.
+ * Lines are handed over in batches through a bounded queue. The producer
+ * only blocks if the queue is full, i.e. if the disk is slower than the
+ * producer, so the memory used for pending output is bounded by the queue
+ * capacity. The file can optionally be compressed with gzip.
+ * <br><br>
+ * Errors of the writer thread are reported by the next call of
+ * {@link #writeLines(List)} or by {@link #close()}.
+ */
+public class AsyncLineWriter implements Closeable {
+
+    /** Size of the output buffers in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Marks the end of the input for the writer thread. */
+    private static final List<String> END = new ArrayList<>();
+
+    /** Batches of lines that are not written yet. */
+    private final BlockingQueue<List<String>> queue;
+
+    /** The thread that writes all lines. */
+    private final Thread writerThread;
+
+    /** First error of the writer thread. */
+    private volatile IOException failure;
+
+    private boolean closed = false;
+
+    /**
+     * Opens a new output file and starts the writer thread.
+     *
+     * @param path path to the output file
+     * @param gzip if true the output is compressed with gzip
+     * @param capacity maximal number of batches in the queue
+     * @throws IOException if the file cannot be opened
+     */
+    public AsyncLineWriter(String path, boolean gzip, int capacity) throws IOException{
+
+        OutputStream out = new FileOutputStream(path);
+        out = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : new BufferedOutputStream(out, BUFFER_SIZE);
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writerThread = new Thread(new Runnable(){
+            @Override
+            public void run() {
+                writeAll(writer);
+            }
+        }, "AsyncLineWriter " + path);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Loop of the writer thread. After an error, all further batches are
+     * discarded so that the producer never blocks.
+     */
+    private void writeAll(Writer writer){
+
+        try{
+            List<String> batch;
+            while ((batch = queue.take()) != END){
+                if (failure != null){
+                    continue;
+                }
+                try{
+                    for (String line : batch){
+                        writer.write(line);
+                        writer.write(System.lineSeparator());
+                    }
+                }catch (IOException e){
+                    failure = e;
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            failure = new IOException("[ERROR] Writer thread was interrupted.", e);
+        }finally{
+            try{
+                writer.close();
+            }catch (IOException e){
+                if (failure == null){
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands over a batch of lines to the writer thread. The list must not be
+     * modified afterwards.
+     *
+     * @param lines lines to write
+     * @throws IOException if the writer thread failed before
+     */
+    public void writeLines(List<String> lines) throws IOException{
+
+        if (closed){
+            throw new IOException("[ERROR] Writer is already closed.");
+        }
+        checkFailure();
+        if (lines.isEmpty()){
+            return;
+        }
+        try{
+            queue.put(lines);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("[ERROR] Interrupted while writing output.", e);
+        }
+    }
+
+    /**
+     * Writes all pending lines, closes the file and stops the writer thread.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException{
+
+        if (closed){
+            return;
+        }
+        closed = true;
+        try{
+            queue.put(END);
+            writerThread.join();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("[ERROR] Interrupted while closing output.", e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException{
+        if (failure != null){
+            throw new IOException("[ERROR] Failed to write output: " + failure.getMessage(), failure);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Index of a sorted BED like file for region restricted loading, similar to a
+ * tabix index. For each chromosome the index stores the byte range of its
+ * records and a linear index of 16 kb bins: the offset of the first record
+ * that overlaps each bin. The records overlapping a region are read by seeking
+ * to the bin of the region start and reading until a record starts after the
+ * region end.
+ * <br><br>
+ * The index can be stored in an index directory with the file name of the
+ * input file and the suffix {@value #SUFFIX}. A stored index is reused and
+ * rebuilt if the size or modification time of the input file changed. Only
+ * uncompressed files can be indexed. If the records are not sorted by start
+ * within contiguous chromosome blocks, the index only records that the file
+ * is unsorted, see {@link #isSorted()}.
+ */
+public class BedIndex {
+
+    /** Suffix of index files. */
+    public static final String SUFFIX = ".pmi";
+
+    /** Magic number at the beginning of each index file ("PMI1"). */
+    public static final int MAGIC = 0x504d4931;
+
+    /** Version of the index format. */
+    public static final int VERSION = 1;
+
+    /** Bins of the linear index have a size of {@code 2^BIN_SHIFT} bp. */
+    static final int BIN_SHIFT = 14;
+
+    /** Size and modification time of the indexed file. */
+    private final long fileSize;
+    private final long lastModified;
+
+    private final boolean sorted;
+
+    /** Indicates that all records have a unique ID in the fourth column. */
+    private final boolean uniqueIDs;
+
+    private final HashMap<String, Chromosome> chromosomes;
+
+    /**
+     * Records of a chromosome.
+     */
+    private static class Chromosome {
+
+        /** Offset after the last record of the chromosome. */
+        private final long end;
+
+        /** Offset of the first record that overlaps each bin or any later bin. */
+        private final long [] bins;
+
+        Chromosome(long end, long [] bins){
+            this.end = end;
+            this.bins = bins;
+        }
+    }
+
+    private BedIndex(long fileSize, long lastModified, boolean sorted, boolean uniqueIDs,
+            HashMap<String, Chromosome> chromosomes){
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.sorted = sorted;
+        this.uniqueIDs = uniqueIDs;
+        this.chromosomes = chromosomes;
+    }
+
+    /**
+     * Path of the index of a file in an index directory.
+     *
+     * @param path the indexed file
+     * @param indexDir the index directory
+     * @return the file name of {@code path} with the suffix {@value #SUFFIX}
+     * in {@code indexDir}
+     */
+    public static Path indexPath(Path path, Path indexDir){
+        return indexDir.resolve(path.getFileName().toString() + SUFFIX);
+    }
+
+    /**
+     * Returns the index of a file. Without index directory the index is built
+     * and only kept in memory. Otherwise an existing index in the directory
+     * is reused if it matches the file, or the index is built and written to
+     * the directory. If the index cannot be written, e.g. in a read-only
+     * directory, it is only kept in memory.
+     *
+     * @param path the input file
+     * @param indexDir the index directory or {@code null}
+     * @return the index or {@code null} if the file is compressed
+     * @throws IOException if the file cannot be read
+     */
+    public static BedIndex load(Path path, Path indexDir) throws IOException{
+
+        if (indexDir == null){
+            return build(path);
+        }
+
+        Path indexPath = indexPath(path, indexDir);
+        long fileSize = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        if (Files.exists(indexPath)){
+            BedIndex index = read(indexPath);
+            if (index != null && index.fileSize == fileSize && index.lastModified == lastModified){
+                return index;
+            }
+        }
+
+        BedIndex index = build(path);
+        if (index != null){
+            try{
+                Files.createDirectories(indexDir);
+                index.write(indexPath);
+                System.out.println("[INFO] Wrote index of file '" + path + "' to '" + indexPath + "'.");
+            }catch (IOException e){
+                System.out.println("[INFO] Could not write index file '" + indexPath 
+                        + "'. The index is only kept in memory.");
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of a file by reading all records.
+     *
+     * @param path the input file
+     * @return the index or {@code null} if the file is compressed
+     * @throws IOException if the file cannot be read
+     */
+    public static BedIndex build(Path path) throws IOException{
+
+        long fileSize = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if (CompressedInput.isGzip(channel)){
+                return null;
+            }
+        }
+
+        HashMap<String, Chromosome> chromosomes = new HashMap<String, Chromosome>();
+        HashSet<String> ids = new HashSet<String>();
+        boolean uniqueIDs = true;
+
+        String chr = null;
+        int lastStart = Integer.MIN_VALUE;
+        long [] bins = new long[0];
+        int nBins = 0;
+
+        try (TabRecordReader record = new TabRecordReader(Files.newInputStream(path))){
+            while (record.next()){
+
+                long offset = record.getLineOffset();
+                int start;
+                int end;
+                try{
+                    start = record.getInt(1);
+                    end = record.getInt(2);
+                }catch (IndexOutOfBoundsException | NumberFormatException e){
+                    // invalid records are reported when the file is parsed
+                    return unsorted(fileSize, lastModified);
+                }
+
+                if (!record.getChr(0).equals(chr)){
+                    if (chr != null){
+                        chromosomes.put(chr, new Chromosome(offset, fillBins(bins, nBins, offset)));
+                    }
+                    chr = record.getChr(0);
+                    // records of a chromosome have to be contiguous
+                    if (chromosomes.containsKey(chr)){
+                        return unsorted(fileSize, lastModified);
+                    }
+                    lastStart = Integer.MIN_VALUE;
+                    bins = new long[1024];
+                    Arrays.fill(bins, -1);
+                    nBins = 0;
+                }
+                if (start < lastStart){
+                    return unsorted(fileSize, lastModified);
+                }
+                lastStart = start;
+
+                if (record.getColumnCount() < 4 || !ids.add(record.getString(3))){
+                    uniqueIDs = false;
+                }
+
+                // an empty record overlaps queries around its start
+                int first = Math.max(start, 0) >> BIN_SHIFT;
+                int last = Math.max(Math.max(end, start + 1) - 1, 0) >> BIN_SHIFT;
+                if (last >= bins.length){
+                    int n = bins.length;
+                    bins = Arrays.copyOf(bins, Math.max(2 * n, last + 1));
+                    Arrays.fill(bins, n, bins.length, -1);
+                }
+                for (int b = first; b <= last; b++){
+                    if (bins[b] < 0){
+                        bins[b] = offset;
+                    }
+                }
+                nBins = Math.max(nBins, last + 1);
+            }
+        }
+        if (chr != null){
+            chromosomes.put(chr, new Chromosome(fileSize, fillBins(bins, nBins, fileSize)));
+        }
+        return new BedIndex(fileSize, lastModified, true, uniqueIDs, chromosomes);
+    }
+
+    private static BedIndex unsorted(long fileSize, long lastModified){
+        return new BedIndex(fileSize, lastModified, false, false, new HashMap<String, Chromosome>());
+    }
+
+    /**
+     * Sets each bin that is not overlapped by any record to the offset of the
+     * next overlapped bin, since a query starting in an empty bin can only
+     * overlap records of later bins.
+     */
+    private static long [] fillBins(long [] bins, int nBins, long end){
+        long [] filled = Arrays.copyOf(bins, nBins);
+        long next = end;
+        for (int b = nBins - 1; b >= 0; b--){
+            if (filled[b] < 0){
+                filled[b] = next;
+            }
+            next = filled[b];
+        }
+        return filled;
+    }
+
+    /**
+     * Writes the index to a file.
+     *
+     * @param indexPath the output file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path indexPath) throws IOException{
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(indexPath)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeBoolean(sorted);
+            out.writeBoolean(uniqueIDs);
+            out.writeInt(chromosomes.size());
+            for (Map.Entry<String, Chromosome> e : chromosomes.entrySet()){
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().end);
+                out.writeInt(e.getValue().bins.length);
+                for (long offset : e.getValue().bins){
+                    out.writeLong(offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param indexPath the index file
+     * @return the index or {@code null} if the file is no valid index
+     */
+    public static BedIndex read(Path indexPath){
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexPath)))){
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                return null;
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            boolean sorted = in.readBoolean();
+            boolean uniqueIDs = in.readBoolean();
+            int n = in.readInt();
+            HashMap<String, Chromosome> chromosomes = new HashMap<String, Chromosome>();
+            for (int i = 0; i < n; i++){
+                String chr = in.readUTF();
+                long end = in.readLong();
+                long [] bins = new long[in.readInt()];
+                for (int b = 0; b < bins.length; b++){
+                    bins[b] = in.readLong();
+                }
+                chromosomes.put(chr, new Chromosome(end, bins));
+            }
+            return new BedIndex(fileSize, lastModified, sorted, uniqueIDs, chromosomes);
+        }catch (IOException e){
+            // a truncated or otherwise broken index is rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Indicates if the records are sorted by start within contiguous blocks
+     * of chromosomes. Only sorted files can be queried with
+     * {@link #getRange(String, int)}.
+     *
+     * @return true if the file is sorted
+     */
+    public boolean isSorted(){
+        return sorted;
+    }
+
+    /**
+     * Indicates if all records have a unique ID in the fourth column.
+     *
+     * @return true if the IDs are unique
+     */
+    public boolean hasUniqueIDs(){
+        return uniqueIDs;
+    }
+
+    /**
+     * Returns the byte range to read for a query starting at a position.
+     * The range starts at or before the first record that overlaps any query
+     * starting at {@code start} and ends after the last record of the
+     * chromosome. Records have to be read until a record starts after the end
+     * of the query.
+     *
+     * @param chr chromosome of the query
+     * @param start start of the query
+     * @return the start and end offset of the range or {@code null} if no
+     * record of the chromosome ends after {@code start}
+     */
+    public long [] getRange(String chr, int start){
+
+        Chromosome c = chromosomes.get(chr);
+        int bin = Math.max(start, 0) >> BIN_SHIFT;
+        if (c == null || bin >= c.bins.length){
+            return null;
+        }
+        return new long[]{c.bins[bin], c.end};
+    }
+}
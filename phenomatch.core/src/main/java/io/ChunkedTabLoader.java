@@ -0,0 +1,456 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads large TAB separated files in parallel.
+ * The file is split into chunks that start and end at line breaks. Each
+ * chunk is memory-mapped and parsed by a {@link TabRecordReader} on its own
+ * thread into a separate result object, so the threads share no mutable
+ * state. The results are returned in the order of the chunks in the file and
+ * can be merged by the caller.
+ * <br><br>
+ * Chunks are at least {@link #MIN_CHUNK_SIZE} bytes long, so small files are
+ * parsed as a single chunk on the calling thread. Files compressed with gzip
+ * are decompressed while reading; BGZF files are split into chunks of
+ * compressed blocks that are decompressed in parallel.
+ */
+public class ChunkedTabLoader {
+
+    /** Minimal size of a chunk in bytes. */
+    public static final long MIN_CHUNK_SIZE = 1L << 22;
+
+    /** Maximal size of a chunk in bytes, limited by the size of a mapping. */
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    /** Number of chunks per thread, to balance the load of the threads. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Size of the blocks that are read to find line breaks. */
+    private static final int SCAN_SIZE = 1 << 16;
+
+    /**
+     * Parses the records of a chunk into a result.
+     *
+     * @param <R> type of the result of each chunk
+     */
+    public interface ChunkParser<R> {
+
+        /**
+         * Creates an empty result for a chunk.
+         *
+         * @return new result object
+         */
+        R newResult();
+
+        /**
+         * Parses the current record of a chunk.
+         *
+         * @param record the reader positioned at the record
+         * @param result the result of the chunk
+         * @throws IOException if the record cannot be parsed
+         */
+        void parse(TabRecordReader record, R result) throws IOException;
+    }
+
+    /**
+     * Reads the bytes of a mapped chunk.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) {
+            if (len == 0){
+                return 0;
+            }
+            if (!buffer.hasRemaining()){
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+
+    private ChunkedTabLoader(){
+    }
+
+    /**
+     * Finds the first line start at or after a position.
+     *
+     * @return the position after the next line break before {@code pos} or
+     * the size of the file
+     */
+    private static long nextLineStart(FileChannel channel, long pos, long size) throws IOException{
+
+        if (pos == 0){
+            return 0;
+        }
+        // the line starts at pos if the previous byte is a line break
+        pos--;
+        ByteBuffer block = ByteBuffer.allocate(SCAN_SIZE);
+        while (pos < size){
+            block.clear();
+            int n = channel.read(block, pos);
+            if (n <= 0){
+                break;
+            }
+            for (int i = 0; i < n; i++){
+                if (block.get(i) == '\n'){
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Size of chunks to give each thread several chunks.
+     */
+    private static long chunkSize(long size, int threads){
+        return (size + CHUNKS_PER_THREAD * threads - 1) / (CHUNKS_PER_THREAD * threads);
+    }
+
+    /**
+     * Computes the boundaries of all chunks of a file.
+     *
+     * @return start positions of all chunks followed by the file size
+     */
+    private static List<Long> chunkBoundaries(FileChannel channel, int threads, long minChunkSize) throws IOException{
+
+        long size = channel.size();
+        long chunkSize = Math.min(Math.max(chunkSize(size, threads), minChunkSize), MAX_CHUNK_SIZE);
+
+        ArrayList<Long> boundaries = new ArrayList<>();
+        long start = 0;
+        while (start < size){
+            boundaries.add(start);
+            long end = nextLineStart(channel, Math.min(start + chunkSize, size), size);
+            if (end - start > Integer.MAX_VALUE){
+                throw new IOException(String.format(
+                        "[ERROR] Line longer than %d bytes in file.", Integer.MAX_VALUE));
+            }
+            start = end;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    /**
+     * Decompresses the lines of a chunk of BGZF blocks.
+     * Each chunk owns the lines that start in its blocks. A partial line at
+     * the start of a chunk is skipped and the last line of a chunk is
+     * completed from the following blocks.
+     */
+    private static class BlockChunkStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long [] blocks;
+        private final int from;
+        private final long end;
+        private final long size;
+
+        /** Decompressed blocks of the chunk. */
+        private final InputStream own;
+
+        /** Decompressed blocks after the chunk, opened on demand. */
+        private InputStream rest = null;
+
+        /** 0: skip partial line, 1: own blocks, 2: complete last line, 3: end */
+        private int phase = 0;
+
+        /** Indicates that the chunk contained any byte of an owned line. */
+        private boolean owned = false;
+        private int last = -1;
+
+        /**
+         * @param blocks offsets of all blocks followed by the file size
+         * @param from index of the first block of the chunk
+         * @param to index of the first block after the chunk
+         */
+        BlockChunkStream(FileChannel channel, long [] blocks, int from, int to) throws IOException{
+            this.channel = channel;
+            this.blocks = blocks;
+            this.from = from;
+            this.end = blocks[to];
+            this.size = blocks[blocks.length - 1];
+            this.own = new BufferedInputStream(
+                    CompressedInput.openGzipRange(channel, blocks[from], end), SCAN_SIZE);
+        }
+
+        /**
+         * Tests if the uncompressed data before the chunk ends with a line
+         * break, i.e. if the chunk starts with a new line.
+         */
+        private boolean startsWithLine() throws IOException{
+            for (int k = from - 1; k >= 0; k--){
+                int lastByte = -1;
+                try (InputStream block = CompressedInput.openGzipRange(channel, blocks[k], blocks[k + 1])){
+                    byte [] buf = new byte[SCAN_SIZE];
+                    int n;
+                    while ((n = block.read(buf)) >= 0){
+                        if (n > 0){
+                            lastByte = buf[n - 1] & 0xff;
+                        }
+                    }
+                }
+                // skip empty blocks
+                if (lastByte >= 0){
+                    return lastByte == '\n';
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte [] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+
+            if (len == 0){
+                return 0;
+            }
+            while (true){
+                if (phase == 0){
+                    phase = 1;
+                    if (!startsWithLine()){
+                        int c = own.read();
+                        while (c >= 0 && c != '\n'){
+                            c = own.read();
+                        }
+                        if (c < 0){
+                            phase = 3;
+                        }
+                    }
+                }else if (phase == 1){
+                    int n = own.read(b, off, len);
+                    if (n > 0){
+                        owned = true;
+                        last = b[off + n - 1];
+                        return n;
+                    }
+                    phase = owned && last != '\n' && end < size ? 2 : 3;
+                }else if (phase == 2){
+                    if (rest == null){
+                        rest = new BufferedInputStream(CompressedInput.openGzipRange(channel, end, size), SCAN_SIZE);
+                    }
+                    int n = 0;
+                    while (n < len){
+                        int c = rest.read();
+                        if (c < 0 || c == '\n'){
+                            phase = 3;
+                        }
+                        if (c < 0){
+                            break;
+                        }
+                        b[off + n++] = (byte) c;
+                        if (c == '\n'){
+                            break;
+                        }
+                    }
+                    if (n > 0){
+                        return n;
+                    }
+                }else{
+                    return -1;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            own.close();
+            if (rest != null){
+                rest.close();
+            }
+        }
+    }
+
+    /**
+     * Parses all records of a stream.
+     */
+    private static <R> R parseStream(InputStream in, ChunkParser<R> parser) throws IOException{
+
+        R result = parser.newResult();
+        try (TabRecordReader record = new TabRecordReader(in)){
+            while (record.next()){
+                parser.parse(record, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps and parses a single chunk.
+     */
+    private static <R> R parseChunk(FileChannel channel, long start, long end,
+            ChunkParser<R> parser) throws IOException{
+
+        ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        return parseStream(new ByteBufferInputStream(chunk), parser);
+    }
+
+    /**
+     * Runs the tasks of all chunks on a thread pool.
+     *
+     * @return the results of the tasks in the order of the tasks
+     */
+    private static <R> List<R> run(List<Callable<R>> tasks, int threads, Path path) throws IOException{
+
+        ArrayList<R> results = new ArrayList<>();
+
+        if (threads <= 1 || tasks.size() <= 1){
+            for (Callable<R> task : tasks){
+                try{
+                    results.add(task.call());
+                }catch (IOException | RuntimeException e){
+                    throw e;
+                }catch (Exception e){
+                    throw new IOException("[ERROR] while reading file '" + path + "': " + e, e);
+                }
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try{
+            ArrayList<Future<R>> futures = new ArrayList<>();
+            for (Callable<R> task : tasks){
+                futures.add(pool.submit(task));
+            }
+            for (Future<R> f : futures){
+                results.add(f.get());
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("[ERROR] Reading of file '" + path + "' was interrupted.", e);
+        }catch (ExecutionException e){
+            if (e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("[ERROR] while reading file '" + path + "': " + e.getCause(), e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Parses all records of a file.
+     * Files compressed with gzip are decompressed. BGZF files are split into
+     * chunks of blocks that are decompressed and parsed in parallel, other
+     * gzip files are read by a single thread.
+     *
+     * @param <R> type of the result of each chunk
+     * @param path the input file
+     * @param threads number of threads that parse chunks in parallel
+     * @param parser parses the records of a chunk into a result
+     * @return the results of all chunks in the order of the file
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static <R> List<R> load(Path path, int threads, ChunkParser<R> parser) throws IOException{
+        return load(path, threads, MIN_CHUNK_SIZE, parser);
+    }
+
+    /**
+     * Parses all records of a file with a given minimal chunk size.
+     *
+     * @see #load(Path, int, ChunkParser)
+     */
+    static <R> List<R> load(Path path, int threads, long minChunkSize,
+            final ChunkParser<R> parser) throws IOException{
+
+        ArrayList<Callable<R>> tasks = new ArrayList<>();
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+
+            if (CompressedInput.isGzip(channel)){
+
+                final long size = channel.size();
+                long [] blocks = threads > 1 ? CompressedInput.bgzfBlockOffsets(channel) : null;
+
+                if (blocks == null){
+                    tasks.add(new Callable<R>(){
+                        @Override
+                        public R call() throws IOException {
+                            return parseStream(CompressedInput.openGzipRange(channel, 0, size), parser);
+                        }
+                    });
+                    return run(tasks, 1, path);
+                }
+
+                // group consecutive blocks into chunks
+                long chunkSize = Math.max(chunkSize(size, threads), minChunkSize);
+                int from = 0;
+                while (from < blocks.length - 1){
+                    int to = from + 1;
+                    while (to < blocks.length - 1 && blocks[to] - blocks[from] < chunkSize){
+                        to++;
+                    }
+                    final long [] offsets = blocks;
+                    final int first = from;
+                    final int next = to;
+                    tasks.add(new Callable<R>(){
+                        @Override
+                        public R call() throws IOException {
+                            return parseStream(new BlockChunkStream(channel, offsets, first, next), parser);
+                        }
+                    });
+                    from = to;
+                }
+                return run(tasks, threads, path);
+            }
+
+            List<Long> boundaries = chunkBoundaries(channel, Math.max(threads, 1), minChunkSize);
+            for (int c = 0; c < boundaries.size() - 1; c++){
+                final long start = boundaries.get(c);
+                final long end = boundaries.get(c + 1);
+                tasks.add(new Callable<R>(){
+                    @Override
+                    public R call() throws IOException {
+                        return parseChunk(channel, start, end, parser);
+                    }
+                });
+            }
+            return run(tasks, threads, path);
+        }
+    }
+}
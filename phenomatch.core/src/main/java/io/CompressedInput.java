@@ -0,0 +1,224 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens input files that are optionally compressed with gzip or bgzip.
+ * Compression is detected from the first bytes of a file, independent of the
+ * file name. BGZF files (as written by bgzip) consist of independent gzip
+ * blocks of at most 64 kB. Their block offsets can be listed with
+ * {@link #bgzfBlockOffsets(FileChannel)} to decompress ranges of blocks in
+ * parallel.
+ */
+public class CompressedInput {
+
+    /** Size of the input buffers in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CompressedInput(){
+    }
+
+    /**
+     * Reads a byte range of a file with positional reads, so several streams
+     * can read the same channel concurrently.
+     */
+    private static class ChannelRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long pos;
+        private final long end;
+
+        ChannelRangeInputStream(FileChannel channel, long start, long end){
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte [] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+            if (len == 0){
+                return 0;
+            }
+            if (pos >= end){
+                return -1;
+            }
+            len = (int) Math.min(len, end - pos);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), pos);
+            if (n <= 0){
+                return -1;
+            }
+            pos += n;
+            return n;
+        }
+
+        /**
+         * The remaining bytes of the range. {@link GZIPInputStream} uses this
+         * to detect further gzip members after the end of a member.
+         */
+        @Override
+        public int available() {
+            return (int) Math.min(end - pos, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Tests if a file starts with the gzip magic bytes.
+     *
+     * @param channel the input file
+     * @return true if the file is compressed with gzip or bgzip
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isGzip(FileChannel channel) throws IOException{
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        channel.read(magic, 0);
+        return magic.position() == 2
+                && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b;
+    }
+
+    /**
+     * Fills a buffer from a position of a file.
+     *
+     * @return false if the file ends before the buffer is full
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException{
+        while (buffer.hasRemaining()){
+            if (channel.read(buffer, pos + buffer.position()) <= 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the size of the BGZF block at a position from the 'BC' extra
+     * field of its gzip header.
+     *
+     * @return the total size of the block or -1 if there is no BGZF block
+     */
+    private static int bgzfBlockSize(FileChannel channel, long pos) throws IOException{
+
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        // magic bytes, deflate compression and extra field flag
+        if (!readFully(channel, header, pos) || (header.get(0) & 0xff) != 0x1f || (header.get(1) & 0xff) != 0x8b
+                || header.get(2) != 8 || (header.get(3) & 4) == 0){
+            return -1;
+        }
+
+        int xlen = header.getShort(10) & 0xffff;
+        ByteBuffer extra = ByteBuffer.allocate(xlen).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(channel, extra, pos + 12)){
+            return -1;
+        }
+
+        // find the 'BC' subfield with the block size
+        int i = 0;
+        while (i + 4 <= xlen){
+            int slen = extra.getShort(i + 2) & 0xffff;
+            if (extra.get(i) == 'B' && extra.get(i + 1) == 'C' && slen == 2 && i + 6 <= xlen){
+                return (extra.getShort(i + 4) & 0xffff) + 1;
+            }
+            i += 4 + slen;
+        }
+        return -1;
+    }
+
+    /**
+     * Lists the offsets of all blocks of a BGZF file.
+     *
+     * @param channel the input file
+     * @return the offsets of all blocks followed by the file size or
+     * {@code null} if the file is not in BGZF format
+     * @throws IOException if the file cannot be read
+     */
+    public static long [] bgzfBlockOffsets(FileChannel channel) throws IOException{
+
+        long size = channel.size();
+        long [] offsets = new long[1024];
+        int n = 0;
+        long pos = 0;
+        while (pos < size){
+            int blockSize = bgzfBlockSize(channel, pos);
+            if (blockSize < 0){
+                return null;
+            }
+            if (n + 1 >= offsets.length){
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[n++] = pos;
+            pos += blockSize;
+        }
+        if (n == 0 || pos != size){
+            return null;
+        }
+        offsets[n++] = size;
+        return Arrays.copyOf(offsets, n);
+    }
+
+    /**
+     * Opens a stream that decompresses a range of a gzip file. The range has
+     * to start at the beginning of a gzip member and can contain several
+     * members, like consecutive blocks of a BGZF file.
+     *
+     * @param channel the input file
+     * @param start offset of the first gzip member
+     * @param end end of the range
+     * @return the decompressed content of the range
+     * @throws IOException if the range cannot be read
+     */
+    public static InputStream openGzipRange(FileChannel channel, long start, long end) throws IOException{
+        return new GZIPInputStream(new ChannelRangeInputStream(channel, start, end), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a stream that reads a byte range of an uncompressed file, e.g.
+     * the records of an indexed region.
+     *
+     * @param channel the input file
+     * @param start offset of the first byte
+     * @param end end of the range
+     * @return the content of the range
+     */
+    public static InputStream openRange(FileChannel channel, long start, long end){
+        return new ChannelRangeInputStream(channel, start, end);
+    }
+
+    /**
+     * Opens a file for reading and decompresses it if it is compressed with
+     * gzip or bgzip.
+     *
+     * @param path the input file
+     * @return the uncompressed content of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(Path path) throws IOException{
+
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        boolean gzip;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            gzip = isGzip(channel);
+        }
+        return gzip ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+}
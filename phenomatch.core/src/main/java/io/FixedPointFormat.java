@@ -0,0 +1,137 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+/**
+ * Formats numbers with three fraction digits like {@link java.text.DecimalFormat}
+ * with the pattern "0.000" and '.' as decimal separator, but writes the ASCII
+ * characters directly into a byte array. No object is allocated and there is
+ * no shared state, so the methods can be called from any thread.
+ * <br><br>
+ * {@link java.text.DecimalFormat} rounds the shortest decimal representation
+ * of a double (see {@link Double#toString(double)}) half-even. This class
+ * rounds the exact binary value instead, which gives the same result unless a
+ * tie like 1.0005 is closer to the number than half the distance to the
+ * neighbouring doubles. Such numbers, numbers with a magnitude of 2^43 or more
+ * and numbers that are not finite are not handled and must be formatted with
+ * {@link java.text.DecimalFormat}. Like in {@link java.text.DecimalFormat},
+ * negative numbers that round to zero, including -0.0, keep their sign
+ * ("-0.000").
+ */
+public class FixedPointFormat {
+
+    /** Maximal number of bytes written by {@link #format(double, byte[], int)}. */
+    public static final int MAX_LENGTH = 24;
+
+    /**
+     * Minimal number of fraction bits of handled numbers. Numbers with fewer
+     * fraction bits have a magnitude of 2^43 or more.
+     */
+    private static final int MIN_SHIFT = 10;
+
+    /**
+     * Distance of the scaled value to the next tie, below which the shortest
+     * decimal representation of a double might be rounded differently. Half
+     * the distance to the neighbouring doubles is 500 after scaling by 1000.
+     */
+    private static final long TIE_MARGIN = 1000;
+
+    private FixedPointFormat(){
+    }
+
+    /**
+     * Rounds the magnitude of a number to an integer number of thousandths.
+     * Since numbers close to a tie are not handled, there is no tie to break.
+     *
+     * @return the rounded thousandths or -1 if the number is not handled
+     */
+    static long thousandths(double d){
+
+        long bits = Double.doubleToRawLongBits(d);
+        int exponent = (int) (bits >>> 52 & 0x7ff);
+        long mantissa = bits & 0xfffffffffffffL;
+
+        // NaN or infinite
+        if (exponent == 0x7ff){
+            return -1;
+        }
+        // subnormal numbers have no implicit leading bit
+        if (exponent == 0){
+            exponent = 1;
+        }else{
+            mantissa |= 1L << 52;
+        }
+
+        // |d| = mantissa * 2^-shift
+        int shift = 1075 - exponent;
+
+        if (shift < MIN_SHIFT){
+            return -1;
+        }
+        if (shift >= 64){
+            // less than 0.0005
+            return 0;
+        }
+
+        // mantissa * 1000 < 2^63 since the mantissa has 53 bits
+        long scaled = mantissa * 1000;
+        long rounded = scaled >>> shift;
+        long remainder = scaled & ((1L << shift) - 1);
+        long half = 1L << (shift - 1);
+        if (Math.abs(remainder - half) <= TIE_MARGIN){
+            return -1;
+        }
+        if (remainder > half){
+            rounded++;
+        }
+        return rounded;
+    }
+
+    /**
+     * Writes a number with three fraction digits as ASCII characters.
+     *
+     * @param d the number
+     * @param dst the output array with at least {@link #MAX_LENGTH} bytes after
+     * {@code off}
+     * @param off the index of the first output byte
+     * @return the index after the last written byte or -1 if the number is
+     * not handled and nothing was written
+     */
+    public static int format(double d, byte [] dst, int off){
+
+        long value = thousandths(d);
+        if (value < 0){
+            return -1;
+        }
+
+        int pos = off;
+        // the sign bit is also set for -0.0
+        if (Double.doubleToRawLongBits(d) < 0){
+            dst[pos++] = '-';
+        }
+
+        // integer digits
+        long integer = value / 1000;
+        int digits = 1;
+        for (long t = integer; t >= 10; t /= 10){
+            digits++;
+        }
+        pos += digits;
+        for (int i = 1; i <= digits; i++){
+            dst[pos - i] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        }
+
+        // fraction digits
+        int fraction = (int) (value % 1000);
+        dst[pos++] = '.';
+        dst[pos++] = (byte) ('0' + fraction / 100);
+        dst[pos++] = (byte) ('0' + fraction / 10 % 10);
+        dst[pos++] = (byte) ('0' + fraction % 10);
+        return pos;
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads files of a {@link GeneScoreColumnWriter} block by block. Each block
+ * is memory-mapped and its columns are returned as {@link IntBuffer} or
+ * {@link FloatBuffer} views without copying, so single columns can be scanned
+ * without decoding the other columns. The dictionaries are read when the file
+ * is opened.
+ * <br><br>
+ * Typical use:
+ * <pre>
+ * try (GeneScoreColumnReader in = new GeneScoreColumnReader(path)){
+ *     while (in.nextBlock()){
+ *         FloatBuffer scores = in.getScores();
+ *         for (int row = 0; row &lt; in.getBlockRows(); row++){
+ *             ... scores.get(row) ...
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public class GeneScoreColumnReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final long dictionaryOffset;
+    private final int blocks;
+    private final long rows;
+
+    private final String [] chromosomes;
+    private final String [] terms;
+    private final String [] geneIDs;
+    private final String [] geneSymbols;
+    private final int [] cnvChr;
+    private final int [] cnvStart;
+    private final int [] cnvEnd;
+    private final String [] cnvNames;
+    private final int [][] cnvPhenotypes;
+
+    /** Offset of the next block. */
+    private long nextOffset = 8;
+    private int blockIndex = -1;
+
+    /** Columns of the current block. */
+    private int blockRows = 0;
+    private int blockPairs = 0;
+    private IntBuffer permutation;
+    private IntBuffer cnv;
+    private IntBuffer gene;
+    private FloatBuffer score;
+    private FloatBuffer maxScore;
+    private IntBuffer maxPatientTerm;
+    private IntBuffer maxGeneTerm;
+    private IntBuffer maxCommonTerm;
+    private IntBuffer matchOffset;
+    private IntBuffer matchPatientTerm;
+    private IntBuffer matchGeneTerm;
+    private IntBuffer matchCommonTerm;
+    private FloatBuffer matchScore;
+
+    /**
+     * Opens a file and reads its dictionaries.
+     *
+     * @param path path to the input file
+     * @throws IOException if the file cannot be read or is no valid file
+     */
+    public GeneScoreColumnReader(String path) throws IOException{
+
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try{
+            long size = channel.size();
+            if (size < 8 + GeneScoreColumnWriter.FOOTER_SIZE){
+                throw new IOException("[ERROR] Invalid gene score file: " + path);
+            }
+            ByteBuffer header = read(0, 8);
+            ByteBuffer footer = read(size - GeneScoreColumnWriter.FOOTER_SIZE,
+                    GeneScoreColumnWriter.FOOTER_SIZE);
+            if (header.getInt() != GeneScoreColumnWriter.MAGIC
+                    || footer.getInt(GeneScoreColumnWriter.FOOTER_SIZE - 4) != GeneScoreColumnWriter.MAGIC){
+                throw new IOException("[ERROR] Invalid gene score file: " + path);
+            }
+            int version = header.getInt();
+            if (version != GeneScoreColumnWriter.VERSION){
+                throw new IOException("[ERROR] Unsupported version " + version
+                        + " of gene score file: " + path);
+            }
+            this.dictionaryOffset = footer.getLong();
+            this.blocks = footer.getInt();
+            this.rows = footer.getLong();
+
+            long dictionarySize = size - GeneScoreColumnWriter.FOOTER_SIZE - dictionaryOffset;
+            if (dictionaryOffset < 8 || dictionarySize < 0){
+                throw new IOException("[ERROR] Invalid gene score file: " + path);
+            }
+            ByteBuffer dict = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, dictionarySize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            this.chromosomes = new String[dict.getInt()];
+            for (int i = 0; i < chromosomes.length; i++){
+                chromosomes[i] = getString(dict);
+            }
+            this.terms = new String[dict.getInt()];
+            for (int i = 0; i < terms.length; i++){
+                terms[i] = getString(dict);
+            }
+            int genes = dict.getInt();
+            this.geneIDs = new String[genes];
+            this.geneSymbols = new String[genes];
+            for (int i = 0; i < genes; i++){
+                geneIDs[i] = getString(dict);
+                geneSymbols[i] = getString(dict);
+            }
+            int cnvs = dict.getInt();
+            this.cnvChr = new int[cnvs];
+            this.cnvStart = new int[cnvs];
+            this.cnvEnd = new int[cnvs];
+            this.cnvNames = new String[cnvs];
+            this.cnvPhenotypes = new int[cnvs][];
+            for (int i = 0; i < cnvs; i++){
+                cnvChr[i] = dict.getInt();
+                cnvStart[i] = dict.getInt();
+                cnvEnd[i] = dict.getInt();
+                cnvNames[i] = getString(dict);
+                cnvPhenotypes[i] = new int[dict.getInt()];
+                for (int k = 0; k < cnvPhenotypes[i].length; k++){
+                    cnvPhenotypes[i][k] = dict.getInt();
+                }
+            }
+        }catch (IOException | RuntimeException e){
+            channel.close();
+            if (e instanceof IOException){
+                throw (IOException) e;
+            }
+            throw new IOException("[ERROR] Invalid gene score file: " + path, e);
+        }
+    }
+
+    private ByteBuffer read(long offset, int size) throws IOException{
+
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()){
+            if (channel.read(buf, offset + buf.position()) < 0){
+                throw new IOException("[ERROR] Unexpected end of gene score file.");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static String getString(ByteBuffer buf){
+        byte [] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps the next block.
+     *
+     * @return false if there is no further block
+     * @throws IOException if the block cannot be read
+     */
+    public boolean nextBlock() throws IOException{
+
+        if (blockIndex + 1 >= blocks){
+            blockRows = 0;
+            blockPairs = 0;
+            return false;
+        }
+        ByteBuffer header = read(nextOffset, 8);
+        int r = header.getInt();
+        int p = header.getInt();
+        long size = 8 + 4L * (9L * r + 1) + 16L * p;
+        if (r <= 0 || p < 0 || nextOffset + size > dictionaryOffset){
+            throw new IOException("[ERROR] Invalid block in gene score file.");
+        }
+        ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, nextOffset + 8, size - 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        blockIndex++;
+        nextOffset += size;
+        blockRows = r;
+        blockPairs = p;
+
+        permutation = intColumn(block, r);
+        cnv = intColumn(block, r);
+        gene = intColumn(block, r);
+        score = floatColumn(block, r);
+        maxScore = floatColumn(block, r);
+        maxPatientTerm = intColumn(block, r);
+        maxGeneTerm = intColumn(block, r);
+        maxCommonTerm = intColumn(block, r);
+        matchOffset = intColumn(block, r + 1);
+        matchPatientTerm = intColumn(block, p);
+        matchGeneTerm = intColumn(block, p);
+        matchCommonTerm = intColumn(block, p);
+        matchScore = floatColumn(block, p);
+        return true;
+    }
+
+    private static IntBuffer intColumn(ByteBuffer block, int n){
+        block.limit(block.position() + 4 * n);
+        IntBuffer column = block.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        block.position(block.limit());
+        block.limit(block.capacity());
+        return column;
+    }
+
+    private static FloatBuffer floatColumn(ByteBuffer block, int n){
+        block.limit(block.position() + 4 * n);
+        FloatBuffer column = block.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        block.position(block.limit());
+        block.limit(block.capacity());
+        return column;
+    }
+
+    /**
+     * Constructs the TAB separated output line of a row of the current block.
+     * The line is the same as the line of the TAB separated output, except
+     * that scores are rounded from single precision.
+     *
+     * @param row index of the row in the current block
+     * @return the output line
+     */
+    public String getOutputLine(int row){
+
+        int c = cnv.get(row);
+        int g = gene.get(row);
+        StringBuilder sb = new StringBuilder();
+        sb.append(chromosomes[cnvChr[c]]).append('\t')
+                .append(cnvStart[c]).append('\t')
+                .append(cnvEnd[c]).append('\t')
+                .append(cnvNames[c]).append('\t')
+                .append(getCNVPhenotypeColumn(c)).append('\t');
+
+        if (g < 0){
+            String zero = Utils.roundToString(0.0);
+            return sb.append(StringUtils.join(new String[]{".", zero, zero,
+                ".", ".", ".", ".", ".", ".", zero}, '\t')).toString();
+        }
+
+        sb.append(geneSymbols[g]).append('\t')
+                .append(Utils.roundToString(score.get(row))).append('\t')
+                .append(Utils.roundToString(maxScore.get(row))).append('\t')
+                .append(terms[maxPatientTerm.get(row)]).append('\t')
+                .append(terms[maxGeneTerm.get(row)]).append('\t')
+                .append(terms[maxCommonTerm.get(row)]);
+
+        int from = matchOffset.get(row);
+        int to = matchOffset.get(row + 1);
+        IntBuffer [] columns = {matchPatientTerm, matchGeneTerm, matchCommonTerm};
+        for (IntBuffer column : columns){
+            sb.append('\t');
+            for (int k = from; k < to; k++){
+                if (k > from){
+                    sb.append(';');
+                }
+                sb.append(terms[column.get(k)]);
+            }
+        }
+        sb.append('\t');
+        for (int k = from; k < to; k++){
+            if (k > from){
+                sb.append(';');
+            }
+            sb.append(Utils.roundToString(matchScore.get(k)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Joins the phenotype term IDs of a CNV separated by semicolon.
+     *
+     * @param c index of the CNV
+     * @return the phenotype column of the TAB separated output
+     */
+    public String getCNVPhenotypeColumn(int c){
+        StringBuilder sb = new StringBuilder();
+        for (int t : cnvPhenotypes[c]){
+            if (sb.length() > 0){
+                sb.append(';');
+            }
+            sb.append(terms[t]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Number of blocks in the file.
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return blocks;
+    }
+
+    /**
+     * Number of rows in the file.
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Number of rows in the current block.
+     * @return the number of rows
+     */
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    /**
+     * Number of matched term pairs of all rows in the current block.
+     * @return the number of term pairs
+     */
+    public int getBlockPairs() {
+        return blockPairs;
+    }
+
+    /**
+     * Permutation of each row in the current block.
+     * @return the permutation column
+     */
+    public IntBuffer getPermutations() {
+        return permutation.duplicate();
+    }
+
+    /**
+     * CNV index of each row in the current block.
+     * @return the CNV column
+     */
+    public IntBuffer getCNVs() {
+        return cnv.duplicate();
+    }
+
+    /**
+     * Gene index of each row in the current block or -1 for CNVs without
+     * any scored gene.
+     * @return the gene column
+     */
+    public IntBuffer getGenes() {
+        return gene.duplicate();
+    }
+
+    /**
+     * PhenoMatch score (sum of the term pair scores) of each row in the
+     * current block.
+     * @return the score column
+     */
+    public FloatBuffer getScores() {
+        return score.duplicate();
+    }
+
+    /**
+     * Maximal term pair score of each row in the current block.
+     * @return the maximal score column
+     */
+    public FloatBuffer getMaxScores() {
+        return maxScore.duplicate();
+    }
+
+    /**
+     * Patient term index of the maximal term pair of each row or -1.
+     * @return the maximal patient term column
+     */
+    public IntBuffer getMaxPatientTerms() {
+        return maxPatientTerm.duplicate();
+    }
+
+    /**
+     * Gene term index of the maximal term pair of each row or -1.
+     * @return the maximal gene term column
+     */
+    public IntBuffer getMaxGeneTerms() {
+        return maxGeneTerm.duplicate();
+    }
+
+    /**
+     * Common ancestor term index of the maximal term pair of each row or -1.
+     * @return the maximal common term column
+     */
+    public IntBuffer getMaxCommonTerms() {
+        return maxCommonTerm.duplicate();
+    }
+
+    /**
+     * Offsets of the term pairs of each row in the current block. The term
+     * pairs of row {@code i} are at {@code offset[i]} to {@code offset[i+1]}
+     * (exclusive) in the term pair columns.
+     * @return the offset column with one element more than rows
+     */
+    public IntBuffer getMatchOffsets() {
+        return matchOffset.duplicate();
+    }
+
+    /**
+     * Patient term index of each term pair in the current block.
+     * @return the patient term column
+     */
+    public IntBuffer getMatchPatientTerms() {
+        return matchPatientTerm.duplicate();
+    }
+
+    /**
+     * Gene term index of each term pair in the current block.
+     * @return the gene term column
+     */
+    public IntBuffer getMatchGeneTerms() {
+        return matchGeneTerm.duplicate();
+    }
+
+    /**
+     * Common ancestor term index of each term pair in the current block.
+     * @return the common term column
+     */
+    public IntBuffer getMatchCommonTerms() {
+        return matchCommonTerm.duplicate();
+    }
+
+    /**
+     * Score of each term pair in the current block.
+     * @return the term pair score column
+     */
+    public FloatBuffer getMatchScores() {
+        return matchScore.duplicate();
+    }
+
+    /**
+     * Chromosome names indexed by chromosome index.
+     * @return the chromosome dictionary
+     */
+    public String [] getChromosomes() {
+        return chromosomes.clone();
+    }
+
+    /**
+     * Term IDs indexed by term index.
+     * @return the term dictionary
+     */
+    public String [] getTerms() {
+        return terms.clone();
+    }
+
+    /**
+     * Gene IDs indexed by gene index.
+     * @return the gene ID dictionary
+     */
+    public String [] getGeneIDs() {
+        return geneIDs.clone();
+    }
+
+    /**
+     * Gene symbols indexed by gene index.
+     * @return the gene symbol dictionary
+     */
+    public String [] getGeneSymbols() {
+        return geneSymbols.clone();
+    }
+
+    /**
+     * Names of the CNVs indexed by CNV index.
+     * @return the CNV name dictionary
+     */
+    public String [] getCNVNames() {
+        return cnvNames.clone();
+    }
+
+    /**
+     * Chromosome of a CNV.
+     * @param c index of the CNV
+     * @return the chromosome name
+     */
+    public String getCNVChr(int c) {
+        return chromosomes[cnvChr[c]];
+    }
+
+    /**
+     * Start of a CNV.
+     * @param c index of the CNV
+     * @return the start position
+     */
+    public int getCNVStart(int c) {
+        return cnvStart[c];
+    }
+
+    /**
+     * End of a CNV.
+     * @param c index of the CNV
+     * @return the end position
+     */
+    public int getCNVEnd(int c) {
+        return cnvEnd[c];
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import genomicregions.CNV;
+import genomicregions.Gene;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import ontologizer.go.Term;
+import phenotypeontology.TermPair;
+
+/**
+ * Writes scored genes in a compact binary columnar format instead of TAB
+ * separated lines. Chromosomes, CNVs, genes and terms are stored once in
+ * dictionaries and rows only refer to their indices. Rows are written in
+ * blocks of up to {@link #BLOCK_ROWS} rows, in which each column is stored
+ * as a contiguous array of little-endian 32 bit integers or floats, so
+ * a {@link GeneScoreColumnReader} can scan single columns without parsing.
+ * <br><br>
+ * File layout:
+ * <pre>
+ * int MAGIC, int VERSION
+ * blocks:      int rows, int pairs,
+ *              int[rows] permutation, cnv, gene (-1 for none),
+ *              float[rows] score, maxScore,
+ *              int[rows] maxPatientTerm, maxGeneTerm, maxCommonTerm (-1 for none),
+ *              int[rows + 1] matchOffset,
+ *              int[pairs] matchPatientTerm, matchGeneTerm, matchCommonTerm,
+ *              float[pairs] matchScore
+ * dictionaries: chromosomes, terms, genes (ID, symbol),
+ *              CNVs (chromosome, start, end, name, phenotype terms)
+ * footer:      long dictionaryOffset, int blocks, long rows, int MAGIC
+ * </pre>
+ * Strings are stored as int length followed by UTF-8 bytes. The score of a
+ * row is the sum of the scores of its term matching, like the phenoMatchScore
+ * column of the TAB separated output.
+ */
+public class GeneScoreColumnWriter implements Closeable {
+
+    /** Magic number at the beginning and end of each file ("PMGC"). */
+    public static final int MAGIC = 0x504d4743;
+
+    /** Version of the file format. */
+    public static final int VERSION = 1;
+
+    /** Maximal number of rows per block. */
+    public static final int BLOCK_ROWS = 1 << 16;
+
+    /** Size of the footer in bytes. */
+    static final int FOOTER_SIZE = 24;
+
+    private final FileChannel channel;
+
+    /** Dictionaries in order of their indices. */
+    private final ArrayList<String> chromosomes = new ArrayList<>();
+    private final ArrayList<String> terms = new ArrayList<>();
+    private final ArrayList<Gene> genes = new ArrayList<>();
+    private final ArrayList<CNV> cnvs = new ArrayList<>();
+
+    private final HashMap<String, Integer> chromosomeIndex = new HashMap<>();
+    private final HashMap<String, Integer> termIndex = new HashMap<>();
+    private final IdentityHashMap<Term, Integer> termObjectIndex = new IdentityHashMap<>();
+    private final HashMap<String, Integer> geneIndex = new HashMap<>();
+    private final HashMap<String, Integer> cnvIndex = new HashMap<>();
+
+    /** Columns of the current block. */
+    private int rows = 0;
+    private int [] permutation = new int[1024];
+    private int [] cnv = new int[1024];
+    private int [] gene = new int[1024];
+    private float [] score = new float[1024];
+    private float [] maxScore = new float[1024];
+    private int [] maxPatientTerm = new int[1024];
+    private int [] maxGeneTerm = new int[1024];
+    private int [] maxCommonTerm = new int[1024];
+    private int [] matchOffset = new int[1025];
+
+    private int pairs = 0;
+    private int [] matchPatientTerm = new int[1024];
+    private int [] matchGeneTerm = new int[1024];
+    private int [] matchCommonTerm = new int[1024];
+    private float [] matchScore = new float[1024];
+
+    private int blocks = 0;
+    private long totalRows = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens a new output file. An existing file is overwritten.
+     *
+     * @param path path to the output file
+     * @throws IOException if the file cannot be opened
+     */
+    public GeneScoreColumnWriter(String path) throws IOException{
+
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = newBuffer(8);
+        header.putInt(MAGIC).putInt(VERSION);
+        write(header);
+    }
+
+    private static ByteBuffer newBuffer(int size){
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buf) throws IOException{
+        buf.flip();
+        while (buf.hasRemaining()){
+            channel.write(buf);
+        }
+    }
+
+    private static int index(String key, HashMap<String, Integer> index, ArrayList<String> values){
+        Integer i = index.get(key);
+        if (i == null){
+            i = values.size();
+            index.put(key, i);
+            values.add(key);
+        }
+        return i;
+    }
+
+    private int termIndex(Term t){
+        Integer i = termObjectIndex.get(t);
+        if (i == null){
+            i = index(t.getIDAsString(), termIndex, terms);
+            termObjectIndex.put(t, i);
+        }
+        return i;
+    }
+
+    private int cnvIndex(CNV c){
+        Integer i = cnvIndex.get(c.getName());
+        if (i == null){
+            i = cnvs.size();
+            cnvIndex.put(c.getName(), i);
+            cnvs.add(c);
+            index(c.getChr(), chromosomeIndex, chromosomes);
+            for (Term t : c.getPhenotypes()){
+                termIndex(t);
+            }
+        }
+        return i;
+    }
+
+    private int geneIndex(Gene g){
+        Integer i = geneIndex.get(g.getName());
+        if (i == null){
+            i = genes.size();
+            geneIndex.put(g.getName(), i);
+            genes.add(g);
+        }
+        return i;
+    }
+
+    /**
+     * Appends rows to the output.
+     *
+     * @param perm index of the permutation of the rows or -1 for the actual
+     * gene phenotypes
+     * @param batch the rows
+     * @throws IOException if the output cannot be written
+     */
+    public void append(int perm, GeneScoreRows batch) throws IOException{
+
+        if (closed){
+            throw new IOException("[ERROR] Writer is already closed.");
+        }
+        for (int r = 0; r < batch.size(); r++){
+            addRow(perm, batch.getCNV(r), batch.getGene(r), batch.getTermMatching(r));
+        }
+    }
+
+    private void addRow(int perm, CNV c, Gene g, List<TermPair> termMatching) throws IOException{
+
+        if (rows == permutation.length){
+            int n = 2 * rows;
+            permutation = Arrays.copyOf(permutation, n);
+            cnv = Arrays.copyOf(cnv, n);
+            gene = Arrays.copyOf(gene, n);
+            score = Arrays.copyOf(score, n);
+            maxScore = Arrays.copyOf(maxScore, n);
+            maxPatientTerm = Arrays.copyOf(maxPatientTerm, n);
+            maxGeneTerm = Arrays.copyOf(maxGeneTerm, n);
+            maxCommonTerm = Arrays.copyOf(maxCommonTerm, n);
+            matchOffset = Arrays.copyOf(matchOffset, n + 1);
+        }
+
+        permutation[rows] = perm;
+        cnv[rows] = cnvIndex(c);
+        gene[rows] = g != null ? geneIndex(g) : -1;
+        maxPatientTerm[rows] = -1;
+        maxGeneTerm[rows] = -1;
+        maxCommonTerm[rows] = -1;
+        double sum = 0.0;
+        double max = 0.0;
+
+        if (termMatching != null && !termMatching.isEmpty()){
+
+            TermPair maxPair = Collections.max(termMatching, TermPair.TERM_PAIR_SCORE_ORDER);
+            max = maxPair.getS();
+            maxPatientTerm[rows] = termIndex(maxPair.getPp());
+            maxGeneTerm[rows] = termIndex(maxPair.getGp());
+            maxCommonTerm[rows] = termIndex(maxPair.getLca());
+
+            for (TermPair tp : termMatching){
+                if (pairs == matchScore.length){
+                    int n = 2 * pairs;
+                    matchPatientTerm = Arrays.copyOf(matchPatientTerm, n);
+                    matchGeneTerm = Arrays.copyOf(matchGeneTerm, n);
+                    matchCommonTerm = Arrays.copyOf(matchCommonTerm, n);
+                    matchScore = Arrays.copyOf(matchScore, n);
+                }
+                matchPatientTerm[pairs] = termIndex(tp.getPp());
+                matchGeneTerm[pairs] = termIndex(tp.getGp());
+                matchCommonTerm[pairs] = termIndex(tp.getLca());
+                matchScore[pairs] = (float) (double) tp.getS();
+                pairs++;
+                sum += tp.getS();
+            }
+        }
+        score[rows] = (float) sum;
+        maxScore[rows] = (float) max;
+        rows++;
+        matchOffset[rows] = pairs;
+
+        if (rows == BLOCK_ROWS){
+            writeBlock();
+        }
+    }
+
+    private static void put(ByteBuffer buf, int [] column, int n){
+        buf.asIntBuffer().put(column, 0, n);
+        buf.position(buf.position() + 4 * n);
+    }
+
+    private static void put(ByteBuffer buf, float [] column, int n){
+        buf.asFloatBuffer().put(column, 0, n);
+        buf.position(buf.position() + 4 * n);
+    }
+
+    /**
+     * Writes the rows of the current block.
+     */
+    private void writeBlock() throws IOException{
+
+        if (rows == 0){
+            return;
+        }
+        ByteBuffer buf = newBuffer(8 + 4 * (9 * rows + 1) + 16 * pairs);
+        buf.putInt(rows).putInt(pairs);
+        put(buf, permutation, rows);
+        put(buf, cnv, rows);
+        put(buf, gene, rows);
+        put(buf, score, rows);
+        put(buf, maxScore, rows);
+        put(buf, maxPatientTerm, rows);
+        put(buf, maxGeneTerm, rows);
+        put(buf, maxCommonTerm, rows);
+        put(buf, matchOffset, rows + 1);
+        put(buf, matchPatientTerm, pairs);
+        put(buf, matchGeneTerm, pairs);
+        put(buf, matchCommonTerm, pairs);
+        put(buf, matchScore, pairs);
+        write(buf);
+
+        blocks++;
+        totalRows += rows;
+        rows = 0;
+        pairs = 0;
+    }
+
+    /**
+     * Encodes strings with their length.
+     */
+    private static class StringBlock {
+
+        private ByteBuffer buf = newBuffer(1 << 16);
+
+        private void ensure(int bytes){
+            if (buf.remaining() < bytes){
+                ByteBuffer larger = newBuffer(Math.max(2 * buf.capacity(), buf.position() + bytes));
+                buf.flip();
+                larger.put(buf);
+                buf = larger;
+            }
+        }
+
+        void putInt(int i){
+            ensure(4);
+            buf.putInt(i);
+        }
+
+        void putString(String s){
+            byte [] bytes = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+        }
+    }
+
+    /**
+     * Writes the pending rows, the dictionaries and the footer and closes the
+     * file.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    public void close() throws IOException{
+
+        if (closed){
+            return;
+        }
+        closed = true;
+        try{
+            writeBlock();
+            long dictionaryOffset = channel.position();
+
+            StringBlock dict = new StringBlock();
+            dict.putInt(chromosomes.size());
+            for (String chr : chromosomes){
+                dict.putString(chr);
+            }
+            dict.putInt(terms.size());
+            for (String t : terms){
+                dict.putString(t);
+            }
+            dict.putInt(genes.size());
+            for (Gene g : genes){
+                dict.putString(g.getName());
+                dict.putString(g.getSymbol() != null ? g.getSymbol() : "");
+            }
+            dict.putInt(cnvs.size());
+            for (CNV c : cnvs){
+                dict.putInt(chromosomeIndex.get(c.getChr()));
+                dict.putInt(c.getStart());
+                dict.putInt(c.getEnd());
+                dict.putString(c.getName());
+
+                // same order of phenotype IDs as in the TAB separated output
+                HashSet<String> phenotypeIDs = new HashSet<>();
+                for (Term t : c.getPhenotypes()){
+                    phenotypeIDs.add(t.getIDAsString());
+                }
+                dict.putInt(phenotypeIDs.size());
+                for (String id : phenotypeIDs){
+                    dict.putInt(termIndex.get(id));
+                }
+            }
+            write(dict.buf);
+
+            ByteBuffer footer = newBuffer(FOOTER_SIZE);
+            footer.putLong(dictionaryOffset).putInt(blocks).putLong(totalRows).putInt(MAGIC);
+            write(footer);
+        }finally{
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import genomicregions.CNV;
+import genomicregions.Gene;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import phenotypeontology.TermPair;
+
+/**
+ * Scored genes of CNVs in the order of the output lines, e.g. of a single
+ * permutation. Each row holds the CNV, the gene and the matching of patient
+ * and gene terms from which the columns of an output line are computed. Rows
+ * are collected by worker threads and encoded by a
+ * {@link GeneScoreColumnWriter} afterwards. The same rows can be written as
+ * TAB separated output with {@link #write(TabRowWriter)}, so genes are scored
+ * only once for all output formats.
+ */
+public class GeneScoreRows {
+
+    private final ArrayList<CNV> cnvs = new ArrayList<>();
+    private final ArrayList<Gene> genes = new ArrayList<>();
+    private final ArrayList<List<TermPair>> termMatchings = new ArrayList<>();
+
+    /**
+     * Adds the row of a scored gene.
+     *
+     * @param cnv the CNV
+     * @param gene the gene
+     * @param termMatching best matching gene term of each patient term with
+     * a score larger than zero
+     */
+    public void add(CNV cnv, Gene gene, List<TermPair> termMatching){
+        cnvs.add(cnv);
+        genes.add(gene);
+        termMatchings.add(termMatching);
+    }
+
+    /**
+     * Adds the row of a CNV without any scored gene.
+     *
+     * @param cnv the CNV
+     */
+    public void addNoGene(CNV cnv){
+        add(cnv, null, null);
+    }
+
+    /**
+     * Appends all rows of another batch, e.g. of the next range of CNVs.
+     *
+     * @param other the rows to append
+     */
+    public void addAll(GeneScoreRows other){
+        cnvs.addAll(other.cnvs);
+        genes.addAll(other.genes);
+        termMatchings.addAll(other.termMatchings);
+    }
+
+    /**
+     * Number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size(){
+        return cnvs.size();
+    }
+
+    /**
+     * The CNV of a row.
+     *
+     * @param row index of the row
+     * @return the CNV
+     */
+    public CNV getCNV(int row){
+        return cnvs.get(row);
+    }
+
+    /**
+     * The gene of a row or {@code null} for a CNV without scored gene.
+     *
+     * @param row index of the row
+     * @return the gene or {@code null}
+     */
+    public Gene getGene(int row){
+        return genes.get(row);
+    }
+
+    /**
+     * The term matching of a row or {@code null} for a CNV without scored gene.
+     *
+     * @param row index of the row
+     * @return the term matching or {@code null}
+     */
+    public List<TermPair> getTermMatching(int row){
+        return termMatchings.get(row);
+    }
+
+    /**
+     * The phenoMatch score of a row, i.e. the sum of the scores of the term
+     * matching.
+     *
+     * @param row index of the row
+     * @return the phenoMatch score or zero for a CNV without scored gene
+     */
+    public double getScore(int row){
+        double sum = 0.0;
+        List<TermPair> termMatching = termMatchings.get(row);
+        if (termMatching != null){
+            for (TermPair tp : termMatching){
+                sum += tp.getS();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The maximal score of the term matching of a row.
+     *
+     * @param row index of the row
+     * @return the maximal score or zero for a CNV without scored gene
+     */
+    public double getMaxScore(int row){
+        List<TermPair> termMatching = termMatchings.get(row);
+        if (termMatching == null || termMatching.isEmpty()){
+            return 0.0;
+        }
+        return Collections.max(termMatching, TermPair.TERM_PAIR_SCORE_ORDER).getS();
+    }
+
+    /**
+     * The TAB separated output line of a row.
+     *
+     * @param row index of the row
+     * @return the output line
+     */
+    public String getLine(int row){
+        return cnvs.get(row).getGeneScoreLine(genes.get(row), termMatchings.get(row));
+    }
+
+    /**
+     * Writes all rows as TAB separated output rows.
+     *
+     * @param out the output file
+     * @throws IOException if the output cannot be written
+     */
+    public void write(TabRowWriter out) throws IOException{
+        for (int r = 0; r < cnvs.size(); r++){
+            cnvs.get(r).writeGeneScoreRow(out, genes.get(r), termMatchings.get(r));
+        }
+    }
+}
@@ -6,11 +6,7 @@
 
 package io;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -36,72 +32,23 @@ public class GeneSymbolParser {
        this.path = Paths.get(annotationFile);        
     }
     
+    /**
+     * Reads the mapping of Entrez gene IDs to gene symbols.
+     * Use an {@link AnnotationFileParser} directly to read the phenotype 
+     * annotations and gene symbols in a single pass.
+     * 
+     * @return mapping of Entrez gene IDs to gene symbols
+     * @throws IOException if the file can not be read
+     */
     public HashMap<String, String> parseEntrezToSymbol() throws IOException{
         
-        HashMap<String, String> entrezToSymbol = new HashMap<String, String>();
-        String entrezID = null;
-        String symbol = null;
-        
+        AnnotationFileParser parser = new AnnotationFileParser(this.path.toString(), 1);
         try {
-
-            // read the first line of the file to descide wether it it is the HPO
-            // annotation fiel or the Uberpheno annotaion file
-            BufferedReader in = new BufferedReader(new FileReader(this.path.toString()));
-
-            String firstLine = in.readLine();
-            boolean isHpo = false;
-            boolean isUpheno = false;
-            // updated annotation format since 2019 for genes_to_phenotype.txt file according to https://hpo.jax.org/app/download/annotation
-            boolean isHpoa = false;            
-            if (firstLine.startsWith("#Entrez Gene ID of human gene ; Gene symbol ; Annotated Uberpheno")) {
-                    isUpheno = true;
-            } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-Name<tab>HPO-Ter")) {
-                    isHpo = true;
-            } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-ID<tab>HPO-Term-Name<tab>Frequency-Raw<tab>Frequency-HPO")) {
-                    isHpoa = true;                    
-            } else {
-                    throw new IOException("Can't handle annotation-file format!");
-            }
-
-            // read all lines of the file
-            for ( String line : Files.readAllLines( this.path, StandardCharsets.UTF_8 ) ){
-                
-                // ignore comment lines
-                if (line.startsWith("#"))
-                    continue;
-                
-                // in case of HPO annotation format split line by TAB chars 
-                // and fine entrez ID in first column and gene symbol in second.
-                if (isHpo){
-                    // split line by TABs
-                    String [] cols = line.split("\t");
-                    entrezID = cols[0];
-                    symbol = cols[1];
-                }
-                
-                // in case of Uberpheno annotaion format
-                if (isUpheno){
-                    String [] cols = line.split(";");
-                    entrezID = cols[0];
-                    symbol = cols[1];                    
-                }
-
-                // in case of HPOA annotaion format
-                if (isHpoa){
-                    String [] cols = line.split("\t");
-                    entrezID = cols[0];
-                    symbol = cols[1];                    
-                }
-                
-                // add IDs to mapping
-                entrezToSymbol.put(entrezID, symbol);
-            }
-            
+            parser.parse(null);
         }catch (IOException e){
             System.err.println("[Error] while parsing file:" + this.path);
             throw e;
         }
-        
-        return entrezToSymbol;
+        return parser.getEntrezToSymbol();
     }
 }
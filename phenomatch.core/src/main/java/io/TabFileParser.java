@@ -30,16 +30,22 @@ import genomicregions.CNV;
 import genomicregions.Gene;
 import genomicregions.GenomicElement;
 import genomicregions.GenomicSet;
+import genomicregions.IntervalIndex;
+import genomicregions.IntervalTree;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import ontologizer.go.Term;
 import phenotypeontology.PhenotypeData;
 import phenotypeontology.TargetTerm;
@@ -48,6 +54,10 @@ import phenotypeontology.TargetTerm;
 /**
  * Reads a tab-separated file with genomic elements like CNVs or enhancers 
  into an GenomicSet object.
+ * The file is read in a single pass with a {@link TabRecordReader}, large
+ * files in parallel chunks. Each parse function only maps the columns of a 
+ * record to an element. If regions are given, only elements overlapping any
+ * region are returned and sorted files are read via a {@link BedIndex}.
  * 
  * @author Jonas Ibn-Salem <ibnsalem@molgen.mpg.de>
  */
@@ -56,9 +66,61 @@ public class TabFileParser {
     /** {@link Path} to the file that is read by this parser */
     private final Path path;
     
-    /** indicates that the IDs in column 4 of the input file are unique.*/
-    private boolean uniqueIDs;
+    /** Number of threads that read the file. */
+    private final int threads;
+    
+    /** Regions to which the elements are restricted or {@code null}. */
+    private final Collection<? extends GenomicElement> regions;
+    
+    /** Directory of index files or {@code null} if indices are not stored. */
+    private final Path indexDir;
+    
+    /**
+     * Maps a record of the input file to a genomic element.
+     * 
+     * @param <T> {@link GenomicElement} or any of its subclasses
+     */
+    private abstract static class RecordMapper<T extends GenomicElement> {
+        
+        /** Minimal number of columns of each record. */
+        private final int minColumns;
+        
+        RecordMapper(int minColumns){
+            this.minColumns = minColumns;
+        }
         
+        /**
+         * Creates an element from the current record.
+         * 
+         * @param record the reader positioned at the record
+         * @param name the name of the element
+         * @throws IOException if a column cannot be parsed
+         */
+        abstract T map(TabRecordReader record, String name) throws IOException;
+        
+        /**
+         * Creates a copy of an element with a new name.
+         * 
+         * @param e element created by {@link #map(TabRecordReader, String)}
+         * @param name the new name
+         */
+        abstract T rename(T e, String name);
+    }
+    
+    /**
+     * Looks up the phenotype terms of an input element by its name.
+     */
+    public interface PhenotypeLookup {
+        
+        /**
+         * Returns the phenotype terms of an element.
+         * 
+         * @param name the name of the element
+         * @return the phenotype terms or {@code null} if there are none
+         */
+        HashSet<Term> getPhenotypes(String name);
+    }
+    
     /**
      * Construct a {@code TabFileParser} object from an input path.
      * The constructor creates a {@link Path} object from the input String.
@@ -66,84 +128,328 @@ public class TabFileParser {
      * @param strPath  path to input file.
      */
     public TabFileParser(String strPath) {
+        this(strPath, 1);
+    }
+    
+    /**
+     * Construct a {@code TabFileParser} object that reads large files with
+     * several threads.
+     * 
+     * @param strPath  path to input file.
+     * @param threads number of threads that read chunks of the file
+     */
+    public TabFileParser(String strPath, int threads) {
+        this(strPath, threads, null);
+    }
+    
+    /**
+     * Construct a {@code TabFileParser} object that only reads elements
+     * overlapping any of the given regions, e.g. the genes and domains around
+     * the input CNVs. Sorted and uncompressed files are indexed with a 
+     * {@link BedIndex} in memory, so only the records near the regions are
+     * parsed. Other files are read completely and filtered.
+     * The names of the elements are the same as without regions.
+     * 
+     * @param strPath  path to input file.
+     * @param threads number of threads that read chunks of the file
+     * @param regions the regions or {@code null} to read all elements
+     */
+    public TabFileParser(String strPath, int threads, Collection<? extends GenomicElement> regions) {
+        this(strPath, threads, regions, null);
+    }
+    
+    /**
+     * Construct a {@code TabFileParser} object that only reads elements
+     * overlapping any of the given regions and stores the {@link BedIndex} 
+     * of the input file in an index directory, so that it is reused in later
+     * runs.
+     * 
+     * @param strPath  path to input file.
+     * @param threads number of threads that read chunks of the file
+     * @param regions the regions or {@code null} to read all elements
+     * @param indexDir directory of index files or {@code null} to keep the 
+     * index only in memory
+     */
+    public TabFileParser(String strPath, int threads, Collection<? extends GenomicElement> regions, 
+            String indexDir) {
         this.path = Paths.get(strPath);
+        this.threads = threads;
+        this.regions = regions;
+        this.indexDir = indexDir != null ? Paths.get(indexDir) : null;
+    }
+    
+    /**
+     * Elements of a chunk of the input file.
+     */
+    private static class Chunk<T> {
         
-        // check for unqiue ID in input file
-        try{
-            this.uniqueIDs = checkForUniqueIDs();
-        }catch (IOException e){
-            System.out.println("[ERROR]  " + e);
-            System.exit(1);
-        }        
+        private final ArrayList<T> elements = new ArrayList<T>();
+        
+        /** indicates that a record in the chunk has no ID column */
+        private boolean missingIDs = false;
     }
     
     /**
-     * Reads a TAB separated file with genomic elements like enhancers or topological domains.
-     * Assumes each line in the file to represent a genomic element. The first
-     * three columns should contain the following: chromosome, start and end.
-     * Note, the genomic coordinates are assumed in 0-based half-open format 
-     * like in the BED format specifications 
-     * (See http://genome.ucsc.edu/FAQ/FAQformat.html#format1).
+     * Checks the number of columns of a record.
+     */
+    private void checkColumns(TabRecordReader record, int minColumns) throws IOException{
+        
+        // if line contains too few columns:
+        if (record.getColumnCount() < Math.max(3, minColumns)){
+            throw new IOException(String.format(
+                    "[ERROR] while reading file '%s'. Wrong number of "
+                            + "columns in input line: '%s'", path, record.getLine()));
+        }
+    }
+    
+    /**
+     * Reads the records of the input file with a mapper, restricted to the 
+     * regions of this parser if any.
      * 
-     * @return {@link GenomicSet} with all elements from the input file.
+     * @param mapper creates an element from each record
+     * @return {@link GenomicSet} with the elements from the input file.
+     * @throws IOException if file can not be read or has too few columns
+     */
+    private <T extends GenomicElement> GenomicSet<T> parse(final RecordMapper<T> mapper) throws IOException{
+        
+        if (regions == null){
+            return parseAll(mapper);
+        }
+        
+        // the index can only be used, if elements are not renamed because of 
+        // non-unique IDs, since the names depend on all records of the file
+        BedIndex index = BedIndex.load(path, indexDir);
+        if (index != null && index.isSorted() && index.hasUniqueIDs()){
+            return parseIndexed(mapper, index);
+        }
+        
+        // take all elements that overlap any region
+        GenomicSet<T> all = parseAll(mapper);
+        final GenomicSet<T> ges = new GenomicSet<T>();
+        IntervalTree<T> allTree = all.getIntervalTree();
+        for (GenomicElement r : regions){
+            allTree.forEachOverlap(r, new IntervalIndex.Visitor<T>(){
+                @Override
+                public void visit(T e) {
+                    ges.put(e.getName(), e);
+                }
+            });
+        }
+        return ges;
+    }
+    
+    /**
+     * Sorts the regions by chromosome and start and merges overlapping regions.
      * 
-     * @throws IOException if file can not be read. 
+     * @return start and end of the merged regions of each chromosome
      */
-    public GenomicSet<GenomicElement> parse() throws IOException{
+    private HashMap<String, ArrayList<int []>> mergeRegions(){
         
-        // construct new set of genomic reigons:
-        GenomicSet ges = new GenomicSet();
+        HashMap<String, ArrayList<int []>> chr2regions = new HashMap<String, ArrayList<int []>>();
+        for (GenomicElement r : regions){
+            ArrayList<int []> list = chr2regions.get(r.getChr());
+            if (list == null){
+                list = new ArrayList<int []>();
+                chr2regions.put(r.getChr(), list);
+            }
+            // an empty region is a single position
+            list.add(new int[]{r.getStart(), Math.max(r.getEnd(), r.getStart() + 1)});
+        }
         
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
+        for (ArrayList<int []> list : chr2regions.values()){
+            Collections.sort(list, new Comparator<int []>(){
+                @Override
+                public int compare(int[] a, int[] b) {
+                    return Integer.compare(a[0], b[0]);
+                }
+            });
+            int n = 0;
+            for (int [] r : list){
+                // only overlapping regions are merged, since an empty element
+                // at the border of two adjacent regions overlaps none of them
+                if (n > 0 && r[0] < list.get(n - 1)[1]){
+                    list.get(n - 1)[1] = Math.max(list.get(n - 1)[1], r[1]);
+                }else{
+                    list.set(n++, r);
+                }
+            }
+            list.subList(n, list.size()).clear();
+        }
+        return chr2regions;
+    }
+    
+    /**
+     * Reads only the records overlapping the regions from a sorted file with
+     * unique IDs.
+     * 
+     * @param mapper creates an element from each record
+     * @param index the index of the input file
+     * @return {@link GenomicSet} with the elements overlapping any region.
+     * @throws IOException if file can not be read or has too few columns
+     */
+    private <T extends GenomicElement> GenomicSet<T> parseIndexed(RecordMapper<T> mapper, BedIndex index) throws IOException{
         
-        try{
-            for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-
-                // split line by TABs
-                String [] cols = line.split("\t");
-
-                // if line contains too few columns:
-                if (cols.length < 3 ){
-                    throw new IOException(String.format(
-                            "[ERROR] while reading file '%s'. Wrong number of "
-                                    + "columns in input line: '%s'", path, line));
+        GenomicSet<T> ges = new GenomicSet<T>();
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            for (Map.Entry<String, ArrayList<int []>> entry : mergeRegions().entrySet()){
+                
+                // offset of the last element taken from this chromosome. 
+                // Records before it, that were not taken for a previous region,
+                // end before that region and therefore before all later regions.
+                long taken = -1;
+                
+                for (int [] region : entry.getValue()){
+                    long [] range = index.getRange(entry.getKey(), region[0]);
+                    if (range == null){
+                        continue;
+                    }
+                    try (TabRecordReader record = new TabRecordReader(
+                            CompressedInput.openRange(channel, range[0], range[1]))){
+                        while (record.next()){
+                            checkColumns(record, mapper.minColumns);
+                            if (record.getInt(1) >= region[1]){
+                                break;
+                            }
+                            long offset = range[0] + record.getLineOffset();
+                            if (offset > taken && record.getInt(2) > region[0]){
+                                T e = mapper.map(record, record.getString(3));
+                                ges.put(e.getName(), e);
+                                taken = offset;
+                            }
+                        }
+                    }
                 }
-
-                String chr = cols[0];
-                int start = Integer.parseInt(cols[1]);
-                int end = Integer.parseInt(cols[2]);
+            }
+        }
+        return ges;
+    }
+    
+    /**
+     * Reads all records of the input file with a mapper.
+     * The file is read in a single pass by a {@link ChunkedTabLoader}, 
+     * possibly with several threads.
+     * If the IDs in column 4 are not unique or not available, a number is 
+     * appended to the IDs of all elements to have a unique ID, i.e. the 
+     * k-th element with a given ID gets the name {@code ID_k}. 
+     * 
+     * @param mapper creates an element from each record
+     * @return {@link GenomicSet} with all elements from the input file.
+     * @throws IOException if file can not be read or has too few columns
+     */
+    private <T extends GenomicElement> GenomicSet<T> parseAll(final RecordMapper<T> mapper) throws IOException{
+        
+        List<Chunk<T>> chunks = ChunkedTabLoader.load(path, threads, new ChunkedTabLoader.ChunkParser<Chunk<T>>(){
+            @Override
+            public Chunk<T> newResult() {
+                return new Chunk<T>();
+            }
+            @Override
+            public void parse(TabRecordReader record, Chunk<T> chunk) throws IOException {
+                
+                checkColumns(record, mapper.minColumns);
                 
                 // if ID column is available take name from it, else defaults to "ID"
-                String name = cols.length >= 4 ? cols[3] : "ID";
+                String name = "ID";
+                if (record.getColumnCount() >= 4){
+                    name = record.getString(3);
+                }else{
+                    chunk.missingIDs = true;
+                }
+                chunk.elements.add(mapper.map(record, name));
+            }
+        });
+        
+        // count IDs to give each ID a unique identifier, this will only be used
+        // in case of non-unique IDs
+        ArrayList<T> elements = new ArrayList<T>();
+        HashMap<String, int []> countIDs = new HashMap<String, int []>();
+        int [] occurrence = new int[1024];
+        boolean uniqueIDs = true;
+        
+        for (Chunk<T> chunk : chunks){
+            uniqueIDs &= !chunk.missingIDs;
+            for (T e : chunk.elements){
+                int [] count = countIDs.get(e.getName());
+                if (count == null){
+                    count = new int[1];
+                    countIDs.put(e.getName(), count);
+                }else{
+                    uniqueIDs = false;
+                }
+                count[0]++;
                 
-                // In case of non-unique IDs, check if the name is already contained
-                if (! this.uniqueIDs){
-                    if (countIDs.containsKey(name)){
-                        // increase counter
-                        countIDs.put(name, countIDs.get(name)+1);
-                        // append a number to the name to have a unique ID
-                        name = name + "_" + countIDs.get(name).toString();
-                    // if the name is seen the first time
-                    }else{
-                        // count it and append a 1
-                        countIDs.put(name, 1);
-                        name = name + "_1";
-                    }
+                if (elements.size() == occurrence.length){
+                    occurrence = Arrays.copyOf(occurrence, 2 * occurrence.length);
                 }
-                // create new element and add it to the set
-                ges.put(name, new GenomicElement(chr, start, end, name));
+                occurrence[elements.size()] = count[0];
+                elements.add(e);
             }
         }
-        catch (IOException e){
-            System.err.println("Error while parsing file:" + this.path);
-            throw e;
+        
+        GenomicSet<T> ges = new GenomicSet<T>();
+        for (int i = 0; i < elements.size(); i++){
+            T e = elements.get(i);
+            if (uniqueIDs){
+                ges.put(e.getName(), e);
+            }else{
+                // append a number to the name to have a unique ID
+                String name = e.getName() + "_" + occurrence[i];
+                ges.put(name, mapper.rename(e, name));
+            }
         }
         return ges;
     }
     
     /**
+     * Parses phenotype term IDs separated by semicolon ';'.
+     * 
+     * @param termIDs term IDs separated by semicolon
+     * @param phenotypeData the phenotype ontology
+     * @return set of {@link Term} objects
+     * @throws IOException if a term cannot be looked up
+     */
+    public static HashSet<Term> parseTerms(String termIDs, PhenotypeData phenotypeData) throws IOException{
+        
+        // parse phenotypes as set of Term objects
+        HashSet<Term> phenotypes = new HashSet<Term>();
+        
+        // for all term IDs in the phenotype column
+        for (String termID : termIDs.split(";")){
+            
+            // consturct a phenotype Term object and add it to the set
+            phenotypes.add(phenotypeData.getTermIncludingAlternatives(termID));
+        }
+        return phenotypes;
+    }
+    
+/**
+     * Reads a TAB separated file with genomic elements like enhancers or topological domains.
+     * Assumes each line in the file to represent a genomic element. The first
+     * three columns should contain the following: chromosome, start and end.
+     * Note, the genomic coordinates are assumed in 0-based half-open format 
+     * like in the BED format specifications 
+     * (See http://genome.ucsc.edu/FAQ/FAQformat.html#format1).
+     * 
+     * @return {@link GenomicSet} with all elements from the input file.
+     * 
+     * @throws IOException if file can not be read. 
+     */
+    public GenomicSet<GenomicElement> parse() throws IOException{
+        
+        return parse(new RecordMapper<GenomicElement>(3){
+            @Override
+            GenomicElement map(TabRecordReader record, String name) {
+                return new GenomicElement(record.getChr(0), record.getInt(1), record.getInt(2), name);
+            }
+            @Override
+            GenomicElement rename(GenomicElement e, String name) {
+                return new GenomicElement(e.getChr(), e.getStart(), e.getEnd(), name);
+            }
+        });
+    }
+    
+/**
      * Reads a TAB separated file with CNVs.
      * Assumes each line in the file to represent a CNV. The first
      * four columns should contain the following: chromosome, start, end, and name.
@@ -163,60 +469,18 @@ public class TabFileParser {
      */
     public GenomicSet<CNV> parseCNV() throws IOException{
         
-        // construct new set ofCNVs:
-        GenomicSet<CNV> cnvs = new GenomicSet();
-
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
-        
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-            
-            // if line contains too few columns:
-            if (cols.length < 4 ){
-                throw new IOException(String.format(
-                        "[ERROR] while reading file '%s'. Wrong number of "
-                                + "columns in input line: '%s'", path, line));
-            }
-
-            // parse columns
-            String chr = cols[0];
-            int start = Integer.parseInt(cols[1]);
-            int end = Integer.parseInt(cols[2]);
-            String name = cols[3];
-
-            // In case of non-unique IDs, check if the name is already contained
-            if (! this.uniqueIDs){
-                if (countIDs.containsKey(name)){
-                    // increase counter
-                    countIDs.put(name, countIDs.get(name)+1);
-                    // append a number to the name to have a unique ID
-                    name = name + "_" + countIDs.get(name).toString();
-                // if the name is seen the first time
-                }else{
-                    // count it and append a 1
-                    countIDs.put(name, 1);
-                    name = name + "_1";
-                }
+        return parse(new RecordMapper<CNV>(4){
+            @Override
+            CNV map(TabRecordReader record, String name) {
+                // parse CNV specific columns if available, set default else
+                String type = record.getColumnCount() >= 5 ? record.getString(4) : ".";
+                return new CNV(record.getChr(0), record.getInt(1), record.getInt(2), name, type);
             }
-
-            // parse CNV specific columns if available, set default else
-            String type = ".";
-            if (cols.length >= 5){
-                type =  cols[4];
+            @Override
+            CNV rename(CNV e, String name) {
+                return new CNV(e.getChr(), e.getStart(), e.getEnd(), name, e.getType());
             }
-            
-            // create new {@link CNV} object
-            CNV cnv = new CNV(chr, start, end, name, type);
-            
-            // add it to the set
-            cnvs.put(name, cnv);
-        }
-        
-        return cnvs;
+        });
     }
 
 /**
@@ -242,78 +506,25 @@ public class TabFileParser {
      * 
      * @throws IOException if file can not be read. 
      */
-    public GenomicSet<CNV> parseCNVwithPhenotypeAnnotation(PhenotypeData phenotypeData) throws IOException{
-                
-        // construct new set ofCNVs:
-        GenomicSet<CNV> cnvs = new GenomicSet<CNV>();
+    public GenomicSet<CNV> parseCNVwithPhenotypeAnnotation(final PhenotypeData phenotypeData) throws IOException{
         
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
-
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-
-            // if line contains too few columns:
-            if (cols.length < 7 ){
-                throw new IOException(String.format(
-                        "[ERROR] while reading file '%s'. Wrong number of "
-                                + "columns in input line: '%s'", path, line));
+        return parse(new RecordMapper<CNV>(7){
+            @Override
+            CNV map(TabRecordReader record, String name) throws IOException {
+                // create Term object form column with targetTerm ID
+                Term targetTerm = phenotypeData.getTermIncludingAlternatives(record.getString(6));
+                return new CNV(record.getChr(0), record.getInt(1), record.getInt(2), name,
+                        record.getString(4), parseTerms(record.getString(5), phenotypeData), targetTerm);
             }
-            
-            // parse columns
-            String chr = cols[0];
-            int start = Integer.parseInt(cols[1]);
-            int end = Integer.parseInt(cols[2]);
-            String name = cols[3];
-            
-            // In case of non-unique IDs, check if the name is already contained
-            if (! this.uniqueIDs){
-                if (countIDs.containsKey(name)){
-                    // increase counter
-                    countIDs.put(name, countIDs.get(name)+1);
-                    // append a number to the name to have a unique ID
-                    name = name + "_" + countIDs.get(name).toString();
-                // if the name is seen the first time
-                }else{
-                    // count it and append a 1
-                    countIDs.put(name, 1);
-                    name = name + "_1";
-                }
+            @Override
+            CNV rename(CNV e, String name) {
+                return new CNV(e.getChr(), e.getStart(), e.getEnd(), name, 
+                        e.getType(), e.getPhenotypes(), e.getTargetTerm());
             }
-            
-            // parse CNV specific columns if available, set default else
-            String type = ".";
-            if (cols.length >= 5){
-                type =  cols[4];
-            }
-            
-            // parse phenotypes as set of Term objects
-            HashSet<Term> phenotypes = new HashSet<Term>();
-            
-            // for all term IDs in the phenotype column
-            for (String termID : cols[5].split(";")){
-                
-                // consturct a phenotype Term object and add it to the set
-                phenotypes.add(phenotypeData.getTermIncludingAlternatives(termID));
-            }
-            
-            // create Term object form column with targetTerm ID
-            Term targetTerm = phenotypeData.getTermIncludingAlternatives(cols[6]);
-                
-            // create new {@link CNV} object
-            CNV cnv = new CNV(chr, start, end, name, type, phenotypes, targetTerm);
-            
-            // add it to the set
-            cnvs.put(name, cnv);
-
-        }
-        return cnvs;
+        });
     }
     
-    /**
+/**
      * Reads a TAB separated file with CNVs.
      * Assumes each line in the file to represent a CNV. The first
      * four columns should contain the following: chromosome, start, end, and name.
@@ -332,69 +543,60 @@ public class TabFileParser {
      * 
      * @throws IOException if file can not be read. 
      */
-    public GenomicSet<CNV> parseCNVwithHpoTerms(PhenotypeData phenotypeData) throws IOException{
-                
-        // construct new set ofCNVs:
-        GenomicSet<CNV> cnvs = new GenomicSet<CNV>();
+    public GenomicSet<CNV> parseCNVwithHpoTerms(final PhenotypeData phenotypeData) throws IOException{
         
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
-
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-
-            // if line contains too few columns:
-            if (cols.length < 5 ){
-                throw new IOException(String.format(
-                        "[ERROR] while reading file '%s'. Wrong number of "
-                                + "columns in input line: '%s'", path, line));
+        return parse(new RecordMapper<CNV>(5){
+            @Override
+            CNV map(TabRecordReader record, String name) throws IOException {
+                return new CNV(record.getChr(0), record.getInt(1), record.getInt(2), name, 
+                        parseTerms(record.getString(4), phenotypeData));
             }
-            
-            // parse columns
-            String chr = cols[0];
-            int start = Integer.parseInt(cols[1]);
-            int end = Integer.parseInt(cols[2]);
-            String name = cols[3];
-            
-            // In case of non-unique IDs, check if the name is already contained
-            if (! this.uniqueIDs){
-                if (countIDs.containsKey(name)){
-                    // increase counter
-                    countIDs.put(name, countIDs.get(name)+1);
-                    // append a number to the name to have a unique ID
-                    name = name + "_" + countIDs.get(name).toString();
-                // if the name is seen the first time
-                }else{
-                    // count it and append a 1
-                    countIDs.put(name, 1);
-                    name = name + "_1";
+            @Override
+            CNV rename(CNV e, String name) {
+                return new CNV(e.getChr(), e.getStart(), e.getEnd(), name, e.getPhenotypes());
+            }
+        });
+    }
+    
+/**
+     * Reads a BED file with breakpoints and builds a CNV for the window
+     * around each breakpoint, like the script 
+     * {@code R/combine_breakpoints_and_phenotypes.R}.
+     * The window is centered at the rounded middle of the breakpoint and
+     * extends by half of the window size (rounded down) to both sides, but
+     * not below position zero. The phenotypes of each breakpoint are looked 
+     * up by its name in column 4.
+     * 
+     * @param windowSize the size of the windows in base pairs
+     * @param phenotypes lookup of the phenotype terms of a breakpoint
+     * @return {@link GenomicSet} with {@link CNV} objects of the windows.
+     * 
+     * @throws IOException if file can not be read or a breakpoint has no phenotypes
+     */
+    public GenomicSet<CNV> parseBreakpointWindowsWithHpoTerms(final int windowSize, 
+            final PhenotypeLookup phenotypes) throws IOException{
+        
+        return parse(new RecordMapper<CNV>(4){
+            @Override
+            CNV map(TabRecordReader record, String name) throws IOException {
+                HashSet<Term> terms = phenotypes.getPhenotypes(name);
+                if (terms == null){
+                    throw new IOException("[ERROR] while reading file '" + path 
+                            + "'. No phenotypes for breakpoint: '" + name + "'");
                 }
+                // round half to even like R
+                long center = (long) Math.rint(((long) record.getInt(1) + record.getInt(2)) / 2.0);
+                return new CNV(record.getChr(0), (int) Math.max(0, center - windowSize / 2), 
+                        (int) (center + windowSize / 2), name, new HashSet<Term>(terms));
             }
-                        
-            // parse phenotypes as set of Term objects
-            HashSet<Term> phenotypes = new HashSet<Term>();
-            
-            // for all term IDs in the phenotype column
-            for (String termID : cols[4].split(";")){
-                
-                // consturct a phenotype Term object and add it to the set
-                phenotypes.add(phenotypeData.getTermIncludingAlternatives(termID));
+            @Override
+            CNV rename(CNV e, String name) {
+                return new CNV(e.getChr(), e.getStart(), e.getEnd(), name, e.getPhenotypes());
             }
-            
-            // create new {@link CNV} object
-            CNV cnv = new CNV(chr, start, end, name, phenotypes);
-            
-            // add it to the set
-            cnvs.put(name, cnv);
-
-        }
-        return cnvs;
+        });
     }
     
-    /**
+/**
      * Reads a TAB separated file with CNVs and assumes all patients to have the
      * same phenotype given by a single input phenotype term.
      * Assumes each line in the file to represent a CNV. The first
@@ -411,68 +613,27 @@ public class TabFileParser {
      * 
      * @throws IOException if file can not be read. 
      */
-    public GenomicSet<CNV> parseCNVwithGlobalTerm(Term globalPhenotype) throws IOException{
-                
-        // construct new set ofCNVs:
-        GenomicSet<CNV> cnvs = new GenomicSet<CNV>();
+    public GenomicSet<CNV> parseCNVwithGlobalTerm(final Term globalPhenotype) throws IOException{
         
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
-
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-            // if line contains too few columns:
-            if (cols.length < 4 ){
-                throw new IOException(String.format(
-                        "[ERROR] while reading file '%s'. Wrong number of "
-                                + "columns in input line: '%s'", path, line));
+        return parse(new RecordMapper<CNV>(4){
+            @Override
+            CNV map(TabRecordReader record, String name) {
+                // parse CNV specific columns if available, set default else
+                String type = record.getColumnCount() >= 5 ? record.getString(4) : ".";
+                HashSet<Term> phenotypes = new HashSet<Term>();
+                phenotypes.add(globalPhenotype);
+                return new CNV(record.getChr(0), record.getInt(1), record.getInt(2), name, 
+                        type, phenotypes, globalPhenotype);
             }
-            
-            // parse columns
-            String chr = cols[0];
-            int start = Integer.parseInt(cols[1]);
-            int end = Integer.parseInt(cols[2]);
-            String name = cols[3];
-
-            // In case of non-unique IDs, check if the name is already contained
-            if (! this.uniqueIDs){
-                if (countIDs.containsKey(name)){
-                    // increase counter
-                    countIDs.put(name, countIDs.get(name)+1);
-                    // append a number to the name to have a unique ID
-                    name = name + "_" + countIDs.get(name).toString();
-                // if the name is seen the first time
-                }else{
-                    // count it and append a 1
-                    countIDs.put(name, 1);
-                    name = name + "_1";
-                }
+            @Override
+            CNV rename(CNV e, String name) {
+                return new CNV(e.getChr(), e.getStart(), e.getEnd(), name, 
+                        e.getType(), e.getPhenotypes(), e.getTargetTerm());
             }
-            
-            // parse CNV specific columns if available, set default else
-            String type = ".";
-            if (cols.length >= 5){
-                type =  cols[4];
-            }
-            
-            // parse phenotypes as set of Term objects
-            HashSet<Term> phenotypes = new HashSet<Term>();
-            phenotypes.add(globalPhenotype);
-                        
-            // create new {@link CNV} object
-            CNV cnv = new CNV(chr, start, end, name, type, phenotypes, globalPhenotype);
-            
-            // add it to the set
-            cnvs.put(name, cnv);
-
-        }
-        return cnvs;
+        });
     }
     
-    /**
+/**
      * Reads all target terms form the 6th column of an input CNV file.
      * 
      * @param phenotypeData
@@ -483,28 +644,23 @@ public class TabFileParser {
         
         HashSet<Term> targetTerms = new HashSet();
         
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-            
-            if (cols.length <= 6){
-                throw new IOException(String.format("No column found for target"
-                        + "Term by reading file '%s'. "
-                        + "Column number <= 6 in input line.", path));
-            }else{
-        
+        try (TabRecordReader record = new TabRecordReader(path)){
+            while (record.next()){
+                
+                if (record.getColumnCount() <= 6){
+                    throw new IOException(String.format("No column found for target"
+                            + "Term by reading file '%s'. "
+                            + "Column number <= 6 in input line.", path));
+                }
+                
                 // targetTerm ID
-               String termID = cols[6];
-               
-               targetTerms.add(phenotypeData.getTermIncludingAlternatives(termID));
-
+                targetTerms.add(phenotypeData.getTermIncludingAlternatives(record.getString(6)));
             }
         }
         return targetTerms;
     }
         
-    /**
+/**
      * Reads a TAB separated file with genes.
      * Assumes the .tab format form the barrier project.
      * Note, that the file should contain genes with unique Entrez Gene IDs in the
@@ -515,62 +671,24 @@ public class TabFileParser {
      */
     public GenomicSet<Gene> parseGene() throws IOException{
         
-        // construct new set of genomic reigons:
-        GenomicSet<Gene> genes = new GenomicSet();
-        
-        // count IDs to give each ID a unique identifier, this will only be used
-        // in case of non-unique IDs
-        HashMap<String, Integer> countIDs = new HashMap<String, Integer>();
-
-        for ( String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) ){
-            
-            // split line by TABs
-            String [] cols = line.split("\t");
-            // if line contains too few columns:
-            if (cols.length < 4 ){
-                throw new IOException(String.format(
-                        "[ERROR] while reading file '%s'. Wrong number of "
-                                + "columns in input line: '%s'", path, line));
+        return parse(new RecordMapper<Gene>(4){
+            @Override
+            Gene map(TabRecordReader record, String name) {
+                Gene g = new Gene(record.getChr(0), record.getInt(1), record.getInt(2), name);
+                // parse Gene specific columns
+                g.setStrand(record.getColumnCount() >= 5 ? record.getString(4) : ".");
+                //Gene Symbol is not contained in the .tab format of the barrier project 
+                g.setSymbol(".");
+                return g;
             }
-            
-            // parse columns
-            String chr = cols[0];
-            int start = Integer.parseInt(cols[1]);
-            int end = Integer.parseInt(cols[2]);
-            String name = cols[3];
-            
-            // In case of non-unique IDs, check if the name is already contained
-            if (! this.uniqueIDs){
-                if (countIDs.containsKey(name)){
-                    // increase counter
-                    countIDs.put(name, countIDs.get(name)+1);
-                    // append a number to the name to have a unique ID
-                    name = name + "_" + countIDs.get(name).toString();
-                // if the name is seen the first time
-                }else{
-                    // count it and append a 1
-                    countIDs.put(name, 1);
-                    name = name + "_1";
-                }
+            @Override
+            Gene rename(Gene e, String name) {
+                Gene g = new Gene(e.getChr(), e.getStart(), e.getEnd(), name);
+                g.setStrand(e.getStrand());
+                g.setSymbol(e.getSymbol());
+                return g;
             }
-            
-            // create new {@link Gene} object
-            Gene g = new Gene(chr, start, end, name);
-            
-            // parse Gene specific columns
-            if (cols.length >= 5){
-                g.setStrand( cols[4] );
-            }else{
-                g.setStrand(".");
-            }
-            //Gene Symbol is not contained in the .tab format of the barrier project 
-            g.setSymbol("."); 
-            // TODO: write an additional constructor and remove setter functions
-            // add it to the set
-            genes.put(name, g);
-        }
-        
-        return genes;
+        });
     }
 
     public GenomicSet<Gene> parseGeneWithTerms(PhenotypeData phenotypeData) throws IOException{
@@ -597,52 +715,4 @@ public class TabFileParser {
         
         return genes;
     }
-
-    
-    /**
-     * This function tests if the IDs or names in column 4 are unique to each element.
-     * @return true if the IDs are unique
-     * @throws IOException 
-     */
-    private boolean checkForUniqueIDs() throws IOException{
-
-        // set for unique ids in file
-        HashSet<String> seenIDs = new HashSet<String>();
-        
-        for ( String line : Files.readAllLines( this.path, StandardCharsets.UTF_8 ) ){
-
-            // ignore comment lines starting with "#";
-            if (line.startsWith("#")) {
-                continue;
-            } else{
-                
-                // split line by TABs
-                String [] cols = line.split("\t");
-                // if line contains too few columns:
-                if (cols.length < 3 ){
-                    throw new IOException(String.format(
-                            "[ERROR] while reading file '%s'. Wrong number of "
-                                    + "columns in input line: '%s'", path, line));
-                }
-                
-                // if no ID column is present, return false
-                if (cols.length < 4){
-                    return false;
-                }
-                
-                String name = cols[3];
-                
-                // if name was seen already, return false
-                if (seenIDs.contains(name)){
-                    return false;
-                }
-                // add id to set of seen IDs
-                seenIDs.add(name);
-            }
-        }
-        
-        // if no ID was seen before
-        return true;
-    }
-    
 }
@@ -11,13 +11,10 @@ import genomicregions.GenomicElement;
 import genomicregions.GenomicSet;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import phenotypeontology.PhenotypeData;
 
@@ -31,9 +28,6 @@ public class TabFileWriter<T extends GenomicElement> {
     
     /** Path to the output file */
     private final Path path;
-    
-    // define charset for nio.Files.write function
-    private final Charset charset = Charset.forName("utf-8");
 
     
     /**
@@ -57,45 +51,34 @@ public class TabFileWriter<T extends GenomicElement> {
     }
     
     /**
+     * Writes a header line and one line per element to the output file.
+     * The lines are streamed to the file by a {@link TabRowWriter}.
      * 
      * @param elements
      * @throws IOException 
      */
     public void write(GenomicSet<T> elements) throws IOException{
         
-        // convert elements to list of output lines
-        List lines = new ArrayList<String>();
-
-        
-        String headerLine = T.getOutputHeaderLine();
         /*
         Construct header line. Note, that the function getOutputHeaderLine is a
         static memberfunction that is however specidfic for the type T (GenomicElement or one
         of its subclasses)       
         */
-//        if (elements.isEmpty()){
-//            // if element set is empty, take generic header of a sample GenomicElement
-//            headerLine = new GenomicElement("chrTmp", 0, 1, "tmp").getOutputHeaderLine();
-//        }else{
-//            T anyElement = elements.get(elements.keySet().toArray()[0]);
-//            headerLine = anyElement.getOutputHeaderLine();
-//        }
-        
-        // add header to output lines:
-        lines.add(headerLine);
+        String headerLine = T.getOutputHeaderLine();
         
-        // iterate over each element and add a line for it to the output lines
-        for ( T e : elements.values() ){
+        try (TabRowWriter out = new TabRowWriter(path.toString())){
             
-            // call the memberfunction toOutputLine to convert each element to 
-            // one output line in the appropriate format. 
-            lines.add(e.toOutputLine());
-        
+            // add header to output lines:
+            out.writeLine(headerLine);
+
+            // iterate over each element and write a line for it
+            for ( T e : elements.values() ){
+
+                // call the memberfunction toOutputLine to convert each element to 
+                // one output line in the appropriate format. 
+                out.writeLine(e.toOutputLine());
+            }
         }
-                
-        // wirte output lines to output file
-        java.nio.file.Files.write(path, lines, charset);
-    
     }
 
     /**
@@ -106,8 +89,22 @@ public class TabFileWriter<T extends GenomicElement> {
     public void writeLines(Collection<? extends String> lines) throws IOException{
         
         // write all lines to the output file.
-        java.nio.file.Files.write(path, lines, charset);        
-        
+        try (TabRowWriter out = new TabRowWriter(path.toString())){
+            for (String line : lines){
+                out.writeLine(line);
+            }
+        }
+    }
+    
+    /**
+     * Opens the output file to stream rows to it. The returned writer has to
+     * be closed by the caller.
+     * 
+     * @return a {@link TabRowWriter} for the output file
+     * @throws IOException if the file cannot be opened
+     */
+    public TabRowWriter open() throws IOException{
+        return new TabRowWriter(path.toString());
     }
     
 }
@@ -0,0 +1,342 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Streams the records of a TAB separated file like BED or .tab files.
+ * The input is read in chunks into a byte buffer and each line is split into
+ * fields by recording their offsets in the buffer, so no String is created
+ * per line or per field unless requested. Integer columns are parsed
+ * directly from the bytes and chromosome names are interned, so all elements
+ * on the same chromosome share a single String. The memory used by the reader
+ * is bounded by the length of the longest line, independent of the file size.
+ * <br><br>
+ * Lines starting with '#' are skipped. Fields are counted like
+ * {@code line.split("\t")}, i.e. trailing empty fields are ignored.
+ * Line endings can be '\n' or "\r\n".
+ */
+public class TabRecordReader implements Closeable {
+
+    /** Initial size of the input buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+
+    private byte [] buf = new byte[BUFFER_SIZE];
+
+    /** Start of the unread input in {@code buf}. */
+    private int pos = 0;
+
+    /** End of the valid input in {@code buf}. */
+    private int limit = 0;
+
+    /** Offset of {@code buf[0]} in the input. */
+    private long base = 0;
+
+    private boolean eof = false;
+
+    /** Offsets of the current line in {@code buf}. */
+    private int lineStart;
+    private int lineEnd;
+
+    /** Offsets of the fields of the current line in {@code buf}. */
+    private int [] fieldStarts = new int[16];
+    private int [] fieldEnds = new int[16];
+    private int columns = 0;
+
+    /** Number of the current line in the file, starting with 1. */
+    private long lineNumber = 0;
+
+    /** Interned chromosome names. */
+    private final HashMap<String, String> chromosomes = new HashMap<>();
+
+    /** Last chromosome name and its bytes, to skip the lookup in sorted files. */
+    private String lastChr = null;
+    private byte [] lastChrBytes = new byte[0];
+
+    /**
+     * Opens a file for reading. Files compressed with gzip or bgzip are
+     * decompressed.
+     *
+     * @param path the input file
+     * @throws IOException if the file cannot be opened
+     */
+    public TabRecordReader(Path path) throws IOException{
+        this(CompressedInput.open(path));
+    }
+
+    /**
+     * Reads records from an input stream. The stream is closed by
+     * {@link #close()}.
+     *
+     * @param in the input
+     */
+    public TabRecordReader(InputStream in){
+        this.in = in;
+    }
+
+    /**
+     * Reads more input into the buffer. Unread input is moved to the start of
+     * the buffer and the buffer is enlarged if it is full.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException{
+
+        if (pos > 0){
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            base += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length){
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0){
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Advances to the next line that is not a comment.
+     *
+     * @return false if there are no more lines
+     * @throws IOException if the input cannot be read
+     */
+    public boolean next() throws IOException{
+
+        while (true){
+
+            // find the end of the next line
+            int newline = -1;
+            // number of bytes after pos that contain no line break
+            int scanned = 0;
+            while (true){
+                for (int i = pos + scanned; i < limit; i++){
+                    if (buf[i] == '\n'){
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0 || eof){
+                    break;
+                }
+                scanned = limit - pos;
+                if (!fill()){
+                    break;
+                }
+            }
+
+            if (newline < 0){
+                // last line without line break
+                if (pos == limit){
+                    columns = 0;
+                    return false;
+                }
+                lineStart = pos;
+                lineEnd = limit;
+                pos = limit;
+            }else{
+                lineStart = pos;
+                lineEnd = newline;
+                pos = newline + 1;
+            }
+            if (lineEnd > lineStart && buf[lineEnd - 1] == '\r'){
+                lineEnd--;
+            }
+            lineNumber++;
+
+            // ignore comment lines starting with "#";
+            if (lineEnd > lineStart && buf[lineStart] == '#'){
+                continue;
+            }
+            split();
+            return true;
+        }
+    }
+
+    /**
+     * Records the offsets of all fields of the current line.
+     */
+    private void split(){
+
+        columns = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++){
+            if (i == lineEnd || buf[i] == '\t'){
+                if (columns == fieldStarts.length){
+                    fieldStarts = Arrays.copyOf(fieldStarts, 2 * columns);
+                    fieldEnds = Arrays.copyOf(fieldEnds, 2 * columns);
+                }
+                fieldStarts[columns] = start;
+                fieldEnds[columns] = i;
+                columns++;
+                start = i + 1;
+            }
+        }
+        // like String.split(), drop trailing empty fields if the line has a TAB
+        if (columns > 1){
+            while (columns > 0 && fieldStarts[columns - 1] == fieldEnds[columns - 1]){
+                columns--;
+            }
+        }
+    }
+
+    /**
+     * Number of fields in the current line.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount(){
+        return columns;
+    }
+
+    /**
+     * Number of the current line in the input, including comment lines.
+     *
+     * @return the line number starting with 1
+     */
+    public long getLineNumber(){
+        return lineNumber;
+    }
+
+    /**
+     * Byte offset of the current line in the input, e.g. to seek to the line
+     * later.
+     *
+     * @return the offset of the first byte of the current line
+     */
+    public long getLineOffset(){
+        return base + lineStart;
+    }
+
+    /**
+     * The current line as String, e.g. for error messages.
+     *
+     * @return the current line without line break
+     */
+    public String getLine(){
+        return new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private void checkColumn(int col){
+        if (col < 0 || col >= columns){
+            throw new IndexOutOfBoundsException(String.format(
+                    "Column %d not found in line %d: '%s'", col, lineNumber, getLine()));
+        }
+    }
+
+    /**
+     * Returns a field as String.
+     *
+     * @param col the column index starting with 0
+     * @return the content of the field
+     */
+    public String getString(int col){
+        checkColumn(col);
+        return new String(buf, fieldStarts[col], fieldEnds[col] - fieldStarts[col], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a field as interned String. Equal fields in different lines
+     * return the same String object. This should only be used for fields
+     * with few distinct values like chromosome names.
+     *
+     * @param col the column index starting with 0
+     * @return the content of the field
+     */
+    public String getChr(int col){
+        checkColumn(col);
+        int start = fieldStarts[col];
+        int len = fieldEnds[col] - start;
+
+        // in sorted files, the chromosome is the same as in the previous line
+        if (lastChr != null && len == lastChrBytes.length){
+            boolean equal = true;
+            for (int i = 0; i < len; i++){
+                if (buf[start + i] != lastChrBytes[i]){
+                    equal = false;
+                    break;
+                }
+            }
+            if (equal){
+                return lastChr;
+            }
+        }
+
+        String chr = new String(buf, start, len, StandardCharsets.UTF_8);
+        String interned = chromosomes.get(chr);
+        if (interned == null){
+            chromosomes.put(chr, chr);
+            interned = chr;
+        }
+        lastChr = interned;
+        lastChrBytes = Arrays.copyOfRange(buf, start, start + len);
+        return interned;
+    }
+
+    /**
+     * Parses a field as integer without creating a String.
+     * Accepts the same input as {@link Integer#parseInt(String)} for decimal
+     * numbers.
+     *
+     * @param col the column index starting with 0
+     * @return the value of the field
+     * @throws NumberFormatException if the field is not a valid integer
+     */
+    public int getInt(int col) throws NumberFormatException{
+        checkColumn(col);
+        int i = fieldStarts[col];
+        int end = fieldEnds[col];
+
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')){
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (i == end){
+            throw new NumberFormatException("For input string: \"" + getString(col) + "\"");
+        }
+
+        // accumulate negatively to cover Integer.MIN_VALUE
+        long min = negative ? Integer.MIN_VALUE : -(long) Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++){
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9){
+                throw new NumberFormatException("For input string: \"" + getString(col) + "\"");
+            }
+            value = 10 * value - digit;
+            if (value < min){
+                throw new NumberFormatException("For input string: \"" + getString(col) + "\"");
+            }
+        }
+        return (int) (negative ? value : -value);
+    }
+
+    /**
+     * Closes the input.
+     *
+     * @throws IOException if the input cannot be closed
+     */
+    @Override
+    public void close() throws IOException{
+        in.close();
+    }
+}
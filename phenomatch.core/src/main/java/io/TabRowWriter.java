@@ -0,0 +1,234 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams rows of a TAB separated file to disk. Callers push the fields of
+ * each row with {@link #field(CharSequence)} or {@link #field(int)} and end
+ * it with {@link #endRow()}, so no line String and no list of lines is
+ * created. Characters are encoded to UTF-8 directly into a large direct
+ * buffer without a {@link java.nio.charset.CharsetEncoder}, and the buffer is
+ * written to the file channel whenever it is full.
+ * <br><br>
+ * Rows end with the line separator of the system like in
+ * {@link java.nio.file.Files#write(java.nio.file.Path, Iterable, java.nio.charset.Charset)}.
+ * Unpaired surrogate characters are written as '?' like in
+ * {@link String#getBytes(java.nio.charset.Charset)}.
+ */
+public class TabRowWriter implements Closeable {
+
+    /** Size of the output buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Maximal number of bytes of a single code point in UTF-8. */
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private static final byte [] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** Digits of an integer field in reverse order. */
+    private final byte [] digits = new byte[20];
+
+    /** Characters of a number with fraction digits. */
+    private final byte [] number = new byte[FixedPointFormat.MAX_LENGTH];
+
+    /** Indicates that the current row has at least one field. */
+    private boolean inRow = false;
+
+    /**
+     * Opens an output file. An existing file is overwritten.
+     *
+     * @param path path to the output file
+     * @throws IOException if the file cannot be opened
+     */
+    public TabRowWriter(String path) throws IOException{
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes the buffer to the file if less than {@code bytes} are free.
+     */
+    private void reserve(int bytes) throws IOException{
+        if (buf.remaining() < bytes){
+            flush();
+        }
+    }
+
+    /**
+     * Writes a TAB before all but the first field of a row.
+     */
+    private void separator() throws IOException{
+        if (inRow){
+            reserve(1);
+            buf.put((byte) '\t');
+        }
+        inRow = true;
+    }
+
+    /**
+     * Encodes characters to UTF-8.
+     */
+    private void put(CharSequence s) throws IOException{
+
+        int n = s.length();
+        for (int i = 0; i < n; i++){
+            char c = s.charAt(i);
+            reserve(MAX_CHAR_BYTES);
+            if (c < 0x80){
+                buf.put((byte) c);
+            }else if (c < 0x800){
+                buf.put((byte) (0xc0 | c >> 6));
+                buf.put((byte) (0x80 | c & 0x3f));
+            }else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))){
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf.put((byte) (0xf0 | cp >> 18));
+                buf.put((byte) (0x80 | cp >> 12 & 0x3f));
+                buf.put((byte) (0x80 | cp >> 6 & 0x3f));
+                buf.put((byte) (0x80 | cp & 0x3f));
+            }else if (Character.isSurrogate(c)){
+                buf.put((byte) '?');
+            }else{
+                buf.put((byte) (0xe0 | c >> 12));
+                buf.put((byte) (0x80 | c >> 6 & 0x3f));
+                buf.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Appends a text field to the current row.
+     *
+     * @param s content of the field, must not contain TAB or line breaks
+     * @return this writer
+     * @throws IOException if the output cannot be written
+     */
+    public TabRowWriter field(CharSequence s) throws IOException{
+        separator();
+        put(s);
+        return this;
+    }
+
+    /**
+     * Appends an integer field to the current row without creating a String.
+     *
+     * @param value content of the field
+     * @return this writer
+     * @throws IOException if the output cannot be written
+     */
+    public TabRowWriter field(int value) throws IOException{
+        return field((long) value);
+    }
+
+    /**
+     * Appends an integer field to the current row without creating a String.
+     *
+     * @param value content of the field
+     * @return this writer
+     * @throws IOException if the output cannot be written
+     */
+    public TabRowWriter field(long value) throws IOException{
+
+        separator();
+        reserve(digits.length + 1);
+        if (value < 0){
+            buf.put((byte) '-');
+        }
+        // collect digits negatively to cover Long.MIN_VALUE
+        long v = value < 0 ? value : -value;
+        int n = 0;
+        do{
+            digits[n++] = (byte) ('0' - v % 10);
+            v /= 10;
+        }while (v != 0);
+        while (n > 0){
+            buf.put(digits[--n]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a number with three fraction digits to the current row, 
+     * formatted like {@link Utils#roundToString(double)}.
+     *
+     * @param value content of the field
+     * @return this writer
+     * @throws IOException if the output cannot be written
+     */
+    public TabRowWriter field(double value) throws IOException{
+
+        int end = FixedPointFormat.format(value, number, 0);
+        if (end < 0){
+            return field(Utils.roundToString(value));
+        }
+        separator();
+        reserve(end);
+        buf.put(number, 0, end);
+        return this;
+    }
+
+    /**
+     * Ends the current row.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void endRow() throws IOException{
+        reserve(LINE_SEPARATOR.length);
+        buf.put(LINE_SEPARATOR);
+        inRow = false;
+    }
+
+    /**
+     * Writes a complete line, e.g. a header or a line computed before.
+     * The current row must be ended before.
+     *
+     * @param line the line without line separator
+     * @throws IOException if the output cannot be written
+     */
+    public void writeLine(CharSequence line) throws IOException{
+        put(line);
+        endRow();
+    }
+
+    /**
+     * Writes the buffered output to the file.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void flush() throws IOException{
+        buf.flip();
+        while (buf.hasRemaining()){
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Writes the buffered output and closes the file.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    public void close() throws IOException{
+        try{
+            flush();
+        }finally{
+            channel.close();
+        }
+    }
+}
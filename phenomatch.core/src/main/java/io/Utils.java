@@ -6,6 +6,7 @@
 
 package io;
 
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
@@ -18,27 +19,43 @@ import java.util.Arrays;
 public class Utils {
     
     
-    private static DecimalFormatSymbols dfs = new DecimalFormatSymbols();
-    private static DecimalFormat df = new DecimalFormat("0.000");
+    /**
+     * {@link DecimalFormat} is not thread-safe, therefore each thread gets its
+     * own instance.
+     */
+    private static final ThreadLocal<DecimalFormat> df = new ThreadLocal<DecimalFormat>(){
+        @Override
+        protected DecimalFormat initialValue(){
+            
+            // force the decimal separator to be a dot (even in german environemtns)
+            DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+            dfs.setDecimalSeparator('.');
+            return new DecimalFormat("0.000", dfs);
+        }
+    };
     
     
     
+    /**
+     * Formats a number with three fraction digits. Finite numbers of usual 
+     * magnitude are formatted by {@link FixedPointFormat} with the same 
+     * result as {@link DecimalFormat} but without locking or shared state.
+     * 
+     * @param d the number
+     * @return the number with three fraction digits
+     */
     public static String roundToString(double d){
         
-        // force the decimal separator to be a dot (even in german environemtns)
-        dfs.setDecimalSeparator('.');
-        df.setDecimalFormatSymbols(dfs);
-        
-        return df.format(d);
+        byte [] chars = new byte[FixedPointFormat.MAX_LENGTH];
+        int end = FixedPointFormat.format(d, chars, 0);
+        if (end < 0){
+            return df.get().format(d);
+        }
+        return new String(chars, 0, end, StandardCharsets.US_ASCII);
     }
 
     public static String roundToString(String s){
-        
-        // force the decimal separator to be a dot (even in german environemtns)
-        dfs.setDecimalSeparator('.');
-        df.setDecimalFormatSymbols(dfs);
-        
-        return df.format(s);
+        return df.get().format(s);
     }
     
     /**
@@ -0,0 +1,467 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import genomicregions.CNV;
+import genomicregions.Gene;
+import io.GeneScoreRows;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import ontologizer.go.Term;
+import phenotypeontology.PhenotypeData;
+
+/**
+ * Runs permutations of the gene to phenotype annotations on a pool of worker
+ * threads.
+ * The genes and their overlaps with the CNVs do not depend on the phenotypes.
+ * They are therefore frozen once into compact lists of indices into the
+ * annotated genes that lie in the window of any CNV. Genes outside of all
+ * windows are never looked up. Each permutation shuffles the phenotype sets of
+ * all annotated genes in memory and rescores only the frozen lists with the
+ * permuted sets. No shared {@link genomicregions.Gene} or {@link PhenotypeData}
+ * object is modified.
+ * <br><br>
+ * Permutation {@code i} draws its random numbers from its own generator that
+ * is seeded from the engine seed and {@code i}. The results are therefore
+ * reproducible for a given seed and independent of the number of threads.
+ * Results are passed to a {@link PermutationListener} in permutation order.
+ */
+public class PermutationEngine {
+
+    /** The original phenotype data. */
+    private final PhenotypeData phenotypeData;
+
+    /** CNVs annotated with overlapped genes (and genes in overlapped TADs). */
+    private final CNV [] cnvs;
+
+    /** Frozen gene lists of each CNV in the order of {@code cnvs}. */
+    private final Window [] windows;
+
+    /** Index of each annotated gene in a window into {@code geneIDs}. */
+    private final int [] windowRank;
+
+    /** Maps gene IDs to their index in {@code windowRank}. */
+    private final HashMap<String, Integer> windowIndex;
+
+    /** True if the genes in overlapped TADs are scored as well. */
+    private final boolean withTADs;
+
+    /** Seed from which the random generators of all permutations are derived. */
+    private final long seed;
+
+    /** IDs of all genes with phenotype annotation in a fixed order. */
+    private final String [] geneIDs;
+
+    /** Phenotype sets of all annotated genes in the order of {@code geneIDs}. */
+    private final ArrayList<HashSet<Term>> genePhenotypes;
+
+    /** True if rows of the binary columnar output are produced instead of lines. */
+    private boolean columnarOutput = false;
+
+    /**
+     * Constructs a new {@link PermutationEngine}.
+     *
+     * @param phenotypeData the original phenotype data with gene annotations
+     * @param cnvs CNVs that are already annotated with overlapped genes
+     * @param withTADs if true the genes in overlapped TADs are scored as well
+     * @param seed seed of the random generators
+     */
+    public PermutationEngine(PhenotypeData phenotypeData, Iterable<CNV> cnvs,
+            boolean withTADs, long seed){
+
+        this.phenotypeData = phenotypeData;
+        this.withTADs = withTADs;
+        this.seed = seed;
+
+        ArrayList<CNV> cnvList = new ArrayList<>();
+        for (CNV c : cnvs){
+            cnvList.add(c);
+        }
+        this.cnvs = cnvList.toArray(new CNV[cnvList.size()]);
+
+        // sort gene IDs so that the permutations do not depend on hash order
+        this.geneIDs = phenotypeData.getAllGenesIDs().toArray(new String[0]);
+        Arrays.sort(this.geneIDs);
+        this.genePhenotypes = new ArrayList<>(geneIDs.length);
+        HashMap<String, Integer> rank = new HashMap<>(2 * geneIDs.length);
+        for (int i = 0; i < geneIDs.length; i++){
+            genePhenotypes.add(phenotypeData.getGenePhenotypes(geneIDs[i]));
+            rank.put(geneIDs[i], i);
+        }
+
+        // freeze the annotated genes in the windows of all CNVs
+        this.windowIndex = new HashMap<>();
+        ArrayList<Integer> ranks = new ArrayList<>();
+        this.windows = new Window[this.cnvs.length];
+        for (int c = 0; c < this.cnvs.length; c++){
+            Window w = new Window();
+            w.overlapIndex = freeze(this.cnvs[c].getGenesInOverlap().values(), w.overlapGenes, rank, ranks);
+            w.tadIndex = freeze(this.cnvs[c].getGenesInOverlapTADs().values(), w.tadGenes, rank, ranks);
+            windows[c] = w;
+        }
+        this.windowRank = new int[ranks.size()];
+        for (int k = 0; k < windowRank.length; k++){
+            windowRank[k] = ranks.get(k);
+        }
+    }
+
+    /**
+     * The annotated genes of a CNV as parallel lists of genes and indices
+     * into the window genes.
+     */
+    private static class Window {
+        private final ArrayList<Gene> overlapGenes = new ArrayList<>();
+        private int [] overlapIndex;
+        private final ArrayList<Gene> tadGenes = new ArrayList<>();
+        private int [] tadIndex;
+    }
+
+    /**
+     * Collects the annotated genes of a window and assigns a window index to
+     * each gene that is seen for the first time.
+     *
+     * @param genes genes of the window
+     * @param frozenGenes output list of the annotated genes
+     * @param rank index of each annotated gene in {@code geneIDs}
+     * @param ranks output list of the rank of each window index
+     * @return window indices in the order of {@code frozenGenes}
+     */
+    private int [] freeze(Collection<Gene> genes, ArrayList<Gene> frozenGenes,
+            HashMap<String, Integer> rank, ArrayList<Integer> ranks){
+
+        ArrayList<Integer> index = new ArrayList<>();
+        for (Gene g : genes){
+            Integer r = rank.get(g.getName());
+            if (r == null){
+                // genes without annotation never get a score
+                continue;
+            }
+            Integer k = windowIndex.get(g.getName());
+            if (k == null){
+                k = ranks.size();
+                ranks.add(r);
+                windowIndex.put(g.getName(), k);
+            }
+            frozenGenes.add(g);
+            index.add(k);
+        }
+
+        int [] out = new int[index.size()];
+        for (int i = 0; i < out.length; i++){
+            out[i] = index.get(i);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the random generator of a single permutation.
+     *
+     * @param permutation index of the permutation
+     * @return a new generator that depends only on the seed and the index
+     */
+    Random getRandom(int permutation){
+
+        // mix seed and index so that neighbouring permutations get unrelated seeds
+        long z = seed + (permutation + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    /**
+     * Builds the permuted mapping of gene IDs to phenotypes for a single
+     * permutation.
+     *
+     * @param permutation index of the permutation
+     * @return mapping of each annotated gene to the phenotypes of another gene
+     */
+    public HashMap<String, HashSet<Term>> getPermutedGene2Terms(int permutation){
+
+        ArrayList<HashSet<Term>> shuffled = new ArrayList<>(genePhenotypes);
+        Collections.shuffle(shuffled, getRandom(permutation));
+
+        HashMap<String, HashSet<Term>> permuted = new HashMap<>(2 * geneIDs.length);
+        for (int i = 0; i < geneIDs.length; i++){
+            permuted.put(geneIDs[i], shuffled.get(i));
+        }
+        return permuted;
+    }
+
+    /**
+     * Builds the permuted phenotypes of the annotated genes in the windows of
+     * all CNVs for a single permutation. The shuffle is the same as in
+     * {@link #getPermutedGene2Terms(int)}, but no mapping of all genes is
+     * built.
+     *
+     * @param permutation index of the permutation
+     * @return permuted phenotypes indexed by window index
+     */
+    ArrayList<HashSet<Term>> getPermutedWindowTerms(int permutation){
+
+        ArrayList<HashSet<Term>> shuffled = new ArrayList<>(genePhenotypes);
+        Collections.shuffle(shuffled, getRandom(permutation));
+
+        ArrayList<HashSet<Term>> terms = new ArrayList<>(windowRank.length);
+        for (int r : windowRank){
+            terms.add(shuffled.get(r));
+        }
+        return terms;
+    }
+
+    /**
+     * Selects the phenotypes of a frozen gene list.
+     */
+    private static ArrayList<HashSet<Term>> select(ArrayList<HashSet<Term>> windowTerms, int [] index){
+        ArrayList<HashSet<Term>> terms = new ArrayList<>(index.length);
+        for (int k : index){
+            terms.add(windowTerms.get(k));
+        }
+        return terms;
+    }
+
+    /**
+     * Scores all CNVs with permuted gene phenotypes.
+     *
+     * @param permutation index of the permutation
+     * @return the output lines or rows of this permutation
+     */
+    public PermutationResult runPermutation(int permutation){
+
+        ArrayList<HashSet<Term>> windowTerms = getPermutedWindowTerms(permutation);
+
+        if (columnarOutput){
+            GeneScoreRows overlapRows = new GeneScoreRows();
+            GeneScoreRows tadRows = new GeneScoreRows();
+            for (int c = 0; c < cnvs.length; c++){
+                Window w = windows[c];
+                cnvs[c].addGeneScoreRows(overlapRows, phenotypeData, w.overlapGenes,
+                        select(windowTerms, w.overlapIndex));
+                if (withTADs){
+                    cnvs[c].addGeneScoreRows(tadRows, phenotypeData, w.tadGenes,
+                            select(windowTerms, w.tadIndex));
+                }
+            }
+            return new PermutationResult(permutation, overlapRows, tadRows);
+        }
+
+        ArrayList<String> overlapLines = new ArrayList<>();
+        ArrayList<String> tadLines = new ArrayList<>();
+
+        for (int c = 0; c < cnvs.length; c++){
+            Window w = windows[c];
+            overlapLines.addAll(getOutputLines(cnvs[c], w.overlapGenes,
+                    select(windowTerms, w.overlapIndex)));
+            if (withTADs){
+                tadLines.addAll(getOutputLines(cnvs[c], w.tadGenes,
+                        select(windowTerms, w.tadIndex)));
+            }
+        }
+        return new PermutationResult(permutation, overlapLines, tadLines);
+    }
+
+    /**
+     * Output lines of a frozen gene list, or the line of a CNV without any
+     * scored gene.
+     */
+    private ArrayList<String> getOutputLines(CNV cnv, ArrayList<Gene> genes,
+            ArrayList<HashSet<Term>> terms){
+
+        ArrayList<String> lines = cnv.getGeneOutputLinesWithTerms(phenotypeData, genes, terms);
+        if (lines.isEmpty()){
+            lines.add(cnv.getNoGeneOutputLine());
+        }
+        return lines;
+    }
+
+    /**
+     * Runs permutations and passes the results in permutation order to a
+     * listener. At most a few permutations per thread are scored ahead of the
+     * listener, so the memory usage does not grow with the number of
+     * permutations.
+     *
+     * @param permutations number of permutations
+     * @param threads number of worker threads
+     * @param listener receives the result of each permutation
+     * @throws IOException if the listener fails to handle a result
+     */
+    public void run(int permutations, int threads, PermutationListener listener) throws IOException{
+
+        // build the phenotype profiles of all CNVs once before they are shared
+        for (CNV cnv : cnvs){
+            cnv.getPhenotypeProfile(phenotypeData);
+        }
+
+        if (threads <= 1){
+            for (int i = 0; i < permutations; i++){
+                listener.permutationDone(runPermutation(i));
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+
+            ArrayDeque<Future<PermutationResult>> pending = new ArrayDeque<>();
+            int window = 2 * threads;
+            int next = 0;
+
+            while (next < permutations || !pending.isEmpty()){
+
+                // keep a limited number of permutations in flight
+                while (next < permutations && pending.size() < window){
+                    final int i = next++;
+                    pending.add(pool.submit(new Callable<PermutationResult>(){
+                        @Override
+                        public PermutationResult call() {
+                            return runPermutation(i);
+                        }
+                    }));
+                }
+
+                // hand over the oldest permutation
+                listener.permutationDone(pending.poll().get());
+            }
+
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("[ERROR] Permutations were interrupted.", e);
+        }catch (ExecutionException e){
+            throw new IOException("[ERROR] Permutation failed: " + e.getCause(), e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs permutations and counts the permuted scores in running statistics
+     * instead of producing output lines. Each worker thread takes the next
+     * permutation index, counts into its own counters and adds them to the
+     * statistics when all permutations are done.
+     *
+     * @param permutations number of permutations
+     * @param threads number of worker threads
+     * @param statistics statistics that are updated with each permutation
+     * @throws IOException if a worker thread fails
+     */
+    public void runStatistics(int permutations, int threads,
+            PermutationStatistics... statistics) throws IOException{
+
+        StatisticsWorker worker = new StatisticsWorker(permutations, statistics);
+
+        ArrayList<PermutationStatistics.Counts []> results = new ArrayList<>();
+
+        if (threads <= 1){
+            results.add(worker.call());
+        }else{
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try{
+                ArrayList<Future<PermutationStatistics.Counts []>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++){
+                    futures.add(pool.submit(worker));
+                }
+                for (Future<PermutationStatistics.Counts []> f : futures){
+                    results.add(f.get());
+                }
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IOException("[ERROR] Permutations were interrupted.", e);
+            }catch (ExecutionException e){
+                throw new IOException("[ERROR] Permutation failed: " + e.getCause(), e.getCause());
+            }finally{
+                pool.shutdownNow();
+            }
+        }
+
+        for (PermutationStatistics.Counts [] counts : results){
+            for (int k = 0; k < statistics.length; k++){
+                statistics[k].add(counts[k]);
+            }
+        }
+    }
+
+    /**
+     * Produce rows of the binary columnar output instead of output lines in
+     * {@link #runPermutation(int)}.
+     * @param columnarOutput true for rows of the binary columnar output
+     */
+    public void setColumnarOutput(boolean columnarOutput) {
+        this.columnarOutput = columnarOutput;
+    }
+
+    /**
+     * Seed from which the random generators of all permutations are derived.
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Counts permutations of a shared index range. All threads share one
+     * worker, so they share the index counter.
+     */
+    private class StatisticsWorker implements Callable<PermutationStatistics.Counts []> {
+
+        private final int permutations;
+
+        private final PermutationStatistics [] statistics;
+
+        /** Window index of each slot of each statistics or -1. */
+        private final int [][] slotIndex;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        StatisticsWorker(int permutations, PermutationStatistics [] statistics){
+            this.permutations = permutations;
+            this.statistics = statistics;
+            this.slotIndex = new int[statistics.length][];
+            for (int k = 0; k < statistics.length; k++){
+                Gene [] genes = statistics[k].getSlotGenes();
+                slotIndex[k] = new int[genes.length];
+                for (int s = 0; s < genes.length; s++){
+                    Integer w = windowIndex.get(genes[s].getName());
+                    slotIndex[k][s] = w != null ? w : -1;
+                }
+            }
+        }
+
+        @Override
+        public PermutationStatistics.Counts [] call() {
+
+            PermutationStatistics.Counts [] counts = new PermutationStatistics.Counts[statistics.length];
+            for (int k = 0; k < statistics.length; k++){
+                counts[k] = statistics[k].newCounts();
+            }
+
+            int i;
+            while ((i = next.getAndIncrement()) < permutations){
+                ArrayList<HashSet<Term>> windowTerms = getPermutedWindowTerms(i);
+                for (int k = 0; k < statistics.length; k++){
+                    ArrayList<HashSet<Term>> slotTerms = new ArrayList<>(slotIndex[k].length);
+                    for (int w : slotIndex[k]){
+                        slotTerms.add(w >= 0 ? windowTerms.get(w) : null);
+                    }
+                    statistics[k].count(slotTerms, counts[k]);
+                }
+            }
+            return counts;
+        }
+    }
+}
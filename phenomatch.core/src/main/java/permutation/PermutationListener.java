@@ -0,0 +1,23 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a {@link PermutationEngine} in permutation order.
+ */
+public interface PermutationListener {
+
+    /**
+     * Called once for each permutation in the order of the permutations.
+     *
+     * @param result the output of a single permutation
+     * @throws IOException if the result cannot be handled
+     */
+    void permutationDone(PermutationResult result) throws IOException;
+}
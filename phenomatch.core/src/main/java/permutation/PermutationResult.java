@@ -0,0 +1,89 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import io.GeneScoreRows;
+import java.util.ArrayList;
+
+/**
+ * The output of a single permutation of gene phenotypes.
+ */
+public class PermutationResult {
+
+    /** Index of the permutation. */
+    private final int permutation;
+
+    /** Output lines of the overlapped genes. */
+    private final ArrayList<String> overlapLines;
+
+    /** Output lines of the genes in overlapped TADs. */
+    private final ArrayList<String> tadLines;
+
+    /** Rows of the overlapped genes in the binary columnar output or null. */
+    private final GeneScoreRows overlapRows;
+
+    /** Rows of the genes in overlapped TADs in the binary columnar output or null. */
+    private final GeneScoreRows tadRows;
+
+    public PermutationResult(int permutation, ArrayList<String> overlapLines,
+            ArrayList<String> tadLines){
+        this.permutation = permutation;
+        this.overlapLines = overlapLines;
+        this.tadLines = tadLines;
+        this.overlapRows = null;
+        this.tadRows = null;
+    }
+
+    public PermutationResult(int permutation, GeneScoreRows overlapRows,
+            GeneScoreRows tadRows){
+        this.permutation = permutation;
+        this.overlapLines = new ArrayList<>();
+        this.tadLines = new ArrayList<>();
+        this.overlapRows = overlapRows;
+        this.tadRows = tadRows;
+    }
+
+    /**
+     * Index of the permutation.
+     * @return the permutation
+     */
+    public int getPermutation() {
+        return permutation;
+    }
+
+    /**
+     * Output lines of the overlapped genes.
+     * @return the overlapLines
+     */
+    public ArrayList<String> getOverlapLines() {
+        return overlapLines;
+    }
+
+    /**
+     * Output lines of the genes in overlapped TADs.
+     * @return the tadLines
+     */
+    public ArrayList<String> getTadLines() {
+        return tadLines;
+    }
+
+    /**
+     * Rows of the overlapped genes in the binary columnar output.
+     * @return the overlapRows or null if output lines were produced
+     */
+    public GeneScoreRows getOverlapRows() {
+        return overlapRows;
+    }
+
+    /**
+     * Rows of the genes in overlapped TADs in the binary columnar output.
+     * @return the tadRows or null if output lines were produced
+     */
+    public GeneScoreRows getTadRows() {
+        return tadRows;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import genomicregions.CNV;
+import genomicregions.Gene;
+import genomicregions.GenomicElement;
+import genomicregions.GenomicSet;
+import io.TabFileWriter;
+import io.Utils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import ontologizer.go.Term;
+import org.apache.commons.lang3.StringUtils;
+import phenotypeontology.FrozenOntology;
+import phenotypeontology.PhenotypeData;
+import phenotypeontology.PhenotypeProfile;
+
+/**
+ * Running statistics of permuted phenoMatch scores for a set of CNVs.
+ * For each pair of CNV and gene in its window, and for each CNV, it counts how
+ * often the permuted phenoMatch score and the permuted maximal term score were
+ * at least the observed ones. For each CNV it also holds a histogram of the
+ * permuted maximal score, i.e. of the null distribution.
+ * <br><br>
+ * Permuted scores are computed from the {@link PhenotypeProfile} of each CNV
+ * without any term matching or output formatting. Each worker thread counts
+ * into its own {@link Counts} object and all counts are added up at the end,
+ * so the result does not depend on the number of threads. Empirical p-values
+ * are computed as (count + 1) / (permutations + 1).
+ */
+public class PermutationStatistics {
+
+    /** Number of bins of the null histogram of each CNV. */
+    public static final int HISTOGRAM_BINS = 20;
+
+    /** The CNVs in a fixed order. */
+    private final CNV [] cnvs;
+
+    /** Profile of the phenotypes of each CNV, shared by CNVs with equal phenotypes. */
+    private final PhenotypeProfile [] profiles;
+
+    /** Index of the first gene slot of each CNV (and end of the last CNV). */
+    private final int [] cnvOffset;
+
+    /** Gene of each slot. */
+    private final Gene [] slotGenes;
+
+    /** Observed phenoMatch score of each slot. */
+    private final double [] obsSum;
+
+    /** Observed maximal term score of each slot. */
+    private final double [] obsMax;
+
+    /** Observed maximal phenoMatch score over all genes of each CNV. */
+    private final double [] obsCnvSum;
+
+    /** Observed maximal term score over all genes of each CNV. */
+    private final double [] obsCnvMax;
+
+    /** Upper bound of the histogram, i.e. the maximal IC of any term. */
+    private final double maxIC;
+
+    /** Counts of all permutations so far. */
+    private final Counts total;
+
+    /**
+     * Counters of a set of permutations.
+     */
+    public class Counts {
+
+        /** Number of permutations. */
+        private int permutations;
+
+        /** Per slot: permuted phenoMatch score &gt;= observed. */
+        private final int [] geSum;
+
+        /** Per slot: permuted maximal score &gt;= observed. */
+        private final int [] geMax;
+
+        /** Per CNV: permuted maximal phenoMatch score &gt;= observed. */
+        private final int [] cnvGeSum;
+
+        /** Per CNV: permuted maximal score &gt;= observed. */
+        private final int [] cnvGeMax;
+
+        /** Per CNV: histogram of the permuted maximal score. */
+        private final int [] histogram;
+
+        private Counts(){
+            this.geSum = new int[slotGenes.length];
+            this.geMax = new int[slotGenes.length];
+            this.cnvGeSum = new int[cnvs.length];
+            this.cnvGeMax = new int[cnvs.length];
+            this.histogram = new int[cnvs.length * HISTOGRAM_BINS];
+        }
+    }
+
+    /**
+     * Computes the observed scores of all CNVs.
+     *
+     * @param phenotypeData the original phenotype data
+     * @param cnvs CNVs that are already annotated with overlapped genes
+     * @param inTADs if true the genes in overlapped TADs are used, otherwise
+     * the overlapped genes
+     */
+    public PermutationStatistics(PhenotypeData phenotypeData, Iterable<CNV> cnvs, boolean inTADs){
+
+        ArrayList<CNV> cnvList = new ArrayList<>();
+        ArrayList<Gene> geneList = new ArrayList<>();
+        ArrayList<Integer> offsets = new ArrayList<>();
+        for (CNV c : cnvs){
+            cnvList.add(c);
+            offsets.add(geneList.size());
+            GenomicSet<Gene> genes = inTADs ? c.getGenesInOverlapTADs() : c.getGenesInOverlap();
+            geneList.addAll(genes.values());
+        }
+        offsets.add(geneList.size());
+
+        this.cnvs = cnvList.toArray(new CNV[cnvList.size()]);
+        this.slotGenes = geneList.toArray(new Gene[geneList.size()]);
+        this.cnvOffset = new int[offsets.size()];
+        for (int i = 0; i < cnvOffset.length; i++){
+            cnvOffset[i] = offsets.get(i);
+        }
+
+        FrozenOntology frozen = phenotypeData.getFrozenOntology();
+        double icMax = 0.0;
+        for (int i = 0; i < frozen.size(); i++){
+            icMax = Math.max(icMax, frozen.getIC(i));
+        }
+        this.maxIC = icMax;
+
+        // observed scores
+        this.profiles = new PhenotypeProfile[this.cnvs.length];
+        this.obsSum = new double[slotGenes.length];
+        this.obsMax = new double[slotGenes.length];
+        this.obsCnvSum = new double[this.cnvs.length];
+        this.obsCnvMax = new double[this.cnvs.length];
+
+        for (int c = 0; c < this.cnvs.length; c++){
+            profiles[c] = this.cnvs[c].getPhenotypeProfile(phenotypeData);
+            for (int s = cnvOffset[c]; s < cnvOffset[c + 1]; s++){
+                HashSet<Term> terms = slotGenes[s].getPhenotypeTerms();
+                obsSum[s] = profiles[c].phenoMatchScore(terms);
+                obsMax[s] = profiles[c].maxScore(terms);
+                obsCnvSum[c] = Math.max(obsCnvSum[c], obsSum[s]);
+                obsCnvMax[c] = Math.max(obsCnvMax[c], obsMax[s]);
+            }
+        }
+
+        this.total = new Counts();
+    }
+
+    /**
+     * Creates new counters for a worker thread.
+     * @return empty {@link Counts}
+     */
+    public Counts newCounts(){
+        return new Counts();
+    }
+
+    /**
+     * Scores all CNVs with permuted gene phenotypes and updates the counters.
+     *
+     * @param gene2Terms permuted mapping of gene IDs to phenotype terms
+     * @param counts the counters of the calling thread
+     */
+    public void count(HashMap<String, HashSet<Term>> gene2Terms, Counts counts){
+
+        ArrayList<HashSet<Term>> slotTerms = new ArrayList<>(slotGenes.length);
+        for (Gene g : slotGenes){
+            slotTerms.add(gene2Terms.get(g.getName()));
+        }
+        count(slotTerms, counts);
+    }
+
+    /**
+     * Scores all CNVs with permuted gene phenotypes and updates the counters.
+     *
+     * @param slotTerms permuted phenotypes of each gene in the order of
+     * {@link #getSlotGenes()}, {@code null} for genes without phenotypes
+     * @param counts the counters of the calling thread
+     */
+    public void count(List<HashSet<Term>> slotTerms, Counts counts){
+
+        counts.permutations++;
+
+        for (int c = 0; c < cnvs.length; c++){
+
+            double cnvSum = 0.0;
+            double cnvMax = 0.0;
+
+            for (int s = cnvOffset[c]; s < cnvOffset[c + 1]; s++){
+
+                HashSet<Term> terms = slotTerms.get(s);
+                double sum = 0.0;
+                double max = 0.0;
+                if (terms != null){
+                    sum = profiles[c].phenoMatchScore(terms);
+                    max = profiles[c].maxScore(terms);
+                }
+
+                if (sum >= obsSum[s]){
+                    counts.geSum[s]++;
+                }
+                if (max >= obsMax[s]){
+                    counts.geMax[s]++;
+                }
+                cnvSum = Math.max(cnvSum, sum);
+                cnvMax = Math.max(cnvMax, max);
+            }
+
+            if (cnvSum >= obsCnvSum[c]){
+                counts.cnvGeSum[c]++;
+            }
+            if (cnvMax >= obsCnvMax[c]){
+                counts.cnvGeMax[c]++;
+            }
+            counts.histogram[c * HISTOGRAM_BINS + getBin(cnvMax)]++;
+        }
+    }
+
+    /**
+     * Histogram bin of a maximal score.
+     */
+    private int getBin(double score){
+        if (maxIC <= 0.0){
+            return 0;
+        }
+        return Math.min(HISTOGRAM_BINS - 1, (int) (score / maxIC * HISTOGRAM_BINS));
+    }
+
+    /**
+     * Adds the counters of a worker thread to the total counts.
+     *
+     * @param counts counters of a worker thread
+     */
+    public synchronized void add(Counts counts){
+
+        total.permutations += counts.permutations;
+        addArray(total.geSum, counts.geSum);
+        addArray(total.geMax, counts.geMax);
+        addArray(total.cnvGeSum, counts.cnvGeSum);
+        addArray(total.cnvGeMax, counts.cnvGeMax);
+        addArray(total.histogram, counts.histogram);
+    }
+
+    private static void addArray(int [] sum, int [] values){
+        for (int i = 0; i < sum.length; i++){
+            sum[i] += values[i];
+        }
+    }
+
+    /**
+     * Empirical p-value of a count.
+     */
+    private String pValue(int count){
+        double p = (count + 1) / (double) (total.permutations + 1);
+        return String.format(Locale.US, "%.6g", p);
+    }
+
+    /**
+     * Returns one summary line for each pair of CNV and gene with an observed
+     * score larger than zero.
+     *
+     * @return TAB-separated output lines including a header line
+     */
+    public synchronized ArrayList<String> getGeneSummaryLines(){
+
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(GenomicElement.getOutputHeaderLine() + "\t" + StringUtils.join(new String[]{
+            "gene_symbol", "phenoMatchScore", "maxPhenoMatchScore", "permutations",
+            "n_ge_phenoMatchScore", "p_phenoMatchScore",
+            "n_ge_maxPhenoMatchScore", "p_maxPhenoMatchScore"}, '\t'));
+
+        for (int c = 0; c < cnvs.length; c++){
+            for (int s = cnvOffset[c]; s < cnvOffset[c + 1]; s++){
+                if (obsMax[s] > 0){
+                    lines.add(cnvs[c].toOutputLine() + "\t" + StringUtils.join(new String[]{
+                        slotGenes[s].getSymbol(),
+                        Utils.roundToString(obsSum[s]),
+                        Utils.roundToString(obsMax[s]),
+                        Integer.toString(total.permutations),
+                        Integer.toString(total.geSum[s]),
+                        pValue(total.geSum[s]),
+                        Integer.toString(total.geMax[s]),
+                        pValue(total.geMax[s])}, '\t'));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns one summary line for each CNV with the null histogram of the
+     * maximal score as comma-separated counts.
+     *
+     * @return TAB-separated output lines including a header line
+     */
+    public synchronized ArrayList<String> getCNVSummaryLines(){
+
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(GenomicElement.getOutputHeaderLine() + "\t" + StringUtils.join(new String[]{
+            "phenogramScore", "maxPhenoMatchScore", "permutations",
+            "n_ge_phenogramScore", "p_phenogramScore",
+            "n_ge_maxPhenoMatchScore", "p_maxPhenoMatchScore",
+            "null_maxPhenoMatchScore_histogram"}, '\t'));
+
+        for (int c = 0; c < cnvs.length; c++){
+
+            String [] bins = new String[HISTOGRAM_BINS];
+            for (int b = 0; b < HISTOGRAM_BINS; b++){
+                bins[b] = Integer.toString(total.histogram[c * HISTOGRAM_BINS + b]);
+            }
+
+            lines.add(cnvs[c].toOutputLine() + "\t" + StringUtils.join(new String[]{
+                Utils.roundToString(obsCnvSum[c]),
+                Utils.roundToString(obsCnvMax[c]),
+                Integer.toString(total.permutations),
+                Integer.toString(total.cnvGeSum[c]),
+                pValue(total.cnvGeSum[c]),
+                Integer.toString(total.cnvGeMax[c]),
+                pValue(total.cnvGeMax[c]),
+                StringUtils.join(bins, ',')}, '\t'));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the gene and CNV summary lines to output files.
+     *
+     * @param geneOutPath path of the gene summary file
+     * @param cnvOutPath path of the CNV summary file
+     * @throws IOException if the files cannot be written
+     */
+    public void write(String geneOutPath, String cnvOutPath) throws IOException{
+        new TabFileWriter<CNV>(geneOutPath).writeLines(getGeneSummaryLines());
+        new TabFileWriter<CNV>(cnvOutPath).writeLines(getCNVSummaryLines());
+    }
+
+    /**
+     * The genes of all CNVs in the order of the counters.
+     * @return genes of all CNVs
+     */
+    Gene [] getSlotGenes(){
+        return slotGenes;
+    }
+
+    /**
+     * Number of permutations counted so far.
+     * @return the number of permutations
+     */
+    public synchronized int getPermutations(){
+        return total.permutations;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+/**
+ * Immutable set of non-negative integers stored as a bitset that is trimmed to
+ * the range of 64-bit words spanned by its members.
+ * If the members are clustered, like the descendants of a term when terms are
+ * numbered in topological order, this needs only a few words per set while a
+ * membership test is still a single bit probe.
+ */
+public final class CompactBitSet {
+
+    /** Index of the first word that is stored in {@code words}. */
+    private final int wordOffset;
+
+    /** The stored words, starting with word number {@code wordOffset}. */
+    private final long [] words;
+
+    /** Number of members in this set. */
+    private final int cardinality;
+
+    /**
+     * Builds a set from the given members.
+     *
+     * @param members non-negative integers in ascending order
+     */
+    public CompactBitSet(int [] members){
+
+        this.cardinality = members.length;
+
+        if (members.length == 0){
+            this.wordOffset = 0;
+            this.words = new long[0];
+        }else{
+
+            this.wordOffset = members[0] >> 6;
+            int lastWord = members[members.length - 1] >> 6;
+            this.words = new long[lastWord - wordOffset + 1];
+
+            for (int m : members){
+                this.words[(m >> 6) - wordOffset] |= 1L << m;
+            }
+        }
+    }
+
+    /**
+     * Builds a set from stored words, e.g. read from a
+     * {@link PhenotypeDataSnapshot}. The array is not copied.
+     *
+     * @param wordOffset index of the first stored word
+     * @param words the stored words, starting with word number {@code wordOffset}
+     */
+    CompactBitSet(int wordOffset, long [] words){
+
+        this.wordOffset = wordOffset;
+        this.words = words;
+        int count = 0;
+        for (long w : words){
+            count += Long.bitCount(w);
+        }
+        this.cardinality = count;
+    }
+
+    /**
+     * Tests if {@code i} is a member of this set.
+     *
+     * @param i non-negative integer
+     * @return true if {@code i} is contained
+     */
+    public boolean get(int i){
+        int w = (i >> 6) - wordOffset;
+        return w >= 0 && w < words.length && (words[w] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns the next member that is greater or equal to {@code from}.
+     *
+     * @param from non-negative integer to start the search from
+     * @return the next member or -1 if there is none
+     */
+    public int nextSetBit(int from){
+
+        int w = Math.max((from >> 6) - wordOffset, 0);
+        if (w >= words.length){
+            return -1;
+        }
+
+        // mask out bits below from in the first word
+        long word = words[w];
+        if ((from >> 6) - wordOffset == w){
+            word &= -1L << from;
+        }
+
+        while (true){
+            if (word != 0){
+                return ((w + wordOffset) << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length){
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Returns all members in ascending order.
+     *
+     * @return array of members
+     */
+    public int [] toArray(){
+        int [] members = new int[cardinality];
+        int n = 0;
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+            members[n++] = i;
+        }
+        return members;
+    }
+
+    /**
+     * Number of members in this set.
+     * @return the cardinality
+     */
+    public int cardinality(){
+        return cardinality;
+    }
+
+    /**
+     * Number of 64-bit words used to store this set.
+     * @return the number of words
+     */
+    public int wordCount(){
+        return words.length;
+    }
+
+    /**
+     * Index of the first stored word.
+     * @return the word offset
+     */
+    int getWordOffset(){
+        return wordOffset;
+    }
+
+    /**
+     * The stored words, starting with word number {@link #getWordOffset()}.
+     * The array must not be modified.
+     * @return the words
+     */
+    long [] getWords(){
+        return words;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ontologizer.go.Ontology;
+import ontologizer.go.Term;
+import sonumina.math.graph.SlimDirectedGraphView;
+
+/**
+ * An immutable, int-indexed view of a phenotype ontology that is built once at
+ * load time.
+ * Terms are numbered in topological order, i.e. each term has a larger index
+ * than all of its ancestors. For each term the direct parents and all ancestors
+ * are stored as {@code int} arrays, the descendants as {@link CompactBitSet}
+ * and the information content (IC) in a dense {@code double} array.
+ * Ancestor/descendant tests are therefore single bit probes and no
+ * {@link Ontology} graph is needed for scoring.
+ * <br><br>
+ * The ancestor closure is stored only once, sorted by decreasing IC, since
+ * this order serves both the MICA search and the profile computation, which
+ * does not depend on the order. The descendant bitsets hold the inverse
+ * relation, which is needed to test a candidate ancestor in constant time.
+ * <br><br>
+ * The most informative common ancestor (MICA) of two terms is found by walking
+ * the ancestors of the first term in order of decreasing IC and probing the
+ * descendant bitset of each candidate for the second term. The first hit is 
+ * the MICA, so no intermediate lists have to be allocated.
+ */
+public class FrozenOntology {
+
+    /** All terms in topological order (index to term). */
+    private final Term [] terms;
+
+    /** Maps each term to its index. */
+    private final HashMap<Term, Integer> term2index;
+
+    /** Maps each term ID string to its index. */
+    private final HashMap<String, Integer> id2index;
+
+    /** Maps alternative term ID strings to the index of the primary term. */
+    private final HashMap<String, Integer> altId2index;
+
+    /** Indices of the direct parents of each term. */
+    private final int [][] parents;
+
+    /**
+     * Indices of all ancestors of each term (including itself) sorted by 
+     * decreasing IC. Ties are broken by decreasing index, i.e. the more 
+     * specific term comes first.
+     */
+    private final int [][] ancestors;
+
+    /** All descendants of each term (including itself). */
+    private final CompactBitSet [] descendants;
+
+    /** Information content of each term. */
+    private final double [] ic;
+
+    /**
+     * Builds a frozen ontology from terms in topological order and their
+     * direct parents.
+     *
+     * @param terms all terms in topological order
+     * @param parents indices of the direct parents of each term. All parents
+     * must have a smaller index than the term itself.
+     * @param ic the information content of each term
+     * @throws IllegalArgumentException if the terms are not in topological order
+     */
+    public FrozenOntology(Term [] terms, int [][] parents, double [] ic) throws IllegalArgumentException{
+        this(terms, parents, ic, new HashMap<String, Integer>());
+    }
+
+    /**
+     * Builds a frozen ontology from terms in topological order, their direct
+     * parents and a mapping of alternative term IDs.
+     *
+     * @param terms all terms in topological order
+     * @param parents indices of the direct parents of each term. All parents
+     * must have a smaller index than the term itself.
+     * @param ic the information content of each term
+     * @param altId2index maps alternative term IDs to the index of the primary term
+     * @throws IllegalArgumentException if the terms are not in topological order
+     */
+    public FrozenOntology(Term [] terms, int [][] parents, double [] ic, 
+            HashMap<String, Integer> altId2index) throws IllegalArgumentException{
+        this(terms, parents, ic, altId2index, closeAncestors(terms, parents, ic));
+    }
+
+    private FrozenOntology(Term [] terms, int [][] parents, double [] ic, 
+            HashMap<String, Integer> altId2index, int [][] ancestors){
+        this(terms, parents, ic, altId2index, ancestors, invertAncestors(ancestors));
+    }
+
+    /**
+     * Builds a frozen ontology from precomputed closures, e.g. read from a
+     * {@link PhenotypeDataSnapshot}. The arrays are not copied and not checked
+     * for consistency with {@code parents}.
+     *
+     * @param terms all terms in topological order
+     * @param parents indices of the direct parents of each term
+     * @param ic the information content of each term
+     * @param altId2index maps alternative term IDs to the index of the primary term
+     * @param ancestors indices of all ancestors of each term (including 
+     * itself) sorted by decreasing IC and decreasing index for equal IC
+     * @param descendants all descendants of each term (including itself)
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    FrozenOntology(Term [] terms, int [][] parents, double [] ic, 
+            HashMap<String, Integer> altId2index, int [][] ancestors,
+            CompactBitSet [] descendants) throws IllegalArgumentException{
+
+        int n = terms.length;
+        if (parents.length != n || ic.length != n || ancestors.length != n || descendants.length != n){
+            throw new IllegalArgumentException("FrozenOntology: terms, parents, IC and closure arrays differ in length.");
+        }
+
+        this.terms = terms;
+        this.parents = parents;
+        this.ic = ic;
+        this.altId2index = altId2index;
+        this.ancestors = ancestors;
+        this.descendants = descendants;
+
+        this.term2index = new HashMap<Term, Integer>(2 * n);
+        this.id2index = new HashMap<String, Integer>(2 * n);
+        for (int i = 0; i < n; i++){
+            term2index.put(terms[i], i);
+            id2index.put(terms[i].getIDAsString(), i);
+        }
+    }
+
+    /**
+     * Computes the ancestors of each term (including itself) sorted by 
+     * decreasing IC. The ancestors of a term are the union of the ancestors 
+     * of its parents, which are already computed because of the topological
+     * order.
+     */
+    private static int [][] closeAncestors(Term [] terms, int [][] parents, double [] ic) 
+            throws IllegalArgumentException{
+
+        int n = terms.length;
+        if (parents.length != n || ic.length != n){
+            throw new IllegalArgumentException("FrozenOntology: terms, parents and IC arrays differ in length.");
+        }
+
+        int [][] ancestors = new int[n][];
+        int [] mark = new int[n];
+        Arrays.fill(mark, -1);
+        int [] buffer = new int[n];
+
+        for (int i = 0; i < n; i++){
+            int size = 0;
+            buffer[size++] = i;
+            mark[i] = i;
+            for (int p : parents[i]){
+                if (p >= i){
+                    throw new IllegalArgumentException(String.format(
+                            "FrozenOntology: parent %s of term %s is not in topological order.",
+                            terms[p].getIDAsString(), terms[i].getIDAsString()));
+                }
+                for (int a : ancestors[p]){
+                    if (mark[a] != i){
+                        mark[a] = i;
+                        buffer[size++] = a;
+                    }
+                }
+            }
+            // sort ancestor lists by decreasing IC for the MICA search
+            ancestors[i] = sortByDecreasingIC(Arrays.copyOf(buffer, size), ic);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Inverts the ancestor lists into descendant sets.
+     */
+    private static CompactBitSet [] invertAncestors(int [][] ancestors){
+
+        int n = ancestors.length;
+        int [] descCount = new int[n];
+        for (int [] anc : ancestors){
+            for (int a : anc){
+                descCount[a]++;
+            }
+        }
+        int [][] descLists = new int[n][];
+        for (int a = 0; a < n; a++){
+            descLists[a] = new int[descCount[a]];
+            descCount[a] = 0;
+        }
+        // iterating terms in ascending order keeps the descendant lists sorted
+        for (int i = 0; i < n; i++){
+            for (int a : ancestors[i]){
+                descLists[a][descCount[a]++] = i;
+            }
+        }
+        CompactBitSet [] descendants = new CompactBitSet[n];
+        for (int a = 0; a < n; a++){
+            descendants[a] = new CompactBitSet(descLists[a]);
+        }
+        return descendants;
+    }
+
+    /**
+     * Sorts term indices by decreasing IC and decreasing index for equal IC.
+     * Ancestor lists are short, therefore an insertion sort on the primitive 
+     * array is used.
+     * 
+     * @param idx array of term indices, which is sorted in place
+     * @param ic the information content of each term
+     * @return the sorted array
+     */
+    private static int [] sortByDecreasingIC(int [] idx, double [] ic){
+        for (int i = 1; i < idx.length; i++){
+            int cur = idx[i];
+            int j = i - 1;
+            while (j >= 0 && (ic[idx[j]] < ic[cur] || (ic[idx[j]] == ic[cur] && idx[j] < cur))){
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = cur;
+        }
+        return idx;
+    }
+
+    /**
+     * Builds a frozen ontology from an {@link Ontology} object and the
+     * information content of its terms.
+     *
+     * @param ontology the phenotype ontology
+     * @param term2ic mapping from each {@link Term} to its information content
+     * @return a new {@link FrozenOntology}
+     */
+    public static FrozenOntology fromOntology(Ontology ontology, HashMap<Term, Double> term2ic){
+        return fromOntology(ontology, term2ic, new HashMap<String, String>());
+    }
+
+    /**
+     * Builds a frozen ontology from an {@link Ontology} object, the
+     * information content of its terms and the alternative IDs of its terms.
+     *
+     * @param ontology the phenotype ontology
+     * @param term2ic mapping from each {@link Term} to its information content
+     * @param alternatives mapping from alternative term IDs to the ID of the
+     * primary term. Alternatives of unknown terms are ignored.
+     * @return a new {@link FrozenOntology}
+     */
+    public static FrozenOntology fromOntology(Ontology ontology, HashMap<Term, Double> term2ic,
+            HashMap<String, String> alternatives){
+
+        ArrayList<Term> orderedTerms = ontology.getTermsInTopologicalOrder();
+        SlimDirectedGraphView<Term> ontologySlim = ontology.getSlimGraphView();
+
+        int n = orderedTerms.size();
+        Term [] terms = orderedTerms.toArray(new Term[n]);
+
+        // map indices of the slim graph view to topological indices
+        int [] slim2topo = new int[ontologySlim.vertex2Index.size()];
+        for (int i = 0; i < n; i++){
+            slim2topo[ontologySlim.vertex2Index.get(terms[i])] = i;
+        }
+
+        int [][] parents = new int[n][];
+        double [] ic = new double[n];
+        for (int i = 0; i < n; i++){
+            int [] slimParents = ontologySlim.vertexParents[ontologySlim.vertex2Index.get(terms[i])];
+            parents[i] = new int[slimParents.length];
+            for (int j = 0; j < slimParents.length; j++){
+                parents[i][j] = slim2topo[slimParents[j]];
+            }
+            Double termIC = term2ic.get(terms[i]);
+            ic[i] = termIC != null ? termIC : 0.0;
+        }
+
+        HashMap<String, Integer> id2topo = new HashMap<String, Integer>(2 * n);
+        for (int i = 0; i < n; i++){
+            id2topo.put(terms[i].getIDAsString(), i);
+        }
+        HashMap<String, Integer> altId2index = new HashMap<String, Integer>();
+        for (Map.Entry<String, String> e : alternatives.entrySet()){
+            Integer idx = id2topo.get(e.getValue());
+            if (idx != null){
+                altId2index.put(e.getKey(), idx);
+            }
+        }
+
+        return new FrozenOntology(terms, parents, ic, altId2index);
+    }
+
+    /**
+     * Number of terms in the ontology.
+     * @return number of terms
+     */
+    public int size(){
+        return terms.length;
+    }
+
+    /**
+     * Returns the index of a term.
+     *
+     * @param t a term
+     * @return the index of {@code t} or -1 if it is not part of the ontology
+     */
+    public int getIndex(Term t){
+        Integer idx = term2index.get(t);
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * Returns the index of a term ID.
+     *
+     * @param id a term ID like "HP:0000118"
+     * @return the index of the term or -1 if it is not part of the ontology
+     */
+    public int getIndex(String id){
+        Integer idx = id2index.get(id);
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * Returns the index of a term ID, which might also be an alternative ID of
+     * a term.
+     *
+     * @param id a term ID or alternative term ID
+     * @return the index of the term or -1 if it is not part of the ontology
+     */
+    public int getIndexIncludingAlternatives(String id){
+        Integer idx = id2index.get(id);
+        if (idx == null){
+            idx = altId2index.get(id);
+        }
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * Mapping of alternative term IDs to the index of the primary term.
+     * @return the alternative IDs (must not be modified)
+     */
+    public HashMap<String, Integer> getAlternativeIDs(){
+        return altId2index;
+    }
+
+    /**
+     * All terms in topological order.
+     * @return unmodifiable list of all terms
+     */
+    public List<Term> getTerms(){
+        return Collections.unmodifiableList(Arrays.asList(terms));
+    }
+
+    /**
+     * Returns the term with the given index.
+     *
+     * @param idx term index
+     * @return the {@link Term}
+     */
+    public Term getTerm(int idx){
+        return terms[idx];
+    }
+
+    /**
+     * Indices of the direct parents of a term.
+     *
+     * @param idx term index
+     * @return the parent indices (must not be modified)
+     */
+    public int [] getParents(int idx){
+        return parents[idx];
+    }
+
+    /**
+     * Indices of all ancestors of a term including the term itself sorted by
+     * decreasing IC.
+     *
+     * @param idx term index
+     * @return the ancestor indices (must not be modified)
+     */
+    public int [] getAncestors(int idx){
+        return ancestors[idx];
+    }
+
+    /**
+     * All descendants of a term including the term itself.
+     *
+     * @param idx term index
+     * @return the descendants as {@link CompactBitSet}
+     */
+    public CompactBitSet getDescendants(int idx){
+        return descendants[idx];
+    }
+
+    /**
+     * Tests if {@code ancestor} is equal to or an ancestor of {@code term}.
+     *
+     * @param term index of the term tested to be a descendant
+     * @param ancestor index of the term tested to be an ancestor
+     * @return true if {@code ancestor} is equal to or an ancestor of {@code term}
+     */
+    public boolean isAncestorOrEqual(int term, int ancestor){
+        return descendants[ancestor].get(term);
+    }
+
+    /**
+     * Information content (IC) of a term.
+     *
+     * @param idx term index
+     * @return the information content
+     */
+    public double getIC(int idx){
+        return ic[idx];
+    }
+
+    /**
+     * Returns the most informative common ancestor (MICA) of two terms.
+     * If several common ancestors have the maximal IC, the one with the largest
+     * index (i.e. the most specific one) is returned.
+     * 
+     * @param t1 index of the first term
+     * @param t2 index of the second term
+     * @return index of the MICA or -1 if the terms have no common ancestor
+     */
+    public int getMICA(int t1, int t2){
+        
+        for (int a : ancestors[t1]){
+            if (descendants[a].get(t2)){
+                return a;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Resnik similarity of two terms, i.e. the IC of their most informative
+     * common ancestor.
+     * 
+     * @param t1 index of the first term
+     * @param t2 index of the second term
+     * @return the IC of the MICA or zero if there is no common ancestor
+     */
+    public double resnikSim(int t1, int t2){
+        int mica = getMICA(t1, t2);
+        return mica >= 0 ? ic[mica] : 0.0;
+    }
+}
@@ -8,26 +8,29 @@ package phenotypeontology;
 
 import genomicregions.Gene;
 import genomicregions.GenomicSet;
+import io.AnnotationFileParser;
+import io.CompressedInput;
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import ontologizer.go.OBOParser;
 import ontologizer.go.OBOParserException;
 //import ontologizer.go.OBOParserFileInput;
 import ontologizer.go.Ontology;
 import ontologizer.go.Term;
 import ontologizer.go.TermContainer;
-import ontologizer.go.TermID;
 import similarity.SimilarityUtilities;
-import similarity.concepts.ResnikSimilarity;
 import sonumina.math.graph.SlimDirectedGraphView;
 
 /**
@@ -39,66 +42,46 @@ import sonumina.math.graph.SlimDirectedGraphView;
  */
 public class PhenotypeData  implements Cloneable{
     
-    /**
-     * The phenotype ontology as {@link Ontology} object form the {@link ontologizer.go} package.
-     */
-    private Ontology ontology;
-    
     /**
      * Mapping of gene IDs to phenotype terms.
      */
     private HashMap<String, HashSet<Term>>  gene2Terms;
     
     /**
-     * Mapping from each {@link Term} to its information content (IC).
+     * Int-indexed view of the ontology with ancestor/descendant closures and 
+     * the information content (IC) of all terms. The parsed {@link Ontology}
+     * is only needed to build it and is not kept.
      */
-    private final HashMap<Term, Double> term2ic;
+    private final FrozenOntology frozenOntology;
     
     /**
-     * Similarity object from the {@link similarity.concepts.ResnikSimilarity} class
-     * in the {@code de.sonumina.javautil} project.
+     * Maximal number of profiles kept by {@link #getSharedPhenotypeProfile(Set)}.
+     * A profile holds one {@code double} per term, i.e. about 128 kB for the
+     * HPO, so the cache needs at most about 64 MB.
      */
-    public final ResnikSimilarity sim;
-    
-    /** maps all phenotype terms to its more general ancestor terms */
-    private final HashMap<Term, HashSet<Term>> term2ancestors;
-    
-    /** maps all phenotype terms to its more specific descendant terms */
-    private final HashMap<Term, HashSet<Term>> term2descendants;
+    public static final int PROFILE_CACHE_CAPACITY = 512;
     
     /**
-     * List of terms in topological order
+     * Profiles of the phenotype term sets that are scored, keyed by an 
+     * immutable copy of the term set so that equal sets share one profile.
+     * The least recently used profile is dropped if the cache is full. 
+     * Shallow copies, e.g. of gene phenotype permutations, share the cache, 
+     * because profiles depend only on the ontology. All accesses are 
+     * synchronized on the map.
      */
-    private final ArrayList<TermID> orderedTermIDs;
+    private LinkedHashMap<Set<Term>, PhenotypeProfile> profileCache = newProfileCache();
     
     /**
      * Constructor with all members as variables.
      * 
-     * @param ontology
      * @param gene2Terms
-     * @param term2ic
-     * @param sim
-     * @param term2ancestors
-     * @param term2descendants 
-     */
-    public PhenotypeData(Ontology ontology, 
-            HashMap<String, HashSet<Term>>  gene2Terms,
-            HashMap<Term, Double> term2ic,
-            ResnikSimilarity sim,
-            HashMap<Term, HashSet<Term>> term2ancestors,
-            HashMap<Term, HashSet<Term>> term2descendants){
+     * @param frozenOntology 
+     */
+    public PhenotypeData(HashMap<String, HashSet<Term>>  gene2Terms,
+            FrozenOntology frozenOntology){
         
-        this.ontology = ontology;
         this.gene2Terms = gene2Terms;
-        this.term2ic = term2ic;
-        this.sim = sim;
-        this.term2ancestors = term2ancestors;
-        this.term2descendants = term2descendants;
-        ArrayList<Term> orderedTerms = ontology.getTermsInTopologicalOrder();
-        this.orderedTermIDs = new ArrayList<TermID>();
-        for (Term t: orderedTerms){
-            this.orderedTermIDs.add(t.getID());
-        }
+        this.frozenOntology = frozenOntology;
     }
     
     /**
@@ -110,6 +93,55 @@ public class PhenotypeData  implements Cloneable{
      *          path to the file with phenotype annotation of genes
      */
     public PhenotypeData(String oboFilePath, String annotationFilePath) throws IOException{
+        this(oboFilePath, annotationFilePath, 1);
+    }
+    
+    /**
+     * Construct a new phenotypeData instance and read the annotation file 
+     * with several threads.
+     * 
+     * @param oboFilePath   
+     *          path to the ontology file in .obo format
+     * @param annotationFilePath 
+     *          path to the file with phenotype annotation of genes
+     * @param threads 
+     *          number of threads that parse the annotation file
+     */
+    public PhenotypeData(String oboFilePath, String annotationFilePath, int threads) throws IOException{
+        this(oboFilePath, new AnnotationFileParser(annotationFilePath, threads));
+    }
+    
+    /**
+     * Construct a new phenotypeData instance.
+     * The annotation file is read by the given parser, which also provides 
+     * the gene symbols of the file afterwards.
+     * 
+     * @param oboFilePath   
+     *          path to the ontology file in .obo format
+     * @param annotations 
+     *          parser for the file with phenotype annotation of genes
+     */
+    public PhenotypeData(String oboFilePath, AnnotationFileParser annotations) throws IOException{
+        
+        Ontology ontology = parseOntology(oboFilePath);
+        
+        // read the mapping form genes to set of phenotypes
+        annotations.parse(ontology);
+        this.gene2Terms = annotations.getGene2Terms();
+        HashMap<Term, Double> term2ic = getTerm2InformationContent(ontology, gene2Terms);
+
+        // build the int-indexed ontology with all ancestor/descendant closures
+        this.frozenOntology = FrozenOntology.fromOntology(ontology, term2ic, 
+                readAlternativeIDs(oboFilePath));
+    }
+    
+    /**
+     * Parses an ontology file.
+     * 
+     * @param oboFilePath path to the ontology file in .obo format
+     * @return the ontology
+     */
+    static Ontology parseOntology(String oboFilePath){
         
         // build oboParser object for the input ontology file
         // OBOParser oboParser = new OBOParser(new OBOParserFileInput(oboFilePath));
@@ -127,32 +159,55 @@ public class PhenotypeData  implements Cloneable{
         
         // get the complete hpo
         TermContainer termContainer = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDate());
-        this.ontology = new Ontology(termContainer);
-        
-        SlimDirectedGraphView<Term> ontologySlim = ontology.getSlimGraphView();
-
-        this.gene2Terms = readAnnotations(annotationFilePath);
-        this.term2ic = getTerm2InformationContent(gene2Terms);
-
-        this.sim = new ResnikSimilarity(getOntology(), term2ic);
-
-        // build mapping from each term to ancestors
-        term2ancestors = new HashMap<>();
-        term2descendants = new HashMap<>();
-        for(Term t : ontology){
-            
-            // get ancestors from ontologySlim object
-            term2ancestors.put(t, new HashSet<Term>(ontologySlim.getAncestors(t)));
-
-            // get descendants form ontologyslim object
-            term2descendants.put(t, new HashSet<Term>(ontologySlim.getDescendants(t)));
-
-        }
-        ArrayList<Term> orderedTerms = ontology.getTermsInTopologicalOrder();
-        this.orderedTermIDs = new ArrayList<TermID>();
-        for (Term t: orderedTerms){
-            this.orderedTermIDs.add(t.getID());
+        return new Ontology(termContainer);
+    }
+    
+    /**
+     * Reads all alternative IDs from an OBO file and maps them to the ID of
+     * their primary term. Only [Term] stanzas are considered. The file is
+     * read as UTF-8 and may be gzipped.
+     *
+     * @param oboFilePath path to the ontology file in .obo format
+     * @return mapping of alternative IDs to term IDs
+     * @throws IOException if the file cannot be read
+     */
+    static HashMap<String, String> readAlternativeIDs(String oboFilePath) throws IOException{
+
+        HashMap<String, String> alternatives = new HashMap<String, String>();
+        boolean inTerm = false;
+        String current = null;
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                CompressedInput.open(Paths.get(oboFilePath)), StandardCharsets.UTF_8))){
+            String line;
+            while ((line = in.readLine()) != null){
+                if (line.startsWith("[")){
+                    inTerm = line.trim().equals("[Term]");
+                    current = null;
+                }else if (!inTerm){
+                    continue;
+                }else if (line.startsWith("id:")){
+                    current = line.substring(3).trim();
+                }else if (line.startsWith("alt_id:") && current != null){
+                    alternatives.put(line.substring(7).trim(), current);
+                }
+            }
         }
+        return alternatives;
+    }
+    
+    /**
+     * Creates an empty profile cache in access order that drops its least 
+     * recently used entry beyond {@link #PROFILE_CACHE_CAPACITY} entries.
+     */
+    private static LinkedHashMap<Set<Term>, PhenotypeProfile> newProfileCache(){
+        return new LinkedHashMap<Set<Term>, PhenotypeProfile>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Set<Term>, PhenotypeProfile> eldest) {
+                return size() > PROFILE_CACHE_CAPACITY;
+            }
+        };
     }
     
     /**
@@ -162,31 +217,29 @@ public class PhenotypeData  implements Cloneable{
     public PhenotypeData shallowCopy(){
         
         // make a new PhenotypeData object
-        PhenotypeData copy = new PhenotypeData(
-                this.ontology, this.gene2Terms, this.term2ic, this.sim, 
-                this.term2ancestors, this.term2descendants);
+        PhenotypeData copy = new PhenotypeData(this.gene2Terms, this.frozenOntology);
+        copy.profileCache = this.profileCache;
         return copy;
     }
     
     /**
      * Coputes the Resnik Similarity score of two input terms.
+     * The score is the IC of the most informative common ancestor (MICA),
+     * which is looked up in the {@link FrozenOntology}.
      * @param t1
      * @param t2
      * @return 
      */
     public double resnikSim(Term t1, Term t2){
         
-        // get all shared parent terms
-        ArrayList<TermID> par = (ArrayList<TermID>) ontology.getSharedParents(t1.getID(), t2.getID());
-                
-        // initialize maximum score
-        Double maxScore = 0.0;
+        int i1 = frozenOntology.getIndex(t1);
+        int i2 = frozenOntology.getIndex(t2);
         
-        if (par.size() > 0){
-            // take the first term, since it is the first common parent in the path from t2 to root.
-            maxScore = getIC(ontology.getTerm(par.get(0)));
+        // terms that are not in the ontology have no common parent
+        if (i1 < 0 || i2 < 0){
+            return 0.0;
         }
-        return(maxScore);
+        return frozenOntology.resnikSim(i1, i2);
     }
     
     /**
@@ -197,17 +250,19 @@ public class PhenotypeData  implements Cloneable{
      */
     public TermPair resnikSimWithTerm(Term t1, Term t2){
         
-        // get all shared parent terms
-        ArrayList<TermID> par = (ArrayList<TermID>) ontology.getSharedParents(t1.getID(), t2.getID());
+        int i1 = frozenOntology.getIndex(t1);
+        int i2 = frozenOntology.getIndex(t2);
+        
+        // get the most informative common ancestor
+        int mica = (i1 >= 0 && i2 >= 0) ? frozenOntology.getMICA(i1, i2) : -1;
         
         // initialize maximum term and score
         Term maxTerm = null;
         Double maxScore = 0.0;
         
-        if (par.size() > 0){
-            // take first term in order (with lowest term in ontology level, e.g. highest resnik score)
-            maxTerm = this.ontology.getTerm(par.get(0));
-            maxScore = getIC(maxTerm);
+        if (mica >= 0){
+            maxTerm = frozenOntology.getTerm(mica);
+            maxScore = frozenOntology.getIC(mica);
         }
         // construct a new pair of the maximum value with its term to retunr both
         TermPair tp = new TermPair(t1, t2, maxScore, maxTerm);
@@ -217,49 +272,96 @@ public class PhenotypeData  implements Cloneable{
   
     
     
+    /**
+     * Precomputes the best similarity of every ontology term to a set of
+     * phenotype terms. The resulting {@link PhenotypeProfile} can be used to 
+     * score any number of genes against the same set of terms.
+     * 
+     * @param terms a set of phenotype terms, e.g. the symptoms of a patient
+     * @return the {@link PhenotypeProfile} of the input terms
+     */
+    public PhenotypeProfile getPhenotypeProfile(HashSet<Term> terms){
+        return new PhenotypeProfile(frozenOntology, terms);
+    }
+    
+    /**
+     * Returns the {@link PhenotypeProfile} of a set of phenotype terms from a
+     * cache, so that all callers with an equal term set, e.g. CNVs of the same
+     * patient, share a single profile. The profile is computed on first use
+     * outside of the lock, at most {@link #PROFILE_CACHE_CAPACITY} profiles
+     * are kept. This method can be called concurrently.
+     * 
+     * @param terms a set of phenotype terms
+     * @return the shared {@link PhenotypeProfile} of the input terms
+     */
+    public PhenotypeProfile getSharedPhenotypeProfile(Set<Term> terms){
+        
+        // an immutable copy is used as key for lookup and insertion
+        Set<Term> key = Collections.unmodifiableSet(new HashSet<Term>(terms));
+        
+        PhenotypeProfile profile;
+        synchronized (profileCache){
+            profile = profileCache.get(key);
+        }
+        if (profile == null){
+            profile = new PhenotypeProfile(frozenOntology, key);
+            synchronized (profileCache){
+                PhenotypeProfile previous = profileCache.get(key);
+                if (previous != null){
+                    profile = previous;
+                }else{
+                    profileCache.put(key, profile);
+                }
+            }
+        }
+        return profile;
+    }
+    
+    /**
+     * Drops all profiles cached by {@link #getSharedPhenotypeProfile(Set)}, 
+     * e.g. after scoring and permutations are finished.
+     */
+    public void clearPhenotypeProfiles(){
+        synchronized (profileCache){
+            profileCache.clear();
+        }
+    }
+    
     /**
      * Computes the pheno match score between a gene and a set of phenotype terms.
      * The phenomatch score is a similarity between phenotypes that are associated
      * with a single gene and another set of phenotypes, which might be symptoms of a patient
      * that have genetic variations associated with the gene.
      * The calculation is described in Ibn-Salem et al. (2014) Genome Biology.
+     * <br><br>
+     * To score many genes against the same set of terms, build a 
+     * {@link PhenotypeProfile} once with {@link #getPhenotypeProfile(HashSet)}
+     * and use {@link #phenoMatchScore(PhenotypeProfile, Gene)}.
      * 
      * @param terms a set of phenotype terms
      * @param gene a {@link Gene} object
      * @return phenomatch score
      */
     public double phenoMatchScore(HashSet<Term> terms, Gene gene){
-                   
-        // initialize similarity to zero
-        double similarity = 0;
-
-        // DMM-paper forumula
-        // iterate over all terms  with the input gene
-        for (Term t_g : gene.getPhenotypeTerms()) {
-            
-            // initialize maximum over all patient's terms
-            double bestGeneTermScore = 0;
-            
-            // iterate over all term t_p  with the patient
-            for (Term t_p : terms) {
-                
-                // compute pairwise similarity 
-                double termSim = this.sim.computeSimilarity(t_p, t_g);                
-                
-                // take it as max if sim is larger
-                if (termSim > bestGeneTermScore)
-                    bestGeneTermScore = termSim;
-            }
-            
-            // TODO: implement the additonal parameters lambda and k
-            //if (bestGeneTermScore >= lambda) {
-            //    similarity = similarity + Math.pow(bestGeneTermScore, k);
-            //}
+        return phenoMatchScore(getPhenotypeProfile(terms), gene);
+    }
+    
+    /**
+     * Computes the pheno match score between a gene and a precomputed profile 
+     * of phenotype terms. This is the sum over all gene terms of the best 
+     * similarity to any of the profile terms.
+     * 
+     * @param profile precomputed {@link PhenotypeProfile} of a set of phenotype terms
+     * @param gene a {@link Gene} object
+     * @return phenomatch score
+     */
+    public double phenoMatchScore(PhenotypeProfile profile, Gene gene){
         
-            similarity += bestGeneTermScore;
-        }
-
-        return similarity;
+        // TODO: implement the additonal parameters lambda and k
+        //if (bestGeneTermScore >= lambda) {
+        //    similarity = similarity + Math.pow(bestGeneTermScore, k);
+        //}
+        return profile.phenoMatchScore(gene.getPhenotypeTerms());
     }
     
     /**
@@ -274,34 +376,68 @@ public class PhenotypeData  implements Cloneable{
      * @return phenomatch score
      */
     public ArrayList<TermPair> phenoMatchScoreWithMatching(HashSet<Term> terms, Gene gene){
+        return phenoMatchScoreWithMatching(terms, gene.getPhenotypeTerms());
+    }
+    
+    /**
+     * Computes the matching between a set of gene phenotype terms and another
+     * set of phenotype terms. For each gene term the best matching term is 
+     * reported if its score is larger than zero.
+     * 
+     * @param terms a set of phenotype terms
+     * @param geneTerms phenotype terms associated to a gene
+     * @return best matching term pair for each gene term with score larger than zero
+     */
+    public ArrayList<TermPair> phenoMatchScoreWithMatching(HashSet<Term> terms, Collection<Term> geneTerms){
                 
         // initialize matching
         ArrayList<TermPair> matching = new ArrayList<>();
         
+        // convert patient terms to indices once
+        Term [] patientTerms = terms.toArray(new Term[terms.size()]);
+        int [] patientIdx = new int[patientTerms.length];
+        for (int i = 0; i < patientTerms.length; i++){
+            patientIdx[i] = frozenOntology.getIndex(patientTerms[i]);
+        }
+        
         // iterate over all terms  with the input gene
-        for (Term t_g : gene.getPhenotypeTerms()) {
+        for (Term t_g : geneTerms) {
+            
+            int geneIdx = frozenOntology.getIndex(t_g);
+            if (geneIdx < 0){
+                continue;
+            }
             
-            ArrayList<TermPair> geneTermPairs = new ArrayList<>();
+            // get maxium over all patient terms for this gene term. The first 
+            // patient term with the maximal score is kept.
+            int maxPatient = -1;
+            int maxMica = -1;
+            double maxScore = 0.0;
             
             // iterate over all term t_p  with the patient
-            for (Term t_p : terms) {
+            for (int i = 0; i < patientIdx.length; i++) {
                 
-                // compute pairwise similarity and get responsible term                
-                TermPair tp = resnikSimWithTerm(t_p, t_g);
+                if (patientIdx[i] < 0){
+                    continue;
+                }
                 
-                // add term pair to list pair to all patient terms
-                geneTermPairs.add(tp);
-                    
+                // get the most informative common ancestor
+                int mica = frozenOntology.getMICA(patientIdx[i], geneIdx);
+                double score = mica >= 0 ? frozenOntology.getIC(mica) : 0.0;
+                
+                if (score > maxScore){
+                    maxScore = score;
+                    maxPatient = i;
+                    maxMica = mica;
+                }
             }
             
-            // get maxium over all patient terms for this gene
-            TermPair maxPair = Collections.max(geneTermPairs, TermPair.TERM_PAIR_SCORE_ORDER);
-            
             // check if maxPair has score larger than zeoro
             // check that lowest common ancester is not the root
-            if (maxPair.getS() > 0.0){
+            if (maxScore > 0.0){
                 // add pair with highest score to output matching list
-                matching.add(maxPair);
+                matching.add(new TermPair(patientTerms[maxPatient], t_g, 
+                        maxScore, frozenOntology.getTerm(maxMica)));
             }
         }
         
@@ -322,12 +458,15 @@ public class PhenotypeData  implements Cloneable{
         if (genes.isEmpty()){
             return 0.0;
         }else{
+            // the profile of the patient terms is shared by all genes
+            PhenotypeProfile profile = getPhenotypeProfile(patientTerms);
+            
             // initialize list for all phenoMatch scores
             ArrayList<Double> phenoMatchScores = new ArrayList(genes.size());
             //TODO: with double >...
             // compute for each gene the phenoMatch score
             for (Gene g: genes.values()){
-                phenoMatchScores.add(phenoMatchScore(patientTerms, g));
+                phenoMatchScores.add(phenoMatchScore(profile, g));
             }
 
             // return the maximal phenoMatch score
@@ -343,103 +482,13 @@ public class PhenotypeData  implements Cloneable{
      */
     public boolean isAncestorOrEqual(Term term, Term ancestor){
         
-        return this.term2ancestors.get(term).contains(ancestor);
+        int termIdx = frozenOntology.getIndex(term);
+        int ancestorIdx = frozenOntology.getIndex(ancestor);
+        
+        return termIdx >= 0 && ancestorIdx >= 0 
+                && frozenOntology.isAncestorOrEqual(termIdx, ancestorIdx);
     }
     
-    /**
-     * Reads the mapping form genes to set of phenotypes. Genes associated to phenotypes 
-     * are parsed by reading the annotation tables provided by the HPO or 
-     * Uberpheno project to build a mapping from genes to terms.
-     * @author adopted form Sebastian Koehler
-     * 
-     * @param annotationFilePath path to the annotation file that maps genes to 
-     * HPO Terms
-     * @param ontology an {@link Ontology} object
-     * @return a mapping from EntrezGene IDs to a set of corresponding HPO {@link Term}s.
-     */
-    private HashMap<String, HashSet<Term>> readAnnotations(String annotationFilePath) {
-	
-            // define some constant patterns
-            Pattern semicolon = Pattern.compile(";");
-            Pattern tabstopp = Pattern.compile("\t");
-            Pattern uphenoTermidPattern = Pattern.compile("\\(([HZM]P:\\d{7})\\)$");
-
-            HashMap<String, HashSet<Term>> gene2annot = new HashMap<String, HashSet<Term>>();
-            try {
-
-                    BufferedReader in = new BufferedReader(new FileReader(annotationFilePath));
-
-                    String firstLine = in.readLine();
-                    boolean isHpo = false;
-                    boolean isUpheno = false;
-                    // updated annotation format since 2019 for genes_to_phenotype.txt file according to https://hpo.jax.org/app/download/annotation
-                    boolean isHpoa = false;
-                    
-                    if (firstLine.startsWith("#Entrez Gene ID of human gene ; Gene symbol ; Annotated Uberpheno")) {
-                            isUpheno = true;
-                    } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-Name<tab>HPO-Ter")) {
-                            isHpo = true;
-                    } else if (firstLine.startsWith("#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-ID<tab>HPO-Term-Name<tab>Frequency-Raw<tab>Frequency-HPO")) {
-                            isHpoa = true;
-                    } else {
-                            throw new RuntimeException("Can't handle annotation-file format!");
-                    }
-
-                    String line = null;
-                    while ((line = in.readLine()) != null) {
-
-                            if (line.startsWith("#"))
-                                    continue;
-
-                            String[] split = null;
-                            String entrezId = null;
-                            String annotatedTermId = null;
-                            if (isUpheno) {
-                                    split = semicolon.split(line);
-                                    entrezId = split[0];
-
-                                    Matcher matcher = uphenoTermidPattern.matcher(split[2]);
-                                    if (!matcher.find()) {
-                                            System.out.println("pattern not matched in: " + line);
-                                    }
-                                    annotatedTermId = matcher.group(1);
-
-                            }
-                            if (isHpo) {
-                                    split = tabstopp.split(line);
-                                    entrezId = split[0];
-                                    annotatedTermId = split[3];
-                            }
-                            if (isHpoa) {
-                                    split = tabstopp.split(line);
-                                    entrezId = split[0];
-                                    annotatedTermId = split[2];
-                            }
-
-                            Term t = getOntology().getTermIncludingAlternatives(annotatedTermId);
-                            if (t == null) {
-                                    System.err.println("Could not find term for ID:" + annotatedTermId + " parsed from line: " + line);
-                                    continue;
-                            }
-
-                            HashSet<Term> annotationsOfGene;
-                            if (gene2annot.containsKey(entrezId))
-                                    annotationsOfGene = gene2annot.get(entrezId);
-                            else
-                                    annotationsOfGene = new HashSet<Term>();
-                            annotationsOfGene.add(t);
-                            gene2annot.put(entrezId, annotationsOfGene);
-
-                    }
-                    in.close();
-
-            } catch (IOException e) {
-                    e.printStackTrace();
-            }
-
-            return gene2annot;
-    }
-
     /**
      * Builds a mapping from each {@Term} to its information content. Thereby the
      * information content is calculated as the negative logarithm of the frequency
@@ -447,14 +496,16 @@ public class PhenotypeData  implements Cloneable{
      * 
      * TODO: use term2ancestor mapping, not slimOntology
      * 
+     * @param ontology the phenotype ontology
      * @param geneId2annotations    a mapping of genes to set of {@Term}s to which
      * they are annotated
      * @return mapping from term to information content
      */
-    private HashMap<Term, Double> getTerm2InformationContent(HashMap<String, HashSet<Term>> geneId2annotations) {
+    private static HashMap<Term, Double> getTerm2InformationContent(Ontology ontology, 
+            HashMap<String, HashSet<Term>> geneId2annotations) {
             
             // Build a SlimDirectedGraphView object from the input ontology
-            SlimDirectedGraphView<Term> ontologySlim = getOntology().getSlimGraphView();
+            SlimDirectedGraphView<Term> ontologySlim = ontology.getSlimGraphView();
             
             HashMap<Term, HashSet<String>> term2geneids = new HashMap<Term, HashSet<String>>();
             HashMap<String, HashSet<Term>> gene2terms = geneId2annotations;
@@ -466,7 +517,7 @@ public class PhenotypeData  implements Cloneable{
 
                             // System.out.println("annot : "+annotated);
                             if (!ontologySlim.vertex2Index.containsKey(annotated)) {
-                                    annotated = getOntology().getTermIncludingAlternatives(annotated.getIDAsString());
+                                    annotated = ontology.getTermIncludingAlternatives(annotated.getIDAsString());
                                     // System.out.println(" now annot : "+annotated);
                             }
 
@@ -483,12 +534,13 @@ public class PhenotypeData  implements Cloneable{
                             }
                     }
             }
-            return calculateTermIC(term2geneids);
+            return calculateTermIC(ontology, term2geneids);
     }
     
-    private HashMap<Term, Double> calculateTermIC(HashMap<Term, HashSet<String>> term2objectIds) {
+    private static HashMap<Term, Double> calculateTermIC(Ontology ontology, 
+            HashMap<Term, HashSet<String>> term2objectIds) {
 
-            Term root = getOntology().getRootTerm();
+            Term root = ontology.getRootTerm();
             HashMap<Term, Integer> term2frequency = new HashMap<Term, Integer>();
             for (Term t : term2objectIds.keySet()) {
                     term2frequency.put(t, term2objectIds.get(t).size());
@@ -499,7 +551,7 @@ public class PhenotypeData  implements Cloneable{
             int frequencyZeroCounter = 0;
             double ICzeroCountTerms = -1 * (Math.log(1 / (double) maxFreq));
 
-            for (Term t : getOntology()) {
+            for (Term t : ontology) {
                     if (!term2frequency.containsKey(t)) {
                             ++frequencyZeroCounter;
                             term2informationContent.put(t, ICzeroCountTerms);
@@ -512,24 +564,12 @@ public class PhenotypeData  implements Cloneable{
             return term2informationContent;
     }
 
-    /**
-     * The phenotype ontology as {@link Ontology} object form the {@link ontologizer.go} package.
-     * @return the ontology
-     */
-    public Ontology getOntology() {
-        return ontology;
-    }
-    
     /**
      * returns all terms in the ontology
      * @return all terms
      */
     public HashSet<Term> getAllTerms(){
-        HashSet<Term> terms = new HashSet<Term>();
-        for (Term t: this.ontology){
-            terms.add(t);
-        }
-        return terms;
+        return new HashSet<Term>(frozenOntology.getTerms());
     }
     
     /**
@@ -539,7 +579,11 @@ public class PhenotypeData  implements Cloneable{
      * @return 
      */
     public Term getTermIncludingAlternatives(String term) throws IOException{
-        Term t = this.getOntology().getTermIncludingAlternatives(term);
+        Term t = null;
+        int idx = frozenOntology.getIndexIncludingAlternatives(term);
+        if (idx >= 0){
+            t = frozenOntology.getTerm(idx);
+        }
         if (t==null){
             System.out.println("WARNING term is null:");
             System.out.println(term);
@@ -597,7 +641,8 @@ public class PhenotypeData  implements Cloneable{
      * @return 
      */
     public Double getIC(Term term) {
-        return this.term2ic.get(term);
+        int idx = frozenOntology.getIndex(term);
+        return idx >= 0 ? frozenOntology.getIC(idx) : null;
     }
 
     /**
@@ -605,25 +650,51 @@ public class PhenotypeData  implements Cloneable{
      * @return an iterator
      */
     public Iterator<Term> iterator() {
-        return this.ontology.iterator();
+        return frozenOntology.getTerms().iterator();
     }
 
     /**
      * returns a set of all terms that are ancestors of the input term t.
      * @param t input term
-     * @return all ancestors of t (including t)
+     * @return all ancestors of t (including t) or {@code null} if t is not
+     * part of the ontology
      */
     public HashSet<Term> getAncestors(Term t) {
-        return this.term2ancestors.get(t);
+        int idx = frozenOntology.getIndex(t);
+        return idx >= 0 ? toTermSet(frozenOntology.getAncestors(idx)) : null;
     }
     
     /**
      * returns a set of all terms that are descendants of the input term t.
      * @param t input term
-     * @return all descendants of t (including t itself)
+     * @return all descendants of t (including t itself) or {@code null} if t
+     * is not part of the ontology
      */
     public HashSet<Term> getDescendants(Term t){
-        return this.term2descendants.get(t);
+        int idx = frozenOntology.getIndex(t);
+        return idx >= 0 ? toTermSet(frozenOntology.getDescendants(idx).toArray()) : null;
+    }
+    
+    /**
+     * Converts an array of term indices into a set of {@link Term}s.
+     * @param indices term indices in the {@link FrozenOntology}
+     * @return set of terms
+     */
+    private HashSet<Term> toTermSet(int [] indices){
+        HashSet<Term> terms = new HashSet<Term>(2 * indices.length);
+        for (int idx : indices){
+            terms.add(frozenOntology.getTerm(idx));
+        }
+        return terms;
+    }
+
+    /**
+     * Int-indexed view of the ontology with ancestor/descendant closures and 
+     * the information content (IC) of all terms.
+     * @return the frozen ontology
+     */
+    public FrozenOntology getFrozenOntology() {
+        return frozenOntology;
     }
 
     /**
@@ -0,0 +1,386 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import io.AnnotationFileParser;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+import ontologizer.go.Term;
+
+/**
+ * Binary snapshot of a {@link PhenotypeData} object for fast startup.
+ * The snapshot holds all terms in topological order with their names, parents,
+ * information content (IC), ancestors sorted by decreasing IC, descendant
+ * bitsets and alternative IDs, the gene to phenotype
+ * annotations as term indices and the mapping of Entrez gene IDs to gene
+ * symbols. It is written once per ontology release with
+ * {@link #write(String, String, String)} and opened with {@link #open(String)}
+ * via memory mapping, so neither the OBO file nor the annotation file has to be
+ * parsed again. The closures of the {@link FrozenOntology} are read from the
+ * mapped buffer with bulk reads instead of being recomputed from the parents.
+ * <br><br>
+ * The file starts with a magic number and a format version followed by the
+ * size and CRC32 checksum of the OBO file and the annotation file from which
+ * the snapshot was built. Use {@link #checkSources(String, String)} to make
+ * sure that a snapshot still matches its source files.
+ */
+public class PhenotypeDataSnapshot {
+
+    /** Magic number at the beginning of each snapshot file ("PMSS"). */
+    public static final int MAGIC = 0x504d5353;
+
+    /** Version of the snapshot format. */
+    public static final int VERSION = 2;
+
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+    /** The phenotype data stored in the snapshot. */
+    private final PhenotypeData phenotypeData;
+
+    /** Mapping of Entrez gene IDs to gene symbols. */
+    private final HashMap<String, String> entrezToSymbol;
+
+    /** Size and checksum of the OBO file the snapshot was built from. */
+    private final long oboSize;
+    private final long oboChecksum;
+
+    /** Size and checksum of the annotation file the snapshot was built from. */
+    private final long annotationSize;
+    private final long annotationChecksum;
+
+    private PhenotypeDataSnapshot(PhenotypeData phenotypeData,
+            HashMap<String, String> entrezToSymbol,
+            long oboSize, long oboChecksum,
+            long annotationSize, long annotationChecksum){
+
+        this.phenotypeData = phenotypeData;
+        this.entrezToSymbol = entrezToSymbol;
+        this.oboSize = oboSize;
+        this.oboChecksum = oboChecksum;
+        this.annotationSize = annotationSize;
+        this.annotationChecksum = annotationChecksum;
+    }
+
+    /**
+     * Parses the ontology and annotation file and writes a snapshot of them.
+     *
+     * @param oboFilePath path to the ontology file in .obo format
+     * @param annotationFilePath path to the file with phenotype annotation of genes
+     * @param snapshotPath path of the snapshot file to write
+     * @throws IOException if files cannot be read or written
+     */
+    public static void write(String oboFilePath, String annotationFilePath,
+            String snapshotPath) throws IOException{
+
+        // read annotations and gene symbols in a single pass
+        AnnotationFileParser annotations = new AnnotationFileParser(annotationFilePath, 1);
+        PhenotypeData phenotypeData = new PhenotypeData(oboFilePath, annotations);
+        write(phenotypeData, annotations.getEntrezToSymbol(), oboFilePath, annotationFilePath, snapshotPath);
+    }
+
+    /**
+     * Writes a snapshot of an already parsed {@link PhenotypeData} object.
+     *
+     * @param phenotypeData the phenotype data parsed from {@code oboFilePath}
+     * and {@code annotationFilePath}
+     * @param entrezToSymbol mapping of Entrez gene IDs to gene symbols
+     * @param oboFilePath path to the ontology file in .obo format
+     * @param annotationFilePath path to the file with phenotype annotation of genes
+     * @param snapshotPath path of the snapshot file to write
+     * @throws IOException if files cannot be read or written
+     */
+    public static void write(PhenotypeData phenotypeData,
+            HashMap<String, String> entrezToSymbol,
+            String oboFilePath, String annotationFilePath,
+            String snapshotPath) throws IOException{
+
+        FrozenOntology frozen = phenotypeData.getFrozenOntology();
+        HashMap<String, Integer> altId2index = frozen.getAlternativeIDs();
+
+        // sort gene IDs to get reproducible snapshot files
+        ArrayList<String> geneIDs = new ArrayList<String>(phenotypeData.getAllGenesIDs());
+        Collections.sort(geneIDs);
+        ArrayList<String> symbolIDs = new ArrayList<String>(entrezToSymbol.keySet());
+        Collections.sort(symbolIDs);
+        ArrayList<String> altIDs = new ArrayList<String>(altId2index.keySet());
+        Collections.sort(altIDs);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotPath), 1 << 16))){
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize(oboFilePath));
+            out.writeLong(checksum(oboFilePath));
+            out.writeLong(fileSize(annotationFilePath));
+            out.writeLong(checksum(annotationFilePath));
+
+            // terms in topological order
+            out.writeInt(frozen.size());
+            for (int i = 0; i < frozen.size(); i++){
+                Term t = frozen.getTerm(i);
+                writeString(out, t.getIDAsString());
+                writeString(out, t.getName());
+                out.writeDouble(frozen.getIC(i));
+                writeInts(out, frozen.getParents(i));
+                writeInts(out, frozen.getAncestors(i));
+                CompactBitSet descendants = frozen.getDescendants(i);
+                out.writeInt(descendants.getWordOffset());
+                long [] words = descendants.getWords();
+                out.writeInt(words.length);
+                for (long w : words){
+                    out.writeLong(w);
+                }
+            }
+
+            // alternative term IDs
+            out.writeInt(altIDs.size());
+            for (String alt : altIDs){
+                writeString(out, alt);
+                out.writeInt(altId2index.get(alt));
+            }
+
+            // gene to phenotype annotations as term indices
+            out.writeInt(geneIDs.size());
+            for (String gID : geneIDs){
+                HashSet<Term> terms = phenotypeData.getGenePhenotypes(gID);
+                writeString(out, gID);
+                out.writeInt(terms.size());
+                for (Term t : terms){
+                    int idx = frozen.getIndex(t);
+                    if (idx < 0){
+                        throw new IOException(String.format(
+                                "[ERROR] Term '%s' of gene '%s' is not part of the ontology.",
+                                t.getIDAsString(), gID));
+                    }
+                    out.writeInt(idx);
+                }
+            }
+
+            // gene symbols
+            out.writeInt(symbolIDs.size());
+            for (String gID : symbolIDs){
+                writeString(out, gID);
+                writeString(out, entrezToSymbol.get(gID));
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot file via memory mapping.
+     *
+     * @param snapshotPath path to the snapshot file
+     * @return the {@link PhenotypeDataSnapshot}
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static PhenotypeDataSnapshot open(String snapshotPath) throws IOException{
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotPath, "r");
+                FileChannel channel = file.getChannel()){
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            try{
+                if (buf.remaining() < 8 || buf.getInt() != MAGIC){
+                    throw new IOException("[ERROR] File '" + snapshotPath
+                            + "' is not a phenotype data snapshot.");
+                }
+                int version = buf.getInt();
+                if (version != VERSION){
+                    throw new IOException(String.format(
+                            "[ERROR] Snapshot '%s' has format version %d but version %d "
+                                    + "is required. Please rebuild the snapshot.",
+                            snapshotPath, version, VERSION));
+                }
+                long oboSize = buf.getLong();
+                long oboChecksum = buf.getLong();
+                long annotationSize = buf.getLong();
+                long annotationChecksum = buf.getLong();
+
+                // terms in topological order
+                int n = buf.getInt();
+                Term [] terms = new Term[n];
+                int [][] parents = new int[n][];
+                int [][] ancestors = new int[n][];
+                CompactBitSet [] descendants = new CompactBitSet[n];
+                double [] ic = new double[n];
+                for (int i = 0; i < n; i++){
+                    String id = readString(buf);
+                    String name = readString(buf);
+                    terms[i] = new Term(id, name);
+                    ic[i] = buf.getDouble();
+                    parents[i] = readInts(buf);
+                    ancestors[i] = readInts(buf);
+                    int wordOffset = buf.getInt();
+                    long [] words = new long[buf.getInt()];
+                    buf.asLongBuffer().get(words);
+                    buf.position(buf.position() + 8 * words.length);
+                    descendants[i] = new CompactBitSet(wordOffset, words);
+                }
+
+                // alternative term IDs
+                int nAlt = buf.getInt();
+                HashMap<String, Integer> altId2index = new HashMap<String, Integer>(2 * nAlt);
+                for (int i = 0; i < nAlt; i++){
+                    String alt = readString(buf);
+                    altId2index.put(alt, buf.getInt());
+                }
+
+                FrozenOntology frozen = new FrozenOntology(terms, parents, ic, altId2index,
+                        ancestors, descendants);
+
+                // gene to phenotype annotations
+                int nGenes = buf.getInt();
+                HashMap<String, HashSet<Term>> gene2Terms = new HashMap<String, HashSet<Term>>(2 * nGenes);
+                for (int i = 0; i < nGenes; i++){
+                    String gID = readString(buf);
+                    int nTerms = buf.getInt();
+                    HashSet<Term> geneTerms = new HashSet<Term>(2 * nTerms);
+                    for (int j = 0; j < nTerms; j++){
+                        geneTerms.add(terms[buf.getInt()]);
+                    }
+                    gene2Terms.put(gID, geneTerms);
+                }
+
+                // gene symbols
+                int nSymbols = buf.getInt();
+                HashMap<String, String> entrezToSymbol = new HashMap<String, String>(2 * nSymbols);
+                for (int i = 0; i < nSymbols; i++){
+                    String gID = readString(buf);
+                    entrezToSymbol.put(gID, readString(buf));
+                }
+
+                PhenotypeData phenotypeData = new PhenotypeData(gene2Terms, frozen);
+
+                return new PhenotypeDataSnapshot(phenotypeData, entrezToSymbol,
+                        oboSize, oboChecksum, annotationSize, annotationChecksum);
+
+            }catch (RuntimeException e){
+                // truncated file or invalid indices
+                throw new IOException("[ERROR] Snapshot '" + snapshotPath
+                        + "' is corrupt. Please rebuild the snapshot.", e);
+            }
+        }
+    }
+
+    /**
+     * Checks that the snapshot was built from the given source files by
+     * comparing file sizes and CRC32 checksums. Paths that are {@code null}
+     * are not checked.
+     *
+     * @param oboFilePath path to the ontology file in .obo format or null
+     * @param annotationFilePath path to the annotation file or null
+     * @throws IOException if a source file cannot be read or does not match
+     * the snapshot
+     */
+    public void checkSources(String oboFilePath, String annotationFilePath) throws IOException{
+
+        if (oboFilePath != null && (fileSize(oboFilePath) != oboSize
+                || checksum(oboFilePath) != oboChecksum)){
+            throw new IOException("[ERROR] The snapshot was not built from the "
+                    + "ontology file '" + oboFilePath + "'. Please rebuild the snapshot.");
+        }
+        if (annotationFilePath != null && (fileSize(annotationFilePath) != annotationSize
+                || checksum(annotationFilePath) != annotationChecksum)){
+            throw new IOException("[ERROR] The snapshot was not built from the "
+                    + "annotation file '" + annotationFilePath + "'. Please rebuild the snapshot.");
+        }
+    }
+
+    /**
+     * Size of a file in bytes.
+     */
+    private static long fileSize(String path) throws IOException{
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")){
+            return file.length();
+        }
+    }
+
+    /**
+     * CRC32 checksum over the content of a file.
+     */
+    private static long checksum(String path) throws IOException{
+        CRC32 crc = new CRC32();
+        byte [] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(path)){
+            int n;
+            while ((n = in.read(buffer)) > 0){
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes a string as length prefixed UTF-8 bytes.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException{
+        byte [] bytes = (s != null ? s : "").getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes an int array with its length as prefix.
+     */
+    private static void writeInts(DataOutputStream out, int [] values) throws IOException{
+        out.writeInt(values.length);
+        for (int v : values){
+            out.writeInt(v);
+        }
+    }
+
+    /**
+     * Reads a length prefixed int array with a single bulk read.
+     */
+    private static int [] readInts(ByteBuffer buf){
+        int [] values = new int[buf.getInt()];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + 4 * values.length);
+        return values;
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string.
+     */
+    private static String readString(ByteBuffer buf){
+        byte [] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * The phenotype data stored in the snapshot.
+     * @return the phenotype data
+     */
+    public PhenotypeData getPhenotypeData() {
+        return phenotypeData;
+    }
+
+    /**
+     * Mapping of Entrez gene IDs to gene symbols.
+     * @return the entrezToSymbol
+     */
+    public HashMap<String, String> getEntrezToSymbol() {
+        return entrezToSymbol;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import java.util.Collection;
+import ontologizer.go.Term;
+
+/**
+ * The similarity of every ontology term to a fixed set of patient phenotype
+ * terms.
+ * For each term t the profile holds the best Resnik similarity between t and
+ * any of the patient terms, i.e. the maximal IC over all ancestors of t that are
+ * also an ancestor of at least one patient term.
+ * The profile is computed once by a single propagation pass over the terms in
+ * topological order. Afterwards the phenoMatch score of a gene is just the sum
+ * of array lookups over its annotated terms, so one profile can be reused for
+ * all genes that are compared to the same patient.
+ */
+public class PhenotypeProfile {
+
+    /** The ontology to which the term indices refer. */
+    private final FrozenOntology frozenOntology;
+
+    /** Best similarity to the patient terms for each term index. */
+    private final double [] bestScore;
+
+    /**
+     * Computes the profile of a set of patient phenotype terms.
+     *
+     * @param frozenOntology the ontology with IC values
+     * @param patientTerms phenotype terms of the patient
+     */
+    public PhenotypeProfile(FrozenOntology frozenOntology, Collection<Term> patientTerms){
+
+        this.frozenOntology = frozenOntology;
+        int n = frozenOntology.size();
+
+        // mark all terms that are ancestor of at least one patient term
+        boolean [] covered = new boolean[n];
+        for (Term t : patientTerms){
+            int idx = frozenOntology.getIndex(t);
+            if (idx >= 0){
+                for (int a : frozenOntology.getAncestors(idx)){
+                    covered[a] = true;
+                }
+            }
+        }
+
+        // propagate the best covered IC from parents to children. Parents
+        // have smaller indices and are therefore already computed.
+        this.bestScore = new double[n];
+        for (int i = 0; i < n; i++){
+            double best = covered[i] ? frozenOntology.getIC(i) : 0.0;
+            for (int p : frozenOntology.getParents(i)){
+                if (bestScore[p] > best){
+                    best = bestScore[p];
+                }
+            }
+            bestScore[i] = best;
+        }
+    }
+
+    /**
+     * Best similarity of a single term to the patient terms.
+     *
+     * @param t a phenotype term
+     * @return the maximal Resnik similarity to any patient term or zero if
+     * the term is not part of the ontology
+     */
+    public double getBestScore(Term t){
+        int idx = frozenOntology.getIndex(t);
+        return idx >= 0 ? bestScore[idx] : 0.0;
+    }
+
+    /**
+     * Computes the phenoMatch score of a set of gene phenotype terms, i.e. the
+     * sum over the best similarity of each gene term to the patient terms.
+     *
+     * @param geneTerms phenotype terms associated to a gene
+     * @return the phenoMatch score
+     */
+    public double phenoMatchScore(Collection<Term> geneTerms){
+        double similarity = 0;
+        for (Term t : geneTerms){
+            similarity += getBestScore(t);
+        }
+        return similarity;
+    }
+
+    /**
+     * Computes the maximal similarity of any gene phenotype term to the
+     * patient terms.
+     *
+     * @param geneTerms phenotype terms associated to a gene
+     * @return the maximal similarity of a single term pair
+     */
+    public double maxScore(Collection<Term> geneTerms){
+        double max = 0;
+        for (Term t : geneTerms){
+            double s = getBestScore(t);
+            if (s > max){
+                max = s;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The ontology to which this profile refers.
+     * @return the frozen ontology
+     */
+    public FrozenOntology getFrozenOntology() {
+        return frozenOntology;
+    }
+}
@@ -33,6 +33,8 @@ import genomicregions.GenomicSet;
 import io.TabFileParser;
 import io.TabFileParserTest;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -154,4 +156,76 @@ public class AnnotateCNVsTest {
         
     }
 
+    /**
+     * Runs the single CNV queries and the batch sweep and compares the 
+     * annotated genes of all CNVs.
+     */
+    private static void assertBatchEqualsQueries(GenomicSet<CNV> cnvs, 
+            GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+        
+        HashMap<String, GenomicSet<Gene>> overlap = new HashMap<>();
+        HashMap<String, GenomicSet<Gene>> inTADs = new HashMap<>();
+        for (CNV cnv : cnvs.values()){
+            AnnotateCNVs.annotateOverlappedGenes(cnv, genes);
+            AnnotateCNVs.annotateGenesInOverlapTADs(cnv, domains, genes);
+            overlap.put(cnv.getName(), cnv.getGenesInOverlap());
+            inTADs.put(cnv.getName(), cnv.getGenesInOverlapTADs());
+        }
+        
+        AnnotateCNVs.annotateBatch(cnvs, domains, genes);
+        
+        for (CNV cnv : cnvs.values()){
+            assertEquals(overlap.get(cnv.getName()), cnv.getGenesInOverlap());
+            assertEquals(inTADs.get(cnv.getName()), cnv.getGenesInOverlapTADs());
+        }
+    }
+    
+    /**
+     * Test of annotateBatch method, of class AnnotateCNVs.
+     */
+    @Test
+    public void testAnnotateBatch() {
+        System.out.println("annotateBatch");
+        
+        assertBatchEqualsQueries(exampleData.getCnvs(), exampleData.getDomains(), exampleData.getGenes());
+        assertBatchEqualsQueries(cnvs, boundaries, genes);
+        
+        // without domains only the overlapped genes are annotated
+        GenomicSet<CNV> exampleCNVs = exampleData.getCnvs();
+        AnnotateCNVs.annotateBatch(exampleCNVs, null, exampleData.getGenes());
+        GenomicSet<Gene> cnv1genes = new GenomicSet<Gene>();
+        cnv1genes.put("geneB", exampleData.getGenes().get("geneB"));
+        cnv1genes.put("geneD", exampleData.getGenes().get("geneD"));
+        assertEquals(cnv1genes, exampleCNVs.get("cnv1").getGenesInOverlap());
+    }
+    
+    /**
+     * Test of annotateBatch method with random intervals including empty 
+     * intervals and equal start coordinates.
+     */
+    @Test
+    public void testAnnotateBatchRandom() {
+        System.out.println("annotateBatchRandom");
+        
+        Random rnd = new Random(3);
+        for (int r = 0; r < 20; r++){
+            
+            GenomicSet<CNV> randomCNVs = new GenomicSet<CNV>();
+            GenomicSet<GenomicElement> randomDomains = new GenomicSet<GenomicElement>();
+            GenomicSet<Gene> randomGenes = new GenomicSet<Gene>();
+            
+            for (int i = 0; i < 100; i++){
+                String chr = "chr" + rnd.nextInt(3);
+                int start = 10 * rnd.nextInt(100);
+                randomCNVs.put("cnv" + i, new CNV(chr, start, start + 10 * rnd.nextInt(20), "cnv" + i, "loss"));
+                start = 10 * rnd.nextInt(100);
+                randomDomains.put("tad" + i, new GenomicElement(chr, start, start + 10 * rnd.nextInt(30), "tad" + i));
+                start = 10 * rnd.nextInt(100);
+                randomGenes.put("gene" + i, new Gene(chr, start, start + 5 * rnd.nextInt(4), "gene" + i));
+            }
+            
+            assertBatchEqualsQueries(randomCNVs, randomDomains, randomGenes);
+        }
+    }
+
 }
@@ -0,0 +1,180 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.charite.compbio.phenomatch.core;
+
+import annotation.AnnotateCNVs;
+import genomicregions.CNV;
+import genomicregions.Gene;
+import genomicregions.GenomicElement;
+import genomicregions.GenomicSet;
+import io.GeneScoreRows;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import ontologizer.go.Term;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the ParallelAnalysis class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class ParallelAnalysisTest {
+
+    private static ExampleData exampleData;
+
+    private static ParallelAnalysis parallel;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        exampleData = new ExampleData();
+        parallel = new ParallelAnalysis(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        parallel.shutdown();
+    }
+
+    /**
+     * Annotates the CNVs with the batch sweep of the serial mode and with the
+     * domain partition index of the threaded mode and compares the annotated
+     * genes of all CNVs.
+     */
+    private static void assertAnnotateEqualsSweep(GenomicSet<CNV> cnvs,
+            GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+
+        HashMap<String, GenomicSet<Gene>> overlap = new HashMap<>();
+        HashMap<String, GenomicSet<Gene>> inTADs = new HashMap<>();
+        AnnotateCNVs.annotateBatch(cnvs, domains, genes);
+        for (CNV cnv : cnvs.values()){
+            overlap.put(cnv.getName(), cnv.getGenesInOverlap());
+            inTADs.put(cnv.getName(), cnv.getGenesInOverlapTADs());
+        }
+
+        parallel.annotate(cnvs, genes, domains);
+
+        for (CNV cnv : cnvs.values()){
+            assertEquals(overlap.get(cnv.getName()), cnv.getGenesInOverlap());
+            assertEquals(inTADs.get(cnv.getName()), cnv.getGenesInOverlapTADs());
+        }
+    }
+
+    /**
+     * Test that the serial and threaded mode annotate the same genes, also 
+     * for random intervals including empty intervals and equal start 
+     * coordinates.
+     */
+    @Test
+    public void testAnnotate() throws IOException {
+        System.out.println("annotate");
+
+        assertAnnotateEqualsSweep(exampleData.getCnvs(), exampleData.getDomains(), exampleData.getGenes());
+
+        Random rnd = new Random(5);
+        for (int r = 0; r < 20; r++){
+
+            GenomicSet<CNV> cnvs = new GenomicSet<CNV>();
+            GenomicSet<GenomicElement> domains = new GenomicSet<GenomicElement>();
+            GenomicSet<Gene> genes = new GenomicSet<Gene>();
+
+            for (int i = 0; i < 100; i++){
+                String chr = "chr" + rnd.nextInt(3);
+                int start = 10 * rnd.nextInt(100);
+                cnvs.put("cnv" + i, new CNV(chr, start, start + 10 * rnd.nextInt(20), "cnv" + i, "loss"));
+                start = 10 * rnd.nextInt(100);
+                domains.put("tad" + i, new GenomicElement(chr, start, start + 10 * rnd.nextInt(30), "tad" + i));
+                start = 10 * rnd.nextInt(100);
+                genes.put("gene" + i, new Gene(chr, start, start + 5 * rnd.nextInt(4), "gene" + i));
+            }
+
+            assertAnnotateEqualsSweep(cnvs, domains, genes);
+        }
+    }
+
+    /**
+     * Output lines of scored genes.
+     */
+    private static ArrayList<String> lines(GeneScoreRows rows){
+        ArrayList<String> lines = new ArrayList<>();
+        for (int r = 0; r < rows.size(); r++){
+            lines.add(rows.getLine(r));
+        }
+        return lines;
+    }
+
+    /**
+     * Test that parallel annotation and scoring gives the serial output.
+     */
+    @Test
+    public void testGetGeneScoreRows() throws IOException {
+        System.out.println("getGeneScoreRows");
+
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        GenomicSet<CNV> cnvs = exampleData.getCnvs();
+
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+        AnnotateCNVs.annotateGenesInOverlapTADs(cnvs, exampleData.getDomains(), exampleData.getGenes());
+
+        ArrayList<String> serial = new ArrayList<>();
+        ArrayList<String> serialTADs = new ArrayList<>();
+        for (CNV c : cnvs.values()){
+            serial.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+            serialTADs.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlapTADs()));
+        }
+
+        parallel.annotate(cnvs, exampleData.getGenes(), exampleData.getDomains());
+
+        assertEquals(serial, lines(parallel.getGeneScoreRows(cnvs, phenotypeData, false)));
+        assertEquals(serialTADs, lines(parallel.getGeneScoreRows(cnvs, phenotypeData, true)));
+        assertEquals(serial, lines(Phenomatch.getGeneScoreRows(cnvs, phenotypeData, false)));
+    }
+
+    /**
+     * Test that genes of a large window are scored in chunks in input order.
+     */
+    @Test
+    public void testLargeWindow() throws IOException {
+        System.out.println("largeWindow");
+
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        String [] termIDs = new String[]{"EP:03", "EP:04", "EP:05", "EP:07", "EP:01"};
+
+        // many genes with different phenotypes, some without similarity
+        GenomicSet<Gene> genes = new GenomicSet<Gene>();
+        int nGenes = 5 * ParallelAnalysis.GENE_CHUNK_SIZE;
+        for (int i = 0; i < nGenes; i++){
+            Gene g = new Gene("chr1", 10 * i, 10 * i + 5, "gene" + i);
+            g.setSymbol("G" + i);
+            g.setPhenotypeTerms(new HashSet<Term>());
+            g.addPhenotypeTerm(phenotypeData.getTermIncludingAlternatives(termIDs[i % termIDs.length]));
+            genes.put(g.getName(), g);
+        }
+
+        HashSet<Term> patientTerms = new HashSet<Term>();
+        patientTerms.add(phenotypeData.getTermIncludingAlternatives("EP:06"));
+        CNV cnv = new CNV("chr1", 0, 10 * nGenes, "cnvLarge", patientTerms);
+        GenomicSet<CNV> cnvs = new GenomicSet<CNV>();
+        cnvs.put(cnv.getName(), cnv);
+
+        parallel.annotate(cnvs, genes, null);
+        assertEquals(nGenes, cnv.getGenesInOverlap().size());
+
+        ArrayList<String> serial = cnv.getOverlappedGenesOutputLine(phenotypeData, cnv.getGenesInOverlap());
+        GeneScoreRows rows = parallel.getGeneScoreRows(cnvs, phenotypeData, false);
+        assertEquals(serial, lines(rows));
+        assertEquals(serial.size(), rows.size());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import annotation.AnnotateCNVs;
+import de.charite.compbio.phenomatch.core.Phenomatch;
+import genomicregions.CNV;
+import genomicregions.GenomicSet;
+import io.GeneScoreRows;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the CasePercentiles class.
+ */
+public class CasePercentilesTest {
+
+    /**
+     * Test of getCaseID method.
+     */
+    @Test
+    public void testGetCaseID() {
+        System.out.println("getCaseID");
+
+        assertEquals("DGAP001", CasePercentiles.getCaseID("DGAP001_A"));
+        assertEquals("DGAP001", CasePercentiles.getCaseID("DGAP001_B"));
+        assertEquals("DGAP001", CasePercentiles.getCaseID("DGAP001"));
+        assertEquals("DGAP", CasePercentiles.getCaseID("DGAP_1_A"));
+    }
+
+    /**
+     * Test of getOutputLines method with a small table.
+     */
+    @Test
+    public void testGetOutputLines() {
+        System.out.println("getOutputLines");
+
+        CasePercentiles percentiles = new CasePercentiles();
+        percentiles.add("DGAP322_A", "chr18", "SERPINB7", 0.014, 0.003);
+        percentiles.add("DGAP287", "chr10", "GATA3", 1.822, 1.365);
+        percentiles.add("DGAP322_B", "chr3", "BCL2", 0.8214, 0.797);
+        percentiles.add("DGAP322_A", "chr18", ".", 0.0, 0.0);
+        percentiles.add("DGAP287", "chr10", "DHTKD1", 9.057, 2.09);
+        percentiles.add("DGAP322_B", "chr3", "FOO", 0.014, 0.797);
+
+        assertEquals(Arrays.asList(
+                "DGAP322\tSERPINB7\tchr18\t0.014\t0.003\t4\t0.75\t0\t0.821\t0.5\t0\t0.797",
+                "DGAP287\tGATA3\tchr10\t1.822\t1.365\t2\t0.5\t1.822\t9.057\t0.5\t1.365\t2.09",
+                "DGAP322\tBCL2\tchr3\t0.821\t0.797\t4\t1\t0\t0.821\t1\t0\t0.797",
+                "DGAP322\t.\tchr18\t0\t0\t4\t0.25\t0\t0.821\t0.25\t0\t0.797",
+                "DGAP287\tDHTKD1\tchr10\t9.057\t2.09\t2\t1\t1.822\t9.057\t1\t1.365\t2.09",
+                "DGAP322\tFOO\tchr3\t0.014\t0.797\t4\t0.75\t0\t0.821\t1\t0\t0.797"),
+                percentiles.getOutputLines());
+    }
+
+    /**
+     * Test that the percentiles are the same as by comparing each row with
+     * all rows of the same case.
+     */
+    @Test
+    public void testGetOutputLinesRandom() {
+        System.out.println("getOutputLinesRandom");
+
+        Random rnd = new Random(3);
+        CasePercentiles percentiles = new CasePercentiles();
+        int n = 3000;
+        String [] cases = new String[n];
+        double [] scores = new double[n];
+        for (int r = 0; r < n; r++){
+            cases[r] = "case" + rnd.nextInt(20);
+            scores[r] = rnd.nextInt(50) / 10.0;
+            percentiles.add(cases[r] + (rnd.nextBoolean() ? "_A" : "_B"), "chr1",
+                    "g" + r, scores[r], scores[r] / 2);
+        }
+
+        ArrayList<String> lines = percentiles.getOutputLines();
+        assertEquals(n, lines.size());
+        for (int r = 0; r < n; r++){
+            int count = 0;
+            int lessOrEqual = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int k = 0; k < n; k++){
+                if (cases[k].equals(cases[r])){
+                    count++;
+                    lessOrEqual += scores[k] <= scores[r] ? 1 : 0;
+                    min = Math.min(min, scores[k]);
+                    max = Math.max(max, scores[k]);
+                }
+            }
+            String [] cols = lines.get(r).split("\t");
+            assertEquals(cases[r], cols[0]);
+            assertEquals(count, Integer.parseInt(cols[5]));
+            assertEquals((double) lessOrEqual / count, Double.parseDouble(cols[6]), 1e-6);
+            assertEquals(min, Double.parseDouble(cols[7]), 0.0);
+            assertEquals(max, Double.parseDouble(cols[8]), 0.0);
+            assertEquals(cols[6], cols[9]);
+        }
+    }
+
+    /**
+     * Test of addAll method with the scored genes of the example data.
+     */
+    @Test
+    public void testAddAll() throws IOException {
+        System.out.println("addAll");
+
+        ExampleData exampleData = new ExampleData();
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        GenomicSet<CNV> cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+
+        ArrayList<String> geneLines = new ArrayList<>();
+        for (CNV c : cnvs.values()){
+            geneLines.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+        }
+
+        GeneScoreRows rows = Phenomatch.getGeneScoreRows(cnvs, phenotypeData, false);
+        CasePercentiles percentiles = new CasePercentiles();
+        percentiles.addAll(rows);
+        ArrayList<String> lines = percentiles.getOutputLines();
+
+        assertEquals(geneLines.size(), lines.size());
+        for (int r = 0; r < lines.size(); r++){
+            String [] gene = geneLines.get(r).split("\t");
+            String [] cols = lines.get(r).split("\t");
+            assertEquals(CasePercentiles.getCaseID(gene[3]), cols[0]);
+            assertEquals(gene[5], cols[1]);
+            assertEquals(gene[0], cols[2]);
+            assertEquals(Double.parseDouble(gene[6]), Double.parseDouble(cols[3]), 0.0);
+            assertEquals(Double.parseDouble(gene[7]), Double.parseDouble(cols[4]), 0.0);
+        }
+    }
+
+    /**
+     * Test of formatNumber method.
+     */
+    @Test
+    public void testFormatNumber() {
+        System.out.println("formatNumber");
+
+        assertEquals("0", CasePercentiles.formatNumber(0.0));
+        assertEquals("1", CasePercentiles.formatNumber(1.0));
+        assertEquals("0.5", CasePercentiles.formatNumber(0.5));
+        assertEquals("9.057", CasePercentiles.formatNumber(9.057));
+        assertEquals("0.3333333", CasePercentiles.formatNumber(1.0 / 3));
+        assertEquals("0.6666667", CasePercentiles.formatNumber(2.0 / 3));
+        assertEquals("0.001", CasePercentiles.formatNumber(0.001));
+        assertEquals("1e-04", CasePercentiles.formatNumber(0.0001));
+        assertEquals("1.5e-05", CasePercentiles.formatNumber(0.000015));
+        assertEquals("123456789", CasePercentiles.formatNumber(123456789));
+        assertEquals("1e+05", CasePercentiles.formatNumber(100000));
+        assertEquals("12345", CasePercentiles.formatNumber(12345));
+        assertEquals("-2.5", CasePercentiles.formatNumber(-2.5));
+    }
+}
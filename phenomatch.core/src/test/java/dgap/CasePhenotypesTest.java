@@ -0,0 +1,112 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import io.TabFileParser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import ontologizer.go.Term;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the CasePhenotypes class.
+ */
+public class CasePhenotypesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String... lines) throws IOException{
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Test of getCaseID method.
+     */
+    @Test
+    public void testGetCaseID() {
+        System.out.println("getCaseID");
+
+        assertEquals("DGAP001", CasePhenotypes.getCaseID("DGAP001_A"));
+        assertEquals("DGAP001", CasePhenotypes.getCaseID("DGAP001"));
+        assertEquals("DGAP", CasePhenotypes.getCaseID("DGAP_1_A"));
+    }
+
+    /**
+     * Test of read method.
+     */
+    @Test
+    public void testRead() throws IOException {
+        System.out.println("read");
+
+        File table = write("cases.txt",
+                "ID\tHPO",
+                "DG1\tEP:05",
+                "DG2\tEP:06",
+                "DG1\tEP:06");
+        CasePhenotypes phenotypes = CasePhenotypes.read(table.getPath());
+        assertEquals(2, phenotypes.size());
+        assertEquals("EP:05;EP:06", phenotypes.getTermIDs("DG1"));
+        assertEquals("EP:06", phenotypes.getTermIDs("DG2"));
+        assertNull(phenotypes.getTermIDs("DG3"));
+
+        // columns are found by their names
+        table = write("columns.txt",
+                "HPO\tsex\tID",
+                "EP:05\tf\tDG1");
+        assertEquals("EP:05", CasePhenotypes.read(table.getPath()).getTermIDs("DG1"));
+
+        table = write("noHeader.txt", "DG1\tEP:05");
+        try{
+            CasePhenotypes.read(table.getPath());
+            fail("missing columns are not reported");
+        }catch (IOException e){
+            assertTrue(e.getMessage().startsWith("[ERROR]"));
+        }
+    }
+
+    /**
+     * Test of getTerms method.
+     */
+    @Test
+    public void testGetTerms() throws IOException {
+        System.out.println("getTerms");
+
+        PhenotypeData phenotypeData = new ExampleData().getPhenotypeData();
+        Term t5 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        Term t6 = phenotypeData.getTermIncludingAlternatives("EP:06");
+
+        CasePhenotypes phenotypes = new CasePhenotypes();
+        phenotypes.add("DG1", "EP:05");
+        phenotypes.add("DG1", "EP:06");
+        phenotypes.add("DG1", "EP:05");
+        phenotypes.add("DG2", "EP:06");
+
+        Map<String, HashSet<Term>> terms = phenotypes.getTerms(phenotypeData);
+        assertEquals(2, terms.size());
+        assertEquals(new HashSet<>(Arrays.asList(t5, t6)), terms.get("DG1"));
+        assertEquals(new HashSet<>(Arrays.asList(t6)), terms.get("DG2"));
+
+        TabFileParser.PhenotypeLookup lookup = phenotypes.getBreakpointPhenotypes(phenotypeData);
+        assertEquals(terms.get("DG1"), lookup.getPhenotypes("DG1_A"));
+        assertEquals(terms.get("DG1"), lookup.getPhenotypes("DG1_B"));
+        assertEquals(terms.get("DG2"), lookup.getPhenotypes("DG2"));
+        assertNull(lookup.getPhenotypes("DG3_A"));
+    }
+}
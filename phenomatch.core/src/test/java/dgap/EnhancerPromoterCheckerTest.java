@@ -0,0 +1,112 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the EnhancerPromoterChecker class.
+ */
+public class EnhancerPromoterCheckerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String... lines) throws IOException{
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Test of readContacts and the output lines with a small example.
+     */
+    @Test
+    public void testReadContacts() throws IOException {
+        System.out.println("readContacts");
+
+        File bps = write("breakpoints.bed",
+                "chr22\t1000\t1002\tDG1_A",
+                "chr22\t5000\t5001\tDG1_B",
+                "chr5\t100\t105\tDG2_A");
+        File contacts = write("contacts.bed8",
+                // spans DG1_A, within its window
+                "chr22\t900\t950\tGGT1\tchr22\t1500\t1550\t0.766967",
+                // DHS before the promoter, spans DG1_A
+                "chr22\t1800\t1850\tC22orf36\tchr22\t200\t250\t0.838512",
+                // low correlation
+                "chr22\t900\t950\tGGT1\tchr22\t1500\t1550\t0.7",
+                // inter-chromosomal
+                "chr22\t900\t950\tGGT1\tchr5\t1500\t1550\t0.9",
+                // does not span the breakpoint
+                "chr22\t1100\t1150\tGGT1\tchr22\t1500\t1550\t0.9",
+                // exceeds the window of DG1_A but spans DG1_A and DG1_B
+                "chr22\t500\t550\tXYZ\tchr22\t5100\t5150\t0.95",
+                // window of DG2_A starts before zero
+                "chr5\t0\t10\tABC\tchr5\t1000\t1100\t0.99");
+
+        ArrayList<BreakpointWindow> breakpoints = BreakpointWindow.read(bps.getPath(), 1000);
+        EnhancerPromoterChecker checker = new EnhancerPromoterChecker(breakpoints);
+        checker.readContacts(contacts.getPath());
+
+        assertEquals(Arrays.asList(
+                "DG1_A\tchr22\t1000\t1002\t0\t2002\tchr22\t900\t950\tGGT1\tchr22\t1500\t1550\t0.766967",
+                "DG1_A\tchr22\t1000\t1002\t0\t2002\tchr22\t1800\t1850\tC22orf36\tchr22\t200\t250\t0.838512",
+                "DG2_A\tchr5\t100\t105\t-900\t1105\tchr5\t0\t10\tABC\tchr5\t1000\t1100\t0.99"),
+                checker.getOutputLines());
+        assertEquals(Arrays.asList(
+                "DG1_A\tchr22\t1000\t1002\t0\t2002\t2",
+                "DG1_B\tchr22\t5000\t5001\t4000\t6001\t0",
+                "DG2_A\tchr5\t100\t105\t-900\t1105\t1"),
+                checker.getSummaryLines());
+
+        // a flank that covers all contacts
+        checker = new EnhancerPromoterChecker(BreakpointWindow.read(bps.getPath(), 10000));
+        checker.readContacts(contacts.getPath());
+        assertEquals(Arrays.asList(3, 1, 1), counts(checker));
+    }
+
+    /**
+     * Test of write method.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        System.out.println("write");
+
+        File bps = write("breakpoints.bed", "chr1\t1000\t1002\tDG1_A");
+        File contacts = write("contacts.bed8",
+                "chr1\t900\t950\tGGT1\tchr1\t1500\t1550\t0.8");
+        EnhancerPromoterChecker checker = new EnhancerPromoterChecker(
+                BreakpointWindow.read(bps.getPath(), 3000000));
+        checker.readContacts(contacts.getPath());
+
+        File out = new File(folder.getRoot(), "broken.txt");
+        checker.write(out.getPath());
+        assertEquals(checker.getOutputLines(), Files.readAllLines(out.toPath(), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("DG1_A\tchr1\t1000\t1002\t-2999000\t3001002\t1"),
+                Files.readAllLines(new File(out.getPath() + "_summary.out").toPath(), StandardCharsets.UTF_8));
+    }
+
+    private static List<Integer> counts(EnhancerPromoterChecker checker){
+        ArrayList<Integer> counts = new ArrayList<>();
+        for (String line : checker.getSummaryLines()){
+            String [] cols = line.split("\t");
+            counts.add(Integer.parseInt(cols[cols.length - 1]));
+        }
+        return counts;
+    }
+}
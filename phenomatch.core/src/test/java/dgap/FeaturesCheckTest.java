@@ -0,0 +1,123 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package dgap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the FeaturesCheck class.
+ */
+public class FeaturesCheckTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String... lines) throws IOException{
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private FeaturesCheck check() throws IOException{
+
+        File bps = write("breakpoints.bed",
+                "chr22\t1000\t1002\tDG1_A",
+                "chr22\t5000\t5001\tDG1_B",
+                "chr5\t100\t105\tDG2_A");
+        File domains = write("domains.bed",
+                // contains DG1_A
+                "chr22\t0\t2000",
+                // ends at the start of DG1_A
+                "chr22\t500\t1000",
+                // in the window but not at the breakpoint
+                "chr22\t1003\t4999",
+                // starts at the end of DG1_B
+                "chr22\t5001\t9000",
+                "chr1\t0\t9000");
+        File hi = write("hi.bed",
+                "chr22\t4000\t4100\tGENE1|0.5|10.2%",
+                // overlaps both windows
+                "chr22\t1900\t4100\tGENE2|0.1|50%",
+                // starts at the end of the window of DG1_B
+                "chr22\t6001\t7000\tGENE3|0.01|99%",
+                "chr22\t7000\t8000\tGENE4|0.01|99%",
+                // window of DG2_A starts before zero
+                "chr5\t0\t10\tGENE5|0.9");
+        File ensembl = write("ensembl.txt",
+                "EnsemblGeneID\tChr\tStart\tEnd\tHGNC_ID\tHGNC_symbol",
+                "ENSG1\t22\t4000\t4100\tHGNC:1\tGENE1",
+                "ENSG2\t22\t1900\t4100\tHGNC:2\tGENE2",
+                "ENSG4\t22\t7000\t8000\tHGNC:4\tGENE4",
+                "ENSG0\t22\t4000\t4100\t\t",
+                "ENSG2b\t22\t1900\t4100\tHGNC:2\tGENE2");
+
+        FeaturesCheck check = new FeaturesCheck(BreakpointWindow.read(bps.getPath(), 1000));
+        check.readDomains(domains.getPath());
+        check.readHIGenes(hi.getPath());
+        check.readEnsemblGenes(ensembl.getPath());
+        return check;
+    }
+
+    /**
+     * Test of the domain output lines with a small example.
+     */
+    @Test
+    public void testGetHiCLines() throws IOException {
+        System.out.println("getHiCLines");
+
+        assertEquals(Arrays.asList(
+                "DG1_A\tchr22\t1000\t1002\t1\tchr22\t0\t2000",
+                "DG1_A\tchr22\t1000\t1002\t1\tchr22\t500\t1000",
+                "DG1_B\tchr22\t5000\t5001\t1\tchr22\t5001\t9000"),
+                check().getHiCLines());
+    }
+
+    /**
+     * Test of the HI gene output lines with a small example.
+     */
+    @Test
+    public void testGetHILines() throws IOException {
+        System.out.println("getHILines");
+
+        assertEquals(Arrays.asList(
+                "DG1_B\tchr22\t5000\t5001\t4000\t6001\t1\tchr22\t5001\t9000\t"
+                        + "chr22\t4000\t4100\tGENE1\t0.5\t10.2%\tENSG1\t22\t4000\t4100\tHGNC:1\tGENE1",
+                "DG1_A\tchr22\t1000\t1002\t0\t2002\t1\tchr22\t500\t1000\t"
+                        + "chr22\t1900\t4100\tGENE2\t0.1\t50%\tENSG2b\t22\t1900\t4100\tHGNC:2\tGENE2",
+                "DG1_B\tchr22\t5000\t5001\t4000\t6001\t1\tchr22\t5001\t9000\t"
+                        + "chr22\t1900\t4100\tGENE2\t0.1\t50%\tENSG2b\t22\t1900\t4100\tHGNC:2\tGENE2",
+                "DG1_B\tchr22\t5000\t5001\t4000\t6001\t1\tchr22\t5001\t9000\t"
+                        + "chr22\t6001\t7000\tGENE3\t0.01\t99%\t",
+                "DG2_A\tchr5\t100\t105\t-900\t1105\t0\t0\t0\t0\t"
+                        + "chr5\t0\t10\tGENE5\t0.9\t\t"),
+                check().getHILines());
+    }
+
+    /**
+     * Test of write method.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        System.out.println("write");
+
+        FeaturesCheck check = check();
+        File dir = folder.newFolder("out");
+        check.write(dir.getPath());
+        assertEquals(check.getHiCLines(), Files.readAllLines(
+                new File(dir, FeaturesCheck.HIC_FILE).toPath(), StandardCharsets.UTF_8));
+        assertEquals(check.getHILines(), Files.readAllLines(
+                new File(dir, FeaturesCheck.HI_FILE).toPath(), StandardCharsets.UTF_8));
+    }
+}
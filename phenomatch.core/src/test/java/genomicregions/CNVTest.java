@@ -26,7 +26,14 @@
 
 package genomicregions;
 
+import annotation.AnnotateCNVs;
+import io.GeneScoreRows;
+import io.TabRowWriter;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import ontologizer.go.Term;
@@ -35,7 +42,10 @@ import org.junit.AfterClass;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phenotypeontology.PhenotypeData;
 import toyexampledata.ExampleData;
 
 /**
@@ -44,6 +54,9 @@ import toyexampledata.ExampleData;
  */
 public class CNVTest {
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     private static ExampleData exampleData;
     private static HashSet<Term> terms;
     private static Term targetTerm;
@@ -166,5 +179,62 @@ public class CNVTest {
 
     }
 
+    /**
+     * Test of writeOverlappedGenesOutputRows method, of class CNV.
+     */
+    @Test
+    public void testWriteOverlappedGenesOutputRows() throws IOException {
+        System.out.println("writeOverlappedGenesOutputRows");
+        
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        GenomicSet<CNV> cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+        
+        ArrayList<String> expected = new ArrayList<String>();
+        File file = folder.newFile("rows.txt");
+        try (TabRowWriter out = new TabRowWriter(file.getPath())){
+            for (CNV c : cnvs.values()){
+                expected.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+                c.writeOverlappedGenesOutputRows(out, phenotypeData, c.getGenesInOverlap());
+            }
+            // a CNV without genes
+            expected.add(cnv1.getNoGeneOutputLine());
+            cnv1.writeOverlappedGenesOutputRows(out, phenotypeData, new GenomicSet<Gene>());
+        }
+        assertEquals(expected, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Test of writeGeneScoreRow and getGeneScoreLine methods, of class CNV, 
+     * via the rows of {@link GeneScoreRows}.
+     */
+    @Test
+    public void testWriteGeneScoreRow() throws IOException {
+        System.out.println("writeGeneScoreRow");
+        
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        GenomicSet<CNV> cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+        
+        ArrayList<String> expected = new ArrayList<String>();
+        GeneScoreRows rows = new GeneScoreRows();
+        for (CNV c : cnvs.values()){
+            expected.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+            c.addGeneScoreRows(rows, phenotypeData, 
+                    new ArrayList<Gene>(c.getGenesInOverlap().values()), null);
+        }
+        // a CNV without genes
+        expected.add(cnv1.getNoGeneOutputLine());
+        cnv1.addGeneScoreRows(rows, phenotypeData, new ArrayList<Gene>(), null);
+        
+        File file = folder.newFile("scoreRows.txt");
+        try (TabRowWriter out = new TabRowWriter(file.getPath())){
+            rows.write(out);
+        }
+        assertEquals(expected, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        for (int r = 0; r < rows.size(); r++){
+            assertEquals(expected.get(r), rows.getLine(r));
+        }
+    }
     
 }
@@ -0,0 +1,119 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the DomainPartitionIndex class.
+ */
+public class DomainPartitionIndexTest {
+
+    /**
+     * Genes in overlapped domains by a query for each domain.
+     */
+    private static GenomicSet<Gene> genesInOverlapDomains(GenomicElement e,
+            GenomicSet<GenomicElement> domains, GenomicSet<Gene> genes){
+
+        GenomicSet<Gene> result = new GenomicSet<Gene>();
+        for (GenomicElement tad : domains.anyOverlap(e).values()){
+            result.putAll(genes.anyOverlap(tad));
+        }
+        return result;
+    }
+
+    /**
+     * Test of getGenesInOverlapDomains method with the toy example data.
+     */
+    @Test
+    public void testGetGenesInOverlapDomainsExample() throws IOException {
+        System.out.println("getGenesInOverlapDomainsExample");
+
+        ExampleData exampleData = new ExampleData();
+        DomainPartitionIndex index = new DomainPartitionIndex(
+                exampleData.getDomains(), exampleData.getGenes());
+
+        for (CNV cnv : exampleData.getCnvs().values()){
+            assertEquals(genesInOverlapDomains(cnv, exampleData.getDomains(), exampleData.getGenes()),
+                    index.getGenesInOverlapDomains(cnv));
+        }
+    }
+
+    /**
+     * Test of getGenesInOverlapDomains method with random partitions and
+     * random overlapping domains.
+     */
+    @Test
+    public void testGetGenesInOverlapDomainsRandom() {
+        System.out.println("getGenesInOverlapDomainsRandom");
+
+        Random rnd = new Random(11);
+        for (int r = 0; r < 20; r++){
+
+            boolean partition = r % 2 == 0;
+            GenomicSet<GenomicElement> domains = new GenomicSet<GenomicElement>();
+            int pos = 0;
+            for (int i = 0; i < 50; i++){
+                int start = partition ? pos + 10 * rnd.nextInt(3) : 10 * rnd.nextInt(200);
+                int end = start + 10 + 10 * rnd.nextInt(20);
+                domains.put("tad" + i, new GenomicElement("chr1", start, end, "tad" + i));
+                pos = end;
+            }
+
+            GenomicSet<Gene> genes = new GenomicSet<Gene>();
+            for (int i = 0; i < 100; i++){
+                int start = 10 * rnd.nextInt(1000);
+                genes.put("gene" + i, new Gene("chr1", start, start + 5 * rnd.nextInt(10), "gene" + i));
+            }
+
+            DomainPartitionIndex index = new DomainPartitionIndex(domains, genes);
+
+            for (int q = 0; q < 100; q++){
+                int start = 10 * rnd.nextInt(1000);
+                GenomicElement cnv = new GenomicElement(q % 3 == 0 ? "chr2" : "chr1",
+                        start, start + 10 * rnd.nextInt(50), "cnv" + q);
+                assertEquals(genesInOverlapDomains(cnv, domains, genes),
+                        index.getGenesInOverlapDomains(cnv));
+            }
+        }
+    }
+
+    /**
+     * Test of findDomain method.
+     */
+    @Test
+    public void testFindDomain() {
+        System.out.println("findDomain");
+
+        GenomicSet<GenomicElement> domains = new GenomicSet<GenomicElement>();
+        domains.put("a", new GenomicElement("chr1", 0, 10, "a"));
+        domains.put("b", new GenomicElement("chr1", 10, 25, "b"));
+        domains.put("c", new GenomicElement("chr1", 30, 40, "c"));
+        GenomicSet<Gene> genes = new GenomicSet<Gene>();
+        genes.put("g", new Gene("chr1", 8, 12, "g"));
+
+        DomainPartitionIndex index = new DomainPartitionIndex(domains, genes);
+
+        assertEquals(0, index.findDomain("chr1", 0));
+        assertEquals(0, index.findDomain("chr1", 9));
+        assertEquals(1, index.findDomain("chr1", 10));
+        assertEquals(-1, index.findDomain("chr1", 27));
+        assertEquals(2, index.findDomain("chr1", 39));
+        assertEquals(-1, index.findDomain("chr1", 40));
+        assertEquals(-1, index.findDomain("chrX", 5));
+        assertEquals("c", index.getDomains("chr1").get(2).getName());
+
+        // a gene that spans two domains belongs to both
+        assertEquals(1, index.getDomainGenes("chr1", 0).size());
+        assertEquals(1, index.getDomainGenes("chr1", 1).size());
+        assertTrue(index.getDomainGenes("chr1", 2).isEmpty());
+    }
+}
@@ -105,7 +105,95 @@ public class GenomicSetTest {
         GenomicSet<GenomicElement> overlap = domains.anyOverlap(new GenomicElement("chr1", 5, 6, "query"));
         assertEquals(1, overlap.size());
     }
-    
+
+    /**
+     * Test that anyOverlap reflects modifications after the first search.
+     */
+    @Test
+    public void testAnyOverlapAfterModification() {
+        System.out.println("anyOverlapAfterModification");
+        GenomicElement query = new GenomicElement("chr1", 3, 6, "q");
+
+        GenomicSet<GenomicElement> instance = new GenomicSet<GenomicElement>();
+        instance.put("a", new GenomicElement("chr1", 3, 5, "a"));
+        assertEquals(1, instance.anyOverlap(query).size());
+
+        // add, replace and remove elements after the tree is build
+        instance.put("b", new GenomicElement("chr1", 5, 6, "b"));
+        assertEquals(2, instance.anyOverlap(query).size());
+
+        instance.put("a", new GenomicElement("chr1", 10, 20, "a"));
+        assertEquals(1, instance.anyOverlap(query).size());
+        assertTrue(instance.anyOverlap(query).containsKey("b"));
+
+        GenomicSet<GenomicElement> others = new GenomicSet<GenomicElement>();
+        others.put("c", new GenomicElement("chr1", 0, 4, "c"));
+        instance.putAll(others);
+        assertEquals(2, instance.anyOverlap(query).size());
+
+        instance.remove("b");
+        assertEquals(1, instance.anyOverlap(query).size());
+        assertEquals(1, instance.getIntervalTree().countOverlaps(query));
+
+        instance.clear();
+        assertTrue(instance.anyOverlap(query).isEmpty());
+        assertEquals(0, instance.getIntervalTree().size());
+    }
+
+    /**
+     * Test that a clone has its own interval tree.
+     */
+    @Test
+    public void testClone() {
+        System.out.println("clone");
+        GenomicElement query = new GenomicElement("chr1", 3, 6, "q");
+
+        GenomicSet<GenomicElement> instance = new GenomicSet<GenomicElement>();
+        instance.put("a", new GenomicElement("chr1", 3, 5, "a"));
+        assertEquals(1, instance.anyOverlap(query).size());
+
+        GenomicSet<GenomicElement> copy = instance.clone();
+        copy.put("b", new GenomicElement("chr1", 5, 6, "b"));
+        copy.remove("a");
+        assertEquals(1, instance.anyOverlap(query).size());
+        assertTrue(instance.anyOverlap(query).containsKey("a"));
+        assertEquals(1, copy.anyOverlap(query).size());
+        assertTrue(copy.anyOverlap(query).containsKey("b"));
+        assertNotSame(instance.getIntervalTree(), copy.getIntervalTree());
+    }
+
+    /**
+     * Test that the views cannot modify the set.
+     */
+    @Test
+    public void testReadOnlyViews() {
+        System.out.println("readOnlyViews");
+
+        GenomicSet<GenomicElement> instance = new GenomicSet<GenomicElement>();
+        GenomicElement a = new GenomicElement("chr1", 3, 5, "a");
+        instance.put("a", a);
+        assertEquals(1, instance.getIntervalTree().size());
+
+        try{
+            instance.keySet().remove("a");
+            fail("keySet is modifiable");
+        }catch (UnsupportedOperationException e){
+        }
+        try{
+            instance.values().clear();
+            fail("values is modifiable");
+        }catch (UnsupportedOperationException e){
+        }
+        try{
+            instance.entrySet().iterator().next().setValue(new GenomicElement("chr2", 3, 5, "a"));
+            fail("entries are modifiable");
+        }catch (UnsupportedOperationException e){
+        }
+        assertSame(a, instance.get("a"));
+        assertEquals(1, instance.getIntervalTree().countOverlaps(a));
+        assertEquals(1, instance.entrySet().size());
+    }
+
     /**
      * Test of completeOverlap method, of class GenomicSet.
      */
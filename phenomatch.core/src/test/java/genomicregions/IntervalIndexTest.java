@@ -0,0 +1,115 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the IntervalIndex class.
+ */
+public class IntervalIndexTest {
+
+    /**
+     * Collects visited elements in a list.
+     */
+    private static class ListVisitor implements IntervalIndex.Visitor<GenomicElement> {
+
+        private final ArrayList<GenomicElement> visited = new ArrayList<>();
+
+        @Override
+        public void visit(GenomicElement element) {
+            visited.add(element);
+        }
+    }
+
+    /**
+     * Overlap of an element with a query, where an empty query is a single
+     * position.
+     */
+    private static boolean overlaps(GenomicElement e, GenomicElement q){
+        if (q.getStart() == q.getEnd()){
+            return e.getChr().equals(q.getChr())
+                    && e.getStart() <= q.getStart() && q.getStart() < e.getEnd();
+        }
+        return e.hasOverlap(q);
+    }
+
+    /**
+     * Compares all query methods with a linear search on random intervals.
+     */
+    @Test
+    public void testForEachOverlapRandom() {
+        System.out.println("forEachOverlapRandom");
+
+        Random rnd = new Random(1);
+
+        for (int n : new int[]{0, 1, 2, 3, 7, 8, 15, 16, 17, 31, 100, 257, 1000}){
+
+            ArrayList<GenomicElement> elements = new ArrayList<>();
+            for (int i = 0; i < n; i++){
+                int start = rnd.nextInt(10000);
+                // mostly short intervals and a few long ones
+                int len = rnd.nextInt(10) == 0 ? rnd.nextInt(5000) : rnd.nextInt(100);
+                String chr = rnd.nextBoolean() ? "chr1" : "chr2";
+                elements.add(new GenomicElement(chr, start, start + len, "e" + i));
+            }
+            IntervalIndex<GenomicElement> index = new IntervalIndex<>(elements);
+            assertEquals(n, index.size());
+
+            for (int q = 0; q < 200; q++){
+
+                int start = rnd.nextInt(11000);
+                int len = q % 10 == 0 ? 0 : rnd.nextInt(500);
+                GenomicElement query = new GenomicElement("chr1", start, start + len, "q");
+
+                ArrayList<GenomicElement> expected = new ArrayList<>();
+                for (GenomicElement e : index.getElements("chr1")){
+                    if (overlaps(e, query)){
+                        expected.add(e);
+                    }
+                }
+
+                ListVisitor visitor = new ListVisitor();
+                assertEquals(expected.size(), index.forEachOverlap(query, visitor));
+                // elements are reported in the order of their start coordinate
+                assertEquals(expected, visitor.visited);
+                assertEquals(expected.size(), index.countOverlaps(query));
+                assertEquals(!expected.isEmpty(), index.hasOverlap(query));
+            }
+        }
+    }
+
+    /**
+     * Test of forEachOverlap method with adjacent intervals and unknown
+     * chromosomes.
+     */
+    @Test
+    public void testForEachOverlap() {
+        System.out.println("forEachOverlap");
+
+        ArrayList<GenomicElement> elements = new ArrayList<>();
+        elements.add(new GenomicElement("chr1", 10, 20, "a"));
+        elements.add(new GenomicElement("chr1", 20, 30, "b"));
+        elements.add(new GenomicElement("chr1", 0, 100, "c"));
+        IntervalIndex<GenomicElement> index = new IntervalIndex<>(elements);
+
+        // half-open intervals
+        assertEquals(2, index.countOverlaps(new GenomicElement("chr1", 19, 20, "q")));
+        assertEquals(2, index.countOverlaps(new GenomicElement("chr1", 20, 21, "q")));
+        assertEquals(3, index.countOverlaps(new GenomicElement("chr1", 19, 21, "q")));
+
+        // empty query is the single position start
+        assertEquals(2, index.countOverlaps(new GenomicElement("chr1", 20, 20, "q")));
+
+        assertEquals(0, index.countOverlaps(new GenomicElement("chr1", 100, 200, "q")));
+        assertFalse(index.hasOverlap(new GenomicElement("chrX", 10, 20, "q")));
+        assertTrue(index.getElements("chrX").isEmpty());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package genomicregions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the IntervalTree class.
+ */
+public class IntervalTreeTest {
+
+    /**
+     * Collects visited elements in a list.
+     */
+    private static class ListVisitor implements IntervalIndex.Visitor<GenomicElement> {
+
+        private final ArrayList<GenomicElement> visited = new ArrayList<>();
+
+        @Override
+        public void visit(GenomicElement element) {
+            visited.add(element);
+        }
+    }
+
+    /**
+     * Compares queries with a linear search while elements are inserted and
+     * removed at random.
+     */
+    @Test
+    public void testInsertRemoveRandom() {
+        System.out.println("insertRemoveRandom");
+
+        Random rnd = new Random(7);
+        IntervalTree<GenomicElement> tree = new IntervalTree<>();
+        HashMap<String, GenomicElement> elements = new HashMap<>();
+
+        for (int step = 0; step < 5000; step++){
+
+            if (elements.isEmpty() || rnd.nextInt(3) != 0){
+                // insert, often with equal coordinates
+                int start = 10 * rnd.nextInt(200);
+                int len = rnd.nextInt(10) == 0 ? rnd.nextInt(1000) : 10 * rnd.nextInt(5);
+                GenomicElement e = new GenomicElement("chr1", start, start + len, "e" + step);
+                tree.insert(e.getName(), e);
+                elements.put(e.getName(), e);
+            }else{
+                // remove a random element
+                String key = new ArrayList<>(elements.keySet()).get(rnd.nextInt(elements.size()));
+                assertTrue(tree.remove(key, elements.remove(key)));
+            }
+            assertEquals(elements.size(), tree.size());
+
+            if (step % 50 == 0){
+
+                // balanced tree
+                int n = Math.max(1, elements.size());
+                assertTrue(tree.getHeight("chr1") <= 1.45 * Math.log(n + 2) / Math.log(2) + 1);
+
+                for (int q = 0; q < 20; q++){
+                    int start = rnd.nextInt(2200);
+                    int len = q == 0 ? 0 : rnd.nextInt(200);
+                    GenomicElement query = new GenomicElement("chr1", start, start + len, "q");
+
+                    int expected = 0;
+                    for (GenomicElement e : elements.values()){
+                        boolean overlap = len == 0
+                                ? e.getStart() <= start && start < e.getEnd()
+                                : e.hasOverlap(query);
+                        if (overlap){
+                            expected++;
+                        }
+                    }
+
+                    ListVisitor visitor = new ListVisitor();
+                    assertEquals(expected, tree.forEachOverlap(query, visitor));
+                    assertEquals(expected, tree.countOverlaps(query));
+                    assertEquals(expected > 0, tree.hasOverlap(query));
+
+                    // elements are reported in the order of their start coordinate
+                    for (int i = 1; i < visitor.visited.size(); i++){
+                        assertTrue(visitor.visited.get(i - 1).getStart() <= visitor.visited.get(i).getStart());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of remove method with an element that is not in the tree.
+     */
+    @Test
+    public void testRemoveMissing() {
+        System.out.println("removeMissing");
+
+        IntervalTree<GenomicElement> tree = new IntervalTree<>();
+        GenomicElement a = new GenomicElement("chr1", 10, 20, "a");
+        tree.insert("a", a);
+
+        assertFalse(tree.remove("b", new GenomicElement("chr1", 10, 20, "b")));
+        assertFalse(tree.remove("a", new GenomicElement("chr2", 10, 20, "a")));
+        assertTrue(tree.remove("a", a));
+        assertEquals(0, tree.size());
+        assertFalse(tree.hasOverlap(a));
+    }
+
+    /**
+     * Test of getElements method.
+     */
+    @Test
+    public void testGetElements() {
+        System.out.println("getElements");
+
+        IntervalTree<GenomicElement> tree = new IntervalTree<>();
+        GenomicElement a = new GenomicElement("chr1", 10, 20, "a");
+        GenomicElement b = new GenomicElement("chr1", 5, 30, "b");
+        GenomicElement c = new GenomicElement("chr1", 10, 15, "c");
+        GenomicElement d = new GenomicElement("chr2", 0, 5, "d");
+        tree.insert("a", a);
+        tree.insert("b", b);
+        tree.insert("c", c);
+        tree.insert("d", d);
+
+        assertEquals(Arrays.asList(b, c, a), tree.getElements("chr1"));
+        assertEquals(Arrays.asList(d), tree.getElements("chr2"));
+        assertTrue(tree.getElements("chr3").isEmpty());
+    }
+}
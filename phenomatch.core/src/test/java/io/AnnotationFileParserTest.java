@@ -0,0 +1,93 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+import phenotypeontology.PhenotypeData;
+import phenotypeontology.PhenotypeDataTest;
+
+/**
+ * Unit tests for the AnnotationFileParser class.
+ */
+public class AnnotationFileParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test of parse method with the example annotation file in HPO format.
+     */
+    @Test
+    public void testParse() throws IOException {
+        System.out.println("parse");
+
+        String oboPath = PhenotypeDataTest.class.getResource("/example_ontology.obo").getPath();
+        String annotPath = PhenotypeDataTest.class.getResource("/example_genes_to_penotype.txt").getPath();
+
+        AnnotationFileParser parser = new AnnotationFileParser(annotPath, 2);
+        PhenotypeData phenotypeData = new PhenotypeData(oboPath, parser);
+
+        HashMap<String, String> expSymbols = new HashMap<String, String>();
+        expSymbols.put("geneA", "GeneA");
+        expSymbols.put("geneB", "GeneB");
+        expSymbols.put("geneC", "GeneC");
+        expSymbols.put("geneD", "GeneD");
+        assertEquals(expSymbols, parser.getEntrezToSymbol());
+
+        HashSet<Term> expTerms = new HashSet<Term>();
+        expTerms.add(phenotypeData.getTermIncludingAlternatives("EP:04"));
+        expTerms.add(phenotypeData.getTermIncludingAlternatives("EP:05"));
+        assertEquals(expTerms, parser.getGene2Terms().get("geneA"));
+        assertEquals(expTerms, phenotypeData.getGenePhenotypes("geneA"));
+    }
+
+    /**
+     * Test of parse method with the HPOA and Uberpheno formats.
+     */
+    @Test
+    public void testParseFormats() throws IOException {
+        System.out.println("parseFormats");
+
+        File hpoa = folder.newFile("hpoa.txt");
+        Files.write(hpoa.toPath(), Arrays.asList(
+                "#Format: entrez-gene-id<tab>entrez-gene-symbol<tab>HPO-Term-ID<tab>HPO-Term-Name<tab>Frequency-Raw<tab>Frequency-HPO",
+                "1\tA1\tHP:0000001\tAll", "2\tB2\tHP:0000002\tOther"), StandardCharsets.UTF_8);
+        AnnotationFileParser parser = new AnnotationFileParser(hpoa.getPath(), 1);
+        parser.parse(null);
+        assertEquals("A1", parser.getEntrezToSymbol().get("1"));
+        assertEquals("B2", parser.getEntrezToSymbol().get("2"));
+        assertTrue(parser.getGene2Terms().isEmpty());
+
+        File upheno = folder.newFile("upheno.txt");
+        Files.write(upheno.toPath(), Arrays.asList(
+                "#Entrez Gene ID of human gene ; Gene symbol ; Annotated Uberpheno term",
+                "1;A1;All (HP:0000001)"), StandardCharsets.UTF_8);
+        parser = new AnnotationFileParser(upheno.getPath(), 1);
+        parser.parse(null);
+        assertEquals("A1", parser.getEntrezToSymbol().get("1"));
+    }
+
+    /**
+     * Test of detectFormat method with an unknown header.
+     */
+    @Test(expected = IOException.class)
+    public void testDetectFormatUnknown() throws IOException {
+        System.out.println("detectFormatUnknown");
+        AnnotationFileParser.detectFormat("gene\tsymbol\tterm");
+    }
+}
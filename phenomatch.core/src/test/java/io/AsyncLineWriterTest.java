@@ -0,0 +1,97 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the AsyncLineWriter class.
+ */
+public class AsyncLineWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes many small batches and returns all written lines.
+     */
+    private ArrayList<String> writeBatches(String path, boolean gzip) throws IOException{
+
+        ArrayList<String> expected = new ArrayList<>();
+        try (AsyncLineWriter writer = new AsyncLineWriter(path, gzip, 2)){
+            for (int b = 0; b < 100; b++){
+                ArrayList<String> batch = new ArrayList<>();
+                for (int i = 0; i < b % 7; i++){
+                    batch.add("chr1\t" + b + "\t" + i);
+                }
+                expected.addAll(batch);
+                writer.writeLines(batch);
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Test of writeLines method with plain text output.
+     */
+    @Test
+    public void testWriteLines() throws IOException {
+        System.out.println("writeLines");
+
+        File out = new File(folder.getRoot(), "out.txt");
+        ArrayList<String> expected = writeBatches(out.getPath(), false);
+
+        assertEquals(expected, Files.readAllLines(out.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test of writeLines method with gzip output.
+     */
+    @Test
+    public void testWriteLinesGzip() throws IOException {
+        System.out.println("writeLinesGzip");
+
+        File out = new File(folder.getRoot(), "out.txt.gz");
+        ArrayList<String> expected = writeBatches(out.getPath(), true);
+
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(out)), StandardCharsets.UTF_8))){
+            String line;
+            while ((line = in.readLine()) != null){
+                lines.add(line);
+            }
+        }
+        assertEquals(expected, lines);
+    }
+
+    /**
+     * Test that writing after close fails.
+     */
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException {
+        System.out.println("writeAfterClose");
+
+        AsyncLineWriter writer = new AsyncLineWriter(
+                new File(folder.getRoot(), "closed.txt").getPath(), false, 1);
+        writer.close();
+        writer.writeLines(Arrays.asList("line"));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import genomicregions.GenomicElement;
+import genomicregions.GenomicSet;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the BedIndex class and region restricted parsing.
+ */
+public class BedIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates sorted records of various lengths on three chromosomes,
+     * including empty and very long records.
+     */
+    private static List<String> sortedRecords(Random rnd){
+
+        List<String> lines = new ArrayList<>();
+        lines.add("#chr\tstart\tend\tname");
+        int id = 0;
+        for (String chr : new String[]{"chr1", "chr2", "chrX"}){
+            int start = 0;
+            for (int i = 0; i < 2000; i++){
+                start += rnd.nextInt(3000);
+                int len = rnd.nextInt(10) == 0 ? rnd.nextInt(500000) : rnd.nextInt(20000);
+                if (i % 100 == 0){
+                    len = 0;
+                }
+                lines.add(chr + "\t" + start + "\t" + (start + len) + "\tg" + id++);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Creates random regions including empty regions and regions on
+     * chromosomes without records.
+     */
+    private static List<GenomicElement> randomRegions(Random rnd, int n){
+
+        List<GenomicElement> regions = new ArrayList<>();
+        String [] chroms = {"chr1", "chr2", "chrX", "chrY"};
+        for (int i = 0; i < n; i++){
+            int start = rnd.nextInt(7000000);
+            int len = rnd.nextInt(5) == 0 ? 0 : rnd.nextInt(200000);
+            regions.add(new GenomicElement(chroms[rnd.nextInt(chroms.length)], start, start + len, "r" + i));
+        }
+        return regions;
+    }
+
+    /**
+     * Elements of a set that overlap any region, computed from the full set.
+     */
+    private static GenomicSet<GenomicElement> expected(GenomicSet<GenomicElement> all, List<GenomicElement> regions){
+
+        GenomicSet<GenomicElement> expected = new GenomicSet<>();
+        for (GenomicElement r : regions){
+            expected.putAll(all.anyOverlap(r));
+        }
+        return expected;
+    }
+
+    /**
+     * Test of region restricted parsing with an index.
+     */
+    @Test
+    public void testParseRegions() throws IOException {
+        System.out.println("parseRegions");
+
+        Random rnd = new Random(7);
+        File file = folder.newFile("elements.bed");
+        Files.write(file.toPath(), sortedRecords(rnd), StandardCharsets.UTF_8);
+        GenomicSet<GenomicElement> all = new TabFileParser(file.getPath()).parse();
+
+        BedIndex index = BedIndex.build(file.toPath());
+        assertTrue(index.isSorted());
+        assertTrue(index.hasUniqueIDs());
+
+        for (int n : new int[]{0, 1, 10, 500}){
+            List<GenomicElement> regions = randomRegions(rnd, n);
+            GenomicSet<GenomicElement> restricted = new TabFileParser(file.getPath(), 1, regions).parse();
+            assertEquals(expected(all, regions).keySet(), restricted.keySet());
+        }
+        // no index file is written next to the input file by default
+        assertFalse(Files.exists(Paths.get(file.getPath() + BedIndex.SUFFIX)));
+    }
+
+    /**
+     * Test of region restricted parsing of unsorted and compressed files and
+     * files with non-unique IDs, which are read completely.
+     */
+    @Test
+    public void testParseRegionsWithoutIndex() throws IOException {
+        System.out.println("parseRegionsWithoutIndex");
+
+        Random rnd = new Random(11);
+        List<String> lines = sortedRecords(rnd);
+        List<GenomicElement> regions = randomRegions(rnd, 50);
+
+        File sorted = folder.newFile("sorted.bed");
+        Files.write(sorted.toPath(), lines, StandardCharsets.UTF_8);
+        GenomicSet<GenomicElement> expected = expected(new TabFileParser(sorted.getPath()).parse(), regions);
+
+        List<String> shuffled = new ArrayList<>(lines);
+        Collections.shuffle(shuffled, rnd);
+        File unsorted = folder.newFile("unsorted.bed");
+        Files.write(unsorted.toPath(), shuffled, StandardCharsets.UTF_8);
+        assertFalse(BedIndex.build(unsorted.toPath()).isSorted());
+        assertEquals(expected.keySet(), new TabFileParser(unsorted.getPath(), 2, regions).parse().keySet());
+
+        File gzip = folder.newFile("sorted.bed.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))){
+            out.write(Files.readAllBytes(sorted.toPath()));
+        }
+        assertNull(BedIndex.build(gzip.toPath()));
+        assertEquals(expected.keySet(), new TabFileParser(gzip.getPath(), 2, regions).parse().keySet());
+
+        // names of duplicated IDs depend on all records of the file
+        File dup = folder.newFile("dup.bed");
+        Files.write(dup.toPath(), Arrays.asList("chr1\t0\t10\tg", "chr1\t100\t110\tg"), StandardCharsets.UTF_8);
+        assertFalse(BedIndex.build(dup.toPath()).hasUniqueIDs());
+        List<GenomicElement> second = Arrays.asList(new GenomicElement("chr1", 105, 106, "r"));
+        assertEquals(Arrays.asList("g_2"), new ArrayList<>(new TabFileParser(dup.getPath(), 1, second).parse().keySet()));
+    }
+
+    /**
+     * Test that an index is written to the index directory, reused and 
+     * rebuilt if the file changed.
+     */
+    @Test
+    public void testLoad() throws IOException {
+        System.out.println("load");
+
+        File file = folder.newFile("genes.bed");
+        Path indexDir = folder.getRoot().toPath().resolve("index");
+        Path indexPath = BedIndex.indexPath(file.toPath(), indexDir);
+        Files.write(file.toPath(), Arrays.asList("chr1\t0\t10\ta", "chr1\t20\t30\tb"), StandardCharsets.UTF_8);
+        List<GenomicElement> regions = Arrays.asList(new GenomicElement("chr1", 25, 26, "r"));
+
+        // without index directory no file is written
+        BedIndex index = BedIndex.load(file.toPath(), null);
+        assertTrue(index.isSorted());
+        assertFalse(Files.exists(Paths.get(file.getPath() + BedIndex.SUFFIX)));
+        assertEquals(Arrays.asList("b"), new ArrayList<>(new TabFileParser(file.getPath(), 1, regions).parse().keySet()));
+        assertEquals(1, folder.getRoot().list().length);
+
+        index = BedIndex.load(file.toPath(), indexDir);
+        assertTrue(Files.exists(indexPath));
+        assertNotNull(BedIndex.read(indexPath));
+        assertEquals(index.getRange("chr1", 25)[1], BedIndex.load(file.toPath(), indexDir).getRange("chr1", 25)[1]);
+        assertEquals(Arrays.asList("b"), new ArrayList<>(new TabFileParser(file.getPath(), 1, regions, 
+                indexDir.toString()).parse().keySet()));
+
+        // the changed file is not sorted anymore
+        Files.write(file.toPath(), Arrays.asList("chr1\t20\t30\tb", "chr1\t0\t10\ta", "chr1\t24\t28\tc"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1000));
+        assertFalse(BedIndex.load(file.toPath(), indexDir).isSorted());
+        assertEquals(2, new TabFileParser(file.getPath(), 1, regions, indexDir.toString()).parse().size());
+
+        // a broken index file is ignored
+        Files.write(indexPath, new byte[]{1, 2, 3});
+        assertNull(BedIndex.read(indexPath));
+        assertFalse(BedIndex.load(file.toPath(), indexDir).isSorted());
+    }
+
+    /**
+     * Test that the index is kept in memory if it cannot be written.
+     */
+    @Test
+    public void testLoadUnwritable() throws IOException {
+        System.out.println("loadUnwritable");
+
+        File file = folder.newFile("genes.bed");
+        Files.write(file.toPath(), Arrays.asList("chr1\t0\t10\ta", "chr1\t20\t30\tb"), StandardCharsets.UTF_8);
+
+        // the index directory cannot be created below a regular file
+        Path indexDir = file.toPath().resolve("index");
+        BedIndex index = BedIndex.load(file.toPath(), indexDir);
+        assertNotNull(index);
+        assertTrue(index.isSorted());
+        assertFalse(Files.exists(indexDir));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the ChunkedTabLoader class.
+ */
+public class ChunkedTabLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Collects the first two columns of each record.
+     */
+    private static final ChunkedTabLoader.ChunkParser<List<String>> PARSER =
+            new ChunkedTabLoader.ChunkParser<List<String>>(){
+        @Override
+        public List<String> newResult() {
+            return new ArrayList<>();
+        }
+        @Override
+        public void parse(TabRecordReader record, List<String> result) {
+            result.add(record.getChr(0) + ":" + record.getInt(1));
+        }
+    };
+
+    private static List<String> concat(List<List<String>> chunks){
+        List<String> all = new ArrayList<>();
+        for (List<String> chunk : chunks){
+            all.addAll(chunk);
+        }
+        return all;
+    }
+
+    /**
+     * Creates the content of a test file with many records.
+     *
+     * @param expected receives the expected result of {@link #PARSER}
+     */
+    private static byte [] records(List<String> expected){
+
+        StringBuilder content = new StringBuilder("#chr\tpos\n");
+        for (int i = 0; i < 10000; i++){
+            String chr = "chr" + (1 + i / 1000);
+            content.append(chr).append('\t').append(i).append("\tname").append(i);
+            if (i % 7 == 0){
+                content.append("\tsome\tmore\tcolumns");
+            }
+            if (i % 2000 == 0){
+                // a line longer than many blocks and chunks
+                for (int k = 0; k < 1000; k++){
+                    content.append("\tlong").append(k);
+                }
+            }
+            content.append(i % 2 == 0 ? "\n" : "\r\n");
+            expected.add(chr + ":" + i);
+        }
+        // no line break at the end of the file
+        content.append("chrX\t-5");
+        expected.add("chrX:-5");
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test of load method with many small chunks and several threads.
+     */
+    @Test
+    public void testLoadChunks() throws IOException {
+        System.out.println("loadChunks");
+
+        File file = folder.newFile("records.tab");
+        List<String> expected = new ArrayList<>();
+        Files.write(file.toPath(), records(expected));
+
+        for (long chunkSize : new long[]{1, 100, 4096, ChunkedTabLoader.MIN_CHUNK_SIZE}){
+            for (int threads : new int[]{1, 4}){
+                List<List<String>> chunks = ChunkedTabLoader.load(file.toPath(), threads, chunkSize, PARSER);
+                assertEquals(expected, concat(chunks));
+                if (chunkSize == 100 && threads == 4){
+                    assertTrue(chunks.size() > 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of load method with gzip and BGZF compressed files.
+     */
+    @Test
+    public void testLoadCompressed() throws IOException {
+        System.out.println("loadCompressed");
+
+        List<String> expected = new ArrayList<>();
+        byte [] data = records(expected);
+
+        File gzip = folder.newFile("records.tab.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))){
+            out.write(data);
+        }
+        assertEquals(expected, concat(ChunkedTabLoader.load(gzip.toPath(), 4, 100, PARSER)));
+
+        Random rnd = new Random(13);
+        for (int maxBlock : new int[]{20, 300, 5000, 65000}){
+            File bgzf = folder.newFile("records" + maxBlock + ".tab.gz");
+            CompressedInputTest.writeBgzf(bgzf, data, maxBlock, rnd);
+
+            for (long chunkSize : new long[]{1, 1000, 50000, ChunkedTabLoader.MIN_CHUNK_SIZE}){
+                for (int threads : new int[]{1, 4}){
+                    List<List<String>> chunks = ChunkedTabLoader.load(bgzf.toPath(), threads, chunkSize, PARSER);
+                    assertEquals(expected, concat(chunks));
+                    if (chunkSize == 1000 && threads == 4){
+                        assertTrue(chunks.size() > 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of load method with an empty file.
+     */
+    @Test
+    public void testLoadEmpty() throws IOException {
+        System.out.println("loadEmpty");
+
+        File file = folder.newFile("empty.tab");
+        assertTrue(ChunkedTabLoader.load(file.toPath(), 4, PARSER).isEmpty());
+    }
+
+    /**
+     * Test that errors of worker threads are reported to the caller.
+     */
+    @Test(expected = NumberFormatException.class)
+    public void testLoadError() throws IOException {
+        System.out.println("loadError");
+
+        File file = folder.newFile("error.tab");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++){
+            content.append("chr1\t").append(i == 500 ? "x" : Integer.toString(i)).append('\n');
+        }
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        ChunkedTabLoader.load(file.toPath(), 4, 100, PARSER);
+    }
+}
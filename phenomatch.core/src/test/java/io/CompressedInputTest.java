@@ -0,0 +1,163 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the CompressedInput class.
+ */
+public class CompressedInputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void writeIntLE(OutputStream out, long value, int bytes) throws IOException{
+        for (int i = 0; i < bytes; i++){
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+
+    /**
+     * Writes a single BGZF block.
+     */
+    private static void writeBlock(OutputStream out, byte [] data, int off, int len) throws IOException{
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, off, len);
+        deflater.finish();
+        byte [] buf = new byte[len + 1024];
+        int clen = deflater.deflate(buf);
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+
+        out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        writeIntLE(out, 18 + clen + 8 - 1, 2);
+        out.write(buf, 0, clen);
+        writeIntLE(out, crc.getValue(), 4);
+        writeIntLE(out, len, 4);
+    }
+
+    /**
+     * Writes data in BGZF format with blocks of random size, including empty
+     * blocks, and the empty end-of-file block.
+     *
+     * @param file the output file
+     * @param data uncompressed data
+     * @param maxBlock maximal number of uncompressed bytes per block
+     * @param rnd random generator for the block sizes
+     */
+    static void writeBgzf(File file, byte [] data, int maxBlock, Random rnd) throws IOException{
+
+        try (OutputStream out = new FileOutputStream(file)){
+            int pos = 0;
+            while (pos < data.length){
+                int len = Math.min(rnd.nextInt(maxBlock + 1), data.length - pos);
+                writeBlock(out, data, pos, len);
+                pos += len;
+            }
+            writeBlock(out, data, 0, 0);
+        }
+    }
+
+    private static byte [] readAll(InputStream in) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte [] buf = new byte[1000];
+        int n;
+        while ((n = in.read(buf)) >= 0){
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Test of open method with plain, gzip and BGZF files.
+     */
+    @Test
+    public void testOpen() throws IOException {
+        System.out.println("open");
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++){
+            content.append("chr1\t").append(i).append('\n');
+        }
+        byte [] data = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        File plain = folder.newFile("plain.tab");
+        Files.write(plain.toPath(), data);
+        assertArrayEquals(data, readAll(CompressedInput.open(plain.toPath())));
+
+        File gzip = folder.newFile("gzip.tab.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))){
+            out.write(data);
+        }
+        assertArrayEquals(data, readAll(CompressedInput.open(gzip.toPath())));
+
+        File bgzf = folder.newFile("bgzf.tab.gz");
+        writeBgzf(bgzf, data, 1000, new Random(3));
+        assertArrayEquals(data, readAll(CompressedInput.open(bgzf.toPath())));
+    }
+
+    /**
+     * Test of bgzfBlockOffsets and openGzipRange methods.
+     */
+    @Test
+    public void testBgzfBlockOffsets() throws IOException {
+        System.out.println("bgzfBlockOffsets");
+
+        byte [] data = new byte[20000];
+        new Random(5).nextBytes(data);
+
+        File bgzf = folder.newFile("bgzf.gz");
+        writeBgzf(bgzf, data, 3000, new Random(5));
+
+        File gzip = folder.newFile("gzip.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))){
+            out.write(data);
+        }
+
+        try (FileChannel channel = FileChannel.open(bgzf.toPath(), StandardOpenOption.READ)){
+            assertTrue(CompressedInput.isGzip(channel));
+            long [] offsets = CompressedInput.bgzfBlockOffsets(channel);
+            assertNotNull(offsets);
+            assertEquals(channel.size(), offsets[offsets.length - 1]);
+
+            // decompress all blocks separately and a range of blocks
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (int b = 0; b < offsets.length - 1; b++){
+                all.write(readAll(CompressedInput.openGzipRange(channel, offsets[b], offsets[b + 1])));
+            }
+            assertArrayEquals(data, all.toByteArray());
+            assertArrayEquals(data, readAll(CompressedInput.openGzipRange(channel, 0, channel.size())));
+        }
+
+        try (FileChannel channel = FileChannel.open(gzip.toPath(), StandardOpenOption.READ)){
+            assertTrue(CompressedInput.isGzip(channel));
+            assertNull(CompressedInput.bgzfBlockOffsets(channel));
+        }
+    }
+}
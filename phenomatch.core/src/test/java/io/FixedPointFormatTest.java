@@ -0,0 +1,105 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the FixedPointFormat class.
+ */
+public class FixedPointFormatTest {
+
+    private final DecimalFormat df;
+
+    private final byte [] buf = new byte[FixedPointFormat.MAX_LENGTH + 3];
+
+    public FixedPointFormatTest(){
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        df = new DecimalFormat("0.000", dfs);
+    }
+
+    /** Number of numbers handled by FixedPointFormat. */
+    private int handled = 0;
+
+    /**
+     * Compares the output of FixedPointFormat and DecimalFormat for a number.
+     */
+    private void check(double d){
+        int end = FixedPointFormat.format(d, buf, 3);
+        if (end >= 0){
+            handled++;
+            assertEquals("format of " + d, df.format(d),
+                    new String(buf, 3, end - 3, StandardCharsets.US_ASCII));
+        }
+        assertEquals("format of " + d, df.format(d), Utils.roundToString(d));
+    }
+
+    /**
+     * Test of format method with all ties of three fraction digits in a range
+     * and their neighbouring doubles.
+     */
+    @Test
+    public void testFormatTies() {
+        System.out.println("formatTies");
+
+        for (int k = -200000; k <= 200000; k++){
+            double tie = k / 2000.0;
+            check(tie);
+            check(Math.nextUp(tie));
+            check(Math.nextAfter(tie, Double.NEGATIVE_INFINITY));
+            // numbers between ties and exact multiples of 0.001
+            check(tie + 0.00025);
+            check(tie - 0.0001);
+        }
+        assertTrue(handled > 2 * 400001);
+    }
+
+    /**
+     * Test of format method with random numbers of different magnitudes.
+     */
+    @Test
+    public void testFormatRandom() {
+        System.out.println("formatRandom");
+
+        Random rnd = new Random(42);
+        for (int i = 0; i < 200000; i++){
+            double scale = Math.pow(10, rnd.nextInt(30) - 14);
+            check((rnd.nextDouble() - 0.5) * scale);
+            check(Double.longBitsToDouble(rnd.nextLong()) % 1e15);
+        }
+        assertTrue(handled > 200000);
+    }
+
+    /**
+     * Test of format method with special and extreme values.
+     */
+    @Test
+    public void testFormatSpecial() {
+        System.out.println("formatSpecial");
+
+        for (double d : new double[]{0.0, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE,
+                Double.MIN_NORMAL, 0.0004999, 0.9994, 2.675, 123456.0, 
+                -7.0 / 3, 1e12, -1e12}){
+            check(d);
+            assertTrue("not handled: " + d, FixedPointFormat.format(d, buf, 0) > 0);
+        }
+
+        // ties, large numbers and numbers that are not finite
+        for (double d : new double[]{0.0005, -0.0005, 1.0005, 0.0015, 0.0025, 
+                9.9995, 999.9995, 8.8e12, 1e15, -1e20, Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}){
+            assertEquals(-1, FixedPointFormat.format(d, buf, 0));
+            check(d);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import annotation.AnnotateCNVs;
+import genomicregions.CNV;
+import genomicregions.Gene;
+import genomicregions.GenomicSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the GeneScoreColumnWriter and GeneScoreColumnReader classes.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class GeneScoreColumnWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the rows of the scored genes give the same output lines as
+     * the TAB separated output.
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        System.out.println("writeRead");
+
+        ExampleData exampleData = new ExampleData();
+        PhenotypeData phenotypeData = exampleData.getPhenotypeData();
+        GenomicSet<CNV> cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+
+        ArrayList<String> expected = new ArrayList<>();
+        GeneScoreRows rows = new GeneScoreRows();
+        for (CNV c : cnvs.values()){
+            expected.addAll(c.getOverlappedGenesOutputLine(phenotypeData, c.getGenesInOverlap()));
+            c.addGeneScoreRows(rows, phenotypeData,
+                    new ArrayList<Gene>(c.getGenesInOverlap().values()), null);
+        }
+        assertEquals(expected.size(), rows.size());
+
+        File file = new File(folder.getRoot(), "genes.pmc");
+        try (GeneScoreColumnWriter out = new GeneScoreColumnWriter(file.getPath())){
+            out.append(-1, rows);
+            out.append(3, rows);
+        }
+
+        try (GeneScoreColumnReader in = new GeneScoreColumnReader(file.getPath())){
+            assertEquals(1, in.getBlockCount());
+            assertEquals(2 * expected.size(), in.getRowCount());
+            assertEquals(cnvs.size(), in.getCNVNames().length);
+
+            assertTrue(in.nextBlock());
+            IntBuffer permutations = in.getPermutations();
+            FloatBuffer scores = in.getScores();
+            IntBuffer genes = in.getGenes();
+            for (int row = 0; row < in.getBlockRows(); row++){
+                assertEquals(row < expected.size() ? -1 : 3, permutations.get(row));
+                String [] cols = expected.get(row % expected.size()).split("\t");
+                assertEquals(Double.parseDouble(cols[6]), scores.get(row), 0.0006);
+                // CNVs without scored gene have no term matching
+                assertEquals(cols[12].equals("."), genes.get(row) < 0);
+                assertEquals(expected.get(row % expected.size()), in.getOutputLine(row));
+            }
+            assertFalse(in.nextBlock());
+        }
+    }
+
+    /**
+     * Test of rows in several blocks.
+     */
+    @Test
+    public void testBlocks() throws IOException {
+        System.out.println("blocks");
+
+        CNV cnvA = new CNV("chr1", 10, 100, "cnvA", "loss");
+        CNV cnvB = new CNV("chr2", 20, 200, "cnvB", "gain");
+        GeneScoreRows rows = new GeneScoreRows();
+        int n = GeneScoreColumnWriter.BLOCK_ROWS + 10;
+        for (int i = 0; i < n; i++){
+            rows.addNoGene(i % 3 == 0 ? cnvA : cnvB);
+        }
+
+        File file = new File(folder.getRoot(), "blocks.pmc");
+        try (GeneScoreColumnWriter out = new GeneScoreColumnWriter(file.getPath())){
+            out.append(0, rows);
+            out.append(1, rows);
+        }
+
+        try (GeneScoreColumnReader in = new GeneScoreColumnReader(file.getPath())){
+            assertEquals(3, in.getBlockCount());
+            assertEquals(2L * n, in.getRowCount());
+            assertEquals(Arrays.asList("chr1", "chr2"), Arrays.asList(in.getChromosomes()));
+            assertEquals(0, in.getTerms().length);
+            assertEquals(0, in.getGeneIDs().length);
+
+            int row = 0;
+            while (in.nextBlock()){
+                IntBuffer permutations = in.getPermutations();
+                IntBuffer cnvIndex = in.getCNVs();
+                IntBuffer offsets = in.getMatchOffsets();
+                assertEquals(0, in.getBlockPairs());
+                for (int r = 0; r < in.getBlockRows(); r++, row++){
+                    assertEquals(row < n ? 0 : 1, permutations.get(r));
+                    assertEquals((row % n) % 3 == 0 ? 0 : 1, cnvIndex.get(r));
+                    assertEquals(0, offsets.get(r + 1));
+                }
+            }
+            assertEquals(2 * n, row);
+            assertEquals("chr2", in.getCNVChr(1));
+            assertEquals(200, in.getCNVEnd(1));
+        }
+    }
+
+    /**
+     * Test that incomplete files are rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        System.out.println("invalidFile");
+
+        File file = new File(folder.getRoot(), "invalid.pmc");
+        try (GeneScoreColumnWriter out = new GeneScoreColumnWriter(file.getPath())){
+            GeneScoreRows rows = new GeneScoreRows();
+            rows.addNoGene(new CNV("chr1", 10, 100, "cnvA", "loss"));
+            out.append(0, rows);
+        }
+        byte [] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 4));
+        new GeneScoreColumnReader(file.getPath()).close();
+    }
+}
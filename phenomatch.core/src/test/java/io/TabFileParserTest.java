@@ -30,17 +30,23 @@ import genomicregions.CNV;
 import genomicregions.Gene;
 import genomicregions.GenomicElement;
 import genomicregions.GenomicSet;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import ontologizer.go.Term;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
 import phenotypeontology.PhenotypeData;
 import phenotypeontology.PhenotypeDataTest;
 import toyexampledata.ExampleData;
@@ -58,6 +64,9 @@ public class TabFileParserTest {
     private static TabFileParser boundaryParser;
     private static PhenotypeData phenotypeData;
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     public TabFileParserTest() {
     }
     
@@ -228,4 +237,81 @@ public class TabFileParserTest {
         
     }
     
+    /**
+     * Test of parse methods with non-unique and missing IDs.
+     */
+    @Test
+    public void testParseNonUniqueIDs() throws IOException {
+        System.out.println("parseNonUniqueIDs");
+        
+        File dup = folder.newFile("dup.tab");
+        Files.write(dup.toPath(), Arrays.asList("#chr\tstart\tend\tname", 
+                "chr1\t1\t5\tg\t+", "chr1\t2\t6\th", "chr2\t3\t9\tg\t-"), StandardCharsets.UTF_8);
+        
+        GenomicSet<Gene> genes = new TabFileParser(dup.getPath()).parseGene();
+        assertEquals(new HashSet<String>(Arrays.asList("g_1", "h_1", "g_2")), genes.keySet());
+        assertEquals("g_2", genes.get("g_2").getName());
+        assertEquals("chr2", genes.get("g_2").getChr());
+        assertEquals("-", genes.get("g_2").getStrand());
+        assertEquals(".", genes.get("h_1").getStrand());
+        
+        File noIDs = folder.newFile("noIDs.tab");
+        Files.write(noIDs.toPath(), Arrays.asList("chr1\t1\t5", "chr1\t2\t6"), StandardCharsets.UTF_8);
+        GenomicSet<GenomicElement> elements = new TabFileParser(noIDs.getPath()).parse();
+        assertEquals(new HashSet<String>(Arrays.asList("ID_1", "ID_2")), elements.keySet());
+        
+        // CNVs require the ID column
+        try{
+            new TabFileParser(noIDs.getPath()).parseCNV();
+            fail("missing ID column is not reported");
+        }catch (IOException e){
+            assertTrue(e.getMessage().startsWith("[ERROR]"));
+        }
+    }
+    
+    /**
+     * Test of parseBreakpointWindowsWithHpoTerms method, of class TabFileParser.
+     */
+    @Test
+    public void testParseBreakpointWindowsWithHpoTerms() throws IOException {
+        System.out.println("parseBreakpointWindowsWithHpoTerms");
+        
+        Term t5 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        Term t6 = phenotypeData.getTermIncludingAlternatives("EP:06");
+        final HashMap<String, HashSet<Term>> caseTerms = new HashMap<String, HashSet<Term>>();
+        caseTerms.put("DG1", new HashSet<Term>(Arrays.asList(t5, t6)));
+        caseTerms.put("DG2", new HashSet<Term>(Arrays.asList(t6)));
+        TabFileParser.PhenotypeLookup lookup = new TabFileParser.PhenotypeLookup(){
+            @Override
+            public HashSet<Term> getPhenotypes(String name) {
+                return caseTerms.get(name.split("_")[0]);
+            }
+        };
+        
+        File bps = folder.newFile("breakpoints.bed");
+        Files.write(bps.toPath(), Arrays.asList("chr1	1000	1001	DG1_A", 
+                "chr2	5000	5003	DG1_B", "chr3	100	100	DG2"), StandardCharsets.UTF_8);
+        
+        GenomicSet<CNV> cnvs = new TabFileParser(bps.getPath()).parseBreakpointWindowsWithHpoTerms(600, lookup);
+        assertEquals(3, cnvs.size());
+        
+        // the center 1000.5 is rounded to the even number
+        CNV a = cnvs.get("DG1_A");
+        assertEquals(new CNV("chr1", 700, 1300, "DG1_A", caseTerms.get("DG1")), a);
+        assertEquals(caseTerms.get("DG1"), a.getPhenotypes());
+        assertEquals(new CNV("chr2", 4702, 5302, "DG1_B", caseTerms.get("DG1")), cnvs.get("DG1_B"));
+        // the window is cut at zero
+        assertEquals(new CNV("chr3", 0, 400, "DG2", caseTerms.get("DG2")), cnvs.get("DG2"));
+        assertEquals(caseTerms.get("DG2"), cnvs.get("DG2").getPhenotypes());
+        
+        // breakpoints of cases without phenotypes are reported
+        caseTerms.remove("DG2");
+        try{
+            new TabFileParser(bps.getPath()).parseBreakpointWindowsWithHpoTerms(600, lookup);
+            fail("missing phenotypes are not reported");
+        }catch (IOException e){
+            assertTrue(e.getMessage().startsWith("[ERROR]"));
+        }
+    }
+    
 }
@@ -0,0 +1,166 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TabRecordReader class.
+ */
+public class TabRecordReaderTest {
+
+    private static TabRecordReader reader(String content){
+        return new TabRecordReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads all records and returns their fields.
+     */
+    private static List<List<String>> readAll(String content) throws IOException{
+        List<List<String>> records = new ArrayList<>();
+        try (TabRecordReader r = reader(content)){
+            while (r.next()){
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < r.getColumnCount(); i++){
+                    fields.add(r.getString(i));
+                }
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Test of next and getString methods, compared to String.split.
+     */
+    @Test
+    public void testFieldsLikeSplit() throws IOException {
+        System.out.println("fieldsLikeSplit");
+
+        String [] lines = {"chr1\t10\t20\tname", "chr1\t10\t20\t", "a\t\tb", "\t\t",
+            "", "single", "x\t", "\ty", "chrX\t1\t2\tn\täö\t"};
+
+        List<List<String>> expected = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (String line : lines){
+            expected.add(Arrays.asList(line.split("\t")));
+            content.append(line).append('\n');
+        }
+        assertEquals(expected, readAll(content.toString()));
+    }
+
+    /**
+     * Test of comment lines, Windows line breaks and a missing final line break.
+     */
+    @Test
+    public void testLineEndsAndComments() throws IOException {
+        System.out.println("lineEndsAndComments");
+
+        List<List<String>> records = readAll("#header\r\na\tb\r\n#\n\nc\td");
+        assertEquals(3, records.size());
+        assertEquals(Arrays.asList("a", "b"), records.get(0));
+        assertEquals(Arrays.asList(""), records.get(1));
+        assertEquals(Arrays.asList("c", "d"), records.get(2));
+
+        assertTrue(readAll("").isEmpty());
+        assertTrue(readAll("#only a comment\n").isEmpty());
+
+        try (TabRecordReader r = reader("#c\na\nb\n")){
+            assertTrue(r.next());
+            assertEquals(2, r.getLineNumber());
+            assertEquals("a", r.getLine());
+            assertTrue(r.next());
+            assertEquals(3, r.getLineNumber());
+            assertFalse(r.next());
+        }
+    }
+
+    /**
+     * Test of lines that are longer than the input buffer.
+     */
+    @Test
+    public void testLongLines() throws IOException {
+        System.out.println("longLines");
+
+        StringBuilder longField = new StringBuilder();
+        for (int i = 0; i < 200000; i++){
+            longField.append((char) ('a' + i % 26));
+        }
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++){
+            content.append("chr1\t").append(i).append('\t').append(i + 1).append('\n');
+            if (i % 1000 == 0){
+                content.append("chr1\t0\t1\t").append(longField).append('\n');
+            }
+        }
+
+        List<List<String>> records = readAll(content.toString());
+        assertEquals(5005, records.size());
+        assertEquals(longField.toString(), records.get(1).get(3));
+        assertEquals(Arrays.asList("chr1", "4999", "5000"), records.get(5004));
+    }
+
+    /**
+     * Test of getInt method, compared to Integer.parseInt.
+     */
+    @Test
+    public void testGetInt() throws IOException {
+        System.out.println("getInt");
+
+        String [] values = {"0", "12345", "-7", "+42", "007", "2147483647", "-2147483648",
+            "2147483648", "-2147483649", "99999999999", "", "-", "+", "1a", " 1", "1.0"};
+
+        StringBuilder content = new StringBuilder();
+        for (String v : values){
+            content.append("x\t").append(v).append("\ty\n");
+        }
+
+        try (TabRecordReader r = reader(content.toString())){
+            for (String v : values){
+                assertTrue(r.next());
+                Integer expected;
+                try{
+                    expected = Integer.parseInt(v);
+                }catch (NumberFormatException e){
+                    expected = null;
+                }
+                try{
+                    assertEquals(v, expected, Integer.valueOf(r.getInt(1)));
+                }catch (NumberFormatException e){
+                    assertNull(v, expected);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of getChr method.
+     */
+    @Test
+    public void testGetChr() throws IOException {
+        System.out.println("getChr");
+
+        ArrayList<String> chrs = new ArrayList<>();
+        try (TabRecordReader r = reader("chr1\t1\nchr1\t2\nchr2\t3\nchr1\t4\nchr10\t5\n")){
+            while (r.next()){
+                chrs.add(r.getChr(0));
+            }
+        }
+        assertEquals(Arrays.asList("chr1", "chr1", "chr2", "chr1", "chr10"), chrs);
+
+        // equal chromosomes share a single String
+        assertSame(chrs.get(0), chrs.get(1));
+        assertSame(chrs.get(0), chrs.get(3));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the TabRowWriter class.
+ */
+public class TabRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test of field and endRow methods with text and integer fields.
+     */
+    @Test
+    public void testFields() throws IOException {
+        System.out.println("fields");
+
+        File file = new File(folder.getRoot(), "rows.txt");
+        try (TabRowWriter out = new TabRowWriter(file.getPath())){
+            out.writeLine("#chr\tstart");
+            out.field("chr1").field(0).field(-17).field(Integer.MIN_VALUE).field(Long.MIN_VALUE).endRow();
+            out.field("").field("x").endRow();
+            out.endRow();
+            out.field(Integer.MAX_VALUE).endRow();
+            out.field(1.0005).field(-0.0).field(0.0025).field(Double.NaN).field(1e20).endRow();
+        }
+        List<String> expected = Arrays.asList("#chr\tstart",
+                "chr1\t0\t-17\t" + Integer.MIN_VALUE + "\t" + Long.MIN_VALUE, "\tx", "",
+                Integer.toString(Integer.MAX_VALUE),
+                "1.000\t-0.000\t0.003\t" + Utils.roundToString(Double.NaN) + "\t100000000000000000000.000");
+        assertEquals(expected, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test that non-ASCII characters are encoded like with
+     * {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    @Test
+    public void testEncoding() throws IOException {
+        System.out.println("encoding");
+
+        String text = "a\u00e4\u00df\u07ff\u0800\u20ac\uffff\ud83d\ude00"
+                + "\ud800x\udc00\ud83d";
+        File file = new File(folder.getRoot(), "utf8.txt");
+        try (TabRowWriter out = new TabRowWriter(file.getPath())){
+            out.field(text).endRow();
+        }
+        byte [] expected = (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Test of writing more rows than fit into the buffer. An existing file is
+     * overwritten.
+     */
+    @Test
+    public void testManyRows() throws IOException {
+        System.out.println("manyRows");
+
+        File file = folder.newFile("many.txt");
+        Files.write(file.toPath(), Arrays.asList("old content that is longer than the new content"),
+                StandardCharsets.UTF_8);
+        List<String> expected = new ArrayList<>();
+        try (TabRowWriter out = new TabRowWriter(file.getPath())){
+            for (int i = 0; i < 200000; i++){
+                String name = (i % 3 == 0) ? "g\u00e9ne" + i : "gene" + i;
+                out.field("chr" + (i % 23)).field(i).field(i + 10).field(name).endRow();
+                expected.add("chr" + (i % 23) + "\t" + i + "\t" + (i + 10) + "\t" + name);
+            }
+        }
+        assertEquals(expected, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import annotation.AnnotateCNVs;
+import genomicregions.CNV;
+import genomicregions.Gene;
+import genomicregions.GenomicSet;
+import io.GeneScoreColumnReader;
+import io.GeneScoreColumnWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the PermutationEngine class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class PermutationEngineTest {
+
+    private static ExampleData exampleData;
+
+    private static PhenotypeData phenotypeData;
+
+    private static GenomicSet<CNV> cnvs;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        exampleData = new ExampleData();
+        phenotypeData = exampleData.getPhenotypeData();
+        cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+        AnnotateCNVs.annotateGenesInOverlapTADs(cnvs, exampleData.getDomains(), exampleData.getGenes());
+    }
+
+    /**
+     * Collects the results of all permutations.
+     */
+    private static ArrayList<String> runAll(PermutationEngine engine, int permutations,
+            int threads) throws IOException{
+
+        final ArrayList<String> lines = new ArrayList<>();
+        final int [] expected = new int[]{0};
+        engine.run(permutations, threads, new PermutationListener() {
+            @Override
+            public void permutationDone(PermutationResult result) {
+                // results arrive in permutation order
+                assertEquals(expected[0]++, result.getPermutation());
+                lines.addAll(result.getOverlapLines());
+                lines.addAll(result.getTadLines());
+            }
+        });
+        assertEquals(permutations, expected[0]);
+        return lines;
+    }
+
+    /**
+     * Test that the permuted mapping is a permutation of the original sets.
+     */
+    @Test
+    public void testGetPermutedGene2Terms() {
+        System.out.println("getPermutedGene2Terms");
+
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), true, 42L);
+        HashMap<String, HashSet<Term>> permuted = engine.getPermutedGene2Terms(3);
+
+        assertEquals(phenotypeData.getAllGenesIDs(), permuted.keySet());
+
+        ArrayList<HashSet<Term>> org = new ArrayList<>();
+        for (String gID : phenotypeData.getAllGenesIDs()){
+            org.add(phenotypeData.getGenePhenotypes(gID));
+        }
+        for (HashSet<Term> terms : permuted.values()){
+            assertTrue(org.remove(terms));
+        }
+        assertTrue(org.isEmpty());
+
+        // same seed and index give the same permutation
+        assertEquals(permuted, new PermutationEngine(phenotypeData, cnvs.values(), true, 42L).getPermutedGene2Terms(3));
+    }
+
+    /**
+     * Test that the frozen window genes get the same permuted phenotypes as in
+     * the mapping of all genes.
+     */
+    @Test
+    public void testGetPermutedWindowTerms() {
+        System.out.println("getPermutedWindowTerms");
+
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), true, 5L);
+        HashMap<String, HashSet<Term>> permuted = engine.getPermutedGene2Terms(2);
+        ArrayList<HashSet<Term>> windowTerms = engine.getPermutedWindowTerms(2);
+
+        PermutationStatistics stats = new PermutationStatistics(phenotypeData, cnvs.values(), true);
+        HashSet<String> windowGenes = new HashSet<>();
+        for (Gene g : stats.getSlotGenes()){
+            if (phenotypeData.containsGene(g.getName())){
+                windowGenes.add(g.getName());
+            }
+        }
+        for (Gene g : new PermutationStatistics(phenotypeData, cnvs.values(), false).getSlotGenes()){
+            if (phenotypeData.containsGene(g.getName())){
+                windowGenes.add(g.getName());
+            }
+        }
+
+        // each annotated gene in a window has exactly one window index
+        assertEquals(windowGenes.size(), windowTerms.size());
+        ArrayList<HashSet<Term>> expected = new ArrayList<>();
+        for (String gID : windowGenes){
+            expected.add(permuted.get(gID));
+        }
+        for (HashSet<Term> terms : windowTerms){
+            assertTrue(expected.remove(terms));
+        }
+    }
+
+    /**
+     * Test that the permuted scores equal the scores of genes that carry the
+     * permuted phenotypes.
+     */
+    @Test
+    public void testRunPermutation() {
+        System.out.println("runPermutation");
+
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), false, 7L);
+        HashMap<String, HashSet<Term>> permuted = engine.getPermutedGene2Terms(0);
+
+        ArrayList<String> expected = new ArrayList<>();
+        for (CNV cnv : cnvs.values()){
+
+            // copy overlapped genes with permuted phenotypes
+            GenomicSet<Gene> genes = new GenomicSet<Gene>();
+            for (Gene g : cnv.getGenesInOverlap().values()){
+                Gene copy = new Gene(g.getChr(), g.getStart(), g.getEnd(), g.getName());
+                copy.setSymbol(g.getSymbol());
+                HashSet<Term> terms = permuted.get(g.getName());
+                copy.setPhenotypeTerms(terms != null ? terms : new HashSet<Term>());
+                genes.put(copy.getName(), copy);
+            }
+            expected.addAll(cnv.getOverlappedGenesOutputLine(phenotypeData, genes));
+        }
+
+        assertEquals(expected, engine.runPermutation(0).getOverlapLines());
+        assertTrue(engine.runPermutation(0).getTadLines().isEmpty());
+    }
+
+    /**
+     * Test that results do not depend on the number of threads.
+     */
+    @Test
+    public void testRunThreads() throws IOException {
+        System.out.println("runThreads");
+
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), true, 12345L);
+
+        ArrayList<String> serial = runAll(engine, 20, 1);
+        assertEquals(serial, runAll(engine, 20, 4));
+        assertEquals(serial, runAll(new PermutationEngine(phenotypeData, cnvs.values(), true, 12345L), 20, 3));
+    }
+
+    /**
+     * Test that the rows of the binary columnar output give the same output
+     * lines as the permutations without columnar output.
+     */
+    @Test
+    public void testRunColumnar() throws IOException {
+        System.out.println("runColumnar");
+
+        ArrayList<String> expected = new ArrayList<>();
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), true, 99L);
+        for (int i = 0; i < 5; i++){
+            expected.addAll(engine.runPermutation(i).getOverlapLines());
+        }
+        for (int i = 0; i < 5; i++){
+            expected.addAll(engine.runPermutation(i).getTadLines());
+        }
+
+        engine.setColumnarOutput(true);
+        final File fileOl = new File(folder.getRoot(), "overlap.pmc");
+        final File fileTAD = new File(folder.getRoot(), "tad.pmc");
+        try (final GeneScoreColumnWriter outOl = new GeneScoreColumnWriter(fileOl.getPath());
+                final GeneScoreColumnWriter outTAD = new GeneScoreColumnWriter(fileTAD.getPath())){
+            engine.run(5, 2, new PermutationListener() {
+                @Override
+                public void permutationDone(PermutationResult result) throws IOException {
+                    assertTrue(result.getOverlapLines().isEmpty());
+                    outOl.append(result.getPermutation(), result.getOverlapRows());
+                    outTAD.append(result.getPermutation(), result.getTadRows());
+                }
+            });
+        }
+
+        ArrayList<String> lines = new ArrayList<>();
+        for (File file : new File[]{fileOl, fileTAD}){
+            try (GeneScoreColumnReader in = new GeneScoreColumnReader(file.getPath())){
+                while (in.nextBlock()){
+                    for (int row = 0; row < in.getBlockRows(); row++){
+                        lines.add(in.getOutputLine(row));
+                    }
+                }
+            }
+        }
+        assertEquals(expected, lines);
+    }
+}
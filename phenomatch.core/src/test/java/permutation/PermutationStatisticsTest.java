@@ -0,0 +1,135 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package permutation;
+
+import annotation.AnnotateCNVs;
+import genomicregions.CNV;
+import genomicregions.GenomicSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import phenotypeontology.PhenotypeData;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the PermutationStatistics class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class PermutationStatisticsTest {
+
+    private static ExampleData exampleData;
+
+    private static PhenotypeData phenotypeData;
+
+    private static GenomicSet<CNV> cnvs;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        exampleData = new ExampleData();
+        phenotypeData = exampleData.getPhenotypeData();
+        cnvs = exampleData.getCnvs();
+        AnnotateCNVs.annotateOverlappedGenes(cnvs, exampleData.getGenes());
+        AnnotateCNVs.annotateGenesInOverlapTADs(cnvs, exampleData.getDomains(), exampleData.getGenes());
+    }
+
+    /**
+     * Test that the original annotation always reaches the observed scores.
+     */
+    @Test
+    public void testCountOriginal() {
+        System.out.println("countOriginal");
+
+        HashMap<String, HashSet<Term>> original = new HashMap<>();
+        for (String gID : phenotypeData.getAllGenesIDs()){
+            original.put(gID, phenotypeData.getGenePhenotypes(gID));
+        }
+
+        PermutationStatistics stats = new PermutationStatistics(phenotypeData, cnvs.values(), false);
+        PermutationStatistics.Counts counts = stats.newCounts();
+        stats.count(original, counts);
+        stats.count(original, counts);
+        stats.add(counts);
+
+        assertEquals(2, stats.getPermutations());
+
+        ArrayList<String> lines = stats.getGeneSummaryLines();
+        assertTrue(lines.size() > 1);
+        for (String line : lines.subList(1, lines.size())){
+            String [] cols = line.split("\t");
+            int n = cols.length;
+            assertEquals("2", cols[n - 5]);
+            assertEquals("2", cols[n - 4]);
+            assertEquals(1.0, Double.parseDouble(cols[n - 3]), 1E-12);
+            assertEquals("2", cols[n - 2]);
+            assertEquals(1.0, Double.parseDouble(cols[n - 1]), 1E-12);
+        }
+
+        // one CNV line per CNV
+        assertEquals(cnvs.size() + 1, stats.getCNVSummaryLines().size());
+    }
+
+    /**
+     * Test that permutations without annotation count only CNVs without
+     * observed scores and fill the lowest histogram bin.
+     */
+    @Test
+    public void testCountEmpty() {
+        System.out.println("countEmpty");
+
+        PermutationStatistics stats = new PermutationStatistics(phenotypeData, cnvs.values(), false);
+        PermutationStatistics.Counts counts = stats.newCounts();
+        for (int i = 0; i < 3; i++){
+            stats.count(new HashMap<String, HashSet<Term>>(), counts);
+        }
+        stats.add(counts);
+
+        ArrayList<String> lines = stats.getCNVSummaryLines();
+        for (String line : lines.subList(1, lines.size())){
+            String [] cols = line.split("\t");
+            int n = cols.length;
+            String [] bins = cols[n - 1].split(",");
+            assertEquals(PermutationStatistics.HISTOGRAM_BINS, bins.length);
+            assertEquals("3", bins[0]);
+
+            // a positive observed score is never reached
+            boolean observed = Double.parseDouble(cols[n - 7]) > 0;
+            assertEquals(observed ? "0" : "3", cols[n - 3]);
+            assertEquals(observed ? 0.25 : 1.0, Double.parseDouble(cols[n - 2]), 1E-12);
+        }
+    }
+
+    /**
+     * Test that the statistics do not depend on the number of threads.
+     */
+    @Test
+    public void testRunStatisticsThreads() throws IOException {
+        System.out.println("runStatisticsThreads");
+
+        PermutationEngine engine = new PermutationEngine(phenotypeData, cnvs.values(), true, 99L);
+
+        PermutationStatistics serialOl = new PermutationStatistics(phenotypeData, cnvs.values(), false);
+        PermutationStatistics serialTAD = new PermutationStatistics(phenotypeData, cnvs.values(), true);
+        engine.runStatistics(50, 1, serialOl, serialTAD);
+
+        PermutationStatistics parallelOl = new PermutationStatistics(phenotypeData, cnvs.values(), false);
+        PermutationStatistics parallelTAD = new PermutationStatistics(phenotypeData, cnvs.values(), true);
+        engine.runStatistics(50, 4, parallelOl, parallelTAD);
+
+        assertEquals(50, parallelOl.getPermutations());
+        assertEquals(serialOl.getGeneSummaryLines(), parallelOl.getGeneSummaryLines());
+        assertEquals(serialOl.getCNVSummaryLines(), parallelOl.getCNVSummaryLines());
+        assertEquals(serialTAD.getGeneSummaryLines(), parallelTAD.getGeneSummaryLines());
+        assertEquals(serialTAD.getCNVSummaryLines(), parallelTAD.getCNVSummaryLines());
+    }
+}
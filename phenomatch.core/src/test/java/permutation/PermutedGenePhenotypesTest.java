@@ -55,7 +55,7 @@ public class PermutedGenePhenotypesTest {
         PhenotypeData permPhenotypeData = PermutedGenePhenotypes.permuteGenePhenotypes(orgPhenotypeData);
         
         // check that not changed members are still the same
-        assertEquals(orgPhenotypeData.getOntology(), permPhenotypeData.getOntology());
+        assertSame(orgPhenotypeData.getFrozenOntology(), permPhenotypeData.getFrozenOntology());
         assertEquals(orgPhenotypeData.getAllGenesIDs(), permPhenotypeData.getAllGenesIDs());
         
         for (String geneID : orgPhenotypeData.getAllGenesIDs()){
@@ -0,0 +1,201 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import similarity.concepts.ResnikSimilarity;
+import static org.junit.Assert.*;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the FrozenOntology class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ * 
+ * @see ExampleData
+ */
+public class FrozenOntologyTest {
+    
+    private static PhenotypeData phenotypeData;
+    
+    private static FrozenOntology frozen;
+    
+    /** Reference implementation of the Resnik similarity. */
+    private static ResnikSimilarity sim;
+    
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        phenotypeData = new ExampleData().getPhenotypeData();
+        frozen = phenotypeData.getFrozenOntology();
+        String oboPath = ExampleData.class.getResource("/example_ontology.obo").getPath();
+        sim = PhenotypeDataTest.referenceSimilarity(PhenotypeData.parseOntology(oboPath), phenotypeData);
+    }
+
+    /**
+     * Test topological order of term indices.
+     */
+    @Test
+    public void testTopologicalOrder() {
+        System.out.println("topologicalOrder");
+        
+        assertEquals(8, frozen.size());
+        
+        // root has index zero, all parents have smaller indices
+        assertEquals("EP:00", frozen.getTerm(0).getIDAsString());
+        for (int i = 0; i < frozen.size(); i++){
+            assertEquals(i, frozen.getIndex(frozen.getTerm(i)));
+            for (int p : frozen.getParents(i)){
+                assertTrue(p < i);
+            }
+        }
+    }
+
+    /**
+     * Test ancestor and descendant closures against the ontology.
+     */
+    @Test
+    public void testClosures() throws IOException {
+        System.out.println("closures");
+        
+        int ep0 = frozen.getIndex("EP:00");
+        int ep2 = frozen.getIndex("EP:02");
+        int ep3 = frozen.getIndex("EP:03");
+        int ep6 = frozen.getIndex("EP:06");
+        
+        // EP:06 has the ancestors EP:06, EP:04, EP:05, EP:02 and EP:00
+        assertEquals(5, frozen.getAncestors(ep6).length);
+        assertTrue(frozen.isAncestorOrEqual(ep6, ep6));
+        assertTrue(frozen.isAncestorOrEqual(ep6, ep2));
+        assertTrue(frozen.isAncestorOrEqual(ep6, ep0));
+        assertFalse(frozen.isAncestorOrEqual(ep6, ep3));
+        assertFalse(frozen.isAncestorOrEqual(ep2, ep6));
+        
+        // root is ancestor of all terms
+        assertEquals(8, frozen.getDescendants(ep0).cardinality());
+        
+        // ancestors and descendants are consistent
+        for (int i = 0; i < frozen.size(); i++){
+            for (int a : frozen.getAncestors(i)){
+                assertTrue(frozen.getDescendants(a).get(i));
+            }
+        }
+        
+        HashSet<Term> exp = new HashSet<Term>();
+        exp.add(phenotypeData.getTermIncludingAlternatives("EP:05"));
+        exp.add(phenotypeData.getTermIncludingAlternatives("EP:06"));
+        exp.add(phenotypeData.getTermIncludingAlternatives("EP:07"));
+        assertEquals(exp, phenotypeData.getDescendants(phenotypeData.getTermIncludingAlternatives("EP:05")));
+    }
+    
+    /**
+     * Test IC values in the dense array.
+     */
+    @Test
+    public void testGetIC() {
+        System.out.println("getIC");
+        
+        assertEquals(0.0, frozen.getIC(frozen.getIndex("EP:00")), 0.0);
+        assertEquals(-Math.log(0.25), frozen.getIC(frozen.getIndex("EP:01")), 1e-12);
+        assertEquals(-1, frozen.getIndex("EP:99"));
+    }
+    
+    /**
+     * Test of getMICA method, of class FrozenOntology.
+     */
+    @Test
+    public void testGetMICA() {
+        System.out.println("getMICA");
+        
+        int ep3 = frozen.getIndex("EP:03");
+        int ep4 = frozen.getIndex("EP:04");
+        int ep5 = frozen.getIndex("EP:05");
+        int ep6 = frozen.getIndex("EP:06");
+        int ep7 = frozen.getIndex("EP:07");
+        
+        // EP:02 and EP:05 have the same IC, the more specific EP:05 is the MICA
+        assertEquals(ep5, frozen.getMICA(ep6, ep7));
+        assertEquals(ep5, frozen.getMICA(ep7, ep6));
+        assertEquals(ep4, frozen.getMICA(ep6, ep4));
+        assertEquals(frozen.getIndex("EP:00"), frozen.getMICA(ep3, ep6));
+        
+        // MICA similarity equals the Resnik similarity for all pairs of terms
+        for (int i = 0; i < frozen.size(); i++){
+            for (int j = 0; j < frozen.size(); j++){
+                assertEquals(sim.computeSimilarity(frozen.getTerm(i), frozen.getTerm(j)),
+                        frozen.resnikSim(i, j), 0.0);
+            }
+        }
+    }
+    
+    /**
+     * Test of getMICA method on a DAG in which two terms have several common
+     * ancestors. The common ancestor with the highest IC is reported, even if
+     * another common ancestor is closer to the terms.
+     */
+    @Test
+    public void testGetMICASeveralCommonAncestors() {
+        System.out.println("getMICASeveralCommonAncestors");
+        
+        // R is the root, A and B are children of R, C is a child of A and 
+        // X and Y are children of both C and B
+        Term [] terms = new Term[]{
+            new Term("EP:10", "R"), new Term("EP:11", "A"), new Term("EP:12", "B"),
+            new Term("EP:13", "C"), new Term("EP:14", "X"), new Term("EP:15", "Y")};
+        int [][] parents = new int[][]{{}, {0}, {0}, {1}, {3, 2}, {3, 2}};
+        double [] ic = new double[]{0.0, 0.5, 1.5, 1.0, 2.0, 2.0};
+        FrozenOntology dag = new FrozenOntology(terms, parents, ic);
+        
+        // X and Y share C, A, B and R. C is the closest common parent, but B 
+        // has the highest IC
+        assertEquals(2, dag.getMICA(4, 5));
+        assertEquals(2, dag.getMICA(5, 4));
+        assertEquals(1.5, dag.resnikSim(4, 5), 0.0);
+        assertEquals(3, dag.getMICA(3, 4));
+        assertEquals(0, dag.getMICA(1, 2));
+        
+        // the matching reports the MICA as common term of the best pair
+        HashMap<String, HashSet<Term>> gene2Terms = new HashMap<String, HashSet<Term>>();
+        PhenotypeData data = new PhenotypeData(gene2Terms, dag);
+        HashSet<Term> patient = new HashSet<Term>();
+        patient.add(terms[4]);
+        ArrayList<TermPair> matching = data.phenoMatchScoreWithMatching(patient, Arrays.asList(terms[5]));
+        assertEquals(1, matching.size());
+        assertEquals(terms[2], matching.get(0).getLca());
+        assertEquals(1.5, matching.get(0).getS(), 0.0);
+    }
+    
+    /**
+     * Test of the CompactBitSet class.
+     */
+    @Test
+    public void testCompactBitSet() {
+        System.out.println("CompactBitSet");
+        
+        int [] members = new int[]{3, 64, 130, 1000};
+        CompactBitSet bs = new CompactBitSet(members);
+        
+        assertTrue(bs.get(64));
+        assertTrue(bs.get(1000));
+        assertFalse(bs.get(0));
+        assertFalse(bs.get(65));
+        assertFalse(bs.get(5000));
+        assertEquals(4, bs.cardinality());
+        assertEquals(130, bs.nextSetBit(65));
+        assertEquals(-1, bs.nextSetBit(1001));
+        assertArrayEquals(members, bs.toArray());
+        
+        // only the words between the first and last member are stored
+        assertEquals(1000 / 64 + 1, bs.wordCount());
+        assertEquals(0, new CompactBitSet(new int[0]).toArray().length);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the PhenotypeDataSnapshot class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class PhenotypeDataSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String oboPath;
+
+    private static String annotPath;
+
+    private static PhenotypeData phenotypeData;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        oboPath = ExampleData.class.getResource("/example_ontology.obo").getPath();
+        annotPath = ExampleData.class.getResource("/example_genes_to_penotype.txt").getPath();
+        phenotypeData = new ExampleData().getPhenotypeData();
+    }
+
+    /**
+     * Test of write and open methods.
+     */
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        System.out.println("writeAndOpen");
+
+        String snapshotPath = new File(folder.getRoot(), "example.snapshot").getPath();
+        PhenotypeDataSnapshot.write(oboPath, annotPath, snapshotPath);
+
+        PhenotypeDataSnapshot snapshot = PhenotypeDataSnapshot.open(snapshotPath);
+        PhenotypeData loaded = snapshot.getPhenotypeData();
+        FrozenOntology frozen = phenotypeData.getFrozenOntology();
+        FrozenOntology loadedFrozen = loaded.getFrozenOntology();
+
+        // same terms, parents and IC in the same order
+        assertEquals(frozen.size(), loadedFrozen.size());
+        for (int i = 0; i < frozen.size(); i++){
+            assertEquals(frozen.getTerm(i).getIDAsString(), loadedFrozen.getTerm(i).getIDAsString());
+            assertArrayEquals(frozen.getParents(i), loadedFrozen.getParents(i));
+            assertArrayEquals(frozen.getAncestors(i), loadedFrozen.getAncestors(i));
+            assertArrayEquals(frozen.getDescendants(i).toArray(), loadedFrozen.getDescendants(i).toArray());
+            assertEquals(frozen.getDescendants(i).cardinality(), loadedFrozen.getDescendants(i).cardinality());
+            assertEquals(frozen.getIC(i), loadedFrozen.getIC(i), 0.0);
+        }
+
+        // same gene annotations and symbols
+        assertEquals(phenotypeData.getAllGenesIDs(), loaded.getAllGenesIDs());
+        for (String gID : phenotypeData.getAllGenesIDs()){
+            assertEquals(phenotypeData.getGenePhenotypes(gID), loaded.getGenePhenotypes(gID));
+        }
+        assertEquals("GeneA", snapshot.getEntrezToSymbol().get("geneA"));
+
+        // same scores
+        HashSet<Term> patientTerms = new HashSet<Term>();
+        patientTerms.add(loaded.getTermIncludingAlternatives("EP:06"));
+        HashSet<Term> geneTerms = loaded.getGenePhenotypes("geneA");
+        assertEquals(
+                phenotypeData.getPhenotypeProfile(patientTerms).phenoMatchScore(geneTerms),
+                loaded.getPhenotypeProfile(patientTerms).phenoMatchScore(geneTerms), 0.0);
+    }
+
+    /**
+     * Test of checkSources method.
+     */
+    @Test
+    public void testCheckSources() throws IOException {
+        System.out.println("checkSources");
+
+        String snapshotPath = new File(folder.getRoot(), "example.snapshot").getPath();
+        PhenotypeDataSnapshot.write(oboPath, annotPath, snapshotPath);
+        PhenotypeDataSnapshot snapshot = PhenotypeDataSnapshot.open(snapshotPath);
+
+        // matching sources and unchecked sources pass
+        snapshot.checkSources(oboPath, annotPath);
+        snapshot.checkSources(null, null);
+
+        // a different file is rejected
+        try{
+            snapshot.checkSources(annotPath, null);
+            fail("Expected IOException for a different ontology file.");
+        }catch (IOException e){
+            assertTrue(e.getMessage().contains("ontology file"));
+        }
+    }
+
+    /**
+     * Test that other files are rejected by open.
+     */
+    @Test(expected = IOException.class)
+    public void testOpenInvalidFile() throws IOException {
+        System.out.println("openInvalidFile");
+        PhenotypeDataSnapshot.open(annotPath);
+    }
+}
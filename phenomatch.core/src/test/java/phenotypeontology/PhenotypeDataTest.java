@@ -6,15 +6,21 @@
 
 package phenotypeontology;
 
+import genomicregions.CNV;
 import genomicregions.Gene;
 import genomicregions.GenomicSet;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 import ontologizer.go.Ontology;
 import ontologizer.go.Term;
 import ontologizer.go.TermID;
@@ -23,9 +29,12 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Ignore;
+import org.junit.rules.TemporaryFolder;
+import similarity.concepts.ResnikSimilarity;
 import toyexampledata.ExampleData;
 
 /**
@@ -38,10 +47,19 @@ import toyexampledata.ExampleData;
  */
 public class PhenotypeDataTest {
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     private static PhenotypeData phenotypeData;
     
     private static ExampleData exampleData;
     
+    /** The parsed example ontology, which PhenotypeData does not keep. */
+    private static Ontology ontology;
+    
+    /** Reference implementation of the Resnik similarity. */
+    private static ResnikSimilarity sim;
+    
     public PhenotypeDataTest() {
     }
     
@@ -58,6 +76,26 @@ public class PhenotypeDataTest {
         phenotypeData = new PhenotypeData(oboPath, annotPath);        
         
         exampleData = new ExampleData();        
+        
+        ontology = PhenotypeData.parseOntology(oboPath);
+        sim = referenceSimilarity(ontology, phenotypeData);
+    }
+    
+    /**
+     * Builds the {@link ResnikSimilarity} of the {@code de.sonumina.javautil}
+     * project with the IC values of a {@link PhenotypeData} object as 
+     * reference for the scores computed on the {@link FrozenOntology}.
+     * 
+     * @param ontology the ontology parsed from the same file
+     * @param phenotypeData the phenotype data
+     * @return the reference similarity
+     */
+    static ResnikSimilarity referenceSimilarity(Ontology ontology, PhenotypeData phenotypeData){
+        HashMap<Term, Double> term2ic = new HashMap<Term, Double>();
+        for (Term t : ontology){
+            term2ic.put(t, phenotypeData.getIC(t));
+        }
+        return new ResnikSimilarity(ontology, term2ic);
     }
     
     @Test
@@ -65,7 +103,8 @@ public class PhenotypeDataTest {
 
         // test if all terms are read
         System.out.println("TEST: Numer of terms in example data");
-        assertEquals(8, phenotypeData.getOntology().getNumberOfTerms());
+        assertEquals(8, phenotypeData.getAllTerms().size());
+        assertEquals(8, phenotypeData.getFrozenOntology().size());
         
         // test the ic of all terms
         // print it to output
@@ -209,7 +248,7 @@ public class PhenotypeDataTest {
         Term ep2 = phenotypeData.getTermIncludingAlternatives("EP:02");
         Term ep0 = phenotypeData.getTermIncludingAlternatives("EP:00");
 
-        Ontology ep = phenotypeData.getOntology();
+        Ontology ep = ontology;
         
         // direct ancesotr
         assertTrue(TermRelation.IS_A.equals(ep.getDirectRelation(ep2.getID(), ep5.getID() )) );
@@ -219,6 +258,92 @@ public class PhenotypeDataTest {
 
     }
 
+    /**
+     * Test that equal term sets share one cached profile, also between CNVs
+     * and shallow copies, until the cache is cleared.
+     */
+    @Test
+    public void testGetSharedPhenotypeProfile() throws IOException {
+        System.out.println("getSharedPhenotypeProfile");
+        
+        Term ep5 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        Term ep6 = phenotypeData.getTermIncludingAlternatives("EP:06");
+        HashSet<Term> terms = new HashSet<Term>();
+        terms.add(ep5);
+        terms.add(ep6);
+        HashSet<Term> sameTerms = new HashSet<Term>(terms);
+        HashSet<Term> otherTerms = new HashSet<Term>();
+        otherTerms.add(ep6);
+        
+        PhenotypeProfile profile = phenotypeData.getSharedPhenotypeProfile(terms);
+        assertSame(profile, phenotypeData.getSharedPhenotypeProfile(sameTerms));
+        assertSame(profile, phenotypeData.shallowCopy().getSharedPhenotypeProfile(terms));
+        assertNotSame(profile, phenotypeData.getSharedPhenotypeProfile(otherTerms));
+        
+        CNV cnv1 = new CNV("chr1", 1, 10, "cnv1", terms);
+        CNV cnv2 = new CNV("chr2", 1, 10, "cnv2", sameTerms);
+        assertSame(profile, cnv1.getPhenotypeProfile(phenotypeData));
+        assertSame(profile, cnv2.getPhenotypeProfile(phenotypeData));
+        
+        // the cached profile scores like a newly computed one
+        PhenotypeProfile computed = phenotypeData.getPhenotypeProfile(terms);
+        for (Term t : phenotypeData.getAllTerms()){
+            assertEquals(computed.getBestScore(t), profile.getBestScore(t), 0.0);
+        }
+        
+        phenotypeData.clearPhenotypeProfiles();
+        assertNotSame(profile, phenotypeData.getSharedPhenotypeProfile(terms));
+        phenotypeData.clearPhenotypeProfiles();
+    }
+    
+    /**
+     * Test that the profile cache copies its keys and drops the least 
+     * recently used profile beyond its capacity.
+     */
+    @Test
+    public void testSharedPhenotypeProfileCache() throws IOException {
+        System.out.println("sharedPhenotypeProfileCache");
+        
+        Term ep5 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        HashSet<Term> terms = new HashSet<Term>();
+        terms.add(ep5);
+        HashSet<Term> sameTerms = new HashSet<Term>(terms);
+        
+        // modifying the set after the lookup does not change the cached key
+        PhenotypeProfile profile = phenotypeData.getSharedPhenotypeProfile(terms);
+        terms.add(phenotypeData.getTermIncludingAlternatives("EP:06"));
+        assertSame(profile, phenotypeData.getSharedPhenotypeProfile(sameTerms));
+        
+        // fill the cache with other term sets, while the first set stays in use
+        PhenotypeProfile evicted = phenotypeData.getSharedPhenotypeProfile(terms);
+        for (int i = 0; i < PhenotypeData.PROFILE_CACHE_CAPACITY; i++){
+            HashSet<Term> other = new HashSet<Term>();
+            other.add(new Term("EP:X" + i, "other" + i));
+            phenotypeData.getSharedPhenotypeProfile(other);
+            assertSame(profile, phenotypeData.getSharedPhenotypeProfile(sameTerms));
+        }
+        assertSame(profile, phenotypeData.getSharedPhenotypeProfile(sameTerms));
+        assertNotSame(evicted, phenotypeData.getSharedPhenotypeProfile(terms));
+        phenotypeData.clearPhenotypeProfiles();
+    }
+    
+    /**
+     * Test of getAncestors and getDescendants methods with a term that is not
+     * part of the ontology.
+     */
+    @Test
+    public void testGetAncestorsUnknownTerm() throws IOException {
+        System.out.println("getAncestorsUnknownTerm");
+        
+        Term ep5 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        assertTrue(phenotypeData.getAncestors(ep5).contains(ep5));
+        assertTrue(phenotypeData.getDescendants(ep5).contains(ep5));
+        
+        Term unknown = new Term("EP:99", "unknown");
+        assertNull(phenotypeData.getAncestors(unknown));
+        assertNull(phenotypeData.getDescendants(unknown));
+    }
+    
     /**
      * Test of isAncestorOrEqual method, of class PhenotypeData.
      */
@@ -230,7 +355,6 @@ public class PhenotypeDataTest {
         Term ep2 = phenotypeData.getTermIncludingAlternatives("EP:02");
         Term ep0 = phenotypeData.getTermIncludingAlternatives("EP:00");
 
-        Ontology ep = phenotypeData.getOntology();
         assertTrue(phenotypeData.isAncestorOrEqual(ep5, ep2));
         assertTrue(phenotypeData.isAncestorOrEqual(ep5, ep0));
     }
@@ -246,14 +370,14 @@ public class PhenotypeDataTest {
 
         PhenotypeData instance = phenotypeData;
         double expResult = -Math.log(0.75);
-        double expResultByOld = phenotypeData.sim.computeSimilarity(t1, t2);
+        double expResultByOld = sim.computeSimilarity(t1, t2);
         double result = instance.resnikSim(t1, t2);
 
         // iterate over all pairs of terms
         for (Term i : phenotypeData.getAllTerms()){
             for (Term j : phenotypeData.getAllTerms()){
                 
-                Double sOld = phenotypeData.sim.computeSimilarity(i, j);
+                Double sOld = sim.computeSimilarity(i, j);
                 Double sNew = phenotypeData.resnikSim(i,j);
                 assertEquals(sOld, sNew, 0.0);
             }
@@ -270,7 +394,7 @@ public class PhenotypeDataTest {
     public void testGetIC() throws IOException {
         System.out.println("getIC");
         
-        for (Term t : phenotypeData.getOntology().getTermsInTopologicalOrder()){
+        for (Term t : phenotypeData.getFrozenOntology().getTerms()){
             Double ic = phenotypeData.getIC(t);
             System.out.println("TEST: getIC():" + t.toString() + ":" + String.format("%.2f", ic));
         }
@@ -315,7 +439,7 @@ public class PhenotypeDataTest {
         PhenotypeData instance = phenotypeData;
         
         double expResult = -Math.log(0.75);
-        double expResultByOld = phenotypeData.sim.computeSimilarity(t1, t2);
+        double expResultByOld = sim.computeSimilarity(t1, t2);
         TermPair p = instance.resnikSimWithTerm(t1, t2);
 
         double result = p.getS();
@@ -331,4 +455,34 @@ public class PhenotypeDataTest {
     
     }
 
+    /**
+     * Test of readAlternativeIDs method, of class PhenotypeData, with a plain
+     * and a gzipped OBO file.
+     */
+    @Test
+    public void testReadAlternativeIDs() throws IOException {
+        System.out.println("readAlternativeIDs");
+        
+        String obo = "format-version: 1.2\n\n"
+                + "[Term]\nid: EP:00\nname: All\nalt_id: EP:10\n\n"
+                + "[Term]\nid: EP:01\nname: term01\nalt_id: EP:11\nalt_id: EP:12\nis_a: EP:00 ! All\n\n"
+                + "[Typedef]\nid: part_of\nalt_id: EP:13\n";
+        byte [] bytes = obo.getBytes(StandardCharsets.UTF_8);
+        
+        File plain = folder.newFile("ontology.obo");
+        Files.write(plain.toPath(), bytes);
+        File gzipped = folder.newFile("ontology.obo.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped.toPath()))){
+            out.write(bytes);
+        }
+        
+        HashMap<String, String> expResult = new HashMap<String, String>();
+        expResult.put("EP:10", "EP:00");
+        expResult.put("EP:11", "EP:01");
+        expResult.put("EP:12", "EP:01");
+        
+        assertEquals(expResult, PhenotypeData.readAlternativeIDs(plain.getPath()));
+        assertEquals(expResult, PhenotypeData.readAlternativeIDs(gzipped.getPath()));
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package phenotypeontology;
+
+import java.io.IOException;
+import java.util.HashSet;
+import ontologizer.go.Term;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import toyexampledata.ExampleData;
+
+/**
+ * Unit tests for the PhenotypeProfile class.
+ * See description of the toy example data in the class {@link ExampleData}.
+ *
+ * @see ExampleData
+ */
+public class PhenotypeProfileTest {
+
+    private static PhenotypeData phenotypeData;
+
+    private static FrozenOntology frozen;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        phenotypeData = new ExampleData().getPhenotypeData();
+        frozen = phenotypeData.getFrozenOntology();
+    }
+
+    /**
+     * Test of getBestScore method against the pairwise Resnik similarity.
+     */
+    @Test
+    public void testGetBestScore() throws IOException {
+        System.out.println("getBestScore");
+
+        HashSet<Term> patientTerms = new HashSet<Term>();
+        patientTerms.add(phenotypeData.getTermIncludingAlternatives("EP:06"));
+        patientTerms.add(phenotypeData.getTermIncludingAlternatives("EP:03"));
+
+        PhenotypeProfile profile = phenotypeData.getPhenotypeProfile(patientTerms);
+
+        // the best score of each term is the maximum over all patient terms
+        for (int i = 0; i < frozen.size(); i++){
+            Term t = frozen.getTerm(i);
+            double expResult = 0.0;
+            for (Term p : patientTerms){
+                expResult = Math.max(expResult, phenotypeData.resnikSim(p, t));
+            }
+            assertEquals(expResult, profile.getBestScore(t), 0.0);
+        }
+    }
+
+    /**
+     * Test of phenoMatchScore and maxScore methods.
+     */
+    @Test
+    public void testPhenoMatchScore() throws IOException {
+        System.out.println("phenoMatchScore");
+
+        HashSet<Term> patientTerms = new HashSet<Term>();
+        patientTerms.add(phenotypeData.getTermIncludingAlternatives("EP:06"));
+
+        HashSet<Term> geneTerms = new HashSet<Term>();
+        geneTerms.add(phenotypeData.getTermIncludingAlternatives("EP:04"));
+        geneTerms.add(phenotypeData.getTermIncludingAlternatives("EP:05"));
+
+        PhenotypeProfile profile = phenotypeData.getPhenotypeProfile(patientTerms);
+
+        double ic4 = phenotypeData.getIC(phenotypeData.getTermIncludingAlternatives("EP:04"));
+        double ic5 = phenotypeData.getIC(phenotypeData.getTermIncludingAlternatives("EP:05"));
+
+        assertEquals(ic4 + ic5, profile.phenoMatchScore(geneTerms), 0.001);
+        assertEquals(Math.max(ic4, ic5), profile.maxScore(geneTerms), 0.0);
+
+        // empty patient set gives zero for all terms
+        PhenotypeProfile empty = phenotypeData.getPhenotypeProfile(new HashSet<Term>());
+        assertEquals(0.0, empty.phenoMatchScore(geneTerms), 0.0);
+    }
+}
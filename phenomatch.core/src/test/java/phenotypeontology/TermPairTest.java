@@ -45,9 +45,9 @@ public class TermPairTest {
         // parse ontology and create PhenotypeData object
         PhenotypeData phenotypeData = new PhenotypeData(oboPath, annotPath);        
         
-        p1 = phenotypeData.getOntology().getTerm("EP:04");
-        p2 = phenotypeData.getOntology().getTerm("EP:05");
-        Term plca = phenotypeData.getOntology().getTerm("EP:02");
+        p1 = phenotypeData.getTermIncludingAlternatives("EP:04");
+        p2 = phenotypeData.getTermIncludingAlternatives("EP:05");
+        Term plca = phenotypeData.getTermIncludingAlternatives("EP:02");
         s = 1.39;
         
         termPair = new TermPair(p1, p2, s, plca);
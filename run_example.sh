@@ -7,40 +7,58 @@ unzip data/data_files.zip -d data/
 #=======================================================================
 # step 1
 #=======================================================================
-perl perl/dgap_features_check.pl \
-  -f data/non_coding_DGAP_positions.bed \
-  -i data/HI_Predictions_Version3.bed \
-  -g data/GRCh37.p13_ensembl_genes.txt \
-  -c data/hESC_hg37_domains.bed \
-  -n 3000000 \
-  -o .
+java -jar bin/phenomatch.jar \
+  --breakpoints data/non_coding_DGAP_positions.bed \
+  --hi-predictions data/HI_Predictions_Version3.bed \
+  --ensembl-genes data/GRCh37.p13_ensembl_genes.txt \
+  --hic-domains data/hESC_hg37_domains.bed \
+  --flank 3000000 \
+  -o ./DGAP
+# replaces:
+# perl perl/dgap_features_check.pl \
+#   -f data/non_coding_DGAP_positions.bed \
+#   -i data/HI_Predictions_Version3.bed \
+#   -g data/GRCh37.p13_ensembl_genes.txt \
+#   -c data/hESC_hg37_domains.bed \
+#   -n 3000000 \
+#   -o .
 
 #=======================================================================
 # step 2
 #=======================================================================
-perl perl/enh_promoter_disruption_checker_DGAP.pl \
-  -f data/non_coding_DGAP_positions.bed \
-  -d data/genomewideCorrs_above0.7_promoterPlusMinus500kb_withGeneNames_32celltypeCategories.bed8 \
-  -a 3000000 \
-  -o DHS_promoter_broken_DGAP.txt
+java -jar bin/phenomatch.jar \
+  --breakpoints data/non_coding_DGAP_positions.bed \
+  --enhancer-promoter-contacts data/genomewideCorrs_above0.7_promoterPlusMinus500kb_withGeneNames_32celltypeCategories.bed8 \
+  --flank 3000000 \
+  -o DGAP
+# replaces:
+# perl perl/enh_promoter_disruption_checker_DGAP.pl \
+#   -f data/non_coding_DGAP_positions.bed \
+#   -d data/genomewideCorrs_above0.7_promoterPlusMinus500kb_withGeneNames_32celltypeCategories.bed8 \
+#   -a 3000000 \
+#   -o DHS_promoter_broken_DGAP.txt
   
 
 #=======================================================================
 # step 3
 #=======================================================================
 
-Rscript R/combine_breakpoints_and_phenotypes.R \
-  data/HPO_distal_cases.txt \
-  data/non_coding_DGAP_positions.bed \
-  6000000 \
-  breakpoint_window_with_HPO.6MB_win.bed
-  
 java -jar bin/phenomatch.jar \
-  -i breakpoint_window_with_HPO.6MB_win.bed \
+  --subject-phenotypes data/HPO_distal_cases.txt \
+  --breakpoints data/non_coding_DGAP_positions.bed \
+  --window 6000000 \
   -g data/knownGene.txt.entrez_id.tab.unique \
   -O data/hp.obo \
   -a data/ALL_SOURCES_TYPICAL_FEATURES_genes_to_phenotype.txt  \
-  -o breakpoint_window_with_HPO.6MB_win.bed.phenomatch
+  -o breakpoint_window_with_HPO.6MB_win.bed.phenomatch \
+  --percentiles
+# replaces:
+# Rscript R/combine_breakpoints_and_phenotypes.R \
+#   data/HPO_distal_cases.txt \
+#   data/non_coding_DGAP_positions.bed \
+#   6000000 \
+#   breakpoint_window_with_HPO.6MB_win.bed
+# and the input file -i breakpoint_window_with_HPO.6MB_win.bed
 
 # java -jar bin/phenomatch.jar \
 #   -i breakpoint_window_with_HPO.6MB_win.bed \
@@ -54,9 +72,10 @@ java -jar bin/phenomatch.jar \
 #=======================================================================
 # step 4
 #=======================================================================
-Rscript --vanilla R/get_percentiles_DGAP_all.r \
-  breakpoint_window_with_HPO.6MB_win.bed.phenomatch.overlapped_genes.txt \
-  > percentiles_6Mb_pheno_maxpheno.txt
+# percentiles are written by phenomatch with --percentiles, which replaces:
+# Rscript --vanilla R/get_percentiles_DGAP_all.r \
+#   breakpoint_window_with_HPO.6MB_win.bed.phenomatch.overlapped_genes.txt \
+#   > percentiles_6Mb_pheno_maxpheno.txt
   
 #=======================================================================
 # step 5
@@ -64,8 +83,8 @@ Rscript --vanilla R/get_percentiles_DGAP_all.r \
 perl perl/dgap_final_table_maker.pl \
   -f HI_list_DGAP.txt \
   -c data/hESC_hg37_domains.bed \
-  -d DHS_promoter_broken_breakpDGAP.txt \
+  -d DGAP.DHS_promoter_broken.txt \
   -h data/ClinGen_haploinsufficiency_gene.bed \
   -t data/ClinGen_triplosensitivity_gene.bed \
-  -m percentiles_6Mb_pheno_maxpheno.txt \
+  -m breakpoint_window_with_HPO.6MB_win.bed.phenomatch.percentiles.txt \
   -o DGAP_table_summary.txt